@@ -24,7 +24,6 @@ import com.google.firebase.database.util.JsonMapper;
 import java.io.EOFException;
 import java.io.IOException;
 import java.net.URI;
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ScheduledExecutorService;
@@ -36,7 +35,8 @@ class WebsocketConnection {
   private static long connectionId = 0;
   private static final long KEEP_ALIVE_TIMEOUT_MS = 45 * 1000; // 45 seconds
   private static final long CONNECT_TIMEOUT_MS = 30 * 1000; // 30 seconds
-  private static final int MAX_FRAME_SIZE = 16384;
+  // Package-private for testing
+  static final int MAX_FRAME_SIZE = 16384;
 
   public interface Delegate {
     public void onMessage(Map<String, Object> message);
@@ -50,6 +50,8 @@ class WebsocketConnection {
     public void close();
 
     public void send(String msg);
+
+    public void send(String msg, int start, int end);
   }
 
   private class WSClientTubesock implements WSClient, WebSocketEventHandler {
@@ -127,6 +129,11 @@ class WebsocketConnection {
       ws.send(msg);
     }
 
+    @Override
+    public void send(String msg, int start, int end) {
+      ws.send(msg, start, end);
+    }
+
     @Override
     public void close() {
       ws.close();
@@ -232,14 +239,19 @@ class WebsocketConnection {
 
     try {
       String toSend = JsonMapper.serializeJson(message);
-      String[] segs = splitIntoFrames(toSend, MAX_FRAME_SIZE);
-      if (segs.length > 1) {
-        conn.send("" + segs.length);
+      // The frames are sent as ranges of the serialized message, which avoids copying each frame
+      // into a substring before it is encoded.
+      int frameCount = countFrames(toSend, MAX_FRAME_SIZE);
+      if (frameCount > 1) {
+        conn.send("" + frameCount);
       }
 
-      for (int i = 0; i < segs.length; ++i) {
-        conn.send(segs[i]);
-      }
+      int start = 0;
+      do {
+        int end = frameEnd(toSend, start, MAX_FRAME_SIZE);
+        conn.send(toSend, start, end);
+        start = end;
+      } while (start < toSend.length());
     } catch (IOException e) {
       logger.error("Failed to serialize message: " + message.toString(), e);
       shutdown();
@@ -253,7 +265,8 @@ class WebsocketConnection {
       // Decode JSON
       try {
         frameReader.freeze();
-        Map<String, Object> decoded = JsonMapper.parseJson(frameReader.toString());
+        // Parse directly from the received frames, rather than concatenating them first.
+        Map<String, Object> decoded = JsonMapper.parseJson(frameReader);
         frameReader = null;
         if (logger.logsDebug()) logger.debug("handleIncomingFrame complete frame: " + decoded);
         delegate.onMessage(decoded);
@@ -363,17 +376,26 @@ class WebsocketConnection {
     }
   }
 
-  private static String[] splitIntoFrames(String src, int maxFrameSize) {
-    if (src.length() <= maxFrameSize) {
-      return new String[] {src};
-    } else {
-      ArrayList<String> segs = new ArrayList<String>();
-      for (int i = 0; i < src.length(); i += maxFrameSize) {
-        int end = Math.min(i + maxFrameSize, src.length());
-        String seg = src.substring(i, end);
-        segs.add(seg);
-      }
-      return segs.toArray(new String[segs.size()]);
+  // Package-private for testing
+  static int countFrames(String src, int maxFrameSize) {
+    int frameCount = 0;
+    int start = 0;
+    do {
+      start = frameEnd(src, start, maxFrameSize);
+      frameCount++;
+    } while (start < src.length());
+    return frameCount;
+  }
+
+  /**
+   * Returns the end of the frame that starts at the given index. Frames end early rather than
+   * split a surrogate pair, since each frame is encoded separately.
+   */
+  static int frameEnd(String src, int start, int maxFrameSize) {
+    int end = Math.min(start + maxFrameSize, src.length());
+    if (end < src.length() && Character.isHighSurrogate(src.charAt(end - 1))) {
+      end--;
     }
+    return end;
   }
 }
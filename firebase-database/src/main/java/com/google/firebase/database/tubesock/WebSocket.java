@@ -188,6 +188,28 @@ public class WebSocket {
     send(OPCODE_TEXT, data.getBytes(UTF8));
   }
 
+  /**
+   * Send a part of a string as a TEXT message over the socket. The characters are encoded directly
+   * into the frame, without creating a substring or an intermediate byte array.
+   *
+   * @param data The string that contains the text payload
+   * @param start The index of the first character to send
+   * @param end The index after the last character to send
+   */
+  public synchronized void send(String data, int start, int end) {
+    if (state != State.CONNECTED) {
+      // We might have been disconnected on another thread, just report an error
+      eventHandler.onError(new WebSocketException("error while sending data: not connected"));
+    } else {
+      try {
+        writer.send(OPCODE_TEXT, true, data, start, end);
+      } catch (IOException e) {
+        eventHandler.onError(new WebSocketException("Failed to send frame", e));
+        close();
+      }
+    }
+  }
+
   /**
    * Send a BINARY message over the socket
    *
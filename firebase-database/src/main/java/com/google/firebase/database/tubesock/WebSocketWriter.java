@@ -57,12 +57,89 @@ class WebSocketWriter {
     channel = Channels.newChannel(output);
   }
 
-  private ByteBuffer frameInBuffer(byte opcode, boolean masking, byte[] data) throws IOException {
+  // Package-private for testing
+  ByteBuffer frameInBuffer(byte opcode, boolean masking, byte[] data) throws IOException {
+    ByteBuffer frame = startFrame(opcode, masking, data.length);
+    int payloadStart = frame.position();
+    frame.put(data);
+    return finishFrame(frame, masking, payloadStart);
+  }
+
+  /**
+   * Frames the characters of {@code text} between {@code start} and {@code end} as UTF-8. The
+   * characters are encoded directly into the frame, so no intermediate string or byte array is
+   * created. Like {@link String#getBytes}, unpaired surrogates are encoded as '?'.
+   *
+   * <p>Package-private for testing.
+   */
+  ByteBuffer frameInBuffer(byte opcode, boolean masking, String text, int start, int end)
+      throws IOException {
+    ByteBuffer frame = startFrame(opcode, masking, utf8Length(text, start, end));
+    int payloadStart = frame.position();
+    for (int i = start; i < end; i++) {
+      char c = text.charAt(i);
+      if (c < 0x80) {
+        frame.put((byte) c);
+      } else if (c < 0x800) {
+        frame.put((byte) (0xC0 | (c >> 6)));
+        frame.put((byte) (0x80 | (c & 0x3F)));
+      } else if (!isSurrogate(c)) {
+        frame.put((byte) (0xE0 | (c >> 12)));
+        frame.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+        frame.put((byte) (0x80 | (c & 0x3F)));
+      } else if (isSurrogatePair(text, i, end)) {
+        int codePoint = Character.toCodePoint(c, text.charAt(++i));
+        frame.put((byte) (0xF0 | (codePoint >> 18)));
+        frame.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+        frame.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+        frame.put((byte) (0x80 | (codePoint & 0x3F)));
+      } else {
+        frame.put((byte) '?');
+      }
+    }
+    return finishFrame(frame, masking, payloadStart);
+  }
+
+  // Character.isSurrogate() is not available on all supported API levels.
+  private static boolean isSurrogate(char c) {
+    return c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE;
+  }
+
+  private static boolean isSurrogatePair(String text, int index, int end) {
+    return Character.isHighSurrogate(text.charAt(index))
+        && index + 1 < end
+        && Character.isLowSurrogate(text.charAt(index + 1));
+  }
+
+  private static int utf8Length(String text, int start, int end) {
+    int length = 0;
+    for (int i = start; i < end; i++) {
+      char c = text.charAt(i);
+      if (c < 0x80) {
+        length += 1;
+      } else if (c < 0x800) {
+        length += 2;
+      } else if (!isSurrogate(c)) {
+        length += 3;
+      } else if (isSurrogatePair(text, i, end)) {
+        length += 4;
+        i++;
+      } else {
+        length += 1;
+      }
+    }
+    return length;
+  }
+
+  /**
+   * Allocates a buffer for a frame with the given payload length and writes the frame header. If
+   * masking is enabled, the header includes a newly generated mask.
+   */
+  private ByteBuffer startFrame(byte opcode, boolean masking, int length) {
     int headerLength = 2; // This is just an assumed headerLength, as we use a ByteArrayOutputStream
     if (masking) {
       headerLength += 4;
     }
-    int length = data.length;
     if (length < 126) {
       // nothing add to header length
     } else if (length <= 65535) {
@@ -70,7 +147,7 @@ class WebSocketWriter {
     } else {
       headerLength += 8;
     }
-    ByteBuffer frame = ByteBuffer.allocate(data.length + headerLength);
+    ByteBuffer frame = ByteBuffer.allocate(length + headerLength);
 
     byte fin = (byte) 0x80;
     byte startByte = (byte) (fin | opcode);
@@ -79,10 +156,11 @@ class WebSocketWriter {
     int length_field;
 
     if (length < 126) {
+      length_field = length;
       if (masking) {
-        length = 0x80 | length;
+        length_field = 0x80 | length_field;
       }
-      frame.put((byte) length);
+      frame.put((byte) length_field);
     } else if (length <= 65535) {
       length_field = 126;
       if (masking) {
@@ -102,16 +180,21 @@ class WebSocketWriter {
       frame.putInt(length);
     }
 
-    byte[] mask;
     if (masking) {
-      mask = generateMask();
-      frame.put(mask);
+      frame.put(generateMask());
+    }
+    return frame;
+  }
 
-      for (int i = 0; i < data.length; i++) {
-        frame.put((byte) (data[i] ^ mask[i % 4]));
+  /** Masks the payload that was written after {@code payloadStart} in place. */
+  private static ByteBuffer finishFrame(ByteBuffer frame, boolean masking, int payloadStart) {
+    if (masking) {
+      int maskStart = payloadStart - 4;
+      for (int i = payloadStart; i < frame.position(); i++) {
+        byte mask = frame.get(maskStart + (i - payloadStart) % 4);
+        frame.put(i, (byte) (frame.get(i) ^ mask));
       }
     }
-
     frame.flip();
     return frame;
   }
@@ -123,7 +206,15 @@ class WebSocketWriter {
   }
 
   synchronized void send(byte opcode, boolean masking, byte[] data) throws IOException {
-    ByteBuffer frame = frameInBuffer(opcode, masking, data);
+    queueFrame(opcode, frameInBuffer(opcode, masking, data));
+  }
+
+  synchronized void send(byte opcode, boolean masking, String text, int start, int end)
+      throws IOException {
+    queueFrame(opcode, frameInBuffer(opcode, masking, text, start, end));
+  }
+
+  private void queueFrame(byte opcode, ByteBuffer frame) throws IOException {
     if (stop && (closeSent || opcode != WebSocket.OPCODE_CLOSE)) {
       throw new WebSocketException("Shouldn't be sending");
     }
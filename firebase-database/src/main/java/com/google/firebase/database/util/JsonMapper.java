@@ -14,7 +14,9 @@
 
 package com.google.firebase.database.util;
 
+import android.util.JsonReader;
 import java.io.IOException;
+import java.io.Reader;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -94,6 +96,22 @@ public class JsonMapper {
     }
   }
 
+  /**
+   * Parses a JSON object from the given reader. Unlike {@link #parseJson(String)}, this reads the
+   * input incrementally and builds the result without first reading the complete input into a
+   * string or creating intermediate JSON objects. Numbers are converted in the same way as by
+   * {@link #parseJson(String)}.
+   */
+  public static Map<String, Object> parseJson(Reader reader) throws IOException {
+    JsonReader jsonReader = new JsonReader(reader);
+    try {
+      return readJsonObject(jsonReader);
+    } catch (IllegalStateException e) {
+      // Thrown by JsonReader if the input has unexpected tokens.
+      throw new IOException(e);
+    }
+  }
+
   public static Object parseJsonValue(String json) throws IOException {
     try {
       return unwrapJson(new JSONTokener(json).nextValue());
@@ -102,6 +120,71 @@ public class JsonMapper {
     }
   }
 
+  private static Map<String, Object> readJsonObject(JsonReader reader) throws IOException {
+    Map<String, Object> map = new HashMap<String, Object>();
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String key = reader.nextName();
+      map.put(key, readJsonValue(reader));
+    }
+    reader.endObject();
+    return map;
+  }
+
+  private static List<Object> readJsonArray(JsonReader reader) throws IOException {
+    List<Object> list = new ArrayList<Object>();
+    reader.beginArray();
+    while (reader.hasNext()) {
+      list.add(readJsonValue(reader));
+    }
+    reader.endArray();
+    return list;
+  }
+
+  private static Object readJsonValue(JsonReader reader) throws IOException {
+    switch (reader.peek()) {
+      case BEGIN_OBJECT:
+        return readJsonObject(reader);
+      case BEGIN_ARRAY:
+        return readJsonArray(reader);
+      case STRING:
+        return reader.nextString();
+      case NUMBER:
+        return parseNumber(reader.nextString());
+      case BOOLEAN:
+        return reader.nextBoolean();
+      case NULL:
+        reader.nextNull();
+        return null;
+      default:
+        throw new IOException("Unexpected JSON token: " + reader.peek());
+    }
+  }
+
+  /**
+   * Converts a JSON number to an Integer, Long or Double, following the rules of {@link
+   * JSONTokener}: numbers without a decimal point become an Integer if they fit, and a Long
+   * otherwise. All other numbers become a Double.
+   */
+  private static Object parseNumber(String number) throws IOException {
+    if (number.indexOf('.') == -1) {
+      try {
+        long longValue = Long.parseLong(number);
+        if (longValue <= Integer.MAX_VALUE && longValue >= Integer.MIN_VALUE) {
+          return (int) longValue;
+        }
+        return longValue;
+      } catch (NumberFormatException e) {
+        // Not a long (e.g. an exponent or out of range), parse as a double below.
+      }
+    }
+    try {
+      return Double.valueOf(number);
+    } catch (NumberFormatException e) {
+      throw new IOException("Invalid number: " + number, e);
+    }
+  }
+
   private static Map<String, Object> unwrapJsonObject(JSONObject jsonObject) throws JSONException {
     Map<String, Object> map = new HashMap<String, Object>(jsonObject.length());
     Iterator<String> keys = jsonObject.keys();
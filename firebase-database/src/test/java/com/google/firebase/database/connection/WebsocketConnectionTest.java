@@ -0,0 +1,111 @@
+// Copyright 2018 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.database.connection;
+
+import static com.google.firebase.database.connection.WebsocketConnection.MAX_FRAME_SIZE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@org.junit.runner.RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class WebsocketConnectionTest {
+
+  private static final String SURROGATE_PAIR = "\ud83d\ude00";
+
+  @Test
+  public void shortMessageIsSentInOneFrame() {
+    assertFrames("", "");
+    assertFrames("{\"t\":\"d\"}", "{\"t\":\"d\"}");
+  }
+
+  @Test
+  public void longMessageIsSplitAtMaxFrameSize() {
+    String first = repeat('a', MAX_FRAME_SIZE);
+    String second = repeat('b', MAX_FRAME_SIZE);
+    assertFrames(first + second, first, second);
+    assertFrames(first + second + "c", first, second, "c");
+  }
+
+  @Test
+  public void surrogatePairEndingAtMaxFrameSizeStaysInFrame() {
+    String first = repeat('a', MAX_FRAME_SIZE - 2) + SURROGATE_PAIR;
+    assertFrames(first + "b", first, "b");
+  }
+
+  @Test
+  public void surrogatePairAcrossMaxFrameSizeMovesToNextFrame() {
+    String first = repeat('a', MAX_FRAME_SIZE - 1);
+    assertFrames(first + SURROGATE_PAIR, first, SURROGATE_PAIR);
+    assertFrames(first + SURROGATE_PAIR + "b", first, SURROGATE_PAIR + "b");
+
+    // The shortened frame shifts the boundaries of all following frames.
+    String second = SURROGATE_PAIR + repeat('b', MAX_FRAME_SIZE - 2);
+    assertFrames(first + second + "c", first, second, "c");
+  }
+
+  @Test
+  public void messageOfSurrogatePairsIsNeverSplitWithinAPair() {
+    // The leading character puts a high surrogate at the end of the first full frame.
+    String message = "a" + repeat(SURROGATE_PAIR, MAX_FRAME_SIZE);
+    assertEquals(3, WebsocketConnection.countFrames(message, MAX_FRAME_SIZE));
+    assertEquals(message, joinFrames(message));
+  }
+
+  private static void assertFrames(String message, String... expectedFrames) {
+    assertEquals(expectedFrames.length, WebsocketConnection.countFrames(message, MAX_FRAME_SIZE));
+    assertEquals(Arrays.asList(expectedFrames), splitIntoFrames(message));
+  }
+
+  /** Splits the message the way WebsocketConnection sends it. */
+  private static List<String> splitIntoFrames(String message) {
+    List<String> frames = new ArrayList<>();
+    int start = 0;
+    do {
+      int end = WebsocketConnection.frameEnd(message, start, MAX_FRAME_SIZE);
+      frames.add(message.substring(start, end));
+      start = end;
+    } while (start < message.length());
+    return frames;
+  }
+
+  private static String joinFrames(String message) {
+    StringBuilder builder = new StringBuilder();
+    for (String frame : splitIntoFrames(message)) {
+      // Every frame is encoded separately, so a frame must not end with half a surrogate pair.
+      assertFalse(Character.isHighSurrogate(frame.charAt(frame.length() - 1)));
+      builder.append(frame);
+    }
+    return builder.toString();
+  }
+
+  private static String repeat(char c, int count) {
+    return repeat(String.valueOf(c), count);
+  }
+
+  private static String repeat(String s, int count) {
+    StringBuilder builder = new StringBuilder(s.length() * count);
+    for (int i = 0; i < count; i++) {
+      builder.append(s);
+    }
+    return builder.toString();
+  }
+}
@@ -0,0 +1,152 @@
+// Copyright 2018 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.database.tubesock;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import org.junit.Test;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@org.junit.runner.RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class WebSocketWriterTest {
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private final WebSocketWriter writer = new WebSocketWriter(null, "Test", 0);
+
+  @Test
+  public void encodesAsciiLikeGetBytes() throws IOException {
+    assertEncodedLikeGetBytes("");
+    assertEncodedLikeGetBytes("{\"t\":\"d\",\"d\":{\"r\":1,\"a\":\"q\"}}");
+  }
+
+  @Test
+  public void encodesTwoByteCharactersLikeGetBytes() throws IOException {
+    assertEncodedLikeGetBytes("\u0080\u00e9\u00df\u07ff");
+  }
+
+  @Test
+  public void encodesThreeByteCharactersLikeGetBytes() throws IOException {
+    assertEncodedLikeGetBytes("\u0800\u20ac\ud7ff\ue000\uffff");
+  }
+
+  @Test
+  public void encodesSurrogatePairsLikeGetBytes() throws IOException {
+    assertEncodedLikeGetBytes("\ud83d\ude00\udbff\udfff");
+    assertEncodedLikeGetBytes("a\ud800\udc00b");
+  }
+
+  @Test
+  public void encodesUnpairedSurrogatesLikeGetBytes() throws IOException {
+    assertEncodedLikeGetBytes("\ud800");
+    assertEncodedLikeGetBytes("\udc00");
+    assertEncodedLikeGetBytes("a\ud83db");
+    assertEncodedLikeGetBytes("a\ude00b");
+    assertEncodedLikeGetBytes("\ude00\ud83d");
+    assertEncodedLikeGetBytes("\ud83d\ud83d\ude00");
+  }
+
+  @Test
+  public void encodesRangeLikeGetBytesOfSubstring() throws IOException {
+    String text = "ab\u00e9\u20ac\ud83d\ude00cd";
+    for (int start = 0; start <= text.length(); start++) {
+      for (int end = start; end <= text.length(); end++) {
+        // Ranges that split the surrogate pair encode the remaining half as '?'.
+        assertRangeEncodedLikeGetBytes(text, start, end);
+      }
+    }
+  }
+
+  @Test
+  public void usesExtendedLengthFieldsAtHeaderBoundaries() throws IOException {
+    assertHeaderLength(/* payloadLength= */ 125, /* expectedHeaderLength= */ 2);
+    assertHeaderLength(/* payloadLength= */ 126, /* expectedHeaderLength= */ 4);
+    assertHeaderLength(/* payloadLength= */ 65535, /* expectedHeaderLength= */ 4);
+    assertHeaderLength(/* payloadLength= */ 65536, /* expectedHeaderLength= */ 10);
+  }
+
+  @Test
+  public void usesEncodedLengthForHeader() throws IOException {
+    // 63 two-byte characters make 126 bytes, which need the extended length field.
+    assertEncodedLikeGetBytes(repeat("\u00e9", 62) + "a");
+    assertEncodedLikeGetBytes(repeat("\u00e9", 63));
+    // 21846 three-byte characters make 65538 bytes, which need the 64-bit length field.
+    assertEncodedLikeGetBytes(repeat("\u20ac", 21845));
+    assertEncodedLikeGetBytes(repeat("\u20ac", 21846));
+  }
+
+  private void assertEncodedLikeGetBytes(String text) throws IOException {
+    assertRangeEncodedLikeGetBytes(text, 0, text.length());
+  }
+
+  private void assertRangeEncodedLikeGetBytes(String text, int start, int end)
+      throws IOException {
+    byte[] expectedPayload = text.substring(start, end).getBytes(UTF8);
+
+    ByteBuffer expectedFrame = writer.frameInBuffer(WebSocket.OPCODE_TEXT, false, expectedPayload);
+    ByteBuffer frame = writer.frameInBuffer(WebSocket.OPCODE_TEXT, false, text, start, end);
+    assertArrayEquals(toArray(expectedFrame), toArray(frame));
+
+    ByteBuffer maskedFrame = writer.frameInBuffer(WebSocket.OPCODE_TEXT, true, text, start, end);
+    assertArrayEquals(expectedPayload, unmaskedPayload(maskedFrame));
+  }
+
+  private void assertHeaderLength(int payloadLength, int expectedHeaderLength)
+      throws IOException {
+    String text = repeat("a", payloadLength);
+    assertEncodedLikeGetBytes(text);
+    ByteBuffer frame = writer.frameInBuffer(WebSocket.OPCODE_TEXT, false, text, 0, payloadLength);
+    assertEquals(expectedHeaderLength, headerLength(frame, /* masking= */ false));
+    assertEquals(expectedHeaderLength + payloadLength, frame.remaining());
+  }
+
+  private static int headerLength(ByteBuffer frame, boolean masking) {
+    int lengthField = frame.get(frame.position() + 1) & 0x7F;
+    int headerLength = lengthField < 126 ? 2 : (lengthField == 126 ? 4 : 10);
+    return masking ? headerLength + 4 : headerLength;
+  }
+
+  private static byte[] unmaskedPayload(ByteBuffer frame) {
+    byte[] bytes = toArray(frame);
+    int payloadStart = headerLength(frame, /* masking= */ true);
+    byte[] mask = Arrays.copyOfRange(bytes, payloadStart - 4, payloadStart);
+    byte[] payload = Arrays.copyOfRange(bytes, payloadStart, bytes.length);
+    for (int i = 0; i < payload.length; i++) {
+      payload[i] = (byte) (payload[i] ^ mask[i % 4]);
+    }
+    return payload;
+  }
+
+  private static byte[] toArray(ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.remaining()];
+    buffer.duplicate().get(bytes);
+    return bytes;
+  }
+
+  private static String repeat(String s, int count) {
+    StringBuilder builder = new StringBuilder(s.length() * count);
+    for (int i = 0; i < count; i++) {
+      builder.append(s);
+    }
+    return builder.toString();
+  }
+}
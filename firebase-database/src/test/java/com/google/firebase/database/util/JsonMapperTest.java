@@ -15,8 +15,12 @@
 package com.google.firebase.database.util;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
+import com.google.firebase.database.connection.util.StringListReader;
 import java.io.IOException;
+import java.io.StringReader;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
@@ -62,4 +66,50 @@ public class JsonMapperTest {
     Object value = JsonMapper.parseJsonValue(jsonString);
     assertEquals(root, value);
   }
+
+  @Test
+  public void parsesJsonFromReaderLikeFromString() throws IOException {
+    String json =
+        "{\"int\":1,\"long\":9007199254740993,\"double\":1.5,\"exponent\":1e3,"
+            + "\"string\":\"\\u00e9\\\"\",\"bool\":true,\"null\":null,"
+            + "\"array\":[1,\"a\",[]],\"object\":{\"a\":{}}}";
+    Map<String, Object> fromString = JsonMapper.parseJson(json);
+    Map<String, Object> fromReader = JsonMapper.parseJson(new StringReader(json));
+    assertEquals(fromString, fromReader);
+    assertEquals(1, fromReader.get("int"));
+    assertEquals(9007199254740993L, fromReader.get("long"));
+    assertEquals(1.5, fromReader.get("double"));
+    assertEquals(1000.0, fromReader.get("exponent"));
+    assertEquals("\u00e9\"", fromReader.get("string"));
+    assertTrue(fromReader.containsKey("null"));
+    assertNull(fromReader.get("null"));
+  }
+
+  @Test
+  public void parsesJsonSplitAcrossFrames() throws IOException {
+    StringListReader reader = new StringListReader();
+    reader.addString("{\"t\":\"d\",\"d\":{\"b\":{\"p\":\"a/");
+    reader.addString("b\",\"d\":[1.2");
+    reader.addString("5,\"c\"]}}}");
+    reader.freeze();
+    Map<String, Object> expected = new HashMap<>();
+    Map<String, Object> body = new HashMap<>();
+    body.put("p", "a/b");
+    body.put("d", Arrays.asList(1.25, "c"));
+    Map<String, Object> data = new HashMap<>();
+    data.put("b", body);
+    expected.put("t", "d");
+    expected.put("d", data);
+    assertEquals(expected, JsonMapper.parseJson(reader));
+  }
+
+  @Test(expected = IOException.class)
+  public void throwsForMalformedJsonFromReader() throws IOException {
+    JsonMapper.parseJson(new StringReader("{\"a\":"));
+  }
+
+  @Test(expected = IOException.class)
+  public void throwsForNonObjectJsonFromReader() throws IOException {
+    JsonMapper.parseJson(new StringReader("[1]"));
+  }
 }
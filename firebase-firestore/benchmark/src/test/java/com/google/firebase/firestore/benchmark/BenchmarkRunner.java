@@ -0,0 +1,285 @@
+// Copyright 2021 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore.benchmark;
+
+import androidx.annotation.Nullable;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A minimal harness for benchmarks that run as JVM unit tests.
+ *
+ * <p>Every benchmark runs a number of warmup iterations, followed by the measured iterations. For
+ * each measured iteration, the harness records the elapsed time and the number of bytes allocated
+ * by the current thread. Operations are expected to run on the calling thread, as work on other
+ * threads is not included in the allocation profile.
+ *
+ * <p>Results are printed and appended to the CSV file in the {@code firestore.benchmark.output}
+ * system property. If the {@code firestore.benchmark.baseline} system property points to the
+ * results of a previous run, the change relative to that run is printed as well.
+ */
+public final class BenchmarkRunner {
+  /** An operation that is measured by the harness. */
+  public interface Operation {
+    void run() throws Exception;
+  }
+
+  /** The measurements of a single benchmark. */
+  public static final class Result {
+    private final String name;
+    private final long medianNanos;
+    private final long p90Nanos;
+    private final long minNanos;
+    private final long allocatedBytes;
+
+    Result(String name, long medianNanos, long p90Nanos, long minNanos, long allocatedBytes) {
+      this.name = name;
+      this.medianNanos = medianNanos;
+      this.p90Nanos = p90Nanos;
+      this.minNanos = minNanos;
+      this.allocatedBytes = allocatedBytes;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    /** Returns the median duration of an iteration. */
+    public long getMedianNanos() {
+      return medianNanos;
+    }
+
+    /** Returns the 90th percentile of the duration of an iteration. */
+    public long getP90Nanos() {
+      return p90Nanos;
+    }
+
+    /** Returns the shortest duration of an iteration. */
+    public long getMinNanos() {
+      return minNanos;
+    }
+
+    /**
+     * Returns the median number of bytes allocated by an iteration, or -1 if the JVM does not
+     * support allocation measurements.
+     */
+    public long getAllocatedBytes() {
+      return allocatedBytes;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          Locale.US,
+          "%s: median %.3f ms, p90 %.3f ms, min %.3f ms, allocated %s",
+          name,
+          medianNanos / 1e6,
+          p90Nanos / 1e6,
+          minNanos / 1e6,
+          allocatedBytes >= 0 ? formatBytes(allocatedBytes) : "n/a");
+    }
+  }
+
+  private static final int DEFAULT_WARMUP_ITERATIONS = 5;
+  private static final int DEFAULT_MEASURED_ITERATIONS = 20;
+
+  private static final String OUTPUT_PROPERTY = "firestore.benchmark.output";
+  private static final String BASELINE_PROPERTY = "firestore.benchmark.baseline";
+  private static final String CSV_HEADER = "name,median_ns,p90_ns,min_ns,allocated_bytes";
+
+  private static @Nullable Map<String, Result> baseline;
+
+  private BenchmarkRunner() {}
+
+  /** Measures {@code operation} with the default number of iterations. */
+  public static Result measure(String name, Operation operation) {
+    return measure(
+        name, DEFAULT_WARMUP_ITERATIONS, DEFAULT_MEASURED_ITERATIONS, /* setUp= */ null, operation);
+  }
+
+  /**
+   * Measures {@code operation}.
+   *
+   * @param name The name under which the result is reported. Names must be unique across all
+   *     benchmarks, as they are used to compare results against a baseline.
+   * @param warmupIterations The number of iterations that run before measuring.
+   * @param iterations The number of measured iterations.
+   * @param setUp An optional operation that runs before each iteration and is not measured.
+   * @param operation The operation to measure.
+   */
+  public static Result measure(
+      String name,
+      int warmupIterations,
+      int iterations,
+      @Nullable Operation setUp,
+      Operation operation) {
+    for (int i = 0; i < warmupIterations; ++i) {
+      runIteration(setUp, operation, new long[1], new long[1], 0);
+    }
+
+    long[] durations = new long[iterations];
+    long[] allocations = new long[iterations];
+    for (int i = 0; i < iterations; ++i) {
+      runIteration(setUp, operation, durations, allocations, i);
+    }
+
+    Arrays.sort(durations);
+    Arrays.sort(allocations);
+    Result result =
+        new Result(
+            name,
+            durations[iterations / 2],
+            durations[Math.min(iterations - 1, (int) Math.ceil(iterations * 0.9) - 1)],
+            durations[0],
+            allocations[iterations / 2]);
+    report(result);
+    return result;
+  }
+
+  private static void runIteration(
+      @Nullable Operation setUp,
+      Operation operation,
+      long[] durations,
+      long[] allocations,
+      int iteration) {
+    try {
+      if (setUp != null) {
+        setUp.run();
+      }
+      long allocatedBefore = currentThreadAllocatedBytes();
+      long start = System.nanoTime();
+      operation.run();
+      durations[iteration] = System.nanoTime() - start;
+      long allocatedAfter = currentThreadAllocatedBytes();
+      allocations[iteration] = allocatedBefore >= 0 ? allocatedAfter - allocatedBefore : -1;
+    } catch (Exception e) {
+      throw new RuntimeException("Benchmark operation failed", e);
+    }
+  }
+
+  /** Returns the number of bytes allocated by the current thread, or -1 if not supported. */
+  private static long currentThreadAllocatedBytes() {
+    ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    if (threadBean instanceof com.sun.management.ThreadMXBean) {
+      com.sun.management.ThreadMXBean allocationBean =
+          (com.sun.management.ThreadMXBean) threadBean;
+      if (allocationBean.isThreadAllocatedMemorySupported()
+          && allocationBean.isThreadAllocatedMemoryEnabled()) {
+        return allocationBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+      }
+    }
+    return -1;
+  }
+
+  private static synchronized void report(Result result) {
+    StringBuilder line = new StringBuilder(result.toString());
+    Result baselineResult = getBaseline().get(result.getName());
+    if (baselineResult != null) {
+      line.append(
+          String.format(
+              Locale.US,
+              " (time %+.1f%%, allocated %+.1f%% vs. baseline)",
+              relativeChange(baselineResult.getMedianNanos(), result.getMedianNanos()),
+              relativeChange(baselineResult.getAllocatedBytes(), result.getAllocatedBytes())));
+    }
+    System.out.println(line);
+
+    String output = System.getProperty(OUTPUT_PROPERTY);
+    if (output == null || output.isEmpty()) {
+      return;
+    }
+
+    File outputFile = new File(output);
+    boolean writeHeader = !outputFile.exists();
+    File parent = outputFile.getParentFile();
+    if (parent != null && !parent.exists() && !parent.mkdirs()) {
+      throw new RuntimeException("Failed to create directory " + parent);
+    }
+    try (PrintWriter writer = new PrintWriter(new FileWriter(outputFile, /* append= */ true))) {
+      if (writeHeader) {
+        writer.println(CSV_HEADER);
+      }
+      writer.println(
+          String.format(
+              Locale.US,
+              "%s,%d,%d,%d,%d",
+              result.getName(),
+              result.getMedianNanos(),
+              result.getP90Nanos(),
+              result.getMinNanos(),
+              result.getAllocatedBytes()));
+    } catch (IOException e) {
+      throw new RuntimeException("Failed to write benchmark results to " + output, e);
+    }
+  }
+
+  /** Returns the results of the baseline run, keyed by benchmark name. */
+  private static Map<String, Result> getBaseline() {
+    if (baseline != null) {
+      return baseline;
+    }
+
+    baseline = new HashMap<>();
+    String path = System.getProperty(BASELINE_PROPERTY);
+    if (path == null || path.isEmpty()) {
+      return baseline;
+    }
+
+    try (BufferedReader reader = new BufferedReader(new FileReader(path))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.equals(CSV_HEADER)) {
+          continue;
+        }
+        String[] columns = line.split(",");
+        baseline.put(
+            columns[0],
+            new Result(
+                columns[0],
+                Long.parseLong(columns[1]),
+                Long.parseLong(columns[2]),
+                Long.parseLong(columns[3]),
+                Long.parseLong(columns[4])));
+      }
+    } catch (IOException e) {
+      throw new RuntimeException("Failed to read benchmark baseline from " + path, e);
+    }
+    return baseline;
+  }
+
+  private static double relativeChange(long before, long after) {
+    return before > 0 ? (after - before) * 100.0 / before : 0;
+  }
+
+  private static String formatBytes(long bytes) {
+    if (bytes < 1024) {
+      return bytes + " B";
+    } else if (bytes < 1024 * 1024) {
+      return String.format(Locale.US, "%.1f KB", bytes / 1024.0);
+    } else {
+      return String.format(Locale.US, "%.1f MB", bytes / (1024.0 * 1024.0));
+    }
+  }
+}
@@ -0,0 +1,117 @@
+// Copyright 2021 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore.benchmark;
+
+import static com.google.firebase.firestore.testutil.TestUtil.doc;
+import static com.google.firebase.firestore.testutil.TestUtil.map;
+
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.model.MutableDocument;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Generates documents for benchmarks.
+ *
+ * <p>The documents resemble the data of a typical app: user profiles with strings of varying
+ * length, numbers, timestamps, a nested address and a list of tags. All values are derived from
+ * the seed, so that every run of a benchmark operates on the same data.
+ */
+public final class Datasets {
+  private static final String[] WORDS = {
+    "alpha", "bravo", "charlie", "delta", "echo", "foxtrot", "golf", "hotel", "india", "juliett",
+    "kilo", "lima", "mike", "november", "oscar", "papa", "quebec", "romeo", "sierra", "tango",
+    "uniform", "victor", "whiskey", "xray", "yankee", "zulu"
+  };
+
+  private static final String[] CITIES = {
+    "Amsterdam", "Berlin", "Kraków", "London", "Mountain View", "New York", "São Paulo", "Tokyo"
+  };
+
+  private final Random random;
+
+  public Datasets(long seed) {
+    this.random = new Random(seed);
+  }
+
+  /**
+   * Returns {@code count} documents in the given collection. Document IDs are formed from the
+   * prefix and the index of the document.
+   */
+  public List<MutableDocument> documents(
+      String collectionPath, String idPrefix, int count, long version) {
+    List<MutableDocument> documents = new ArrayList<>(count);
+    for (int i = 0; i < count; ++i) {
+      documents.add(doc(collectionPath + "/" + idPrefix + i, version, documentData()));
+    }
+    return documents;
+  }
+
+  /** Returns the data of a single user profile. */
+  public Map<String, Object> documentData() {
+    List<Object> tags = new ArrayList<>();
+    int tagCount = random.nextInt(6);
+    for (int i = 0; i < tagCount; ++i) {
+      tags.add(word());
+    }
+
+    return map(
+        "name",
+        capitalize(word()) + " " + capitalize(word()),
+        "email",
+        word() + "." + word() + random.nextInt(1000) + "@example.com",
+        "bio",
+        sentence(5 + random.nextInt(30)),
+        "age",
+        18 + random.nextInt(70),
+        "score",
+        random.nextDouble() * 1000,
+        "active",
+        random.nextBoolean(),
+        "createdAt",
+        new Timestamp(
+            1_500_000_000L + random.nextInt(100_000_000), random.nextInt(1_000_000) * 1000),
+        "tags",
+        tags,
+        "address",
+        map(
+            "street",
+            random.nextInt(500) + " " + capitalize(word()) + " Street",
+            "city",
+            CITIES[random.nextInt(CITIES.length)],
+            "zip",
+            String.valueOf(10000 + random.nextInt(90000))),
+        "stats",
+        map("visits", random.nextInt(10000), "purchases", random.nextInt(100)));
+  }
+
+  private String word() {
+    return WORDS[random.nextInt(WORDS.length)];
+  }
+
+  private String sentence(int wordCount) {
+    StringBuilder sentence = new StringBuilder(capitalize(word()));
+    for (int i = 1; i < wordCount; ++i) {
+      sentence.append(' ').append(word());
+    }
+    return sentence.append('.').toString();
+  }
+
+  private static String capitalize(String word) {
+    return Character.toUpperCase(word.charAt(0)) + word.substring(1);
+  }
+}
@@ -0,0 +1,230 @@
+// Copyright 2021 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore.bundle;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.firebase.firestore.benchmark.BenchmarkRunner;
+import com.google.firebase.firestore.benchmark.Datasets;
+import com.google.firebase.firestore.model.DatabaseId;
+import com.google.firebase.firestore.model.MutableDocument;
+import com.google.firebase.firestore.remote.RemoteSerializer;
+import com.google.firestore.v1.Value;
+import com.google.protobuf.Timestamp;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/** Benchmarks for reading the same documents from JSON and binary bundles. */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class BundleReaderBenchmark {
+  private static final int DOCUMENT_COUNT = 2000;
+  private static final Charset UTF8_CHARSET = Charset.forName("UTF-8");
+
+  private final RemoteSerializer remoteSerializer =
+      new RemoteSerializer(DatabaseId.forProject("benchmark"));
+  private final BundleSerializer bundleSerializer = new BundleSerializer(remoteSerializer);
+
+  private byte[] jsonBundle;
+  private byte[] binaryBundle;
+
+  @Before
+  public void setUp() throws Exception {
+    List<MutableDocument> documents =
+        new Datasets(/* seed= */ 42).documents("users", "user", DOCUMENT_COUNT, 1);
+    jsonBundle = buildJsonBundle(documents);
+    binaryBundle = buildBinaryBundle(documents);
+  }
+
+  @Test
+  public void readJsonBundle() {
+    BenchmarkRunner.measure("BundleReader/json", () -> readBundle(jsonBundle));
+  }
+
+  @Test
+  public void readBinaryBundle() {
+    BenchmarkRunner.measure("BundleReader/binary", () -> readBundle(binaryBundle));
+  }
+
+  private void readBundle(byte[] bundle) throws IOException, JSONException {
+    BundleReader reader = new BundleReader(bundleSerializer, new ByteArrayInputStream(bundle));
+    reader.getBundleMetadata();
+    int elementCount = 0;
+    while (reader.getNextElement() != null) {
+      ++elementCount;
+    }
+    reader.close();
+    assertEquals(2 * DOCUMENT_COUNT, elementCount);
+  }
+
+  private byte[] buildJsonBundle(List<MutableDocument> documents) throws JSONException {
+    List<String> elements = new ArrayList<>();
+    for (MutableDocument document : documents) {
+      JSONObject readTime = encodeTimestamp(remoteSerializer.encodeVersion(document.getVersion()));
+      elements.add(
+          new JSONObject()
+              .put(
+                  "documentMetadata",
+                  new JSONObject()
+                      .put("name", remoteSerializer.encodeKey(document.getKey()))
+                      .put("readTime", readTime)
+                      .put("exists", true))
+              .toString());
+      elements.add(
+          new JSONObject()
+              .put(
+                  "document",
+                  new JSONObject()
+                      .put("name", remoteSerializer.encodeKey(document.getKey()))
+                      .put("createTime", readTime)
+                      .put("updateTime", readTime)
+                      .put("fields", encodeFields(document.getData().getFieldsMap())))
+              .toString());
+    }
+
+    long totalBytes = 0;
+    for (String element : elements) {
+      int length = element.getBytes(UTF8_CHARSET).length;
+      totalBytes += String.valueOf(length).length() + length;
+    }
+
+    StringBuilder bundle = new StringBuilder();
+    appendJsonElement(
+        bundle,
+        new JSONObject()
+            .put(
+                "metadata",
+                new JSONObject()
+                    .put("id", "benchmark")
+                    .put("createTime", new JSONObject().put("seconds", 1).put("nanos", 0))
+                    .put("version", 1)
+                    .put("totalDocuments", documents.size())
+                    .put("totalBytes", totalBytes))
+            .toString());
+    for (String element : elements) {
+      appendJsonElement(bundle, element);
+    }
+    return bundle.toString().getBytes(UTF8_CHARSET);
+  }
+
+  private static void appendJsonElement(StringBuilder bundle, String element) {
+    bundle.append(element.getBytes(UTF8_CHARSET).length).append(element);
+  }
+
+  private static JSONObject encodeFields(Map<String, Value> fields) throws JSONException {
+    JSONObject result = new JSONObject();
+    for (Map.Entry<String, Value> field : fields.entrySet()) {
+      result.put(field.getKey(), encodeValue(field.getValue()));
+    }
+    return result;
+  }
+
+  /** Encodes a value in the JSON format of the Firestore REST API. */
+  private static JSONObject encodeValue(Value value) throws JSONException {
+    switch (value.getValueTypeCase()) {
+      case NULL_VALUE:
+        return new JSONObject().put("nullValue", JSONObject.NULL);
+      case BOOLEAN_VALUE:
+        return new JSONObject().put("booleanValue", value.getBooleanValue());
+      case INTEGER_VALUE:
+        return new JSONObject().put("integerValue", String.valueOf(value.getIntegerValue()));
+      case DOUBLE_VALUE:
+        return new JSONObject().put("doubleValue", value.getDoubleValue());
+      case TIMESTAMP_VALUE:
+        return new JSONObject().put("timestampValue", encodeTimestamp(value.getTimestampValue()));
+      case STRING_VALUE:
+        return new JSONObject().put("stringValue", value.getStringValue());
+      case ARRAY_VALUE:
+        JSONArray values = new JSONArray();
+        for (Value element : value.getArrayValue().getValuesList()) {
+          values.put(encodeValue(element));
+        }
+        return new JSONObject().put("arrayValue", new JSONObject().put("values", values));
+      case MAP_VALUE:
+        return new JSONObject()
+            .put(
+                "mapValue",
+                new JSONObject().put("fields", encodeFields(value.getMapValue().getFieldsMap())));
+      default:
+        throw new IllegalArgumentException("Unsupported value type " + value.getValueTypeCase());
+    }
+  }
+
+  private static JSONObject encodeTimestamp(Timestamp timestamp) throws JSONException {
+    return new JSONObject()
+        .put("seconds", timestamp.getSeconds())
+        .put("nanos", timestamp.getNanos());
+  }
+
+  private byte[] buildBinaryBundle(List<MutableDocument> documents) throws IOException {
+    List<com.google.firestore.bundle.BundleElement> elements = new ArrayList<>();
+    for (MutableDocument document : documents) {
+      Timestamp readTime = remoteSerializer.encodeVersion(document.getVersion());
+      elements.add(
+          com.google.firestore.bundle.BundleElement.newBuilder()
+              .setDocumentMetadata(
+                  com.google.firestore.bundle.BundledDocumentMetadata.newBuilder()
+                      .setName(remoteSerializer.encodeKey(document.getKey()))
+                      .setReadTime(readTime)
+                      .setExists(true))
+              .build());
+      elements.add(
+          com.google.firestore.bundle.BundleElement.newBuilder()
+              .setDocument(
+                  remoteSerializer
+                      .encodeDocument(document.getKey(), document.getData())
+                      .toBuilder()
+                      .setCreateTime(readTime)
+                      .setUpdateTime(readTime))
+              .build());
+    }
+
+    long totalBytes = 0;
+    for (com.google.firestore.bundle.BundleElement element : elements) {
+      int length = element.getSerializedSize();
+      totalBytes += com.google.protobuf.CodedOutputStream.computeUInt32SizeNoTag(length) + length;
+    }
+
+    ByteArrayOutputStream bundle = new ByteArrayOutputStream();
+    bundle.write(BundleReader.BINARY_FORMAT_HEADER);
+    com.google.firestore.bundle.BundleElement.newBuilder()
+        .setMetadata(
+            com.google.firestore.bundle.BundleMetadata.newBuilder()
+                .setId("benchmark")
+                .setCreateTime(Timestamp.newBuilder().setSeconds(1))
+                .setVersion(1)
+                .setTotalDocuments(documents.size())
+                .setTotalBytes(totalBytes))
+        .build()
+        .writeDelimitedTo(bundle);
+    for (com.google.firestore.bundle.BundleElement element : elements) {
+      element.writeDelimitedTo(bundle);
+    }
+    return bundle.toByteArray();
+  }
+}
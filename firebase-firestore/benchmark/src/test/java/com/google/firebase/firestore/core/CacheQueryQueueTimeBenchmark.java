@@ -0,0 +1,181 @@
+// Copyright 2021 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore.core;
+
+import static com.google.firebase.firestore.testutil.TestUtil.addedRemoteEvent;
+import static com.google.firebase.firestore.testutil.TestUtil.filter;
+import static com.google.firebase.firestore.testutil.TestUtil.orderBy;
+import static com.google.firebase.firestore.testutil.TestUtil.query;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+
+import androidx.annotation.Nullable;
+import androidx.test.core.app.ApplicationProvider;
+import com.google.android.gms.tasks.Task;
+import com.google.firebase.firestore.auth.User;
+import com.google.firebase.firestore.benchmark.BenchmarkRunner;
+import com.google.firebase.firestore.benchmark.Datasets;
+import com.google.firebase.firestore.local.CostBasedQueryEngine;
+import com.google.firebase.firestore.local.LocalSerializer;
+import com.google.firebase.firestore.local.LocalStore;
+import com.google.firebase.firestore.local.LruGarbageCollector;
+import com.google.firebase.firestore.local.QueryResult;
+import com.google.firebase.firestore.local.SQLitePersistence;
+import com.google.firebase.firestore.model.DatabaseId;
+import com.google.firebase.firestore.model.MutableDocument;
+import com.google.firebase.firestore.remote.RemoteSerializer;
+import com.google.firebase.firestore.util.AsyncQueue;
+import com.google.firebase.firestore.util.Executors;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/**
+ * Benchmarks for how long a cache-only query, as issued by {@code Query.get(Source.CACHE)}, holds
+ * up the AsyncQueue.
+ *
+ * <p>Each iteration starts a query and measures the time until an operation that is enqueued right
+ * after it gets to run, which is the delay that a write or a listener would see. The queries mirror
+ * {@code FirestoreClient.getDocumentsFromLocalCache}: the local store is always read on the
+ * AsyncQueue, and the View is either computed on the queue as well or on a background thread.
+ * Since reads from the local store remain serialized, this does not measure any speedup of
+ * concurrent queries.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class CacheQueryQueueTimeBenchmark {
+  private static final int COLLECTION_SIZE = 5000;
+  private static final int REMOTE_EVENT_SIZE = 1000;
+
+  private final Datasets datasets = new Datasets(/* seed= */ 42);
+
+  private AsyncQueue asyncQueue;
+  private SQLitePersistence persistence;
+  private LocalStore localStore;
+
+  /** The query of the previous iteration, which has to finish before the next one starts. */
+  private @Nullable Task<ViewSnapshot> pendingQuery;
+
+  @Before
+  public void setUp() throws Exception {
+    DatabaseId databaseId = DatabaseId.forProject("benchmark");
+    LocalSerializer serializer = new LocalSerializer(new RemoteSerializer(databaseId));
+    persistence =
+        new SQLitePersistence(
+            ApplicationProvider.getApplicationContext(),
+            "benchmark",
+            databaseId,
+            serializer,
+            LruGarbageCollector.Params.Disabled());
+    asyncQueue = new AsyncQueue();
+    asyncQueue.runSync(
+        () -> {
+          persistence.start();
+          localStore =
+              new LocalStore(persistence, new CostBasedQueryEngine(), User.UNAUTHENTICATED);
+          localStore.start();
+
+          int targetId = localStore.allocateTarget(query("users").toTarget()).getTargetId();
+          List<MutableDocument> documents = datasets.documents("users", "user", COLLECTION_SIZE, 1);
+          for (int i = 0; i < documents.size(); i += REMOTE_EVENT_SIZE) {
+            List<MutableDocument> chunk =
+                documents.subList(i, Math.min(documents.size(), i + REMOTE_EVENT_SIZE));
+            localStore.applyRemoteEvent(
+                addedRemoteEvent(chunk, singletonList(targetId), emptyList()));
+          }
+        });
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    awaitPendingQuery();
+    asyncQueue.runSync(persistence::shutdown);
+    asyncQueue.shutdown();
+  }
+
+  @Test
+  public void queueTimeWithViewOnQueue() {
+    benchmarkQueueTime(
+        "CacheQuery.queueTime/viewOnQueue",
+        query -> asyncQueue.enqueue(() -> computeSnapshot(query, runQuery(query))));
+  }
+
+  @Test
+  public void queueTimeWithViewOffQueue() {
+    benchmarkQueueTime(
+        "CacheQuery.queueTime/viewOffQueue",
+        query ->
+            asyncQueue
+                .enqueue(() -> runQuery(query))
+                .continueWith(
+                    Executors.BACKGROUND_EXECUTOR,
+                    result -> computeSnapshot(query, result.getResult())));
+  }
+
+  /** Starts a query and returns the task that resolves with its snapshot. */
+  private interface QueryStarter {
+    Task<ViewSnapshot> start(Query query);
+  }
+
+  private void benchmarkQueueTime(String name, QueryStarter starter) {
+    // Sorts by a field other than the key, so that the View has to sort the result.
+    Query query = query("users").filter(filter("active", "==", true)).orderBy(orderBy("score"));
+
+    BenchmarkRunner.measure(
+        name,
+        /* warmupIterations= */ 5,
+        /* iterations= */ 20,
+        this::awaitPendingQuery,
+        () -> {
+          pendingQuery = starter.start(query);
+          await(asyncQueue.enqueue(() -> null));
+        });
+  }
+
+  private void awaitPendingQuery() throws Exception {
+    if (pendingQuery != null) {
+      await(pendingQuery);
+      pendingQuery = null;
+    }
+  }
+
+  /**
+   * Waits for the task to complete. The benchmark runs on the main thread, on which {@code
+   * Tasks.await()} cannot be used.
+   */
+  private static void await(Task<?> task) throws Exception {
+    CountDownLatch latch = new CountDownLatch(1);
+    task.addOnCompleteListener(Executors.DIRECT_EXECUTOR, t -> latch.countDown());
+    latch.await();
+    if (!task.isSuccessful()) {
+      throw new RuntimeException("Task failed", task.getException());
+    }
+  }
+
+  private QueryResult runQuery(Query query) {
+    return localStore.executeQuery(query, /* usePreviousResults= */ true);
+  }
+
+  private static ViewSnapshot computeSnapshot(Query query, QueryResult queryResult) {
+    View view = new View(query, queryResult.getRemoteKeys());
+    View.DocumentChanges viewDocChanges = view.computeDocChanges(queryResult.getDocuments());
+    return view.applyChanges(viewDocChanges).getSnapshot();
+  }
+}
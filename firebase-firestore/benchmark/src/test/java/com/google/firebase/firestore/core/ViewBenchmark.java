@@ -0,0 +1,124 @@
+// Copyright 2021 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore.core;
+
+import static com.google.firebase.firestore.model.DocumentCollections.emptyDocumentMap;
+import static com.google.firebase.firestore.testutil.TestUtil.deletedDoc;
+import static com.google.firebase.firestore.testutil.TestUtil.doc;
+import static com.google.firebase.firestore.testutil.TestUtil.docUpdates;
+import static com.google.firebase.firestore.testutil.TestUtil.field;
+import static com.google.firebase.firestore.testutil.TestUtil.orderBy;
+import static com.google.firebase.firestore.testutil.TestUtil.query;
+import static com.google.firebase.firestore.testutil.TestUtil.wrap;
+
+import com.google.firebase.database.collection.ImmutableSortedMap;
+import com.google.firebase.firestore.benchmark.BenchmarkRunner;
+import com.google.firebase.firestore.benchmark.Datasets;
+import com.google.firebase.firestore.model.Document;
+import com.google.firebase.firestore.model.DocumentKey;
+import com.google.firebase.firestore.model.MutableDocument;
+import com.google.firebase.firestore.model.ObjectValue;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/**
+ * Benchmarks for applying document changes to the View of a limit query.
+ *
+ * <p>Each iteration applies {@link #UPDATES_PER_ITERATION} single-document changes, the way they
+ * arrive from the backend, so the number of view updates per second is {@code
+ * UPDATES_PER_ITERATION} divided by the duration of an iteration. When a change requires a refill,
+ * the view is recomputed from all matching documents, as SyncEngine does with the result of a
+ * local query.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class ViewBenchmark {
+  private static final int COLLECTION_SIZE = 5000;
+  private static final int LIMIT = 100;
+  private static final int UPDATES_PER_ITERATION = 100;
+
+  private final Datasets datasets = new Datasets(/* seed= */ 42);
+  private final Query query = query("users").orderBy(orderBy("score", "desc")).limitToFirst(LIMIT);
+
+  private ImmutableSortedMap<DocumentKey, Document> documents;
+  private View view;
+  private ViewSnapshot snapshot;
+  private long version = 1;
+
+  @Test
+  public void removeDocumentsFromLimit() {
+    ImmutableSortedMap<DocumentKey, Document> initialDocuments = initialDocuments();
+    BenchmarkRunner.measure(
+        "View.applyChanges/removeFromLimit/" + UPDATES_PER_ITERATION + "updates",
+        /* warmupIterations= */ 5,
+        /* iterations= */ 20,
+        () -> startView(initialDocuments),
+        () -> {
+          for (int i = 0; i < UPDATES_PER_ITERATION; ++i) {
+            Document first = snapshot.getDocuments().getFirstDocument();
+            applyChange(deletedDoc(first.getKey().getPath().canonicalString(), ++version));
+          }
+        });
+  }
+
+  @Test
+  public void moveDocumentsOutOfLimit() {
+    ImmutableSortedMap<DocumentKey, Document> initialDocuments = initialDocuments();
+    BenchmarkRunner.measure(
+        "View.applyChanges/moveOutOfLimit/" + UPDATES_PER_ITERATION + "updates",
+        /* warmupIterations= */ 5,
+        /* iterations= */ 20,
+        () -> startView(initialDocuments),
+        () -> {
+          for (int i = 0; i < UPDATES_PER_ITERATION; ++i) {
+            // Lowers the score of the first document, so that it sorts after all other documents.
+            Document first = snapshot.getDocuments().getFirstDocument();
+            ObjectValue data = first.getData().clone();
+            data.set(field("score"), wrap(-1.0));
+            applyChange(doc(first.getKey(), ++version, data));
+          }
+        });
+  }
+
+  private ImmutableSortedMap<DocumentKey, Document> initialDocuments() {
+    ImmutableSortedMap<DocumentKey, Document> initialDocuments = emptyDocumentMap();
+    for (MutableDocument document : datasets.documents("users", "user", COLLECTION_SIZE, 1)) {
+      initialDocuments = initialDocuments.insert(document.getKey(), document);
+    }
+    return initialDocuments;
+  }
+
+  /** Creates a new view that holds the result of the initial query. */
+  private void startView(ImmutableSortedMap<DocumentKey, Document> initialDocuments) {
+    documents = initialDocuments;
+    view = new View(query, DocumentKey.emptyKeySet());
+    snapshot = view.applyChanges(view.computeDocChanges(documents)).getSnapshot();
+  }
+
+  private void applyChange(MutableDocument document) {
+    documents =
+        document.isFoundDocument()
+            ? documents.insert(document.getKey(), document)
+            : documents.remove(document.getKey());
+
+    View.DocumentChanges changes = view.computeDocChanges(docUpdates(document));
+    if (changes.needsRefill()) {
+      changes = view.computeDocChanges(documents, changes);
+    }
+    snapshot = view.applyChanges(changes).getSnapshot();
+  }
+}
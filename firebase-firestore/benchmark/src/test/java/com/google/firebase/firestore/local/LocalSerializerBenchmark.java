@@ -0,0 +1,88 @@
+// Copyright 2021 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore.local;
+
+import static com.google.firebase.firestore.testutil.TestUtil.field;
+
+import com.google.firebase.firestore.benchmark.BenchmarkRunner;
+import com.google.firebase.firestore.benchmark.Datasets;
+import com.google.firebase.firestore.model.DatabaseId;
+import com.google.firebase.firestore.model.MutableDocument;
+import com.google.firebase.firestore.proto.LazyMaybeDocument;
+import com.google.firebase.firestore.proto.MaybeDocument;
+import com.google.firebase.firestore.remote.RemoteSerializer;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/** Benchmarks for decoding documents as they are stored in the remote document cache. */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class LocalSerializerBenchmark {
+  private static final int DOCUMENT_COUNT = 5000;
+
+  private final LocalSerializer serializer =
+      new LocalSerializer(new RemoteSerializer(DatabaseId.forProject("benchmark")));
+
+  private final List<byte[]> encodedDocuments = new ArrayList<>();
+
+  @Before
+  public void setUp() {
+    Datasets datasets = new Datasets(/* seed= */ 42);
+    for (MutableDocument document : datasets.documents("users", "user", DOCUMENT_COUNT, 1)) {
+      encodedDocuments.add(serializer.encodeMaybeDocument(document).toByteArray());
+    }
+  }
+
+  @Test
+  public void decodeDocuments() {
+    BenchmarkRunner.measure(
+        "LocalSerializer.decodeMaybeDocument/eager",
+        () -> {
+          for (byte[] bytes : encodedDocuments) {
+            serializer.decodeMaybeDocument(MaybeDocument.parseFrom(bytes));
+          }
+        });
+  }
+
+  @Test
+  public void decodeDocumentsLazily() {
+    BenchmarkRunner.measure(
+        "LocalSerializer.decodeMaybeDocument/lazy",
+        () -> {
+          for (byte[] bytes : encodedDocuments) {
+            serializer.decodeMaybeDocument(LazyMaybeDocument.parseFrom(bytes));
+          }
+        });
+  }
+
+  @Test
+  public void decodeDocumentsLazilyAndReadField() {
+    // Reflects a query that filters on a single field.
+    BenchmarkRunner.measure(
+        "LocalSerializer.decodeMaybeDocument/lazyReadField",
+        () -> {
+          for (byte[] bytes : encodedDocuments) {
+            MutableDocument document =
+                serializer.decodeMaybeDocument(LazyMaybeDocument.parseFrom(bytes));
+            document.getField(field("age"));
+          }
+        });
+  }
+}
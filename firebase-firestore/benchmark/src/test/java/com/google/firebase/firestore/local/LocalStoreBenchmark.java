@@ -0,0 +1,251 @@
+// Copyright 2021 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore.local;
+
+import static com.google.firebase.firestore.testutil.TestUtil.addedRemoteEvent;
+import static com.google.firebase.firestore.testutil.TestUtil.doc;
+import static com.google.firebase.firestore.testutil.TestUtil.filter;
+import static com.google.firebase.firestore.testutil.TestUtil.map;
+import static com.google.firebase.firestore.testutil.TestUtil.orderBy;
+import static com.google.firebase.firestore.testutil.TestUtil.patchMutation;
+import static com.google.firebase.firestore.testutil.TestUtil.query;
+import static com.google.firebase.firestore.testutil.TestUtil.setMutation;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.assertEquals;
+
+import androidx.test.core.app.ApplicationProvider;
+import com.google.firebase.firestore.auth.User;
+import com.google.firebase.firestore.benchmark.BenchmarkRunner;
+import com.google.firebase.firestore.benchmark.Datasets;
+import com.google.firebase.firestore.core.Query;
+import com.google.firebase.firestore.model.DatabaseId;
+import com.google.firebase.firestore.model.MutableDocument;
+import com.google.firebase.firestore.model.ResourcePath;
+import com.google.firebase.firestore.model.mutation.Mutation;
+import com.google.firebase.firestore.remote.RemoteEvent;
+import com.google.firebase.firestore.remote.RemoteSerializer;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/** Benchmarks for queries and writes against a SQLite-backed LocalStore. */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class LocalStoreBenchmark {
+  private static final int COLLECTION_SIZE = 5000;
+  private static final int SUBCOLLECTION_SIZE = 5;
+
+  /**
+   * The number of documents with a subcollection for the benchmarks that are not swept over
+   * different subcollection counts.
+   */
+  private static final int DEFAULT_PARENTS_WITH_SUBCOLLECTIONS = 1000;
+
+  /**
+   * The numbers of documents with a subcollection for the query benchmarks. Queries against a
+   * collection should not get slower as the number of documents in its subcollections grows.
+   */
+  private static final int[] PARENTS_WITH_SUBCOLLECTIONS_SWEEP = {10, 100, 1000, 10000};
+  private static final int REMOTE_EVENT_SIZE = 1000;
+  private static final int PENDING_WRITES = 500;
+  private static final int WRITE_BATCH_SIZE = 100;
+
+  /** Current state of overlay support. Used for restoring after test run. */
+  private final boolean overlaySupportEnabled = Persistence.OVERLAY_SUPPORT_ENABLED;
+
+  private final Datasets datasets = new Datasets(/* seed= */ 42);
+
+  private SQLitePersistence persistence;
+  private LocalStore localStore;
+  private int targetId;
+  private long version = 1;
+  private int nextDatabase = 0;
+
+  @After
+  public void tearDown() {
+    shutdownLocalStore();
+    Persistence.OVERLAY_SUPPORT_ENABLED = overlaySupportEnabled;
+  }
+
+  @Test
+  public void executeCollectionQuery() {
+    Query query = query("users").filter(filter("active", "==", true));
+    for (int parents : PARENTS_WITH_SUBCOLLECTIONS_SWEEP) {
+      startLocalStore();
+      populateCollectionWithSubcollections(parents);
+
+      BenchmarkRunner.measure(
+          "LocalStore.executeQuery/collection/parents=" + parents,
+          () -> localStore.executeQuery(query, false));
+      shutdownLocalStore();
+    }
+  }
+
+  @Test
+  public void executeCollectionGroupQuery() {
+    Query query = new Query(ResourcePath.EMPTY, "orders");
+    for (int parents : PARENTS_WITH_SUBCOLLECTIONS_SWEEP) {
+      startLocalStore();
+      populateCollectionWithSubcollections(parents);
+
+      BenchmarkRunner.measure(
+          "LocalStore.executeQuery/collectionGroup/parents=" + parents,
+          () -> {
+            int size = localStore.executeQuery(query, false).getDocuments().size();
+            assertEquals(parents * SUBCOLLECTION_SIZE, size);
+          });
+      shutdownLocalStore();
+    }
+  }
+
+  @Test
+  public void executeLimitQuery() {
+    startLocalStore();
+    populateCollectionWithSubcollections(DEFAULT_PARENTS_WITH_SUBCOLLECTIONS);
+
+    Query query = query("users").orderBy(orderBy("score", "desc")).limitToFirst(20);
+    BenchmarkRunner.measure(
+        "LocalStore.executeQuery/limit", () -> localStore.executeQuery(query, false));
+  }
+
+  @Test
+  public void executeQueryWithPendingWrites() {
+    benchmarkQueryWithPendingWrites(
+        "LocalStore.executeQuery/pendingWrites", /* overlaySupportEnabled= */ false);
+  }
+
+  @Test
+  public void executeQueryWithPendingWritesAndOverlays() {
+    benchmarkQueryWithPendingWrites(
+        "LocalStore.executeQuery/pendingWritesWithOverlays", /* overlaySupportEnabled= */ true);
+  }
+
+  @Test
+  public void applyRemoteEvent() {
+    startLocalStore();
+    populateCollectionWithSubcollections(DEFAULT_PARENTS_WITH_SUBCOLLECTIONS);
+
+    RemoteEvent[] remoteEvent = new RemoteEvent[1];
+    BenchmarkRunner.measure(
+        "LocalStore.applyRemoteEvent",
+        /* warmupIterations= */ 3,
+        /* iterations= */ 10,
+        () -> {
+          // Updates the first documents of the collection with a new version.
+          List<MutableDocument> documents =
+              datasets.documents("users", "user", REMOTE_EVENT_SIZE, ++version);
+          remoteEvent[0] = addedRemoteEvent(documents, singletonList(targetId), emptyList());
+        },
+        () -> localStore.applyRemoteEvent(remoteEvent[0]));
+  }
+
+  @Test
+  public void writeLocally() {
+    startLocalStore();
+    populateCollectionWithSubcollections(DEFAULT_PARENTS_WITH_SUBCOLLECTIONS);
+
+    List<Mutation> mutations = new ArrayList<>();
+    int[] batch = {0};
+    BenchmarkRunner.measure(
+        "LocalStore.writeLocally",
+        /* warmupIterations= */ 5,
+        /* iterations= */ 20,
+        () -> {
+          mutations.clear();
+          for (int i = 0; i < WRITE_BATCH_SIZE; ++i) {
+            mutations.add(setMutation("users/new" + batch[0] + "_" + i, datasets.documentData()));
+          }
+          ++batch[0];
+        },
+        () -> localStore.writeLocally(mutations));
+  }
+
+  private void benchmarkQueryWithPendingWrites(String name, boolean overlaySupportEnabled) {
+    Persistence.OVERLAY_SUPPORT_ENABLED = overlaySupportEnabled;
+    startLocalStore();
+    populateCollectionWithSubcollections(DEFAULT_PARENTS_WITH_SUBCOLLECTIONS);
+
+    for (int i = 0; i < PENDING_WRITES; ++i) {
+      localStore.writeLocally(
+          singletonList(patchMutation("users/user" + i, map("score", (double) i))));
+    }
+    // Pending writes to subcollections must not slow down queries against the parent collection.
+    for (int i = 0; i < PENDING_WRITES; ++i) {
+      localStore.writeLocally(
+          singletonList(setMutation("users/user" + i + "/orders/new", datasets.documentData())));
+    }
+
+    Query query = query("users").filter(filter("active", "==", true));
+    BenchmarkRunner.measure(name, () -> localStore.executeQuery(query, false));
+  }
+
+  private void startLocalStore() {
+    // Every store uses a new database, so that the data of a previous sweep step does not remain.
+    DatabaseId databaseId = DatabaseId.forProject("benchmark" + nextDatabase++);
+    LocalSerializer serializer = new LocalSerializer(new RemoteSerializer(databaseId));
+    persistence =
+        new SQLitePersistence(
+            ApplicationProvider.getApplicationContext(),
+            "benchmark",
+            databaseId,
+            serializer,
+            LruGarbageCollector.Params.Disabled());
+    persistence.start();
+    localStore = new LocalStore(persistence, new CostBasedQueryEngine(), User.UNAUTHENTICATED);
+    localStore.start();
+    targetId = localStore.allocateTarget(query("users").toTarget()).getTargetId();
+  }
+
+  private void shutdownLocalStore() {
+    if (persistence != null) {
+      persistence.shutdown();
+      persistence = null;
+    }
+  }
+
+  /**
+   * Adds the documents of the "users" collection to the cache. Each of the first {@code parents}
+   * users has a subcollection of orders. If there are more parents than users, the remaining
+   * subcollections belong to user documents that do not exist.
+   */
+  private void populateCollectionWithSubcollections(int parents) {
+    applyDocuments(datasets.documents("users", "user", COLLECTION_SIZE, version));
+
+    List<MutableDocument> orders = new ArrayList<>();
+    for (int i = 0; i < parents; ++i) {
+      for (int j = 0; j < SUBCOLLECTION_SIZE; ++j) {
+        orders.add(
+            doc(
+                "users/user" + i + "/orders/order" + j,
+                version,
+                map("amount", j * 10.0, "status", j % 2 == 0 ? "shipped" : "pending")));
+      }
+    }
+    applyDocuments(orders);
+  }
+
+  private void applyDocuments(List<MutableDocument> documents) {
+    for (int i = 0; i < documents.size(); i += REMOTE_EVENT_SIZE) {
+      List<MutableDocument> chunk =
+          documents.subList(i, Math.min(documents.size(), i + REMOTE_EVENT_SIZE));
+      localStore.applyRemoteEvent(addedRemoteEvent(chunk, singletonList(targetId), emptyList()));
+    }
+  }
+}
@@ -0,0 +1,173 @@
+// Copyright 2021 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore.local;
+
+import static com.google.firebase.firestore.testutil.TestUtil.field;
+import static com.google.firebase.firestore.testutil.TestUtil.filter;
+import static com.google.firebase.firestore.testutil.TestUtil.query;
+import static org.junit.Assert.assertNotNull;
+
+import androidx.test.core.app.ApplicationProvider;
+import com.google.firebase.firestore.benchmark.BenchmarkRunner;
+import com.google.firebase.firestore.benchmark.Datasets;
+import com.google.firebase.firestore.core.Target;
+import com.google.firebase.firestore.model.DatabaseId;
+import com.google.firebase.firestore.model.FieldIndex;
+import com.google.firebase.firestore.model.MutableDocument;
+import com.google.firebase.firestore.remote.RemoteSerializer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/** Benchmarks for writing and reading index entries with five active field indexes. */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class SQLiteIndexManagerBenchmark {
+  private static final int DOCUMENT_COUNT = 1000;
+
+  /** Current state of indexing support. Used for restoring after test run. */
+  private final boolean indexingSupportEnabled = Persistence.INDEXING_SUPPORT_ENABLED;
+
+  private final Datasets datasets = new Datasets(/* seed= */ 42);
+
+  private SQLitePersistence persistence;
+  private IndexManager indexManager;
+
+  @Before
+  public void setUp() {
+    Persistence.INDEXING_SUPPORT_ENABLED = true;
+
+    DatabaseId databaseId = DatabaseId.forProject("benchmark");
+    LocalSerializer serializer = new LocalSerializer(new RemoteSerializer(databaseId));
+    persistence =
+        new SQLitePersistence(
+            ApplicationProvider.getApplicationContext(),
+            "benchmark",
+            databaseId,
+            serializer,
+            LruGarbageCollector.Params.Disabled());
+    persistence.start();
+    indexManager = persistence.getIndexManager();
+
+    persistence.runTransaction(
+        "Add field indexes",
+        () -> {
+          indexManager.addFieldIndex(
+              new FieldIndex("users")
+                  .withAddedField(field("age"), FieldIndex.Segment.Kind.ASCENDING));
+          indexManager.addFieldIndex(
+              new FieldIndex("users")
+                  .withAddedField(field("score"), FieldIndex.Segment.Kind.DESCENDING));
+          indexManager.addFieldIndex(
+              new FieldIndex("users")
+                  .withAddedField(field("tags"), FieldIndex.Segment.Kind.CONTAINS));
+          indexManager.addFieldIndex(
+              new FieldIndex("users")
+                  .withAddedField(field("age"), FieldIndex.Segment.Kind.ASCENDING)
+                  .withAddedField(field("score"), FieldIndex.Segment.Kind.DESCENDING));
+          indexManager.addFieldIndex(
+              new FieldIndex("users")
+                  .withAddedField(field("active"), FieldIndex.Segment.Kind.ASCENDING)
+                  .withAddedField(field("address.city"), FieldIndex.Segment.Kind.ASCENDING)
+                  .withAddedField(field("createdAt"), FieldIndex.Segment.Kind.DESCENDING));
+        });
+  }
+
+  @After
+  public void tearDown() {
+    persistence.shutdown();
+    Persistence.INDEXING_SUPPORT_ENABLED = indexingSupportEnabled;
+  }
+
+  @Test
+  public void addDocuments() {
+    List<MutableDocument> documents = new ArrayList<>();
+    int[] batch = {0};
+    BenchmarkRunner.measure(
+        "SQLiteIndexManager.handleDocumentChange/add",
+        /* warmupIterations= */ 3,
+        /* iterations= */ 10,
+        () -> {
+          documents.clear();
+          String idPrefix = "user" + batch[0]++ + "_";
+          documents.addAll(datasets.documents("users", idPrefix, DOCUMENT_COUNT, 1));
+        },
+        () ->
+            persistence.runTransaction(
+                "Add documents",
+                () -> {
+                  for (MutableDocument document : documents) {
+                    indexManager.handleDocumentChange(null, document);
+                  }
+                }));
+  }
+
+  @Test
+  public void readInFilter() {
+    indexDocuments(datasets.documents("users", "user", DOCUMENT_COUNT, 1));
+
+    Target target =
+        query("users")
+            .filter(filter("age", "in", Arrays.asList(20, 25, 30, 35, 40, 45, 50, 55, 60, 65)))
+            .toTarget();
+    benchmarkIndexScan("SQLiteIndexManager.getDocumentsMatchingTarget/in", target);
+  }
+
+  @Test
+  public void readArrayContainsAnyFilter() {
+    indexDocuments(datasets.documents("users", "user", DOCUMENT_COUNT, 1));
+
+    Target target =
+        query("users")
+            .filter(filter("tags", "array-contains-any", Arrays.asList("alpha", "kilo", "zulu")))
+            .toTarget();
+    benchmarkIndexScan("SQLiteIndexManager.getDocumentsMatchingTarget/arrayContainsAny", target);
+  }
+
+  @Test
+  public void readRangeFilter() {
+    indexDocuments(datasets.documents("users", "user", DOCUMENT_COUNT, 1));
+
+    Target target =
+        query("users").filter(filter("age", ">=", 30)).filter(filter("age", "<", 40)).toTarget();
+    benchmarkIndexScan("SQLiteIndexManager.getDocumentsMatchingTarget/range", target);
+  }
+
+  private void indexDocuments(List<MutableDocument> documents) {
+    persistence.runTransaction(
+        "Index documents",
+        () -> {
+          for (MutableDocument document : documents) {
+            indexManager.handleDocumentChange(null, document);
+          }
+        });
+  }
+
+  private void benchmarkIndexScan(String name, Target target) {
+    FieldIndex fieldIndex = indexManager.getFieldIndex(target);
+    assertNotNull(fieldIndex);
+    BenchmarkRunner.measure(
+        name,
+        () ->
+            persistence.runTransaction(
+                "Read index", () -> indexManager.getDocumentsMatchingTarget(fieldIndex, target)));
+  }
+}
@@ -0,0 +1,89 @@
+// Copyright 2021 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore.model;
+
+import static com.google.firebase.firestore.testutil.TestUtil.wrap;
+
+import com.google.firebase.firestore.benchmark.BenchmarkRunner;
+import com.google.firebase.firestore.benchmark.Datasets;
+import com.google.firestore.v1.Value;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/** Benchmarks for comparing and identifying values. */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class ValuesBenchmark {
+  private static final int VALUE_COUNT = 10000;
+
+  private final Datasets datasets = new Datasets(/* seed= */ 42);
+
+  @Test
+  public void compare() {
+    List<Value> values = generateValues();
+    List<Value> sorted = new ArrayList<>(values.size());
+    BenchmarkRunner.measure(
+        "Values.compare",
+        /* warmupIterations= */ 5,
+        /* iterations= */ 20,
+        () -> {
+          sorted.clear();
+          sorted.addAll(values);
+        },
+        () -> Collections.sort(sorted, Values::compare));
+  }
+
+  @Test
+  public void equals() {
+    List<Value> values = generateValues();
+    List<Value> copies = new ArrayList<>(values.size());
+    for (Value value : values) {
+      copies.add(value.toBuilder().build());
+    }
+    BenchmarkRunner.measure(
+        "Values.equals",
+        () -> {
+          for (int i = 0; i < values.size(); ++i) {
+            Values.equals(values.get(i), copies.get(i));
+          }
+        });
+  }
+
+  @Test
+  public void canonicalId() {
+    List<Value> values = generateValues();
+    BenchmarkRunner.measure(
+        "Values.canonicalId",
+        () -> {
+          for (Value value : values) {
+            Values.canonicalId(value);
+          }
+        });
+  }
+
+  /** Returns the data of generated documents as map values. */
+  private List<Value> generateValues() {
+    List<Value> values = new ArrayList<>(VALUE_COUNT);
+    for (int i = 0; i < VALUE_COUNT; ++i) {
+      values.add(wrap(datasets.documentData()));
+    }
+    return values;
+  }
+}
@@ -0,0 +1,108 @@
+// Copyright 2021 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore.util;
+
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.GenerateMapper;
+import com.google.firebase.firestore.benchmark.BenchmarkRunner;
+import com.google.firebase.firestore.benchmark.Datasets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/** Benchmarks for converting document data to POJOs with reflection and with generated mappers. */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class CustomClassMapperBenchmark {
+  private static final int DOCUMENT_COUNT = 5000;
+
+  public static class Address {
+    public String street;
+    public String city;
+    public String zip;
+  }
+
+  public static class User {
+    public String name;
+    public String email;
+    public String bio;
+    public long age;
+    public double score;
+    public boolean active;
+    public Timestamp createdAt;
+    public List<String> tags;
+    public Address address;
+    public Map<String, Long> stats;
+  }
+
+  @GenerateMapper
+  public static class GeneratedAddress {
+    public String street;
+    public String city;
+    public String zip;
+  }
+
+  @GenerateMapper
+  public static class GeneratedUser {
+    public String name;
+    public String email;
+    public String bio;
+    public long age;
+    public double score;
+    public boolean active;
+    public Timestamp createdAt;
+    public List<String> tags;
+    public GeneratedAddress address;
+    public Map<String, Long> stats;
+  }
+
+  @Test
+  public void convertWithReflection() {
+    List<Map<String, Object>> data = generateData();
+    BenchmarkRunner.measure(
+        "CustomClassMapper.convertToCustomClass/reflection",
+        () -> {
+          for (Map<String, Object> document : data) {
+            CustomClassMapper.convertToCustomClass(document, User.class, /* docRef= */ null);
+          }
+        });
+  }
+
+  @Test
+  public void convertWithGeneratedMapper() {
+    List<Map<String, Object>> data = generateData();
+    BenchmarkRunner.measure(
+        "CustomClassMapper.convertToCustomClass/generated",
+        () -> {
+          for (Map<String, Object> document : data) {
+            CustomClassMapper.convertToCustomClass(
+                document, GeneratedUser.class, /* docRef= */ null);
+          }
+        });
+  }
+
+  private static List<Map<String, Object>> generateData() {
+    Datasets datasets = new Datasets(/* seed= */ 42);
+    List<Map<String, Object>> data = new ArrayList<>(DOCUMENT_COUNT);
+    for (int i = 0; i < DOCUMENT_COUNT; ++i) {
+      data.add(datasets.documentData());
+    }
+    return data;
+  }
+}
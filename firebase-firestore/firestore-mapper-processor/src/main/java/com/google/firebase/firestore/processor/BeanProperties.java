@@ -0,0 +1,276 @@
+// Copyright 2021 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore.processor;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+
+/**
+ * Discovers the properties of a POJO at compile time, mirroring the rules that {@code
+ * CustomClassMapper.BeanMapper} applies at runtime.
+ *
+ * <p>A property is only reported as readable or writable if the generated mapper can access its
+ * getter, setter or field directly. All other properties are handled by reflection at runtime.
+ */
+class BeanProperties {
+  private static final String PROPERTY_NAME_ANNOTATION =
+      "com.google.firebase.firestore.PropertyName";
+  private static final String EXCLUDE_ANNOTATION = "com.google.firebase.firestore.Exclude";
+
+  /** A getter, setter or field that is used to access a property. */
+  static class Accessor {
+    private final Element element;
+    private final TypeMirror type;
+
+    Accessor(Element element, TypeMirror type) {
+      this.element = element;
+      this.type = type;
+    }
+
+    boolean isMethod() {
+      return element instanceof ExecutableElement;
+    }
+
+    String getName() {
+      return element.getSimpleName().toString();
+    }
+
+    /** The type of the property as seen from the mapped class. */
+    TypeMirror getType() {
+      return type;
+    }
+  }
+
+  private final ProcessingEnvironment processingEnv;
+  private final TypeElement type;
+  private final Map<String, Accessor> readable = new LinkedHashMap<>();
+  private final Map<String, Accessor> writable = new LinkedHashMap<>();
+
+  BeanProperties(ProcessingEnvironment processingEnv, TypeElement type) {
+    this.processingEnv = processingEnv;
+    this.type = type;
+
+    // All properties known to BeanMapper, whether or not the generated code can read them.
+    Map<String, Element> properties = new LinkedHashMap<>();
+
+    for (ExecutableElement method :
+        ElementFilter.methodsIn(processingEnv.getElementUtils().getAllMembers(type))) {
+      if (shouldIncludeGetter(method)) {
+        String propertyName = propertyName(method);
+        if (!properties.containsKey(propertyName)) {
+          properties.put(propertyName, method);
+          if (MapperProcessor.isAccessible(method, type)) {
+            readable.put(propertyName, new Accessor(method, method.getReturnType()));
+          }
+        }
+      }
+    }
+
+    for (VariableElement field :
+        ElementFilter.fieldsIn(processingEnv.getElementUtils().getAllMembers(type))) {
+      if (shouldIncludeField(field)) {
+        String propertyName = propertyName(field);
+        if (!properties.containsKey(propertyName)) {
+          properties.put(propertyName, field);
+          if (MapperProcessor.isAccessible(field, type)) {
+            readable.put(propertyName, new Accessor(field, fieldType(field)));
+          }
+        }
+      }
+    }
+
+    // As in BeanMapper, setters and fields declared closer to the mapped class take precedence over
+    // those declared on its superclasses, and setters take precedence over fields.
+    Map<String, Element> setters = new LinkedHashMap<>();
+    Map<String, Element> fields = new LinkedHashMap<>();
+    TypeElement currentClass = type;
+    while (currentClass != null
+        && !currentClass.getQualifiedName().contentEquals(Object.class.getName())) {
+      for (ExecutableElement method :
+          ElementFilter.methodsIn(currentClass.getEnclosedElements())) {
+        if (shouldIncludeSetter(method)) {
+          String propertyName = propertyName(method);
+          if (properties.containsKey(propertyName) && !setters.containsKey(propertyName)) {
+            setters.put(propertyName, method);
+          }
+        }
+      }
+      for (VariableElement field : ElementFilter.fieldsIn(currentClass.getEnclosedElements())) {
+        String propertyName = propertyName(field);
+        if (properties.containsKey(propertyName)
+            && !fields.containsKey(propertyName)
+            && !field.getModifiers().contains(Modifier.STATIC)) {
+          fields.put(propertyName, field);
+        }
+      }
+      currentClass = superclass(currentClass);
+    }
+
+    for (String propertyName : properties.keySet()) {
+      Element setter = setters.get(propertyName);
+      Element field = fields.get(propertyName);
+      if (setter != null) {
+        if (MapperProcessor.isAccessible(setter, type)) {
+          writable.put(propertyName, new Accessor(setter, setterType((ExecutableElement) setter)));
+        }
+      } else if (field != null) {
+        if (MapperProcessor.isAccessible(field, type)
+            && !field.getModifiers().contains(Modifier.FINAL)) {
+          writable.put(propertyName, new Accessor(field, fieldType((VariableElement) field)));
+        }
+      }
+    }
+  }
+
+  /** Returns the properties that the generated mapper can read, keyed by property name. */
+  Map<String, Accessor> getReadable() {
+    return Collections.unmodifiableMap(readable);
+  }
+
+  /** Returns the properties that the generated mapper can write, keyed by property name. */
+  Map<String, Accessor> getWritable() {
+    return Collections.unmodifiableMap(writable);
+  }
+
+  private TypeMirror fieldType(VariableElement field) {
+    return processingEnv.getTypeUtils().asMemberOf((DeclaredType) type.asType(), field);
+  }
+
+  private TypeMirror setterType(ExecutableElement setter) {
+    return setter.getParameters().get(0).asType();
+  }
+
+  private static TypeElement superclass(TypeElement type) {
+    TypeMirror superclass = type.getSuperclass();
+    if (superclass.getKind() != TypeKind.DECLARED) {
+      return null;
+    }
+    return (TypeElement) ((DeclaredType) superclass).asElement();
+  }
+
+  private static boolean shouldIncludeGetter(ExecutableElement method) {
+    String name = method.getSimpleName().toString();
+    if (!name.startsWith("get") && !name.startsWith("is")) {
+      return false;
+    }
+    // Exclude methods from Object.class
+    if (isDeclaredOnObject(method)) {
+      return false;
+    }
+    // Non-public or static methods
+    if (!method.getModifiers().contains(Modifier.PUBLIC)
+        || method.getModifiers().contains(Modifier.STATIC)) {
+      return false;
+    }
+    // No return type or non-zero parameters
+    if (method.getReturnType().getKind() == TypeKind.VOID || !method.getParameters().isEmpty()) {
+      return false;
+    }
+    return !hasAnnotation(method, EXCLUDE_ANNOTATION);
+  }
+
+  private static boolean shouldIncludeSetter(ExecutableElement method) {
+    if (!method.getSimpleName().toString().startsWith("set")) {
+      return false;
+    }
+    if (method.getModifiers().contains(Modifier.STATIC)) {
+      return false;
+    }
+    // Has a return type or does not have exactly one parameter
+    if (method.getReturnType().getKind() != TypeKind.VOID || method.getParameters().size() != 1) {
+      return false;
+    }
+    return !hasAnnotation(method, EXCLUDE_ANNOTATION);
+  }
+
+  private static boolean shouldIncludeField(VariableElement field) {
+    if (isDeclaredOnObject(field)) {
+      return false;
+    }
+    // Non-public, static or transient fields
+    if (!field.getModifiers().contains(Modifier.PUBLIC)
+        || field.getModifiers().contains(Modifier.STATIC)
+        || field.getModifiers().contains(Modifier.TRANSIENT)) {
+      return false;
+    }
+    return !hasAnnotation(field, EXCLUDE_ANNOTATION);
+  }
+
+  private static boolean isDeclaredOnObject(Element member) {
+    TypeElement declaringType = (TypeElement) member.getEnclosingElement();
+    return declaringType.getQualifiedName().contentEquals(Object.class.getName());
+  }
+
+  private static boolean hasAnnotation(Element element, String annotationName) {
+    return findAnnotation(element, annotationName) != null;
+  }
+
+  private static AnnotationMirror findAnnotation(Element element, String annotationName) {
+    for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+      TypeElement annotationType = (TypeElement) annotation.getAnnotationType().asElement();
+      if (annotationType.getQualifiedName().contentEquals(annotationName)) {
+        return annotation;
+      }
+    }
+    return null;
+  }
+
+  private static String propertyName(Element member) {
+    AnnotationMirror annotation = findAnnotation(member, PROPERTY_NAME_ANNOTATION);
+    if (annotation != null) {
+      for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry :
+          annotation.getElementValues().entrySet()) {
+        if (entry.getKey().getSimpleName().contentEquals("value")) {
+          return (String) entry.getValue().getValue();
+        }
+      }
+    }
+    String name = member.getSimpleName().toString();
+    return member instanceof ExecutableElement ? serializedName(name) : name;
+  }
+
+  private static String serializedName(String methodName) {
+    String[] prefixes = new String[] {"get", "set", "is"};
+    String methodPrefix = null;
+    for (String prefix : prefixes) {
+      if (methodName.startsWith(prefix)) {
+        methodPrefix = prefix;
+      }
+    }
+    String strippedName = methodName.substring(methodPrefix.length());
+
+    // Make sure the first word or upper-case prefix is converted to lower-case
+    char[] chars = strippedName.toCharArray();
+    int pos = 0;
+    while (pos < chars.length && Character.isUpperCase(chars[pos])) {
+      chars[pos] = Character.toLowerCase(chars[pos]);
+      pos++;
+    }
+    return new String(chars);
+  }
+}
@@ -0,0 +1,314 @@
+// Copyright 2021 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore.processor;
+
+import com.google.auto.service.AutoService;
+import com.squareup.javapoet.AnnotationSpec;
+import com.squareup.javapoet.ClassName;
+import com.squareup.javapoet.CodeBlock;
+import com.squareup.javapoet.FieldSpec;
+import com.squareup.javapoet.JavaFile;
+import com.squareup.javapoet.MethodSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
+import com.squareup.javapoet.TypeName;
+import com.squareup.javapoet.TypeSpec;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Processor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+
+/**
+ * Generates a {@code GeneratedMapper} for every class annotated with {@code @GenerateMapper}.
+ *
+ * <p>The generated mapper for class {@code com.example.Outer.City} is named {@code
+ * com.example.FirestoreMapper_Outer_City}, which is where {@code CustomClassMapper} looks it up at
+ * runtime.
+ */
+@AutoService(Processor.class)
+@SupportedAnnotationTypes(MapperProcessor.GENERATE_MAPPER_ANNOTATION)
+public class MapperProcessor extends AbstractProcessor {
+  static final String GENERATE_MAPPER_ANNOTATION = "com.google.firebase.firestore.GenerateMapper";
+
+  private static final ClassName GENERATED_MAPPER =
+      ClassName.get("com.google.firebase.firestore", "GeneratedMapper");
+  private static final String GENERATED_CLASS_PREFIX = "FirestoreMapper_";
+
+  @Override
+  public SourceVersion getSupportedSourceVersion() {
+    return SourceVersion.latestSupported();
+  }
+
+  @Override
+  public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+    for (TypeElement annotation : annotations) {
+      for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+        processClass(element);
+      }
+    }
+    return false;
+  }
+
+  private void processClass(Element element) {
+    if (element.getKind() != ElementKind.CLASS
+        || element.getModifiers().contains(Modifier.ABSTRACT)) {
+      error(element, "@GenerateMapper can only be applied to non-abstract classes.");
+      return;
+    }
+
+    TypeElement type = (TypeElement) element;
+    if (!isAccessibleType(type)) {
+      error(
+          element,
+          "@GenerateMapper can only be applied to top-level or static nested classes that are not"
+              + " private.");
+      return;
+    }
+
+    ExecutableElement constructor = findNoArgConstructor(type);
+    if (constructor == null || !isAccessible(constructor, type)) {
+      error(element, "@GenerateMapper requires a no-argument constructor that is not private.");
+      return;
+    }
+
+    BeanProperties properties = new BeanProperties(processingEnv, type);
+    String packageName = processingEnv.getElementUtils().getPackageOf(type).toString();
+    TypeName beanType = TypeName.get(processingEnv.getTypeUtils().erasure(type.asType()));
+
+    TypeSpec mapper =
+        TypeSpec.classBuilder(generatedClassName(type))
+            .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+            .addSuperinterface(ParameterizedTypeName.get(GENERATED_MAPPER, beanType))
+            .addField(propertySetField("READABLE_PROPERTIES", properties.getReadable().keySet()))
+            .addField(propertySetField("WRITABLE_PROPERTIES", properties.getWritable().keySet()))
+            .addMethod(MethodSpec.constructorBuilder().addModifiers(Modifier.PUBLIC).build())
+            .addMethod(
+                MethodSpec.methodBuilder("newInstance")
+                    .addAnnotation(Override.class)
+                    .addModifiers(Modifier.PUBLIC)
+                    .returns(beanType)
+                    .addStatement("return new $T()", beanType)
+                    .build())
+            .addMethod(propertySetGetter("getReadableProperties", "READABLE_PROPERTIES"))
+            .addMethod(propertySetGetter("getWritableProperties", "WRITABLE_PROPERTIES"))
+            .addMethod(getMethod(beanType, properties.getReadable()))
+            .addMethod(setMethod(beanType, properties.getWritable()))
+            .build();
+
+    try {
+      JavaFile.builder(packageName, mapper).build().writeTo(processingEnv.getFiler());
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private FieldSpec propertySetField(String name, Set<String> properties) {
+    CodeBlock.Builder names = CodeBlock.builder();
+    for (String property : properties) {
+      if (!names.isEmpty()) {
+        names.add(", ");
+      }
+      names.add("$S", property);
+    }
+    return FieldSpec.builder(
+            ParameterizedTypeName.get(Set.class, String.class),
+            name,
+            Modifier.PRIVATE,
+            Modifier.STATIC,
+            Modifier.FINAL)
+        .initializer(
+            "$T.unmodifiableSet(new $T<>($T.asList($L)))",
+            Collections.class,
+            HashSet.class,
+            Arrays.class,
+            names.build())
+        .build();
+  }
+
+  private MethodSpec propertySetGetter(String methodName, String fieldName) {
+    return MethodSpec.methodBuilder(methodName)
+        .addAnnotation(Override.class)
+        .addModifiers(Modifier.PUBLIC)
+        .returns(ParameterizedTypeName.get(Set.class, String.class))
+        .addStatement("return $N", fieldName)
+        .build();
+  }
+
+  private MethodSpec getMethod(TypeName beanType, Map<String, BeanProperties.Accessor> readable) {
+    MethodSpec.Builder method =
+        MethodSpec.methodBuilder("get")
+            .addAnnotation(Override.class)
+            .addModifiers(Modifier.PUBLIC)
+            .returns(Object.class)
+            .addParameter(beanType, "object")
+            .addParameter(String.class, "property");
+    method.beginControlFlow("switch (property)");
+    for (Map.Entry<String, BeanProperties.Accessor> entry : readable.entrySet()) {
+      BeanProperties.Accessor accessor = entry.getValue();
+      if (accessor.isMethod()) {
+        method.addStatement("case $S: return object.$N()", entry.getKey(), accessor.getName());
+      } else {
+        method.addStatement("case $S: return object.$N", entry.getKey(), accessor.getName());
+      }
+    }
+    method.addStatement(
+        "default: throw new $T($S + property)",
+        IllegalArgumentException.class,
+        "Unknown property: ");
+    method.endControlFlow();
+    return method.build();
+  }
+
+  private MethodSpec setMethod(TypeName beanType, Map<String, BeanProperties.Accessor> writable) {
+    MethodSpec.Builder method =
+        MethodSpec.methodBuilder("set")
+            .addAnnotation(Override.class)
+            .addAnnotation(
+                AnnotationSpec.builder(SuppressWarnings.class)
+                    .addMember("value", "$S", "unchecked")
+                    .build())
+            .addModifiers(Modifier.PUBLIC)
+            .addParameter(beanType, "object")
+            .addParameter(String.class, "property")
+            .addParameter(Object.class, "value");
+    method.beginControlFlow("switch (property)");
+    for (Map.Entry<String, BeanProperties.Accessor> entry : writable.entrySet()) {
+      BeanProperties.Accessor accessor = entry.getValue();
+      TypeName valueType = castType(accessor.getType());
+      if (accessor.isMethod()) {
+        method.addStatement(
+            "case $S: object.$N(($T) value); break", entry.getKey(), accessor.getName(), valueType);
+      } else {
+        method.addStatement(
+            "case $S: object.$N = ($T) value; break",
+            entry.getKey(),
+            accessor.getName(),
+            valueType);
+      }
+    }
+    method.addStatement(
+        "default: throw new $T($S + property)",
+        IllegalArgumentException.class,
+        "Unknown property: ");
+    method.endControlFlow();
+    return method.build();
+  }
+
+  /**
+   * Returns the type that a value is cast to before it is assigned to a property of the given type.
+   * Generic types are cast to their erasure, which CustomClassMapper has already verified.
+   */
+  private TypeName castType(TypeMirror type) {
+    TypeMirror erasure = processingEnv.getTypeUtils().erasure(type);
+    return TypeName.get(erasure).box();
+  }
+
+  private ExecutableElement findNoArgConstructor(TypeElement type) {
+    for (ExecutableElement constructor :
+        ElementFilter.constructorsIn(type.getEnclosedElements())) {
+      if (constructor.getParameters().isEmpty()) {
+        return constructor;
+      }
+    }
+    return null;
+  }
+
+  /** Returns whether the given type can be referenced from a class in its own package. */
+  private static boolean isAccessibleType(TypeElement type) {
+    Element current = type;
+    while (current.getKind().isClass() || current.getKind().isInterface()) {
+      if (current.getModifiers().contains(Modifier.PRIVATE)) {
+        return false;
+      }
+      Element enclosing = current.getEnclosingElement();
+      if ((enclosing.getKind().isClass() || enclosing.getKind().isInterface())
+          && !current.getModifiers().contains(Modifier.STATIC)
+          && !enclosing.getKind().isInterface()) {
+        // Inner classes require an instance of the enclosing class.
+        return false;
+      }
+      current = enclosing;
+    }
+    return true;
+  }
+
+  /**
+   * Returns whether the given member can be accessed from a generated class in the package of the
+   * mapped type.
+   */
+  static boolean isAccessible(Element member, TypeElement mappedType) {
+    Set<Modifier> modifiers = member.getModifiers();
+    if (modifiers.contains(Modifier.PRIVATE)) {
+      return false;
+    }
+    TypeElement declaringType = (TypeElement) member.getEnclosingElement();
+    boolean samePackage = packageOf(declaringType).equals(packageOf(mappedType));
+    if (modifiers.contains(Modifier.PUBLIC)) {
+      return samePackage || isPublicType(declaringType);
+    }
+    return samePackage;
+  }
+
+  private static boolean isPublicType(TypeElement type) {
+    Element current = type;
+    while (current.getKind().isClass() || current.getKind().isInterface()) {
+      if (!current.getModifiers().contains(Modifier.PUBLIC)) {
+        return false;
+      }
+      current = current.getEnclosingElement();
+    }
+    return true;
+  }
+
+  private static String packageOf(Element element) {
+    Element current = element;
+    while (current.getKind() != ElementKind.PACKAGE) {
+      current = current.getEnclosingElement();
+    }
+    return current.toString();
+  }
+
+  /**
+   * Returns the simple name of the generated mapper. Nested class names are joined with
+   * underscores, so that {@code Outer.City} maps to {@code FirestoreMapper_Outer_City}.
+   */
+  static String generatedClassName(TypeElement type) {
+    StringBuilder name = new StringBuilder(type.getSimpleName());
+    Element enclosing = type.getEnclosingElement();
+    while (enclosing.getKind() != ElementKind.PACKAGE) {
+      name.insert(0, '_').insert(0, enclosing.getSimpleName());
+      enclosing = enclosing.getEnclosingElement();
+    }
+    return GENERATED_CLASS_PREFIX + name;
+  }
+
+  private void error(Element element, String message) {
+    processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+  }
+}
@@ -0,0 +1,219 @@
+// Copyright 2021 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore.processor;
+
+import static com.google.testing.compile.CompilationSubject.assertThat;
+import static com.google.testing.compile.Compiler.javac;
+
+import com.google.testing.compile.Compilation;
+import com.google.testing.compile.JavaFileObjects;
+import javax.tools.JavaFileObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class MapperProcessorTest {
+  // The processor does not depend on the Firestore SDK, so its annotations and the mapper
+  // interface are provided as sources.
+  private static final JavaFileObject GENERATE_MAPPER =
+      JavaFileObjects.forSourceLines(
+          "com.google.firebase.firestore.GenerateMapper",
+          "package com.google.firebase.firestore;",
+          "public @interface GenerateMapper {}");
+  private static final JavaFileObject GENERATED_MAPPER =
+      JavaFileObjects.forSourceLines(
+          "com.google.firebase.firestore.GeneratedMapper",
+          "package com.google.firebase.firestore;",
+          "import java.util.Set;",
+          "public interface GeneratedMapper<T> {",
+          "T newInstance();",
+          "Set<String> getReadableProperties();",
+          "Set<String> getWritableProperties();",
+          "Object get(T object, String property);",
+          "void set(T object, String property, Object value);",
+          "}");
+  private static final JavaFileObject PROPERTY_NAME =
+      JavaFileObjects.forSourceLines(
+          "com.google.firebase.firestore.PropertyName",
+          "package com.google.firebase.firestore;",
+          "public @interface PropertyName { String value(); }");
+  private static final JavaFileObject EXCLUDE =
+      JavaFileObjects.forSourceLines(
+          "com.google.firebase.firestore.Exclude",
+          "package com.google.firebase.firestore;",
+          "public @interface Exclude {}");
+
+  private static Compilation compile(JavaFileObject source) {
+    return javac()
+        .withProcessors(new MapperProcessor())
+        .compile(GENERATE_MAPPER, GENERATED_MAPPER, PROPERTY_NAME, EXCLUDE, source);
+  }
+
+  @Test
+  public void compile_beanWithGettersAndSetters_shouldProduceMapper() {
+    Compilation result =
+        compile(
+            JavaFileObjects.forSourceLines(
+                "com.example.City",
+                "package com.example;",
+                "import com.google.firebase.firestore.GenerateMapper;",
+                "@GenerateMapper public class City {",
+                "private String name;",
+                "private long population;",
+                "public String getName() { return name; }",
+                "public void setName(String name) { this.name = name; }",
+                "public long getPopulation() { return population; }",
+                "public void setPopulation(long population) { this.population = population; }",
+                "}"));
+
+    assertThat(result).succeeded();
+    assertThat(result)
+        .generatedSourceFile("com.example.FirestoreMapper_City")
+        .contentsAsUtf8String()
+        .contains("public final class FirestoreMapper_City implements GeneratedMapper<City>");
+    assertThat(result)
+        .generatedSourceFile("com.example.FirestoreMapper_City")
+        .contentsAsUtf8String()
+        .contains("case \"population\": return object.getPopulation();");
+    assertThat(result)
+        .generatedSourceFile("com.example.FirestoreMapper_City")
+        .contentsAsUtf8String()
+        .contains("case \"population\": object.setPopulation((Long) value); break;");
+  }
+
+  @Test
+  public void compile_beanWithPublicFields_shouldAccessFieldsDirectly() {
+    Compilation result =
+        compile(
+            JavaFileObjects.forSourceLines(
+                "com.example.Point",
+                "package com.example;",
+                "import com.google.firebase.firestore.Exclude;",
+                "import com.google.firebase.firestore.GenerateMapper;",
+                "import com.google.firebase.firestore.PropertyName;",
+                "@GenerateMapper public class Point {",
+                "public double x;",
+                "@PropertyName(\"y_value\") public double y;",
+                "@Exclude public double ignored;",
+                "public transient double cached;",
+                "}"));
+
+    assertThat(result).succeeded();
+    assertThat(result)
+        .generatedSourceFile("com.example.FirestoreMapper_Point")
+        .contentsAsUtf8String()
+        .contains("case \"y_value\": object.y = (Double) value; break;");
+    assertThat(result)
+        .generatedSourceFile("com.example.FirestoreMapper_Point")
+        .contentsAsUtf8String()
+        .doesNotContain("ignored");
+    assertThat(result)
+        .generatedSourceFile("com.example.FirestoreMapper_Point")
+        .contentsAsUtf8String()
+        .doesNotContain("cached");
+  }
+
+  @Test
+  public void compile_privateSetter_shouldNotBeWritable() {
+    Compilation result =
+        compile(
+            JavaFileObjects.forSourceLines(
+                "com.example.Account",
+                "package com.example;",
+                "import com.google.firebase.firestore.GenerateMapper;",
+                "@GenerateMapper public class Account {",
+                "private String id;",
+                "public String getId() { return id; }",
+                "private void setId(String id) { this.id = id; }",
+                "}"));
+
+    assertThat(result).succeeded();
+    assertThat(result)
+        .generatedSourceFile("com.example.FirestoreMapper_Account")
+        .contentsAsUtf8String()
+        .contains("case \"id\": return object.getId();");
+    assertThat(result)
+        .generatedSourceFile("com.example.FirestoreMapper_Account")
+        .contentsAsUtf8String()
+        .doesNotContain("setId");
+  }
+
+  @Test
+  public void compile_staticNestedClass_shouldJoinNamesWithUnderscores() {
+    Compilation result =
+        compile(
+            JavaFileObjects.forSourceLines(
+                "com.example.Outer",
+                "package com.example;",
+                "import com.google.firebase.firestore.GenerateMapper;",
+                "public class Outer {",
+                "@GenerateMapper public static class Inner {",
+                "public String value;",
+                "}",
+                "}"));
+
+    assertThat(result).succeeded();
+    assertThat(result).generatedSourceFile("com.example.FirestoreMapper_Outer_Inner");
+  }
+
+  @Test
+  public void compile_innerClass_shouldFail() {
+    Compilation result =
+        compile(
+            JavaFileObjects.forSourceLines(
+                "com.example.Outer",
+                "package com.example;",
+                "import com.google.firebase.firestore.GenerateMapper;",
+                "public class Outer {",
+                "@GenerateMapper public class Inner {",
+                "public String value;",
+                "}",
+                "}"));
+
+    assertThat(result).hadErrorContaining("static nested classes");
+  }
+
+  @Test
+  public void compile_withoutNoArgConstructor_shouldFail() {
+    Compilation result =
+        compile(
+            JavaFileObjects.forSourceLines(
+                "com.example.Person",
+                "package com.example;",
+                "import com.google.firebase.firestore.GenerateMapper;",
+                "@GenerateMapper public class Person {",
+                "public String name;",
+                "public Person(String name) { this.name = name; }",
+                "}"));
+
+    assertThat(result).hadErrorContaining("no-argument constructor");
+  }
+
+  @Test
+  public void compile_abstractClass_shouldFail() {
+    Compilation result =
+        compile(
+            JavaFileObjects.forSourceLines(
+                "com.example.Shape",
+                "package com.example;",
+                "import com.google.firebase.firestore.GenerateMapper;",
+                "@GenerateMapper public abstract class Shape {",
+                "public String name;",
+                "}"));
+
+    assertThat(result).hadErrorContaining("non-abstract classes");
+  }
+}
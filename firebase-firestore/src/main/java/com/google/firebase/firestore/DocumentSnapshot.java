@@ -177,10 +177,12 @@ public class DocumentSnapshot {
     checkNotNull(valueType, "Provided POJO type must not be null.");
     checkNotNull(
         serverTimestampBehavior, "Provided serverTimestampBehavior value must not be null.");
-    Map<String, Object> data = getData(serverTimestampBehavior);
-    return data == null
-        ? null
-        : CustomClassMapper.convertToCustomClass(data, valueType, getReference());
+    if (doc == null) {
+      return null;
+    }
+    UserDataWriter userDataWriter = new UserDataWriter(firestore, serverTimestampBehavior);
+    Map<String, Object> data = userDataWriter.convertObjectLazily(doc.getData().getFieldsMap());
+    return CustomClassMapper.convertToCustomClass(data, valueType, getReference());
   }
 
   /**
@@ -32,6 +32,7 @@ public final class FirebaseFirestoreSettings {
 
   private static final long MINIMUM_CACHE_BYTES = 1 * 1024 * 1024; // 1 MB
   private static final long DEFAULT_CACHE_SIZE_BYTES = 100 * 1024 * 1024; // 100 MB
+  private static final int DEFAULT_MAX_PENDING_WRITES = 10;
 
   /** A Builder for creating {@code FirebaseFirestoreSettings}. */
   public static final class Builder {
@@ -39,6 +40,9 @@ public final class FirebaseFirestoreSettings {
     private boolean sslEnabled;
     private boolean persistenceEnabled;
     private long cacheSizeBytes;
+    private int maxPendingWrites;
+    private boolean writeCoalescingEnabled;
+    private boolean limitQueryBufferEnabled;
 
     /** Constructs a new {@code FirebaseFirestoreSettings} Builder object. */
     public Builder() {
@@ -46,6 +50,9 @@ public final class FirebaseFirestoreSettings {
       sslEnabled = true;
       persistenceEnabled = true;
       cacheSizeBytes = DEFAULT_CACHE_SIZE_BYTES;
+      maxPendingWrites = DEFAULT_MAX_PENDING_WRITES;
+      writeCoalescingEnabled = false;
+      limitQueryBufferEnabled = false;
     }
 
     /**
@@ -58,6 +65,9 @@ public final class FirebaseFirestoreSettings {
       sslEnabled = settings.sslEnabled;
       persistenceEnabled = settings.persistenceEnabled;
       cacheSizeBytes = settings.cacheSizeBytes;
+      maxPendingWrites = settings.maxPendingWrites;
+      writeCoalescingEnabled = settings.writeCoalescingEnabled;
+      limitQueryBufferEnabled = settings.limitQueryBufferEnabled;
     }
 
     /**
@@ -116,6 +126,59 @@ public final class FirebaseFirestoreSettings {
       return this;
     }
 
+    /**
+     * Sets the maximum number of write batches that are sent to the backend before the first of
+     * them is acknowledged. The default is 10.
+     *
+     * <p>A larger value speeds up uploading a large number of queued writes, for example when the
+     * client reconnects after a long time offline. Each batch is still sent in a request of its
+     * own unless write coalescing is enabled with {@link #setWriteCoalescingEnabled}.
+     *
+     * @return A settings object on which the maximum number of pending writes is configured as
+     *     specified by the given {@code value}.
+     */
+    @NonNull
+    public Builder setMaxPendingWrites(int value) {
+      if (value < 1) {
+        throw new IllegalArgumentException("Max pending writes must be at least 1");
+      }
+      this.maxPendingWrites = value;
+      return this;
+    }
+
+    /**
+     * Enables or disables write coalescing. The default is disabled.
+     *
+     * <p>When enabled, adjacent write batches that write to distinct documents may be committed by
+     * the backend in a single request. Each batch is still acknowledged separately and in order,
+     * but Security Rules are evaluated for the combined request, so a batch may be rejected for
+     * reads or limits that span the other batches in the request.
+     *
+     * @return A settings object that coalesces writes as specified by the given {@code value}.
+     */
+    @NonNull
+    public Builder setWriteCoalescingEnabled(boolean value) {
+      this.writeCoalescingEnabled = value;
+      return this;
+    }
+
+    /**
+     * Enables or disables buffering for queries with a limit. The default is disabled.
+     *
+     * <p>When enabled, snapshot listeners for queries with a limit keep the documents that follow
+     * the limit in memory, up to the limit or 100 documents, whichever is smaller. Documents that are removed from the limit or move out of it are
+     * then replaced without re-running the query against the local cache, which speeds up
+     * listeners whose results change frequently.
+     *
+     * @return A settings object that buffers limit queries as specified by the given {@code
+     *     value}.
+     */
+    @NonNull
+    public Builder setLimitQueryBufferEnabled(boolean value) {
+      this.limitQueryBufferEnabled = value;
+      return this;
+    }
+
     /** @return the host of the Cloud Firestore backend. */
     @NonNull
     public String getHost() {
@@ -137,6 +200,21 @@ public final class FirebaseFirestoreSettings {
       return cacheSizeBytes;
     }
 
+    /** @return the maximum number of write batches that are sent before one is acknowledged. */
+    public int getMaxPendingWrites() {
+      return maxPendingWrites;
+    }
+
+    /** @return boolean indicating whether write coalescing is enabled or not. */
+    public boolean isWriteCoalescingEnabled() {
+      return writeCoalescingEnabled;
+    }
+
+    /** @return boolean indicating whether limit queries are buffered or not. */
+    public boolean isLimitQueryBufferEnabled() {
+      return limitQueryBufferEnabled;
+    }
+
     @NonNull
     public FirebaseFirestoreSettings build() {
       if (!this.sslEnabled && this.host.equals(DEFAULT_HOST)) {
@@ -151,6 +229,9 @@ public final class FirebaseFirestoreSettings {
   private final boolean sslEnabled;
   private final boolean persistenceEnabled;
   private final long cacheSizeBytes;
+  private final int maxPendingWrites;
+  private final boolean writeCoalescingEnabled;
+  private final boolean limitQueryBufferEnabled;
 
   /** Constructs a {@code FirebaseFirestoreSettings} object based on the values in the Builder. */
   private FirebaseFirestoreSettings(Builder builder) {
@@ -158,6 +239,9 @@ public final class FirebaseFirestoreSettings {
     sslEnabled = builder.sslEnabled;
     persistenceEnabled = builder.persistenceEnabled;
     cacheSizeBytes = builder.cacheSizeBytes;
+    maxPendingWrites = builder.maxPendingWrites;
+    writeCoalescingEnabled = builder.writeCoalescingEnabled;
+    limitQueryBufferEnabled = builder.limitQueryBufferEnabled;
   }
 
   @Override
@@ -173,7 +257,10 @@ public final class FirebaseFirestoreSettings {
     return host.equals(that.host)
         && sslEnabled == that.sslEnabled
         && persistenceEnabled == that.persistenceEnabled
-        && cacheSizeBytes == that.cacheSizeBytes;
+        && cacheSizeBytes == that.cacheSizeBytes
+        && maxPendingWrites == that.maxPendingWrites
+        && writeCoalescingEnabled == that.writeCoalescingEnabled
+        && limitQueryBufferEnabled == that.limitQueryBufferEnabled;
   }
 
   @Override
@@ -182,6 +269,9 @@ public final class FirebaseFirestoreSettings {
     result = 31 * result + (sslEnabled ? 1 : 0);
     result = 31 * result + (persistenceEnabled ? 1 : 0);
     result = 31 * result + (int) cacheSizeBytes;
+    result = 31 * result + maxPendingWrites;
+    result = 31 * result + (writeCoalescingEnabled ? 1 : 0);
+    result = 31 * result + (limitQueryBufferEnabled ? 1 : 0);
     return result;
   }
 
@@ -197,6 +287,12 @@ public final class FirebaseFirestoreSettings {
         + persistenceEnabled
         + ", cacheSizeBytes="
         + cacheSizeBytes
+        + ", maxPendingWrites="
+        + maxPendingWrites
+        + ", writeCoalescingEnabled="
+        + writeCoalescingEnabled
+        + ", limitQueryBufferEnabled="
+        + limitQueryBufferEnabled
         + "}";
   }
 
@@ -223,4 +319,27 @@ public final class FirebaseFirestoreSettings {
   public long getCacheSizeBytes() {
     return cacheSizeBytes;
   }
+
+  /**
+   * Returns the maximum number of write batches that are sent to the backend before the first of
+   * them is acknowledged.
+   */
+  public int getMaxPendingWrites() {
+    return maxPendingWrites;
+  }
+
+  /**
+   * Returns whether adjacent write batches may be committed by the backend in a single request.
+   */
+  public boolean isWriteCoalescingEnabled() {
+    return writeCoalescingEnabled;
+  }
+
+  /**
+   * Returns whether snapshot listeners for queries with a limit keep the documents that follow the
+   * limit in memory.
+   */
+  public boolean isLimitQueryBufferEnabled() {
+    return limitQueryBufferEnabled;
+  }
 }
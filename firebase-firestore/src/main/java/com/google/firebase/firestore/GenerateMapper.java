@@ -0,0 +1,34 @@
+// Copyright 2021 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a POJO class for which the Cloud Firestore mapper annotation processor generates a {@link
+ * GeneratedMapper}. The generated mapper reads and writes the class's properties without
+ * reflection, which speeds up {@link DocumentSnapshot#toObject(Class)}, {@link
+ * QuerySnapshot#toObjects(Class)} and writes of the class.
+ *
+ * <p>Properties that the generated mapper cannot access (for example, private setters or fields)
+ * are still read and written using reflection. Classes that are annotated but were not processed
+ * are mapped using reflection only.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.TYPE})
+public @interface GenerateMapper {}
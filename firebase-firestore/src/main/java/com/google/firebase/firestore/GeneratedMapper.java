@@ -0,0 +1,51 @@
+// Copyright 2021 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import java.util.Set;
+
+/**
+ * Reads and writes the properties of a class annotated with {@link GenerateMapper}.
+ *
+ * <p>Implementations are generated by the Cloud Firestore mapper annotation processor and are named
+ * {@code FirestoreMapper_<ClassName>}. They should not be implemented by hand. Property names follow
+ * the same rules as for reflection-based mapping, including {@link PropertyName}.
+ *
+ * @param <T> The type of the mapped class.
+ */
+public interface GeneratedMapper<T> {
+  /** Creates a new instance of the mapped class using its no-argument constructor. */
+  @NonNull
+  T newInstance();
+
+  /** Returns the names of the properties that can be read with {@link #get}. */
+  @NonNull
+  Set<String> getReadableProperties();
+
+  /** Returns the names of the properties that can be written with {@link #set}. */
+  @NonNull
+  Set<String> getWritableProperties();
+
+  /** Returns the value of the given readable property. */
+  @Nullable
+  Object get(@NonNull T object, @NonNull String property);
+
+  /**
+   * Sets the given writable property. The value has already been converted to the property's type.
+   */
+  void set(@NonNull T object, @NonNull String property, @Nullable Object value);
+}
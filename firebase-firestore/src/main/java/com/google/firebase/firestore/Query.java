@@ -1101,6 +1101,25 @@ public class Query {
         Executors.DEFAULT_CALLBACK_EXECUTOR, internalOptions(metadataChanges), activity, listener);
   }
 
+  /**
+   * Starts listening to this query with the given options.
+   *
+   * @param options Sets the metadata changes, executor, Activity scope and coalescing interval of
+   *     the listener.
+   * @param listener The event listener that will be called with the snapshots.
+   * @return A registration object that can be used to remove the listener.
+   */
+  @NonNull
+  public ListenerRegistration addSnapshotListener(
+      @NonNull SnapshotListenOptions options, @NonNull EventListener<QuerySnapshot> listener) {
+    checkNotNull(options, "Provided options must not be null.");
+    checkNotNull(listener, "Provided EventListener must not be null.");
+    ListenOptions internalOptions = internalOptions(options.getMetadataChanges());
+    internalOptions.coalescingIntervalMs = options.getCoalescingIntervalMillis();
+    return addSnapshotListenerInternal(
+        options.getExecutor(), internalOptions, options.getActivity(), listener);
+  }
+
   /**
    * Internal helper method to create add a snapshot listener.
    *
@@ -20,10 +20,17 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import com.google.firebase.firestore.core.ViewSnapshot;
 import com.google.firebase.firestore.model.Document;
+import com.google.firebase.firestore.util.CustomClassMapper;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * A {@code QuerySnapshot} contains the results of a query. It can contain zero or more {@link
@@ -35,6 +42,13 @@ import java.util.List;
  */
 public class QuerySnapshot implements Iterable<QueryDocumentSnapshot> {
 
+  /**
+   * The minimum number of documents that {@link #toObjects(Class,
+   * DocumentSnapshot.ServerTimestampBehavior, Executor)} converts in a single task. Smaller chunks
+   * are not worth the overhead of scheduling them.
+   */
+  private static final int MIN_DOCUMENTS_PER_CONVERSION_CHUNK = 100;
+
   private final Query originalQuery;
 
   private final ViewSnapshot snapshot;
@@ -179,13 +193,115 @@ public class QuerySnapshot implements Iterable<QueryDocumentSnapshot> {
       @NonNull Class<T> clazz,
       @NonNull DocumentSnapshot.ServerTimestampBehavior serverTimestampBehavior) {
     checkNotNull(clazz, "Provided POJO type must not be null.");
-    List<T> res = new ArrayList<>();
-    for (DocumentSnapshot d : this) {
-      res.add(d.toObject(clazz, serverTimestampBehavior));
+    checkNotNull(
+        serverTimestampBehavior, "Provided serverTimestampBehavior value must not be null.");
+    UserDataWriter userDataWriter = new UserDataWriter(firestore, serverTimestampBehavior);
+    List<T> res = new ArrayList<>(snapshot.getDocuments().size());
+    for (Document doc : snapshot.getDocuments()) {
+      res.add(convertToObject(doc, clazz, userDataWriter));
     }
     return res;
   }
 
+  /**
+   * Returns the contents of the documents in the {@code QuerySnapshot}, converted to the provided
+   * class, as a list.
+   *
+   * <p>Large results are split into chunks that are converted concurrently using the provided
+   * executor, while small results are converted on the calling thread. This method blocks until
+   * all documents have been converted. The calling thread converts any chunk that the executor has
+   * not started yet, so it is safe to pass an executor that runs tasks on the calling thread. The
+   * provided class must not rely on its constructor or setters being invoked on a particular
+   * thread.
+   *
+   * @param clazz The POJO type used to convert the documents in the list.
+   * @param serverTimestampBehavior Configures the behavior for server timestamps that have not yet
+   *     been set to their final value.
+   * @param executor The executor used to convert chunks of documents concurrently.
+   */
+  @NonNull
+  public <T> List<T> toObjects(
+      @NonNull Class<T> clazz,
+      @NonNull DocumentSnapshot.ServerTimestampBehavior serverTimestampBehavior,
+      @NonNull Executor executor) {
+    checkNotNull(clazz, "Provided POJO type must not be null.");
+    checkNotNull(
+        serverTimestampBehavior, "Provided serverTimestampBehavior value must not be null.");
+    checkNotNull(executor, "Provided executor must not be null.");
+
+    List<Document> documents = snapshot.getDocuments().toList();
+    int chunkCount =
+        Math.min(
+            Runtime.getRuntime().availableProcessors(),
+            documents.size() / MIN_DOCUMENTS_PER_CONVERSION_CHUNK);
+    if (chunkCount <= 1) {
+      return toObjects(clazz, serverTimestampBehavior);
+    }
+
+    UserDataWriter userDataWriter = new UserDataWriter(firestore, serverTimestampBehavior);
+    List<T> res = new ArrayList<>(Collections.nCopies(documents.size(), null));
+    int chunkSize = (documents.size() + chunkCount - 1) / chunkCount;
+    AtomicInteger nextChunk = new AtomicInteger();
+    CountDownLatch pendingChunks = new CountDownLatch(chunkCount);
+    AtomicReference<RuntimeException> error = new AtomicReference<>();
+
+    // Chunks are claimed by whichever thread gets to them first. The calling thread converts every
+    // chunk that has not been claimed by the executor, so it only ever waits for chunks that are
+    // already being converted on another thread. This avoids a deadlock if the executor runs its
+    // tasks on the calling thread, for example when it posts to the caller's Looper.
+    Runnable convertChunks =
+        () -> {
+          int chunk;
+          while ((chunk = nextChunk.getAndIncrement()) < chunkCount) {
+            int chunkStart = Math.min(chunk * chunkSize, documents.size());
+            int chunkEnd = Math.min(chunkStart + chunkSize, documents.size());
+            try {
+              for (int i = chunkStart; i < chunkEnd; ++i) {
+                res.set(i, convertToObject(documents.get(i), clazz, userDataWriter));
+              }
+            } catch (RuntimeException e) {
+              error.compareAndSet(null, e);
+            } finally {
+              pendingChunks.countDown();
+            }
+          }
+        };
+
+    for (int i = 1; i < chunkCount; ++i) {
+      try {
+        executor.execute(convertChunks);
+      } catch (RejectedExecutionException e) {
+        break;
+      }
+    }
+    convertChunks.run();
+
+    boolean interrupted = false;
+    while (true) {
+      try {
+        pendingChunks.await();
+        break;
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+
+    if (error.get() != null) {
+      throw error.get();
+    }
+    return res;
+  }
+
+  private <T> T convertToObject(Document document, Class<T> clazz, UserDataWriter userDataWriter) {
+    Map<String, Object> data =
+        userDataWriter.convertObjectLazily(document.getData().getFieldsMap());
+    return CustomClassMapper.convertToCustomClass(
+        data, clazz, new DocumentReference(document.getKey(), firestore));
+  }
+
   private QueryDocumentSnapshot convertDocument(Document document) {
     return QueryDocumentSnapshot.fromDocument(
         firestore,
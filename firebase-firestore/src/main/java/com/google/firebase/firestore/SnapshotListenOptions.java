@@ -0,0 +1,149 @@
+// Copyright 2021 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore;
+
+import static com.google.firebase.firestore.util.Preconditions.checkNotNull;
+
+import android.app.Activity;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import com.google.firebase.firestore.util.Executors;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Options to configure the behavior of a snapshot listener that is added with {@link
+ * Query#addSnapshotListener(SnapshotListenOptions, EventListener)}.
+ */
+public final class SnapshotListenOptions {
+  private final MetadataChanges metadataChanges;
+  private final Executor executor;
+  @Nullable private final Activity activity;
+  private final long coalescingIntervalMs;
+
+  /** A Builder for creating {@code SnapshotListenOptions}. */
+  public static final class Builder {
+    private MetadataChanges metadataChanges;
+    private Executor executor;
+    @Nullable private Activity activity;
+    private long coalescingIntervalMs;
+
+    /** Constructs a new {@code SnapshotListenOptions} Builder object. */
+    public Builder() {
+      metadataChanges = MetadataChanges.EXCLUDE;
+      executor = Executors.DEFAULT_CALLBACK_EXECUTOR;
+      activity = null;
+      coalescingIntervalMs = 0;
+    }
+
+    /**
+     * Sets whether metadata-only changes (i.e. only {@code QuerySnapshot.getMetadata()} changed)
+     * should trigger snapshot events. The default is {@link MetadataChanges#EXCLUDE}.
+     *
+     * @return This builder.
+     */
+    @NonNull
+    public Builder setMetadataChanges(@NonNull MetadataChanges metadataChanges) {
+      this.metadataChanges =
+          checkNotNull(metadataChanges, "Provided MetadataChanges value must not be null.");
+      return this;
+    }
+
+    /**
+     * Sets the executor to use to call the listener. The default is to call the listener on the
+     * main thread.
+     *
+     * @return This builder.
+     */
+    @NonNull
+    public Builder setExecutor(@NonNull Executor executor) {
+      this.executor = checkNotNull(executor, "Provided executor must not be null.");
+      return this;
+    }
+
+    /**
+     * Scopes the listener to the given Activity. The listener will be automatically removed during
+     * {@link Activity#onStop}.
+     *
+     * @return This builder.
+     */
+    @NonNull
+    public Builder setActivity(@NonNull Activity activity) {
+      this.activity = checkNotNull(activity, "Provided activity must not be null.");
+      return this;
+    }
+
+    /**
+     * Sets the minimum time between two snapshot events. The default is 0, which raises an event
+     * for every change.
+     *
+     * <p>If changes arrive before the interval has elapsed since the last event, they are merged
+     * into a single snapshot that is raised once the interval elapses. The merged snapshot contains
+     * the combined document changes since the last event, so a document that was added and then
+     * removed within the interval does not show up at all. This reduces the number of events that
+     * an app has to process when many changes arrive in a short time.
+     *
+     * <p>Snapshots-in-sync listeners do not wait for merged snapshots to be raised.
+     *
+     * @param interval The minimum time between two events.
+     * @param unit The time unit of {@code interval}.
+     * @return This builder.
+     */
+    @NonNull
+    public Builder setCoalescingInterval(long interval, @NonNull TimeUnit unit) {
+      checkNotNull(unit, "Provided TimeUnit must not be null.");
+      if (interval < 0) {
+        throw new IllegalArgumentException("Coalescing interval must not be negative");
+      }
+      this.coalescingIntervalMs = unit.toMillis(interval);
+      return this;
+    }
+
+    @NonNull
+    public SnapshotListenOptions build() {
+      return new SnapshotListenOptions(this);
+    }
+  }
+
+  private SnapshotListenOptions(Builder builder) {
+    metadataChanges = builder.metadataChanges;
+    executor = builder.executor;
+    activity = builder.activity;
+    coalescingIntervalMs = builder.coalescingIntervalMs;
+  }
+
+  /** @return Whether metadata-only changes trigger snapshot events. */
+  @NonNull
+  public MetadataChanges getMetadataChanges() {
+    return metadataChanges;
+  }
+
+  /** @return The executor that is used to call the listener. */
+  @NonNull
+  public Executor getExecutor() {
+    return executor;
+  }
+
+  /** @return The Activity that the listener is scoped to, or {@code null} if none is set. */
+  @Nullable
+  public Activity getActivity() {
+    return activity;
+  }
+
+  /** @return The minimum time between two snapshot events, in milliseconds. */
+  public long getCoalescingIntervalMillis() {
+    return coalescingIntervalMs;
+  }
+}
@@ -35,13 +35,20 @@ import androidx.annotation.VisibleForTesting;
 import com.google.firebase.Timestamp;
 import com.google.firebase.firestore.model.DatabaseId;
 import com.google.firebase.firestore.model.DocumentKey;
+import com.google.firebase.firestore.util.CustomClassMapper;
 import com.google.firebase.firestore.util.Logger;
 import com.google.firestore.v1.ArrayValue;
 import com.google.firestore.v1.Value;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Set;
 
 /**
  * Converts Firestore's internal types to the Java API types that we expose to the user.
@@ -102,6 +109,29 @@ public class UserDataWriter {
     return result;
   }
 
+  /**
+   * Returns a read-only view of the given fields that converts each value when it is accessed.
+   *
+   * <p>Unlike {@link #convertObject}, this does not copy the document into a tree of {@code
+   * HashMap}s, and fields that are never read are never converted. Values are converted again
+   * every time they are accessed, so the view should only be read once, e.g. by {@link
+   * CustomClassMapper}.
+   */
+  Map<String, Object> convertObjectLazily(Map<String, Value> mapValue) {
+    return new LazyObject(mapValue);
+  }
+
+  private Object convertValueLazily(Value value) {
+    switch (typeOrder(value)) {
+      case TYPE_ORDER_MAP:
+        return new LazyObject(value.getMapValue().getFieldsMap());
+      case TYPE_ORDER_ARRAY:
+        return new LazyArray(value.getArrayValue());
+      default:
+        return convertValue(value);
+    }
+  }
+
   private Object convertServerTimestamp(Value serverTimestampValue) {
     switch (serverTimestampBehavior) {
       case PREVIOUS:
@@ -148,4 +178,127 @@ public class UserDataWriter {
     }
     return new DocumentReference(key, firestore);
   }
+
+  /** A read-only map view whose values are converted when they are accessed. */
+  private class LazyObject extends AbstractMap<String, Object>
+      implements CustomClassMapper.LazyValue {
+    private final Map<String, Value> fields;
+
+    LazyObject(Map<String, Value> fields) {
+      this.fields = fields;
+    }
+
+    @Override
+    public int size() {
+      return fields.size();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+      return fields.containsKey(key);
+    }
+
+    @Override
+    public Object get(Object key) {
+      Value value = fields.get(key);
+      return value == null ? null : convertValueLazily(value);
+    }
+
+    @Override
+    public Set<Map.Entry<String, Object>> entrySet() {
+      return new AbstractSet<Map.Entry<String, Object>>() {
+        @Override
+        public Iterator<Map.Entry<String, Object>> iterator() {
+          Iterator<Map.Entry<String, Value>> it = fields.entrySet().iterator();
+          return new Iterator<Map.Entry<String, Object>>() {
+            @Override
+            public boolean hasNext() {
+              return it.hasNext();
+            }
+
+            @Override
+            public Map.Entry<String, Object> next() {
+              return new LazyEntry(it.next());
+            }
+          };
+        }
+
+        @Override
+        public int size() {
+          return fields.size();
+        }
+      };
+    }
+
+    @Override
+    public Object toPlainJavaTypes() {
+      return convertObject(fields);
+    }
+  }
+
+  /** A map entry whose value is converted when it is accessed. */
+  private class LazyEntry implements Map.Entry<String, Object> {
+    private final Map.Entry<String, Value> entry;
+
+    LazyEntry(Map.Entry<String, Value> entry) {
+      this.entry = entry;
+    }
+
+    @Override
+    public String getKey() {
+      return entry.getKey();
+    }
+
+    @Override
+    public Object getValue() {
+      return convertValueLazily(entry.getValue());
+    }
+
+    @Override
+    public Object setValue(Object value) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Map.Entry)) {
+        return false;
+      }
+      Map.Entry<?, ?> other = (Map.Entry<?, ?>) o;
+      Object value = getValue();
+      return getKey().equals(other.getKey())
+          && (value == null ? other.getValue() == null : value.equals(other.getValue()));
+    }
+
+    @Override
+    public int hashCode() {
+      Object value = getValue();
+      return getKey().hashCode() ^ (value == null ? 0 : value.hashCode());
+    }
+  }
+
+  /** A read-only list view whose elements are converted when they are accessed. */
+  private class LazyArray extends AbstractList<Object>
+      implements RandomAccess, CustomClassMapper.LazyValue {
+    private final ArrayValue arrayValue;
+
+    LazyArray(ArrayValue arrayValue) {
+      this.arrayValue = arrayValue;
+    }
+
+    @Override
+    public Object get(int index) {
+      return convertValueLazily(arrayValue.getValues(index));
+    }
+
+    @Override
+    public int size() {
+      return arrayValue.getValuesCount();
+    }
+
+    @Override
+    public Object toPlainJavaTypes() {
+      return convertArray(arrayValue);
+    }
+  }
 }
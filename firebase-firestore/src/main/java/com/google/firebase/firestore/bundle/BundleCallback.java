@@ -25,10 +25,16 @@ public interface BundleCallback {
   /**
    * Applies the documents from a bundle to the "ground-state" (remote) documents.
    *
+   * <p>The documents of a bundle may be applied in several chunks, each of which results in a
+   * separate call. {@code isFirstChunk} is set for the first call of each bundle load, so that
+   * state from a previous load of the same bundle can be replaced.
+   *
    * <p>LocalDocuments are re-calculated if there are remaining mutations in the queue.
    */
   ImmutableSortedMap<DocumentKey, Document> applyBundledDocuments(
-      ImmutableSortedMap<DocumentKey, MutableDocument> documents, String bundleId);
+      ImmutableSortedMap<DocumentKey, MutableDocument> documents,
+      String bundleId,
+      boolean isFirstChunk);
 
   /** Saves the given NamedQuery to local persistence. */
   void saveNamedQuery(NamedQuery namedQuery, ImmutableSortedSet<DocumentKey> documentKeys);
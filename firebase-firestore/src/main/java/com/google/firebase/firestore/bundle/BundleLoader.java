@@ -17,6 +17,7 @@ package com.google.firebase.firestore.bundle;
 import static com.google.firebase.firestore.model.DocumentCollections.emptyMutableDocumentMap;
 
 import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 import com.google.firebase.database.collection.ImmutableSortedMap;
 import com.google.firebase.database.collection.ImmutableSortedSet;
 import com.google.firebase.firestore.LoadBundleTaskProgress;
@@ -32,23 +33,57 @@ import java.util.Map;
 /**
  * A class to process the elements from a bundle, load them into local storage and provide progress
  * update while loading.
+ *
+ * <p>Documents are applied to local storage in chunks, so that the memory needed to load a bundle
+ * does not grow with the size of the bundle. Callers should invoke {@link #applyCompletedChunk()}
+ * after each element and {@link #applyChanges()} once all elements have been added.
+ *
+ * <p>Loading a bundle is therefore not atomic. If loading fails after a chunk was applied, the
+ * documents of that chunk remain in the cache. Each of them is a valid document as of its read
+ * time, so the cache stays consistent. The named queries and the bundle metadata are only saved
+ * by {@link #applyChanges()}, which means that a failed bundle is not marked as loaded and is
+ * applied again in full when it is loaded the next time.
  */
 public class BundleLoader {
+  /** The maximum number of documents that are held in memory before they are applied. */
+  private static final int MAX_DOCUMENTS_PER_CHUNK = 1000;
+
+  /** The maximum number of bundle bytes that are held in memory before they are applied. */
+  private static final long MAX_BYTES_PER_CHUNK = 4 * 1024 * 1024;
+
   private final BundleCallback bundleCallback;
   private final BundleMetadata bundleMetadata;
   private final List<NamedQuery> queries;
-  private final Map<DocumentKey, BundledDocumentMetadata> documentsMetadata;
+  private final Map<String, ImmutableSortedSet<DocumentKey>> queryDocumentMap;
+  private final int maxDocumentsPerChunk;
+  private final long maxBytesPerChunk;
+
+  /** The documents that have been loaded but not yet applied to local storage. */
+  private ImmutableSortedMap<DocumentKey, MutableDocument> pendingDocuments;
 
-  private ImmutableSortedMap<DocumentKey, MutableDocument> documents;
+  private long pendingBytes;
+  private boolean appliedFirstChunk;
+  private int documentsLoaded;
   private long bytesLoaded;
   @Nullable private DocumentKey currentDocument;
 
   public BundleLoader(BundleCallback bundleCallback, BundleMetadata bundleMetadata) {
+    this(bundleCallback, bundleMetadata, MAX_DOCUMENTS_PER_CHUNK, MAX_BYTES_PER_CHUNK);
+  }
+
+  @VisibleForTesting
+  BundleLoader(
+      BundleCallback bundleCallback,
+      BundleMetadata bundleMetadata,
+      int maxDocumentsPerChunk,
+      long maxBytesPerChunk) {
     this.bundleCallback = bundleCallback;
     this.bundleMetadata = bundleMetadata;
     this.queries = new ArrayList<>();
-    this.documents = emptyMutableDocumentMap();
-    this.documentsMetadata = new HashMap<>();
+    this.queryDocumentMap = new HashMap<>();
+    this.maxDocumentsPerChunk = maxDocumentsPerChunk;
+    this.maxBytesPerChunk = maxBytesPerChunk;
+    this.pendingDocuments = emptyMutableDocumentMap();
   }
 
   /**
@@ -61,20 +96,18 @@ public class BundleLoader {
     Preconditions.checkArgument(
         !(bundleElement instanceof BundleMetadata), "Unexpected bundle metadata element.");
 
-    int beforeDocumentCount = documents.size();
+    int beforeDocumentCount = documentsLoaded;
 
     if (bundleElement instanceof NamedQuery) {
       queries.add((NamedQuery) bundleElement);
     } else if (bundleElement instanceof BundledDocumentMetadata) {
       BundledDocumentMetadata bundledDocumentMetadata = (BundledDocumentMetadata) bundleElement;
-      documentsMetadata.put(bundledDocumentMetadata.getKey(), bundledDocumentMetadata);
+      addToQueryDocumentMap(bundledDocumentMetadata);
       currentDocument = bundledDocumentMetadata.getKey();
       if (!((BundledDocumentMetadata) bundleElement).exists()) {
-        documents =
-            documents.insert(
-                bundledDocumentMetadata.getKey(),
-                MutableDocument.newNoDocument(
-                    bundledDocumentMetadata.getKey(), bundledDocumentMetadata.getReadTime()));
+        addDocument(
+            MutableDocument.newNoDocument(
+                bundledDocumentMetadata.getKey(), bundledDocumentMetadata.getReadTime()));
         currentDocument = null;
       }
     } else if (bundleElement instanceof BundleDocument) {
@@ -83,15 +116,16 @@ public class BundleLoader {
         throw new IllegalArgumentException(
             "The document being added does not match the stored metadata.");
       }
-      documents = documents.insert(bundleDocument.getKey(), bundleDocument.getDocument());
+      addDocument(bundleDocument.getDocument());
       currentDocument = null;
     }
 
     bytesLoaded += byteSize;
+    pendingBytes += byteSize;
 
-    return beforeDocumentCount != documents.size()
+    return beforeDocumentCount != documentsLoaded
         ? new LoadBundleTaskProgress(
-            documents.size(),
+            documentsLoaded,
             bundleMetadata.getTotalDocuments(),
             bytesLoaded,
             bundleMetadata.getTotalBytes(),
@@ -100,24 +134,38 @@ public class BundleLoader {
         : null;
   }
 
-  /** Applies the loaded documents and queries to local store. Returns the document view changes. */
+  /**
+   * Applies the pending documents to local store if they exceed the size of a chunk. Returns the
+   * document view changes, or null if no documents were applied.
+   */
+  public @Nullable ImmutableSortedMap<DocumentKey, Document> applyCompletedChunk() {
+    if (pendingDocuments.size() < maxDocumentsPerChunk && pendingBytes < maxBytesPerChunk) {
+      return null;
+    }
+    return applyPendingDocuments();
+  }
+
+  /**
+   * Applies the remaining documents and the queries to local store. Returns the document view
+   * changes for the documents that were not applied as part of a previous chunk.
+   */
   public ImmutableSortedMap<DocumentKey, Document> applyChanges() {
     Preconditions.checkArgument(
         currentDocument == null,
         "Bundled documents end with a document metadata element instead of a document.");
     Preconditions.checkArgument(bundleMetadata.getBundleId() != null, "Bundle ID must be set");
     Preconditions.checkArgument(
-        documents.size() == bundleMetadata.getTotalDocuments(),
+        documentsLoaded == bundleMetadata.getTotalDocuments(),
         "Expected %s documents, but loaded %s.",
         bundleMetadata.getTotalDocuments(),
-        documents.size());
+        documentsLoaded);
 
-    ImmutableSortedMap<DocumentKey, Document> changes =
-        bundleCallback.applyBundledDocuments(documents, bundleMetadata.getBundleId());
+    ImmutableSortedMap<DocumentKey, Document> changes = applyPendingDocuments();
 
-    Map<String, ImmutableSortedSet<DocumentKey>> queryDocumentMap = getQueryDocumentMapping();
     for (NamedQuery namedQuery : queries) {
-      bundleCallback.saveNamedQuery(namedQuery, queryDocumentMap.get(namedQuery.getName()));
+      ImmutableSortedSet<DocumentKey> matchingKeys = queryDocumentMap.get(namedQuery.getName());
+      bundleCallback.saveNamedQuery(
+          namedQuery, matchingKeys != null ? matchingKeys : DocumentKey.emptyKeySet());
     }
 
     bundleCallback.saveBundle(bundleMetadata);
@@ -125,18 +173,28 @@ public class BundleLoader {
     return changes;
   }
 
-  private Map<String, ImmutableSortedSet<DocumentKey>> getQueryDocumentMapping() {
-    Map<String, ImmutableSortedSet<DocumentKey>> queryDocumentMap = new HashMap<>();
-    for (NamedQuery namedQuery : queries) {
-      queryDocumentMap.put(namedQuery.getName(), DocumentKey.emptyKeySet());
-    }
-    for (BundledDocumentMetadata metadata : documentsMetadata.values()) {
-      for (String query : metadata.getQueries()) {
-        ImmutableSortedSet<DocumentKey> matchingKeys = queryDocumentMap.get(query);
-        queryDocumentMap.put(query, matchingKeys.insert(metadata.getKey()));
+  private void addDocument(MutableDocument document) {
+    pendingDocuments = pendingDocuments.insert(document.getKey(), document);
+    ++documentsLoaded;
+  }
+
+  private ImmutableSortedMap<DocumentKey, Document> applyPendingDocuments() {
+    ImmutableSortedMap<DocumentKey, Document> changes =
+        bundleCallback.applyBundledDocuments(
+            pendingDocuments, bundleMetadata.getBundleId(), /* isFirstChunk= */ !appliedFirstChunk);
+    appliedFirstChunk = true;
+    pendingDocuments = emptyMutableDocumentMap();
+    pendingBytes = 0;
+    return changes;
+  }
+
+  private void addToQueryDocumentMap(BundledDocumentMetadata metadata) {
+    for (String query : metadata.getQueries()) {
+      ImmutableSortedSet<DocumentKey> matchingKeys = queryDocumentMap.get(query);
+      if (matchingKeys == null) {
+        matchingKeys = DocumentKey.emptyKeySet();
       }
+      queryDocumentMap.put(query, matchingKeys.insert(metadata.getKey()));
     }
-
-    return queryDocumentMap;
   }
 }
@@ -16,39 +16,50 @@ package com.google.firebase.firestore.bundle;
 
 import androidx.annotation.Nullable;
 import com.google.firebase.firestore.util.Logger;
-import java.io.ByteArrayOutputStream;
+import com.google.protobuf.CodedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 /**
- * Reads the length-prefixed JSON stream for Bundles.
+ * Reads the length-prefixed stream for Bundles.
  *
  * <p>The class takes a bundle stream and presents abstractions to read bundled elements out of the
- * underlying content.
+ * underlying content. Elements are read directly from the stream into an internal buffer that is
+ * reused between elements, so that only a single element is held in memory at a time.
+ *
+ * <p>Bundles are either a stream of JSON elements that are each prefixed with their length as an
+ * ASCII string, or a stream of binary {@code BundleElement} protos that are each prefixed with
+ * their length as a varint. Binary bundles start with {@link #BINARY_FORMAT_HEADER}, which can
+ * never be the first byte of a JSON bundle.
  */
 public class BundleReader {
   /** The capacity for the internal char buffer. */
   protected static final int BUFFER_CAPACITY = 1024;
 
+  /** The first byte of a bundle that uses the binary format. */
+  public static final byte BINARY_FORMAT_HEADER = 0x01;
+
+  /** The maximum number of bytes in a varint that encodes a 32-bit length. */
+  private static final int MAX_VARINT_BYTE_COUNT = 5;
+
   private static final Charset UTF8_CHARSET = Charset.forName("UTF-8");
 
   private final BundleSerializer serializer;
   private final InputStream bundleInputStream;
-  private final InputStreamReader dataReader;
 
   @Nullable BundleMetadata metadata;
   private ByteBuffer buffer;
   long bytesRead;
+  private boolean formatDetected;
+  private boolean binaryFormat;
 
   public BundleReader(BundleSerializer serializer, InputStream bundleInputStream) {
     this.serializer = serializer;
     this.bundleInputStream = bundleInputStream;
-    this.dataReader = new InputStreamReader(this.bundleInputStream);
     buffer = ByteBuffer.allocate(BUFFER_CAPACITY);
 
     buffer.flip(); // Start the buffer in "reading mode"
@@ -59,6 +70,7 @@ public class BundleReader {
     if (metadata != null) {
       return metadata;
     }
+    detectFormat();
     BundleElement element = readNextElement();
     if (!(element instanceof BundleMetadata)) {
       throw abort("Expected first element in bundle to be a metadata object");
@@ -90,9 +102,29 @@ public class BundleReader {
     bundleInputStream.close();
   }
 
+  /**
+   * Determines whether the bundle uses the binary format by checking for {@link
+   * #BINARY_FORMAT_HEADER}, and drops the header from the internal buffer.
+   */
+  private void detectFormat() throws IOException {
+    if (formatDetected) {
+      return;
+    }
+    formatDetected = true;
+
+    if (buffer.remaining() == 0 && !pullMoreData()) {
+      return;
+    }
+
+    if (buffer.get(buffer.position()) == BINARY_FORMAT_HEADER) {
+      binaryFormat = true;
+      buffer.get();
+    }
+  }
+
   /**
    * Reads from the head of internal buffer, Pulls more data from underlying stream until a complete
-   * element is found (including the prefixed length and the JSON string).
+   * element is found (including the prefixed length and the encoded element).
    *
    * <p>Once a complete element is read, it is dropped from internal buffer.
    *
@@ -100,24 +132,51 @@ public class BundleReader {
    */
   @Nullable
   private BundleElement readNextElement() throws IOException, JSONException {
-    String lengthPrefix = readLengthPrefix();
-    if (lengthPrefix == null) {
+    return binaryFormat ? readNextBinaryElement() : readNextJsonElement();
+  }
+
+  @Nullable
+  private BundleElement readNextBinaryElement() throws IOException {
+    int lengthPrefixByteCount = readVarintLengthPrefix();
+    if (lengthPrefixByteCount == 0) {
       return null;
     }
 
-    int jsonStringByteCount = Integer.parseInt(lengthPrefix);
+    int elementByteCount = decodeVarintLengthPrefix(lengthPrefixByteCount);
+    checkElementFitsInBundle(lengthPrefixByteCount, elementByteCount);
+    readElementBytes(elementByteCount);
+
+    // Parse the proto straight from the internal buffer and advance its position.
+    com.google.firestore.bundle.BundleElement element =
+        com.google.firestore.bundle.BundleElement.parseFrom(
+            CodedInputStream.newInstance(
+                buffer.array(), buffer.arrayOffset() + buffer.position(), elementByteCount));
+    buffer.position(buffer.position() + elementByteCount);
+    bytesRead += lengthPrefixByteCount + elementByteCount;
+    return decodeBundleElement(element);
+  }
+
+  @Nullable
+  private BundleElement readNextJsonElement() throws IOException, JSONException {
+    int lengthPrefixByteCount = readLengthPrefix();
+    if (lengthPrefixByteCount == 0) {
+      return null;
+    }
+
+    int jsonStringByteCount = decodeLengthPrefix(lengthPrefixByteCount);
+    checkElementFitsInBundle(lengthPrefixByteCount, jsonStringByteCount);
     String json = readJsonString(jsonStringByteCount);
-    bytesRead += lengthPrefix.getBytes(UTF8_CHARSET).length + jsonStringByteCount;
+    bytesRead += lengthPrefixByteCount + jsonStringByteCount;
     return decodeBundleElement(json);
   }
 
   /**
-   * Reads the length prefix from the beginning of the internal buffer until the first '{'. Returns
-   * the integer-decoded length.
+   * Pulls data from the underlying stream until the internal buffer contains the length prefix and
+   * the '{' that follows it. Returns the number of bytes in the length prefix.
    *
-   * <p>If it reached the end of the stream, returns null.
+   * <p>If it reached the end of the stream, returns 0.
    */
-  private @Nullable String readLengthPrefix() throws IOException {
+  private int readLengthPrefix() throws IOException {
     int nextOpenBracket;
 
     while ((nextOpenBracket = indexOfOpenBracket()) == -1) {
@@ -129,7 +188,7 @@ public class BundleReader {
     // We broke out of the loop because underlying stream is closed, and there happens to be no
     // more data to process.
     if (buffer.remaining() == 0) {
-      return null;
+      return 0;
     }
 
     // We broke out of the loop because underlying stream is closed, but still cannot find an
@@ -138,54 +197,143 @@ public class BundleReader {
       throw abort("Reached the end of bundle when a length string is expected.");
     }
 
-    byte[] b = new byte[nextOpenBracket];
-    buffer.get(b);
-    return UTF8_CHARSET.decode(ByteBuffer.wrap(b)).toString();
+    if (nextOpenBracket == 0) {
+      throw abort("Expected a length string before the element.");
+    }
+
+    return nextOpenBracket;
   }
 
-  /** Returns the index of the first open bracket, or -1 if none is found. */
-  private int indexOfOpenBracket() {
-    buffer.mark();
-    try {
-      for (int i = 0; i < buffer.remaining(); ++i) {
-        if (buffer.get() == '{') {
-          return i;
-        }
+  /**
+   * Decodes the ASCII length prefix at the head of the internal buffer without going through a
+   * String, and drops it from the buffer.
+   */
+  private int decodeLengthPrefix(int byteCount) throws IOException {
+    long length = 0;
+    for (int i = 0; i < byteCount; ++i) {
+      byte digit = buffer.get();
+      if (digit < '0' || digit > '9') {
+        throw abort("Expected a length string, but found '" + (char) digit + "'.");
+      }
+      length = length * 10 + (digit - '0');
+      if (length > Integer.MAX_VALUE) {
+        throw abort("Element length exceeds the maximum supported size.");
       }
-      return -1;
-    } finally {
-      buffer.reset();
     }
+    return (int) length;
   }
 
   /**
-   * Reads from a specified position from the internal buffer, for a specified number of bytes,
-   * pulling more data from the underlying stream if needed.
+   * Pulls data from the underlying stream until the internal buffer contains a complete varint
+   * length prefix. Returns the number of bytes in the length prefix.
    *
-   * <p>Returns an object containing the Json string and its UTF8 byte count.
+   * <p>If it reached the end of the stream, returns 0.
    */
+  private int readVarintLengthPrefix() throws IOException {
+    int byteCount = 0;
+    while (true) {
+      while (buffer.remaining() <= byteCount) {
+        if (!pullMoreData()) {
+          if (byteCount == 0) {
+            return 0;
+          }
+          throw abort("Reached the end of bundle when a length prefix is expected.");
+        }
+      }
+
+      byte next = buffer.get(buffer.position() + byteCount);
+      ++byteCount;
+      if ((next & 0x80) == 0) {
+        return byteCount;
+      }
+      if (byteCount == MAX_VARINT_BYTE_COUNT) {
+        throw abort("Element length exceeds the maximum supported size.");
+      }
+    }
+  }
+
+  /**
+   * Decodes the varint length prefix at the head of the internal buffer and drops it from the
+   * buffer.
+   */
+  private int decodeVarintLengthPrefix(int byteCount) throws IOException {
+    long length = 0;
+    for (int i = 0; i < byteCount; ++i) {
+      length |= (long) (buffer.get() & 0x7F) << (7 * i);
+    }
+    if (length > Integer.MAX_VALUE) {
+      throw abort("Element length exceeds the maximum supported size.");
+    }
+    return (int) length;
+  }
+
+  /**
+   * Verifies that an element with the given length does not extend past the end of the bundle, as
+   * declared by the bundle metadata. This rejects corrupt length prefixes before any memory is
+   * allocated for the element.
+   */
+  private void checkElementFitsInBundle(int lengthPrefixByteCount, int elementByteCount)
+      throws IOException {
+    if (metadata != null
+        && bytesRead + lengthPrefixByteCount + elementByteCount > metadata.getTotalBytes()) {
+      throw abort(
+          "Element length "
+              + elementByteCount
+              + " exceeds the remaining size of the bundle ("
+              + (metadata.getTotalBytes() - bytesRead - lengthPrefixByteCount)
+              + " bytes).");
+    }
+  }
+
+  /** Returns the index of the first open bracket, or -1 if none is found. */
+  private int indexOfOpenBracket() {
+    byte[] array = buffer.array();
+    int start = buffer.arrayOffset() + buffer.position();
+    for (int i = 0; i < buffer.remaining(); ++i) {
+      if (array[start + i] == '{') {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /** Reads a JSON string of the specified number of bytes from the head of the internal buffer. */
   private String readJsonString(int bytesToRead) throws IOException {
-    ByteArrayOutputStream jsonBytes = new ByteArrayOutputStream();
+    readElementBytes(bytesToRead);
 
+    // Decode the JSON string straight from the internal buffer and advance its position.
+    String json =
+        new String(
+            buffer.array(), buffer.arrayOffset() + buffer.position(), bytesToRead, UTF8_CHARSET);
+    buffer.position(buffer.position() + bytesToRead);
+    return json;
+  }
+
+  /**
+   * Pulls data from the underlying stream until the internal buffer contains at least the specified
+   * number of bytes, starting at its current position.
+   *
+   * <p>If the element does not fit into the internal buffer, the buffer is grown as data arrives,
+   * up to the size of the element. Growing it step by step means that a corrupt length prefix
+   * fails at the end of the stream instead of allocating memory for data that does not exist. The
+   * buffer is then reused for all following elements, which avoids copying elements into temporary
+   * arrays.
+   */
+  private void readElementBytes(int bytesToRead) throws IOException {
     // Read at least `bytesToRead` number of bytes from the bundle into `this.buffer`, pulling more
     // data if necessary.
-    // Exactly `bytesToRead` number of bytes will be put in `jsonBytes` after the loop completes.
-    int remaining = bytesToRead;
-    while (remaining > 0) {
-      if (buffer.remaining() == 0 && !pullMoreData()) {
+    while (buffer.remaining() < bytesToRead) {
+      if (buffer.remaining() == buffer.capacity()) {
+        int newCapacity = (int) Math.min(bytesToRead, 2L * buffer.capacity());
+        ByteBuffer largerBuffer = ByteBuffer.allocate(newCapacity);
+        largerBuffer.put(buffer);
+        largerBuffer.flip();
+        buffer = largerBuffer;
+      }
+      if (!pullMoreData()) {
         throw abort("Reached the end of bundle when more data was expected.");
       }
-
-      // `read` is the number of bytes guaranteed to exist in `this.buffer` after the above
-      // call to `pullMoreData`. Copy them to `jsonBytes` and advance `this.buffer`'s position.
-      int read = Math.min(remaining, buffer.remaining());
-      jsonBytes.write(buffer.array(), buffer.arrayOffset() + buffer.position(), read);
-      buffer.position(buffer.position() + read);
-
-      remaining -= read;
     }
-
-    return jsonBytes.toString(UTF8_CHARSET.name());
   }
 
   /**
@@ -234,6 +382,32 @@ public class BundleReader {
     }
   }
 
+  /** Converts a binary bundle element into its model class. */
+  private BundleElement decodeBundleElement(com.google.firestore.bundle.BundleElement element)
+      throws IOException {
+    switch (element.getElementTypeCase()) {
+      case METADATA:
+        BundleMetadata metadata = serializer.decodeBundleMetadata(element.getMetadata());
+        Logger.debug("BundleElement", "BundleMetadata element loaded");
+        return metadata;
+      case NAMED_QUERY:
+        NamedQuery namedQuery = serializer.decodeNamedQuery(element.getNamedQuery());
+        Logger.debug("BundleElement", "Query loaded: " + namedQuery.getName());
+        return namedQuery;
+      case DOCUMENT_METADATA:
+        BundledDocumentMetadata documentMetadata =
+            serializer.decodeBundledDocumentMetadata(element.getDocumentMetadata());
+        Logger.debug("BundleElement", "Document metadata loaded: " + documentMetadata.getKey());
+        return documentMetadata;
+      case DOCUMENT:
+        BundleDocument document = serializer.decodeDocument(element.getDocument());
+        Logger.debug("BundleElement", "Document loaded: " + document.getKey());
+        return document;
+      default:
+        throw abort("Cannot decode unknown Bundle element: " + element.getElementTypeCase());
+    }
+  }
+
   /** Closes the underlying stream and raises an IllegalArgumentException. */
   private IllegalArgumentException abort(String message) throws IOException {
     close();
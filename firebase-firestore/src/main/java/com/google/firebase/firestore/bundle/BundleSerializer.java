@@ -33,6 +33,7 @@ import com.google.firebase.firestore.model.Values;
 import com.google.firebase.firestore.remote.RemoteSerializer;
 import com.google.firestore.v1.ArrayValue;
 import com.google.firestore.v1.MapValue;
+import com.google.firestore.v1.StructuredQuery;
 import com.google.firestore.v1.Value;
 import com.google.protobuf.ByteString;
 import com.google.protobuf.NullValue;
@@ -50,7 +51,7 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-/** A JSON serializer to deserialize Firestore Bundles. */
+/** A serializer to deserialize Firestore Bundles from their JSON or binary encoding. */
 public class BundleSerializer {
 
   private static final long MILLIS_PER_SECOND = 1000;
@@ -115,6 +116,45 @@ public class BundleSerializer {
             key, updateTime, ObjectValue.fromMap(value.getMapValue().getFieldsMap())));
   }
 
+  public NamedQuery decodeNamedQuery(com.google.firestore.bundle.NamedQuery namedQuery) {
+    BundledQuery bundledQuery = decodeBundledQuery(namedQuery.getBundledQuery());
+    SnapshotVersion readTime = decodeSnapshotVersion(namedQuery.getReadTime());
+    return new NamedQuery(namedQuery.getName(), bundledQuery, readTime);
+  }
+
+  public BundleMetadata decodeBundleMetadata(
+      com.google.firestore.bundle.BundleMetadata bundleMetadata) {
+    return new BundleMetadata(
+        bundleMetadata.getId(),
+        bundleMetadata.getVersion(),
+        decodeSnapshotVersion(bundleMetadata.getCreateTime()),
+        bundleMetadata.getTotalDocuments(),
+        bundleMetadata.getTotalBytes());
+  }
+
+  public BundledDocumentMetadata decodeBundledDocumentMetadata(
+      com.google.firestore.bundle.BundledDocumentMetadata bundledDocumentMetadata) {
+    DocumentKey key = DocumentKey.fromPath(decodeName(bundledDocumentMetadata.getName()));
+    SnapshotVersion readTime = decodeSnapshotVersion(bundledDocumentMetadata.getReadTime());
+    return new BundledDocumentMetadata(
+        key,
+        readTime,
+        bundledDocumentMetadata.getExists(),
+        bundledDocumentMetadata.getQueriesList());
+  }
+
+  /**
+   * Decodes a document from the binary bundle format. Unlike the JSON format, the field values are
+   * already encoded as protos and are used as is.
+   */
+  BundleDocument decodeDocument(com.google.firestore.v1.Document document) {
+    DocumentKey key = DocumentKey.fromPath(decodeName(document.getName()));
+    SnapshotVersion updateTime = decodeSnapshotVersion(document.getUpdateTime());
+    return new BundleDocument(
+        MutableDocument.newFoundDocument(
+            key, updateTime, ObjectValue.fromMap(document.getFieldsMap())));
+  }
+
   private ResourcePath decodeName(String name) {
     ResourcePath resourcePath = ResourcePath.fromString(name);
     if (!remoteSerializer.isLocalResourceName(resourcePath)) {
@@ -128,6 +168,29 @@ public class BundleSerializer {
     return new SnapshotVersion(decodeTimestamp(timestamp));
   }
 
+  private SnapshotVersion decodeSnapshotVersion(com.google.protobuf.Timestamp timestamp) {
+    return new SnapshotVersion(remoteSerializer.decodeTimestamp(timestamp));
+  }
+
+  private BundledQuery decodeBundledQuery(
+      com.google.firestore.bundle.BundledQuery bundledQuery) {
+    StructuredQuery structuredQuery = bundledQuery.getStructuredQuery();
+    verifyNoSelect(structuredQuery);
+    verifyCollectionSelector(structuredQuery);
+    verifyNoOffset(structuredQuery);
+
+    // Validates that the parent belongs to the current database before handing the query to the
+    // RemoteSerializer, which asserts on foreign resource names.
+    decodeName(bundledQuery.getParent());
+    Target target = remoteSerializer.decodeQueryTarget(bundledQuery.getParent(), structuredQuery);
+    Query.LimitType limitType =
+        bundledQuery.getLimitType() == com.google.firestore.bundle.BundledQuery.LimitType.LAST
+            ? Query.LimitType.LIMIT_TO_LAST
+            : Query.LimitType.LIMIT_TO_FIRST;
+
+    return new BundledQuery(target, limitType);
+  }
+
   private BundledQuery decodeBundledQuery(JSONObject bundledQuery) throws JSONException {
     JSONObject structuredQuery = bundledQuery.getJSONObject("structuredQuery");
     verifyNoSelect(structuredQuery);
@@ -470,6 +533,27 @@ public class BundleSerializer {
     }
   }
 
+  private void verifyCollectionSelector(StructuredQuery structuredQuery) {
+    if (structuredQuery.getFromCount() != 1) {
+      throw new IllegalArgumentException(
+          "Only queries with a single 'from' clause are supported by the Android SDK");
+    }
+  }
+
+  private void verifyNoOffset(StructuredQuery structuredQuery) {
+    if (structuredQuery.getOffset() != 0) {
+      throw new IllegalArgumentException(
+          "Queries with offsets are not supported by the Android SDK");
+    }
+  }
+
+  private void verifyNoSelect(StructuredQuery structuredQuery) {
+    if (structuredQuery.hasSelect()) {
+      throw new IllegalArgumentException(
+          "Queries with 'select' statements are not supported by the Android SDK");
+    }
+  }
+
   private void verifyNoOffset(JSONObject structuredQuery) {
     if (structuredQuery.has("offset")) {
       throw new IllegalArgumentException(
@@ -25,6 +25,7 @@ import com.google.firebase.firestore.remote.ConnectivityMonitor;
 import com.google.firebase.firestore.remote.Datastore;
 import com.google.firebase.firestore.remote.RemoteStore;
 import com.google.firebase.firestore.util.AsyncQueue;
+import com.google.firebase.firestore.util.Logger;
 
 /**
  * Initializes and wires up all core components for Firestore.
@@ -133,18 +134,46 @@ public abstract class ComponentProvider {
     return connectivityMonitor;
   }
 
+  /**
+   * Creates and starts all components.
+   *
+   * <p>Only work that is needed to serve the first reads from the cache runs here. Scans that are
+   * only needed later (such as finding the next mutation batch ID, which is loaded on the first
+   * write) are deferred, and garbage collection and index backfills run on their own schedules.
+   */
   public void initialize(Configuration configuration) {
+    long startTs = System.currentTimeMillis();
     persistence = createPersistence(configuration);
     persistence.start();
+    long startedPersistenceTs = System.currentTimeMillis();
+
     localStore = createLocalStore(configuration);
     connectivityMonitor = createConnectivityMonitor(configuration);
     remoteStore = createRemoteStore(configuration);
     syncEngine = createSyncEngine(configuration);
     eventManager = createEventManager(configuration);
+    long createdComponentsTs = System.currentTimeMillis();
+
     localStore.start();
+    long startedLocalStoreTs = System.currentTimeMillis();
+
     remoteStore.start();
+    long startedRemoteStoreTs = System.currentTimeMillis();
+
     garbageCollectionScheduler = createGarbageCollectionScheduler(configuration);
     indexBackfillScheduler = createIndexBackfillScheduler(configuration);
+    long createdSchedulersTs = System.currentTimeMillis();
+
+    if (Logger.isDebugEnabled()) {
+      String desc = "Startup:\n";
+      desc += "\tStarted persistence in " + (startedPersistenceTs - startTs) + "ms\n";
+      desc += "\tCreated components in " + (createdComponentsTs - startedPersistenceTs) + "ms\n";
+      desc += "\tStarted local store in " + (startedLocalStoreTs - createdComponentsTs) + "ms\n";
+      desc += "\tStarted remote store in " + (startedRemoteStoreTs - startedLocalStoreTs) + "ms\n";
+      desc += "\tCreated schedulers in " + (createdSchedulersTs - startedRemoteStoreTs) + "ms\n";
+      desc += "Total Duration: " + (createdSchedulersTs - startTs) + "ms";
+      Logger.debug("ComponentProvider", desc);
+    }
   }
 
   protected abstract Scheduler createGarbageCollectionScheduler(Configuration configuration);
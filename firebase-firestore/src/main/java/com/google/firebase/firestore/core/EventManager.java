@@ -53,6 +53,12 @@ public final class EventManager implements SyncEngineCallback {
 
     /** Wait for a sync with the server when online, but still raise events while offline. */
     public boolean waitForSyncWhenOnline;
+
+    /**
+     * The minimum time between two events. Snapshots that arrive sooner are merged and raised once
+     * the interval has elapsed. Coalescing is disabled if the interval is 0.
+     */
+    public long coalescingIntervalMs;
   }
 
   private final SyncEngine syncEngine;
@@ -108,6 +114,8 @@ public final class EventManager implements SyncEngineCallback {
 
   /** Removes a previously added listener. It's a no-op if the listener is not found. */
   public void removeQueryListener(QueryListener listener) {
+    listener.cancelCoalescing();
+
     Query query = listener.getQuery();
     QueryListenersInfo queryInfo = queries.get(query);
     boolean lastListen = false;
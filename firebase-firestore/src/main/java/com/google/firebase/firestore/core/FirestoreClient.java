@@ -45,6 +45,7 @@ import com.google.firebase.firestore.remote.GrpcMetadataProvider;
 import com.google.firebase.firestore.remote.RemoteSerializer;
 import com.google.firebase.firestore.remote.RemoteStore;
 import com.google.firebase.firestore.util.AsyncQueue;
+import com.google.firebase.firestore.util.Executors;
 import com.google.firebase.firestore.util.Function;
 import com.google.firebase.firestore.util.Logger;
 import java.io.InputStream;
@@ -173,7 +174,7 @@ public final class FirestoreClient {
   public QueryListener listen(
       Query query, ListenOptions options, EventListener<ViewSnapshot> listener) {
     this.verifyNotTerminated();
-    QueryListener queryListener = new QueryListener(query, options, listener);
+    QueryListener queryListener = new QueryListener(query, options, listener, asyncQueue);
     asyncQueue.enqueueAndForget(() -> eventManager.addQueryListener(queryListener));
     return queryListener;
   }
@@ -211,13 +212,21 @@ public final class FirestoreClient {
 
   public Task<ViewSnapshot> getDocumentsFromLocalCache(Query query) {
     this.verifyNotTerminated();
-    return asyncQueue.enqueue(
-        () -> {
-          QueryResult queryResult = localStore.executeQuery(query, /* usePreviousResults= */ true);
-          View view = new View(query, queryResult.getRemoteKeys());
-          View.DocumentChanges viewDocChanges = view.computeDocChanges(queryResult.getDocuments());
-          return view.applyChanges(viewDocChanges).getSnapshot();
-        });
+    // The read from the local store stays on the AsyncQueue, since SQLite uses a single exclusive
+    // connection and LocalStore is not thread-safe. Reads from the cache are therefore still
+    // serialized. Only the View, which is not shared with any listener, is computed on a
+    // background thread, so that sorting a large result does not hold up the queue.
+    return asyncQueue
+        .enqueue(() -> localStore.executeQuery(query, /* usePreviousResults= */ true))
+        .continueWith(
+            Executors.BACKGROUND_EXECUTOR,
+            (result) -> {
+              QueryResult queryResult = result.getResult();
+              View view = new View(query, queryResult.getRemoteKeys());
+              View.DocumentChanges viewDocChanges =
+                  view.computeDocChanges(queryResult.getDocuments());
+              return view.applyChanges(viewDocChanges).getSnapshot();
+            });
   }
 
   /** Writes mutations. The returned task will be notified when it's written to the backend. */
@@ -16,10 +16,12 @@ package com.google.firebase.firestore.core;
 
 import androidx.annotation.Nullable;
 import com.google.firebase.database.collection.ImmutableSortedSet;
+import com.google.firebase.firestore.local.CostBasedQueryEngine;
 import com.google.firebase.firestore.local.DefaultQueryEngine;
 import com.google.firebase.firestore.local.LocalStore;
 import com.google.firebase.firestore.local.MemoryPersistence;
 import com.google.firebase.firestore.local.Persistence;
+import com.google.firebase.firestore.local.QueryEngine;
 import com.google.firebase.firestore.local.Scheduler;
 import com.google.firebase.firestore.model.DocumentKey;
 import com.google.firebase.firestore.model.mutation.MutationBatchResult;
@@ -53,8 +55,11 @@ public class MemoryComponentProvider extends ComponentProvider {
 
   @Override
   protected LocalStore createLocalStore(Configuration configuration) {
-    return new LocalStore(
-        getPersistence(), new DefaultQueryEngine(), configuration.getInitialUser());
+    QueryEngine queryEngine =
+        Persistence.COST_BASED_QUERY_PLANNING_ENABLED
+            ? new CostBasedQueryEngine()
+            : new DefaultQueryEngine();
+    return new LocalStore(getPersistence(), queryEngine, configuration.getInitialUser());
   }
 
   @Override
@@ -74,7 +79,9 @@ public class MemoryComponentProvider extends ComponentProvider {
         getLocalStore(),
         configuration.getDatastore(),
         configuration.getAsyncQueue(),
-        getConnectivityMonitor());
+        getConnectivityMonitor(),
+        configuration.getSettings().getMaxPendingWrites(),
+        configuration.getSettings().isWriteCoalescingEnabled());
   }
 
   @Override
@@ -83,7 +90,8 @@ public class MemoryComponentProvider extends ComponentProvider {
         getLocalStore(),
         getRemoteStore(),
         configuration.getInitialUser(),
-        configuration.getMaxConcurrentLimboResolutions());
+        configuration.getMaxConcurrentLimboResolutions(),
+        configuration.getSettings().isLimitQueryBufferEnabled());
   }
 
   /**
@@ -20,6 +20,9 @@ import androidx.annotation.Nullable;
 import com.google.firebase.firestore.EventListener;
 import com.google.firebase.firestore.FirebaseFirestoreException;
 import com.google.firebase.firestore.core.DocumentViewChange.Type;
+import com.google.firebase.firestore.util.AsyncQueue;
+import com.google.firebase.firestore.util.AsyncQueue.DelayedTask;
+import com.google.firebase.firestore.util.AsyncQueue.TimerId;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -28,6 +31,9 @@ import java.util.List;
  *
  * <p>It uses an EventListener to dispatch events.
  *
+ * <p>If the listener has a coalescing interval, snapshots that arrive within the interval after an
+ * event was raised are merged into a single snapshot, which is raised when the interval elapses.
+ *
  * <p>Note that this class can be created for any arbitrary thread but it's expected to be called
  * only from our worker thread.
  */
@@ -38,6 +44,9 @@ public class QueryListener {
 
   private final EventListener<ViewSnapshot> listener;
 
+  /** The queue used to schedule coalesced events. Only required if coalescing is enabled. */
+  private final @Nullable AsyncQueue asyncQueue;
+
   /**
    * Initial snapshots (e.g. from cache) may not be propagated to the wrapped observer. This flag is
    * set to true once we've actually raised an event.
@@ -48,11 +57,32 @@ public class QueryListener {
 
   private @Nullable ViewSnapshot snapshot;
 
+  /** The last snapshot that was raised to the wrapped observer. */
+  private @Nullable ViewSnapshot raisedSnapshot;
+
+  /** The task that ends the current coalescing interval, or null if no interval is in progress. */
+  private @Nullable DelayedTask coalescingTask;
+
+  /** The snapshots received during the current coalescing interval, merged into one snapshot. */
+  private @Nullable ViewSnapshot pendingSnapshot;
+
   public QueryListener(
       Query query, EventManager.ListenOptions options, EventListener<ViewSnapshot> listener) {
+    this(query, options, listener, /* asyncQueue= */ null);
+  }
+
+  public QueryListener(
+      Query query,
+      EventManager.ListenOptions options,
+      EventListener<ViewSnapshot> listener,
+      @Nullable AsyncQueue asyncQueue) {
+    hardAssert(
+        options.coalescingIntervalMs == 0 || asyncQueue != null,
+        "Coalescing snapshots requires an AsyncQueue");
     this.query = query;
     this.listener = listener;
     this.options = options;
+    this.asyncQueue = asyncQueue;
   }
 
   public Query getQuery() {
@@ -95,9 +125,14 @@ public class QueryListener {
         raiseInitialEvent(newSnapshot);
         raisedEvent = true;
       }
-    } else if (shouldRaiseEvent(newSnapshot)) {
-      listener.onEvent(newSnapshot, null);
-      raisedEvent = true;
+    } else if (shouldRaiseEvent(newSnapshot, this.snapshot)) {
+      if (coalescingTask != null) {
+        pendingSnapshot =
+            pendingSnapshot == null ? newSnapshot : mergeSnapshots(pendingSnapshot, newSnapshot);
+      } else {
+        raiseEvent(newSnapshot);
+        raisedEvent = true;
+      }
     }
 
     this.snapshot = newSnapshot;
@@ -105,9 +140,22 @@ public class QueryListener {
   }
 
   public void onError(FirebaseFirestoreException error) {
+    cancelCoalescing();
     listener.onEvent(null, error);
   }
 
+  /**
+   * Ends the current coalescing interval without raising the snapshots received during it. Called
+   * when the listener is removed, so that no snapshot is raised after that.
+   */
+  void cancelCoalescing() {
+    if (coalescingTask != null) {
+      coalescingTask.cancel();
+      coalescingTask = null;
+    }
+    pendingSnapshot = null;
+  }
+
   /** Returns whether a snapshot was raised. */
   public boolean onOnlineStateChanged(OnlineState onlineState) {
     this.onlineState = onlineState;
@@ -143,7 +191,7 @@ public class QueryListener {
     return !snapshot.getDocuments().isEmpty() || onlineState.equals(OnlineState.OFFLINE);
   }
 
-  private boolean shouldRaiseEvent(ViewSnapshot snapshot) {
+  private boolean shouldRaiseEvent(ViewSnapshot snapshot, @Nullable ViewSnapshot previousSnapshot) {
     // We don't need to handle includeDocumentMetadataChanges here because the Metadata only
     // changes have already been stripped out if needed. At this point the only changes we will
     // see are the ones we should propagate.
@@ -152,7 +200,8 @@ public class QueryListener {
     }
 
     boolean hasPendingWritesChanged =
-        this.snapshot != null && this.snapshot.hasPendingWrites() != snapshot.hasPendingWrites();
+        previousSnapshot != null
+            && previousSnapshot.hasPendingWrites() != snapshot.hasPendingWrites();
     if (snapshot.didSyncStateChange() || hasPendingWritesChanged) {
       return options.includeQueryMetadataChanges;
     }
@@ -173,6 +222,53 @@ public class QueryListener {
             snapshot.isFromCache(),
             snapshot.excludesMetadataChanges());
     raisedInitialEvent = true;
+    raiseEvent(snapshot);
+  }
+
+  private void raiseEvent(ViewSnapshot snapshot) {
+    raisedSnapshot = snapshot;
     listener.onEvent(snapshot, null);
+    if (options.coalescingIntervalMs > 0) {
+      coalescingTask =
+          asyncQueue.enqueueAfterDelay(
+              TimerId.SNAPSHOT_COALESCING,
+              options.coalescingIntervalMs,
+              this::onCoalescingIntervalElapsed);
+    }
+  }
+
+  private void onCoalescingIntervalElapsed() {
+    coalescingTask = null;
+    ViewSnapshot snapshot = pendingSnapshot;
+    pendingSnapshot = null;
+    // The merged changes may cancel each other out, in which case only metadata changes remain.
+    if (snapshot != null && shouldRaiseEvent(snapshot, raisedSnapshot)) {
+      raiseEvent(snapshot);
+    }
+  }
+
+  /**
+   * Merges two consecutive snapshots into a single snapshot that contains the combined changes
+   * between the old documents of the first snapshot and the documents of the second snapshot.
+   */
+  private static ViewSnapshot mergeSnapshots(ViewSnapshot first, ViewSnapshot second) {
+    DocumentViewChangeSet changeSet = new DocumentViewChangeSet();
+    for (DocumentViewChange change : first.getChanges()) {
+      changeSet.addChange(change);
+    }
+    for (DocumentViewChange change : second.getChanges()) {
+      changeSet.addChange(change);
+    }
+    List<DocumentViewChange> changes = changeSet.getChanges();
+    View.sortChanges(second.getQuery(), changes);
+    return new ViewSnapshot(
+        second.getQuery(),
+        second.getDocuments(),
+        first.getOldDocuments(),
+        changes,
+        second.isFromCache(),
+        second.getMutatedKeys(),
+        first.didSyncStateChange() || second.didSyncStateChange(),
+        second.excludesMetadataChanges());
   }
 }
@@ -126,6 +126,9 @@ public class SyncEngine implements RemoteStore.RemoteStoreCallback {
 
   private final int maxConcurrentLimboResolutions;
 
+  /** Whether the views of limit queries keep the documents that follow the limit. */
+  private final boolean limitQueryBufferEnabled;
+
   /**
    * The keys of documents that are in limbo for which we haven't yet started a limbo resolution
    * query.
@@ -162,9 +165,29 @@ public class SyncEngine implements RemoteStore.RemoteStoreCallback {
       RemoteStore remoteStore,
       User initialUser,
       int maxConcurrentLimboResolutions) {
+    this(
+        localStore,
+        remoteStore,
+        initialUser,
+        maxConcurrentLimboResolutions,
+        /* limitQueryBufferEnabled= */ false);
+  }
+
+  /**
+   * Creates a SyncEngine. If {@code limitQueryBufferEnabled} is set, the views of limit queries
+   * keep the documents that follow the limit, so that they can replace documents that drop out of
+   * the limit without re-running the query against the local cache.
+   */
+  public SyncEngine(
+      LocalStore localStore,
+      RemoteStore remoteStore,
+      User initialUser,
+      int maxConcurrentLimboResolutions,
+      boolean limitQueryBufferEnabled) {
     this.localStore = localStore;
     this.remoteStore = remoteStore;
     this.maxConcurrentLimboResolutions = maxConcurrentLimboResolutions;
+    this.limitQueryBufferEnabled = limitQueryBufferEnabled;
 
     queryViewsByQuery = new HashMap<>();
     queriesByTarget = new HashMap<>();
@@ -227,7 +250,7 @@ public class SyncEngine implements RemoteStore.RemoteStoreCallback {
     // TODO(wuandy): Investigate if we can extract the logic of view change computation and
     // update tracked limbo in one place, and have both emitNewSnapsAndNotifyLocalStore
     // and here to call that.
-    View view = new View(query, queryResult.getRemoteKeys());
+    View view = new View(query, queryResult.getRemoteKeys(), limitQueryBufferEnabled);
     View.DocumentChanges viewDocChanges = view.computeDocChanges(queryResult.getDocuments());
     ViewChange viewChange = view.applyChanges(viewDocChanges, synthesizedCurrentChange);
     updateTrackedLimboDocuments(viewChange.getLimboChanges(), targetId);
@@ -536,6 +559,11 @@ public class SyncEngine implements RemoteStore.RemoteStoreCallback {
         if (progress != null) {
           resultTask.updateProgress(progress);
         }
+
+        ImmutableSortedMap<DocumentKey, Document> chunkChanges = bundleLoader.applyCompletedChunk();
+        if (chunkChanges != null) {
+          emitNewSnapsAndNotifyLocalStore(chunkChanges, /* remoteEvent= */ null);
+        }
       }
 
       ImmutableSortedMap<DocumentKey, Document> changes = bundleLoader.applyChanges();
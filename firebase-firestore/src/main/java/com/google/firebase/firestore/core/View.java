@@ -43,10 +43,14 @@ public class View {
         DocumentSet newDocuments,
         DocumentViewChangeSet changes,
         ImmutableSortedSet<DocumentKey> mutatedKeys,
+        DocumentSet overflowDocuments,
+        boolean overflowComplete,
         boolean needsRefill) {
       this.documentSet = newDocuments;
       this.changeSet = changes;
       this.mutatedKeys = mutatedKeys;
+      this.overflowDocuments = overflowDocuments;
+      this.overflowComplete = overflowComplete;
       this.needsRefill = needsRefill;
     }
 
@@ -60,6 +64,11 @@ public class View {
 
     final ImmutableSortedSet<DocumentKey> mutatedKeys;
 
+    /** The new set of docs that immediately follow the limit. See {@link #overflowDocuments}. */
+    final DocumentSet overflowDocuments;
+
+    private final boolean overflowComplete;
+
     /**
      * Whether the set of documents passed in was not sufficient to calculate the new state of the
      * view and there needs to be another pass based on the local cache.
@@ -69,8 +78,17 @@ public class View {
     }
   }
 
+  /**
+   * The maximum number of documents past the limit that a view keeps in its overflow buffer. The
+   * buffer holds at most as many documents as the limit itself.
+   */
+  private static final int MAX_OVERFLOW_DOCUMENTS = 100;
+
   private final Query query;
 
+  /** Whether the view keeps an overflow buffer for limit queries. */
+  private final boolean keepOverflowDocuments;
+
   private SyncState syncState;
 
   /**
@@ -91,10 +109,36 @@ public class View {
   /** Documents that have local changes */
   private ImmutableSortedSet<DocumentKey> mutatedKeys;
 
+  /**
+   * For limit queries, the documents that match the query and immediately follow the last document
+   * in the limit. Every matching document in the local cache that sorts between the limit and the
+   * last document in this set is either part of the view or part of this set. This allows the view
+   * to replace documents that drop out of the limit without having to re-run the query against
+   * the local cache. Always empty unless {@link #keepOverflowDocuments} is set.
+   */
+  private DocumentSet overflowDocuments;
+
+  /** Whether {@link #overflowDocuments} contains all matching documents past the limit. */
+  private boolean overflowComplete;
+
   public View(Query query, ImmutableSortedSet<DocumentKey> remoteDocuments) {
+    this(query, remoteDocuments, /* keepOverflowDocuments= */ false);
+  }
+
+  /**
+   * Creates a view. If {@code keepOverflowDocuments} is set, views of limit queries keep the
+   * documents that follow the limit in an overflow buffer.
+   */
+  public View(
+      Query query,
+      ImmutableSortedSet<DocumentKey> remoteDocuments,
+      boolean keepOverflowDocuments) {
     this.query = query;
+    this.keepOverflowDocuments = keepOverflowDocuments;
     syncState = SyncState.NONE;
     documentSet = DocumentSet.emptySet(query.comparator());
+    overflowDocuments = DocumentSet.emptySet(query.comparator());
+    overflowComplete = false;
     syncedDocuments = remoteDocuments;
     limboDocuments = DocumentKey.emptyKeySet();
     mutatedKeys = DocumentKey.emptyKeySet();
@@ -136,30 +180,53 @@ public class View {
     ImmutableSortedSet<DocumentKey> newMutatedKeys =
         previousChanges != null ? previousChanges.mutatedKeys : mutatedKeys;
     DocumentSet newDocumentSet = oldDocumentSet;
+    DocumentSet newOverflowDocuments =
+        previousChanges != null ? previousChanges.overflowDocuments : overflowDocuments;
+    boolean oldOverflowComplete =
+        previousChanges != null ? previousChanges.overflowComplete : overflowComplete;
     boolean needsRefill = false;
 
-    // Track the last doc in a (full) limit. This is necessary, because some update (a delete, or an
-    // update moving a doc past the old limit) might mean there is some other document in the local
-    // cache that either should come (1) between the old last limit doc and the new last document,
-    // in the case of updates, or (2) after the new last document, in the case of deletes. So we
-    // keep this doc at the old limit to compare the updates to.
+    boolean hasLimit = query.hasLimitToFirst() || query.hasLimitToLast();
+    long limit =
+        query.hasLimitToFirst()
+            ? query.getLimitToFirst()
+            : query.hasLimitToLast() ? query.getLimitToLast() : Long.MAX_VALUE;
+
+    // For limit queries, determine which documents past the limit the view knows about. Some update
+    // (a delete, or an update moving a doc past the old limit) might mean there is some other
+    // document in the local cache that should take its place. The view can only fill the limit from
+    // documents that it knows about: if the view was not full or its overflow buffer was complete,
+    // it knows about every matching document. Otherwise, it knows about every document up to the
+    // last document in its overflow buffer (or in the view, if the buffer is empty). Views that
+    // don't keep an overflow buffer drop all documents that fall out of the limit.
     //
-    // Note that this should never get used in a refill (when previousChanges is set), because there
-    // will only be adds -- no deletes or updates.
-    Document lastDocInLimit =
-        (query.hasLimitToFirst() && oldDocumentSet.size() == query.getLimitToFirst())
-            ? oldDocumentSet.getLastDocument()
-            : null;
-    Document firstDocInLimit =
-        (query.hasLimitToLast() && oldDocumentSet.size() == query.getLimitToLast())
-            ? oldDocumentSet.getFirstDocument()
-            : null;
+    // The initial set of documents may not contain all documents past the limit (the query engine
+    // may only return documents that were previously in the limit), so documents that don't fit
+    // into the limit are not buffered. A refill, on the other hand, contains all matching
+    // documents.
+    boolean isInitialComputation = previousChanges == null && syncState == SyncState.NONE;
+    boolean knowsAllDocuments =
+        previousChanges != null
+            || (!isInitialComputation
+                && (oldDocumentSet.size() < limit
+                    || (keepOverflowDocuments && oldOverflowComplete)));
+    Document lastKnownDocument = null;
+    if (hasLimit && !knowsAllDocuments) {
+      lastKnownDocument =
+          newOverflowDocuments.isEmpty()
+              ? lastDocumentInLimitOrder(oldDocumentSet)
+              : lastDocumentInLimitOrder(newOverflowDocuments);
+    }
+    boolean newOverflowComplete = knowsAllDocuments;
 
     for (Map.Entry<DocumentKey, Document> entry : docChanges) {
       DocumentKey key = entry.getKey();
       Document oldDoc = oldDocumentSet.getDocument(key);
       Document newDoc = query.matches(entry.getValue()) ? entry.getValue() : null;
 
+      // Documents in the overflow buffer are re-added below if they still belong there.
+      newOverflowDocuments = newOverflowDocuments.remove(key);
+
       boolean oldDocHadPendingMutations =
           oldDoc != null && this.mutatedKeys.contains(oldDoc.getKey());
 
@@ -180,14 +247,6 @@ public class View {
           if (!shouldWaitForSyncedDocument(oldDoc, newDoc)) {
             changeSet.addChange(DocumentViewChange.create(Type.MODIFIED, newDoc));
             changeApplied = true;
-
-            if ((lastDocInLimit != null && query.comparator().compare(newDoc, lastDocInLimit) > 0)
-                || (firstDocInLimit != null
-                    && query.comparator().compare(newDoc, firstDocInLimit) < 0)) {
-              // This doc moved from inside the limit to outside the limit. That means there may be
-              // some doc in the local cache that should be included instead.
-              needsRefill = true;
-            }
           }
         } else if (oldDocHadPendingMutations != newDocHasPendingMutations) {
           changeSet.addChange(DocumentViewChange.create(Type.METADATA, newDoc));
@@ -199,11 +258,6 @@ public class View {
       } else if (oldDoc != null && newDoc == null) {
         changeSet.addChange(DocumentViewChange.create(Type.REMOVED, oldDoc));
         changeApplied = true;
-        if (lastDocInLimit != null || firstDocInLimit != null) {
-          // A doc was removed from a full limit query. We'll need to requery from the local cache
-          // to see if we know about some other doc that should be in the results.
-          needsRefill = true;
-        }
       }
 
       if (changeApplied) {
@@ -221,17 +275,56 @@ public class View {
       }
     }
 
-    // Drop documents out to meet limitToFirst/limitToLast requirement.
-    if (query.hasLimitToFirst() || query.hasLimitToLast()) {
-      long limit = query.hasLimitToFirst() ? query.getLimitToFirst() : query.getLimitToLast();
-      for (long i = newDocumentSet.size() - limit; i > 0; --i) {
-        Document oldDoc =
-            query.hasLimitToFirst()
-                ? newDocumentSet.getLastDocument()
-                : newDocumentSet.getFirstDocument();
-        newDocumentSet = newDocumentSet.remove(oldDoc.getKey());
-        newMutatedKeys = newMutatedKeys.remove(oldDoc.getKey());
-        changeSet.addChange(DocumentViewChange.create(Type.REMOVED, oldDoc));
+    if (hasLimit) {
+      // Drop documents out to meet limitToFirst/limitToLast requirement and fill the limit with
+      // documents from the overflow buffer that sort before the last document in the limit.
+      while (true) {
+        if (newDocumentSet.size() > limit) {
+          Document oldDoc = lastDocumentInLimitOrder(newDocumentSet);
+          newDocumentSet = newDocumentSet.remove(oldDoc.getKey());
+          newMutatedKeys = newMutatedKeys.remove(oldDoc.getKey());
+          changeSet.addChange(DocumentViewChange.create(Type.REMOVED, oldDoc));
+          if (keepOverflowDocuments
+              && isKnownDocument(oldDoc, knowsAllDocuments, lastKnownDocument)) {
+            newOverflowDocuments = newOverflowDocuments.add(oldDoc);
+          } else {
+            newOverflowComplete = false;
+          }
+          continue;
+        }
+
+        Document candidate = firstDocumentInLimitOrder(newOverflowDocuments);
+        if (candidate == null
+            || (newDocumentSet.size() == limit
+                && compareInLimitOrder(candidate, lastDocumentInLimitOrder(newDocumentSet))
+                    >= 0)) {
+          break;
+        }
+        newOverflowDocuments = newOverflowDocuments.remove(candidate.getKey());
+        newDocumentSet = newDocumentSet.add(candidate);
+        if (candidate.hasLocalMutations()) {
+          newMutatedKeys = newMutatedKeys.insert(candidate.getKey());
+        } else {
+          newMutatedKeys = newMutatedKeys.remove(candidate.getKey());
+        }
+        changeSet.addChange(DocumentViewChange.create(Type.ADDED, candidate));
+      }
+
+      long overflowCapacity = Math.min(limit, MAX_OVERFLOW_DOCUMENTS);
+      while (newOverflowDocuments.size() > overflowCapacity) {
+        Document lastDoc = lastDocumentInLimitOrder(newOverflowDocuments);
+        newOverflowDocuments = newOverflowDocuments.remove(lastDoc.getKey());
+        newOverflowComplete = false;
+      }
+
+      // If the limit is no longer full, or if it now contains a document past the documents that
+      // the view knows about, there may be some other doc in the local cache that should be
+      // included instead.
+      if (!isInitialComputation && !knowsAllDocuments) {
+        Document lastDoc = lastDocumentInLimitOrder(newDocumentSet);
+        needsRefill =
+            newDocumentSet.size() < limit
+                || !isKnownDocument(lastDoc, knowsAllDocuments, lastKnownDocument);
       }
     }
 
@@ -239,7 +332,44 @@ public class View {
         !needsRefill || previousChanges == null,
         "View was refilled using docs that themselves needed refilling.");
 
-    return new DocumentChanges(newDocumentSet, changeSet, newMutatedKeys, needsRefill);
+    return new DocumentChanges(
+        newDocumentSet,
+        changeSet,
+        newMutatedKeys,
+        newOverflowDocuments,
+        newOverflowComplete,
+        needsRefill);
+  }
+
+  /**
+   * Compares two documents in the order in which they are included in the limit, i.e. in query
+   * order for limitToFirst() and in reverse query order for limitToLast().
+   */
+  private int compareInLimitOrder(Document left, Document right) {
+    int comparison = query.comparator().compare(left, right);
+    return query.hasLimitToLast() ? -comparison : comparison;
+  }
+
+  /** Returns the document in the given set that would be included in the limit first. */
+  @Nullable
+  private Document firstDocumentInLimitOrder(DocumentSet documents) {
+    return query.hasLimitToLast() ? documents.getLastDocument() : documents.getFirstDocument();
+  }
+
+  /** Returns the document in the given set that would be included in the limit last. */
+  @Nullable
+  private Document lastDocumentInLimitOrder(DocumentSet documents) {
+    return query.hasLimitToLast() ? documents.getFirstDocument() : documents.getLastDocument();
+  }
+
+  /**
+   * Returns whether every matching document in the local cache that would be included in the limit
+   * before the given document is known to the view.
+   */
+  private boolean isKnownDocument(
+      Document document, boolean knowsAllDocuments, @Nullable Document lastKnownDocument) {
+    return knowsAllDocuments
+        || (lastKnownDocument != null && compareInLimitOrder(document, lastKnownDocument) <= 0);
   }
 
   private boolean shouldWaitForSyncedDocument(Document oldDoc, Document newDoc) {
@@ -279,19 +409,11 @@ public class View {
     DocumentSet oldDocumentSet = documentSet;
     documentSet = docChanges.documentSet;
     mutatedKeys = docChanges.mutatedKeys;
+    overflowDocuments = docChanges.overflowDocuments;
+    overflowComplete = docChanges.overflowComplete;
 
-    // Sort changes based on type and query comparator.
     List<DocumentViewChange> viewChanges = docChanges.changeSet.getChanges();
-    Collections.sort(
-        viewChanges,
-        (DocumentViewChange o1, DocumentViewChange o2) -> {
-          int typeComp = compareIntegers(View.changeTypeOrder(o1), View.changeTypeOrder(o2));
-          o1.getType().compareTo(o2.getType());
-          if (typeComp != 0) {
-            return typeComp;
-          }
-          return query.comparator().compare(o1.getDocument(), o2.getDocument());
-        });
+    sortChanges(query, viewChanges);
     applyTargetChange(targetChange);
     List<LimboDocumentChange> limboDocumentChanges = updateLimboDocuments();
     boolean synced = limboDocuments.size() == 0 && current;
@@ -327,7 +449,12 @@ public class View {
       this.current = false;
       return applyChanges(
           new DocumentChanges(
-              documentSet, new DocumentViewChangeSet(), mutatedKeys, /*needsRefill=*/ false));
+              documentSet,
+              new DocumentViewChangeSet(),
+              mutatedKeys,
+              overflowDocuments,
+              overflowComplete,
+              /*needsRefill=*/ false));
     } else {
       // No effect, just return a no-op ViewChange.
       return new ViewChange(null, Collections.emptyList());
@@ -420,7 +547,19 @@ public class View {
     return syncedDocuments;
   }
 
-  /** Helper function to determine order of changes */
+  /** Sorts changes based on type and query comparator. */
+  static void sortChanges(Query query, List<DocumentViewChange> changes) {
+    Collections.sort(
+        changes,
+        (DocumentViewChange o1, DocumentViewChange o2) -> {
+          int typeComp = compareIntegers(View.changeTypeOrder(o1), View.changeTypeOrder(o2));
+          if (typeComp != 0) {
+            return typeComp;
+          }
+          return query.comparator().compare(o1.getDocument(), o2.getDocument());
+        });
+  }
+
   private static int changeTypeOrder(DocumentViewChange change) {
     switch (change.getType()) {
       case ADDED:
@@ -0,0 +1,264 @@
+// Copyright 2021 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore.local;
+
+import static com.google.firebase.firestore.util.Assert.hardAssert;
+
+import androidx.annotation.Nullable;
+import com.google.firebase.database.collection.ImmutableSortedMap;
+import com.google.firebase.database.collection.ImmutableSortedSet;
+import com.google.firebase.firestore.core.FieldFilter;
+import com.google.firebase.firestore.core.Filter;
+import com.google.firebase.firestore.core.Query;
+import com.google.firebase.firestore.core.Target;
+import com.google.firebase.firestore.local.QueryPlan.Strategy;
+import com.google.firebase.firestore.model.Document;
+import com.google.firebase.firestore.model.DocumentKey;
+import com.google.firebase.firestore.model.FieldIndex;
+import com.google.firebase.firestore.model.FieldPath;
+import com.google.firebase.firestore.model.SnapshotVersion;
+import com.google.firebase.firestore.util.Logger;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A query engine that estimates the cost of every strategy that can execute a query and runs the
+ * cheapest one. See {@link QueryPlan.Strategy} for the available strategies.
+ *
+ * <p>Planning is kept cheap since it runs for every query. Documents in the queried collection are
+ * only counted up to the size at which the previous results of a query become cheaper to look up,
+ * and a field index is only read once the query is executed against it. The share of the
+ * collection that an index returns is estimated from the query's filters. Mutations are not part
+ * of the estimate since every strategy applies the same pending mutations.
+ *
+ * <p>This engine is only used if {@link Persistence#COST_BASED_QUERY_PLANNING_ENABLED} is set.
+ */
+public class CostBasedQueryEngine implements QueryEngine {
+  private static final String LOG_TAG = "CostBasedQueryEngine";
+
+  /** The relative cost of reading and decoding a document as part of a collection scan. */
+  static final double SCAN_COST_PER_DOCUMENT = 1.0;
+
+  /**
+   * The relative cost of reading and decoding a document by its key. Each lookup requires a
+   * separate index probe, which makes it more expensive than a sequential read.
+   */
+  static final double LOOKUP_COST_PER_DOCUMENT = 2.0;
+
+  /**
+   * The relative cost of skipping a document during a collection scan that is filtered by read
+   * time. These documents are filtered in SQLite and are not decoded.
+   */
+  static final double FILTER_COST_PER_DOCUMENT = 0.1;
+
+  /**
+   * The relative cost of reading an entry from a field index. Index entries are small and read in
+   * order, but the document of every entry still needs to be looked up by its key.
+   */
+  static final double INDEX_ENTRY_COST_PER_DOCUMENT = 0.5;
+
+  /**
+   * The estimated share of the collection that matches an equality filter on an indexed field.
+   * Without statistics about the values in the index, this is the default that query optimizers
+   * commonly assume.
+   */
+  static final double EQUALITY_SELECTIVITY = 0.1;
+
+  /** The estimated share of the collection that matches a range filter on an indexed field. */
+  static final double RANGE_SELECTIVITY = 1.0 / 3.0;
+
+  private final DefaultQueryEngine previousResultsEngine = new DefaultQueryEngine();
+  private LocalDocumentsView localDocumentsView;
+
+  @Override
+  public void setLocalDocumentsView(LocalDocumentsView localDocuments) {
+    this.localDocumentsView = localDocuments;
+    previousResultsEngine.setLocalDocumentsView(localDocuments);
+  }
+
+  @Override
+  public ImmutableSortedMap<DocumentKey, Document> getDocumentsMatchingQuery(
+      Query query,
+      SnapshotVersion lastLimboFreeSnapshotVersion,
+      ImmutableSortedSet<DocumentKey> remoteKeys) {
+    hardAssert(localDocumentsView != null, "setLocalDocumentsView() not called");
+
+    QueryPlan plan = plan(query, lastLimboFreeSnapshotVersion, remoteKeys);
+    if (Logger.isDebugEnabled()) {
+      Logger.debug(LOG_TAG, "Executing query %s with plan %s", query, plan.explain());
+    }
+
+    switch (plan.getStrategy()) {
+      case PREVIOUS_RESULTS:
+        // The DefaultQueryEngine falls back to a full collection scan if the previous results of
+        // a limit query can no longer be used.
+        return previousResultsEngine.getDocumentsMatchingQuery(
+            query, lastLimboFreeSnapshotVersion, remoteKeys);
+      case INDEX_SCAN:
+        return executeIndexScan(query, plan.getFieldIndex());
+      default:
+        return localDocumentsView.getDocumentsMatchingQuery(query, SnapshotVersion.NONE);
+    }
+  }
+
+  /** Estimates the cost of all applicable strategies and returns the cheapest plan. */
+  QueryPlan plan(
+      Query query,
+      SnapshotVersion lastLimboFreeSnapshotVersion,
+      ImmutableSortedSet<DocumentKey> remoteKeys) {
+    // Queries that match all documents don't benefit from key-based lookups. It is more efficient
+    // to scan all documents in a collection, rather than to perform individual lookups.
+    if (query.isDocumentQuery() || query.matchesAllDocuments()) {
+      return QueryPlan.fullCollectionScan();
+    }
+
+    // The previous results are the documents that a field index would return at the last
+    // limbo-free snapshot. Looking them up is never more expensive than reading the same keys from
+    // the index first, so the index is only considered for queries without previous results.
+    if (!lastLimboFreeSnapshotVersion.equals(SnapshotVersion.NONE)) {
+      return planWithPreviousResults(query, remoteKeys);
+    }
+
+    @Nullable FieldIndex fieldIndex = null;
+    if (Persistence.INDEXING_SUPPORT_ENABLED) {
+      fieldIndex = localDocumentsView.getFieldIndex(query.toTarget());
+    }
+    return fieldIndex != null
+        ? planWithFieldIndex(query, fieldIndex)
+        : QueryPlan.fullCollectionScan();
+  }
+
+  /** Chooses between a full collection scan and a lookup of the query's previous results. */
+  private QueryPlan planWithPreviousResults(
+      Query query, ImmutableSortedSet<DocumentKey> remoteKeys) {
+    // A full collection scan is only cheaper than looking up the previous results if the
+    // collection contains fewer documents than the break-even size, so there is no need to count
+    // any further.
+    double lookupCost = remoteKeys.size() * LOOKUP_COST_PER_DOCUMENT;
+    double breakEvenSize = lookupCost / (SCAN_COST_PER_DOCUMENT - FILTER_COST_PER_DOCUMENT);
+    int countLimit = (int) Math.min(Integer.MAX_VALUE - 1, Math.floor(breakEvenSize)) + 1;
+    int collectionSize = localDocumentsView.getCollectionScanSize(query, countLimit);
+
+    Map<Strategy, Double> costs = new EnumMap<>(Strategy.class);
+    costs.put(Strategy.FULL_COLLECTION_SCAN, collectionSize * SCAN_COST_PER_DOCUMENT);
+    // The previous results are combined with the documents that changed since the last limbo-free
+    // snapshot, which are found by scanning the collection filtered by read time.
+    costs.put(
+        Strategy.PREVIOUS_RESULTS, lookupCost + collectionSize * FILTER_COST_PER_DOCUMENT);
+    return cheapestPlan(costs, /* fieldIndex= */ null);
+  }
+
+  /**
+   * Chooses between a full collection scan and a scan of the given field index. Both strategies
+   * read a share of the collection that does not depend on its size, so the costs are estimated
+   * per document in the collection and the collection is not counted.
+   */
+  private QueryPlan planWithFieldIndex(Query query, FieldIndex fieldIndex) {
+    double selectivity = estimateSelectivity(query, fieldIndex);
+
+    Map<Strategy, Double> costs = new EnumMap<>(Strategy.class);
+    costs.put(Strategy.FULL_COLLECTION_SCAN, SCAN_COST_PER_DOCUMENT);
+    costs.put(
+        Strategy.INDEX_SCAN,
+        selectivity * (INDEX_ENTRY_COST_PER_DOCUMENT + LOOKUP_COST_PER_DOCUMENT)
+            + FILTER_COST_PER_DOCUMENT);
+    return cheapestPlan(costs, fieldIndex);
+  }
+
+  /**
+   * Estimates the share of the collection that the field index returns for the query. Only the
+   * filters on indexed fields narrow down the index scan. All other filters are applied after the
+   * documents are looked up.
+   */
+  static double estimateSelectivity(Query query, FieldIndex fieldIndex) {
+    Set<FieldPath> indexedFields = new HashSet<>();
+    for (int i = 0; i < fieldIndex.segmentCount(); ++i) {
+      indexedFields.add(fieldIndex.getSegment(i).getFieldPath());
+    }
+
+    double selectivity = 1.0;
+    for (Filter filter : query.getFilters()) {
+      if (!(filter instanceof FieldFilter) || !indexedFields.contains(filter.getField())) {
+        continue;
+      }
+      FieldFilter fieldFilter = (FieldFilter) filter;
+      switch (fieldFilter.getOperator()) {
+        case EQUAL:
+        case ARRAY_CONTAINS:
+          selectivity *= EQUALITY_SELECTIVITY;
+          break;
+        case IN:
+        case ARRAY_CONTAINS_ANY:
+          int valueCount = fieldFilter.getValue().getArrayValue().getValuesCount();
+          selectivity *= Math.min(1.0, valueCount * EQUALITY_SELECTIVITY);
+          break;
+        case LESS_THAN:
+        case LESS_THAN_OR_EQUAL:
+        case GREATER_THAN:
+        case GREATER_THAN_OR_EQUAL:
+          selectivity *= RANGE_SELECTIVITY;
+          break;
+        default:
+          // Inequalities such as != and not-in match most of the collection.
+          break;
+      }
+    }
+    return selectivity;
+  }
+
+  /** Returns a plan for the cheapest strategy. Ties are resolved in the order of the strategies. */
+  private static QueryPlan cheapestPlan(
+      Map<Strategy, Double> costs, @Nullable FieldIndex fieldIndex) {
+    Strategy cheapestStrategy = Strategy.FULL_COLLECTION_SCAN;
+    for (Map.Entry<Strategy, Double> entry : costs.entrySet()) {
+      if (entry.getValue() < costs.get(cheapestStrategy)) {
+        cheapestStrategy = entry.getKey();
+      }
+    }
+    return new QueryPlan(
+        cheapestStrategy, costs, cheapestStrategy == Strategy.INDEX_SCAN ? fieldIndex : null);
+  }
+
+  /**
+   * Executes the query using the keys from the field index. Documents that changed since the index
+   * was last updated get merged into the result, and documents whose index entries are stale are
+   * removed from it.
+   */
+  private ImmutableSortedMap<DocumentKey, Document> executeIndexScan(
+      Query query, FieldIndex fieldIndex) {
+    // The index is read without the query's limit. Index entries that are stale or shadowed by
+    // newer versions of a document would otherwise take up slots of documents that still match.
+    Target target = query.limitToFirst(Target.NO_LIMIT).toTarget();
+    Set<DocumentKey> indexKeys = localDocumentsView.getDocumentKeysFromIndex(fieldIndex, target);
+
+    ImmutableSortedMap<DocumentKey, Document> indexedDocuments =
+        localDocumentsView.getDocuments(indexKeys);
+    ImmutableSortedMap<DocumentKey, Document> additionalDocuments =
+        localDocumentsView.getDocumentsMatchingQuery(query, fieldIndex.getUpdateTime());
+    for (Map.Entry<DocumentKey, Document> entry : additionalDocuments) {
+      indexedDocuments = indexedDocuments.insert(entry.getKey(), entry.getValue());
+    }
+
+    ImmutableSortedMap<DocumentKey, Document> result = indexedDocuments;
+    for (Map.Entry<DocumentKey, Document> entry : indexedDocuments) {
+      if (!query.matches(entry.getValue())) {
+        result = result.remove(entry.getKey());
+      }
+    }
+    return result;
+  }
+}
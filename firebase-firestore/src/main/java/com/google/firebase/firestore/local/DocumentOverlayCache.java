@@ -19,6 +19,7 @@ import com.google.firebase.firestore.model.DocumentKey;
 import com.google.firebase.firestore.model.ResourcePath;
 import com.google.firebase.firestore.model.mutation.Mutation;
 import java.util.Map;
+import java.util.SortedSet;
 
 /**
  * Provides methods to read and write document overlays.
@@ -46,6 +47,18 @@ public interface DocumentOverlayCache {
   /** Removes the overlay whose largest-batch-id equals to the given Id. */
   void removeOverlaysForBatchId(int batchId);
 
+  /**
+   * Gets the saved overlay mutations for the given document keys. Keys without an overlay are not
+   * included in the result.
+   */
+  Map<DocumentKey, Mutation> getOverlays(SortedSet<DocumentKey> keys);
+
   /** Returns all saved overlay for the given collection. */
   Map<DocumentKey, Mutation> getOverlays(ResourcePath collection);
+
+  /**
+   * Returns all saved overlays for documents in collections with the given collection ID,
+   * regardless of their parent.
+   */
+  Map<DocumentKey, Mutation> getOverlays(String collectionGroup);
 }
@@ -26,6 +26,7 @@ import com.google.firebase.firestore.model.FieldIndex;
 import com.google.firebase.firestore.model.ResourcePath;
 import com.google.firebase.firestore.model.SnapshotVersion;
 import com.google.firebase.firestore.util.AsyncQueue;
+import com.google.firebase.firestore.util.Logger;
 import com.google.firebase.firestore.util.Preconditions;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
@@ -36,8 +37,29 @@ public class IndexBackfiller {
   private static final long INITIAL_BACKFILL_DELAY_MS = TimeUnit.SECONDS.toMillis(15);
   /** Minimum amount of time between backfill checks, after the first one. */
   private static final long REGULAR_BACKFILL_DELAY_MS = TimeUnit.MINUTES.toMillis(1);
-  /** The maximum number of entries to write each time backfill() is called. */
+  /**
+   * Delay between backfill passes while there are still documents to index. The delay allows other
+   * operations on the AsyncQueue to run between passes.
+   */
+  private static final long CONTINUATION_BACKFILL_DELAY_MS = 100;
+  /** Delay before retrying a backfill pass that was postponed because queries were running. */
+  private static final long FOREGROUND_YIELD_DELAY_MS = 500;
+  /**
+   * The maximum number of consecutive backfill passes that are postponed for queries. This ensures
+   * that backfill makes progress even if the app queries the cache continuously.
+   */
+  private static final int MAX_CONSECUTIVE_YIELDS = 10;
+  /** The initial number of entries to write each time backfill() is called. */
   private static final int MAX_INDEX_ENTRIES_TO_PROCESS = 1000;
+  /** The lower bound for the number of entries to write in a single backfill pass. */
+  private static final int MIN_INDEX_ENTRIES_TO_PROCESS_LIMIT = 100;
+  /** The upper bound for the number of entries to write in a single backfill pass. */
+  private static final int MAX_INDEX_ENTRIES_TO_PROCESS_LIMIT = 20000;
+  /**
+   * The target duration of a single backfill pass. Since a pass blocks the AsyncQueue, the number
+   * of entries written per pass is adjusted to keep the pass duration close to this value.
+   */
+  private static final long TARGET_BACKFILL_DURATION_MS = 50;
 
   private final SQLitePersistence persistence;
   private final SQLiteIndexManager indexManager;
@@ -78,12 +100,28 @@ public class IndexBackfiller {
     }
   }
 
+  /**
+   * This class is responsible for the scheduling of index backfill. Backfill runs in passes that
+   * each write a bounded number of entries in a single transaction. While a pass exhausts its
+   * budget, the next pass is scheduled shortly after so that indexes catch up quickly after a large
+   * sync.
+   *
+   * <p>If queries were executed against the local cache since the last pass, the next pass is
+   * postponed so that backfill does not delay foreground work.
+   */
   public class BackfillScheduler implements Scheduler {
     private final AsyncQueue asyncQueue;
     private final LocalStore localStore;
     private boolean hasRun = false;
+    private boolean hasRemainingWork = false;
     @Nullable private AsyncQueue.DelayedTask backfillTask;
 
+    private long totalEntriesAdded = 0;
+    private long totalDurationMs = 0;
+
+    private long lastExecutedQueryCount = 0;
+    private int consecutiveYields = 0;
+
     public BackfillScheduler(AsyncQueue asyncQueue, LocalStore localStore) {
       this.asyncQueue = asyncQueue;
       this.localStore = localStore;
@@ -102,16 +140,89 @@ public class IndexBackfiller {
     }
 
     private void scheduleBackfill() {
-      long delay = hasRun ? REGULAR_BACKFILL_DELAY_MS : INITIAL_BACKFILL_DELAY_MS;
+      long delay;
+      if (!hasRun) {
+        delay = INITIAL_BACKFILL_DELAY_MS;
+      } else if (hasRemainingWork) {
+        delay = CONTINUATION_BACKFILL_DELAY_MS;
+      } else {
+        delay = REGULAR_BACKFILL_DELAY_MS;
+      }
       backfillTask =
           asyncQueue.enqueueAfterDelay(
-              AsyncQueue.TimerId.INDEX_BACKFILL,
-              delay,
-              () -> {
-                localStore.backfillIndexes(IndexBackfiller.this);
-                hasRun = true;
-                scheduleBackfill();
-              });
+              AsyncQueue.TimerId.INDEX_BACKFILL, delay, this::runBackfillPass);
+    }
+
+    private void runBackfillPass() {
+      if (shouldYieldToQueries()) {
+        Logger.debug("IndexBackfiller", "Postponing backfill while queries are running");
+        backfillTask =
+            asyncQueue.enqueueAfterDelay(
+                AsyncQueue.TimerId.INDEX_BACKFILL,
+                FOREGROUND_YIELD_DELAY_MS,
+                this::runBackfillPass);
+        return;
+      }
+
+      int budget = maxIndexEntriesToProcess;
+      long startNanos = System.nanoTime();
+      Results results = localStore.backfillIndexes(IndexBackfiller.this);
+      long durationMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+
+      totalEntriesAdded += results.getEntriesAdded();
+      totalDurationMs += durationMs;
+      hasRemainingWork = results.getEntriesAdded() >= budget;
+      hasRun = true;
+      adjustMaxIndexEntriesToProcess(results.getEntriesAdded(), durationMs);
+
+      if (Logger.isDebugEnabled()) {
+        Logger.debug(
+            "IndexBackfiller",
+            "Wrote %d index entries in %dms (%d entries in %dms total, %d entries/s). "
+                + "Next pass will write up to %d entries.",
+            results.getEntriesAdded(),
+            durationMs,
+            totalEntriesAdded,
+            totalDurationMs,
+            getEntriesPerSecond(),
+            maxIndexEntriesToProcess);
+      }
+
+      scheduleBackfill();
+    }
+
+    /**
+     * Returns whether queries were executed since the last check, in which case the backfill pass
+     * should be postponed. Only a limited number of consecutive passes are postponed.
+     */
+    private boolean shouldYieldToQueries() {
+      long executedQueryCount = localStore.getExecutedQueryCount();
+      boolean queriesRan = executedQueryCount != lastExecutedQueryCount;
+      lastExecutedQueryCount = executedQueryCount;
+      if (queriesRan && consecutiveYields < MAX_CONSECUTIVE_YIELDS) {
+        ++consecutiveYields;
+        return true;
+      }
+      consecutiveYields = 0;
+      return false;
+    }
+
+    /** Returns the total number of index entries written by this scheduler. */
+    public long getTotalEntriesAdded() {
+      return totalEntriesAdded;
+    }
+
+    /** Returns the average number of index entries written per second of backfill time. */
+    public long getEntriesPerSecond() {
+      return totalDurationMs > 0 ? totalEntriesAdded * 1000 / totalDurationMs : 0;
+    }
+
+    /**
+     * Returns whether the last backfill pass exhausted its budget, which indicates that there are
+     * more documents to index.
+     */
+    public boolean hasRemainingWork() {
+      return hasRemainingWork;
     }
   }
 
@@ -178,6 +289,33 @@ public class IndexBackfiller {
     return lowestVersion;
   }
 
+  /**
+   * Adjusts the number of entries to write in the next backfill pass based on the duration of the
+   * last pass. The budget grows while passes that exhaust it finish well within {@link
+   * #TARGET_BACKFILL_DURATION_MS} and shrinks when passes take longer. Passes that did not write
+   * any entries are ignored, since their duration does not depend on the budget.
+   */
+  @VisibleForTesting
+  void adjustMaxIndexEntriesToProcess(int entriesAdded, long durationMs) {
+    if (entriesAdded == 0) {
+      return;
+    }
+
+    if (durationMs > TARGET_BACKFILL_DURATION_MS) {
+      maxIndexEntriesToProcess =
+          Math.max(MIN_INDEX_ENTRIES_TO_PROCESS_LIMIT, maxIndexEntriesToProcess / 2);
+    } else if (entriesAdded >= maxIndexEntriesToProcess
+        && durationMs < TARGET_BACKFILL_DURATION_MS / 2) {
+      maxIndexEntriesToProcess =
+          Math.min(MAX_INDEX_ENTRIES_TO_PROCESS_LIMIT, maxIndexEntriesToProcess * 2);
+    }
+  }
+
+  @VisibleForTesting
+  int getMaxIndexEntriesToProcess() {
+    return maxIndexEntriesToProcess;
+  }
+
   @VisibleForTesting
   void setMaxIndexEntriesToProcess(int newMax) {
     maxIndexEntriesToProcess = newMax;
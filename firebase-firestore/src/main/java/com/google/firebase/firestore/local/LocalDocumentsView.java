@@ -15,14 +15,16 @@
 package com.google.firebase.firestore.local;
 
 import static com.google.firebase.firestore.model.DocumentCollections.emptyDocumentMap;
-import static com.google.firebase.firestore.util.Assert.hardAssert;
 
+import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
 import com.google.firebase.Timestamp;
 import com.google.firebase.database.collection.ImmutableSortedMap;
 import com.google.firebase.firestore.core.Query;
+import com.google.firebase.firestore.core.Target;
 import com.google.firebase.firestore.model.Document;
 import com.google.firebase.firestore.model.DocumentKey;
+import com.google.firebase.firestore.model.FieldIndex;
 import com.google.firebase.firestore.model.MutableDocument;
 import com.google.firebase.firestore.model.ResourcePath;
 import com.google.firebase.firestore.model.SnapshotVersion;
@@ -36,6 +38,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.TreeSet;
 
 /**
  * A readonly view of the local state of all documents we're tracking (i.e. we have a cached version
@@ -94,14 +97,6 @@ class LocalDocumentsView {
       if (overlay != null) {
         overlay.applyToLocalView(fromOverlay, null, Timestamp.now());
       }
-
-      // TODO(Overlay): Remove below and just return `fromOverlay`.
-      List<MutationBatch> batches = mutationQueue.getAllMutationBatchesAffectingDocumentKey(key);
-      Document fromMutationQueue = getDocument(key, batches);
-      hardAssert(
-          fromOverlay.equals(fromMutationQueue),
-          "Document from overlay does not match mutation queue");
-
       return fromOverlay;
     }
     List<MutationBatch> batches = mutationQueue.getAllMutationBatchesAffectingDocumentKey(key);
@@ -122,19 +117,14 @@ class LocalDocumentsView {
    * the contents of the mutations.
    *
    * <p>Returns a {@link DocumentKey} to {@link FieldMask} map, representing the fields mutated for
-   * each document. This is useful to build overlays.
+   * each document that is affected by the batches. This is useful to build overlays.
    */
   private Map<DocumentKey, FieldMask> applyLocalMutationsToDocuments(
       Map<DocumentKey, MutableDocument> docs, List<MutationBatch> batches) {
     Map<DocumentKey, FieldMask> changedMasks = new HashMap<>();
-    for (Map.Entry<DocumentKey, MutableDocument> base : docs.entrySet()) {
-      FieldMask mask = null;
-      for (MutationBatch batch : batches) {
-        mask = batch.applyToLocalView(base.getValue(), mask);
-      }
-      changedMasks.put(base.getKey(), mask);
+    for (MutationBatch batch : batches) {
+      batch.applyToLocalDocuments(docs, changedMasks);
     }
-
     return changedMasks;
   }
 
@@ -162,8 +152,10 @@ class LocalDocumentsView {
     ImmutableSortedMap<DocumentKey, Document> results = emptyDocumentMap();
     if (Persistence.OVERLAY_SUPPORT_ENABLED) {
       Map<DocumentKey, MutableDocument> recalculateDocuments = new HashMap<>();
+      Map<DocumentKey, Mutation> overlays =
+          documentOverlayCache.getOverlays(new TreeSet<>(docs.keySet()));
       for (Map.Entry<DocumentKey, MutableDocument> entry : docs.entrySet()) {
-        Mutation overlay = documentOverlayCache.getOverlay(entry.getKey());
+        Mutation overlay = overlays.get(entry.getKey());
         // Recalculate an overlay if the document's existence state is changed due to a remote
         // event *and* the overlay is a PatchMutation. This is because document existence state
         // can change if some patch mutation's preconditions are met.
@@ -200,17 +192,17 @@ class LocalDocumentsView {
     TreeMap<Integer, Set<DocumentKey>> documentsByBatchId = new TreeMap<>();
 
     // Apply mutations from mutation queue to the documents, collecting batch id and field masks
-    // along the way.
+    // along the way. Each batch is applied in a single pass over its mutations.
     for (MutationBatch batch : batches) {
+      batch.applyToLocalDocuments(docs, masks);
+      Set<DocumentKey> batchKeys = new HashSet<>();
       for (DocumentKey key : batch.getKeys()) {
-        FieldMask mask = batch.applyToLocalView(docs.get(key), masks.get(key));
-        masks.put(key, mask);
-        int batchId = batch.getBatchId();
-        if (!documentsByBatchId.containsKey(batchId)) {
-          documentsByBatchId.put(batchId, new HashSet<>());
+        // Batches may contain documents whose overlays are not recalculated.
+        if (docs.containsKey(key)) {
+          batchKeys.add(key);
         }
-        documentsByBatchId.get(batchId).add(key);
       }
+      documentsByBatchId.put(batch.getBatchId(), batchKeys);
     }
 
     Set<DocumentKey> processed = new HashSet<>();
@@ -234,6 +226,31 @@ class LocalDocumentsView {
     recalculateOverlays(docs);
   }
 
+  /**
+   * Returns the number of cached documents that are read by a full collection scan for the given
+   * query, counting at most {@code limit} documents. Used to estimate the cost of query execution.
+   */
+  int getCollectionScanSize(Query query, int limit) {
+    if (query.isDocumentQuery()) {
+      return Math.min(1, limit);
+    } else if (query.isCollectionGroupQuery()) {
+      return remoteDocumentCache.getCollectionGroupSize(query.getCollectionGroup(), limit);
+    } else {
+      return remoteDocumentCache.getCollectionSize(query.getPath(), limit);
+    }
+  }
+
+  /** Returns the field index that can serve the given target, if any. */
+  @Nullable
+  FieldIndex getFieldIndex(Target target) {
+    return indexManager.getFieldIndex(target);
+  }
+
+  /** Returns the keys of the documents that the given field index returns for the target. */
+  Set<DocumentKey> getDocumentKeysFromIndex(FieldIndex fieldIndex, Target target) {
+    return indexManager.getDocumentsMatchingTarget(fieldIndex, target);
+  }
+
   // TODO: The Querying implementation here should move 100% to the query engines.
   // Instead, we should just provide a getCollectionDocuments() method here that return all the
   // documents in a given collection so that query engine can do that and then filter in
@@ -251,9 +268,9 @@ class LocalDocumentsView {
     ResourcePath path = query.getPath();
     if (query.isDocumentQuery()) {
       return getDocumentsMatchingDocumentQuery(path);
-    } else if (query.isCollectionGroupQuery()) {
-      return getDocumentsMatchingCollectionGroupQuery(query, sinceReadTime);
     } else {
+      // Collection group queries are answered by the caches directly, which avoids running one
+      // collection query per parent.
       return getDocumentsMatchingCollectionQuery(query, sinceReadTime);
     }
   }
@@ -270,28 +287,6 @@ class LocalDocumentsView {
     return result;
   }
 
-  private ImmutableSortedMap<DocumentKey, Document> getDocumentsMatchingCollectionGroupQuery(
-      Query query, SnapshotVersion sinceReadTime) {
-    hardAssert(
-        query.getPath().isEmpty(),
-        "Currently we only support collection group queries at the root.");
-    String collectionId = query.getCollectionGroup();
-    ImmutableSortedMap<DocumentKey, Document> results = emptyDocumentMap();
-    List<ResourcePath> parents = indexManager.getCollectionParents(collectionId);
-
-    // Perform a collection query against each parent that contains the collectionId and
-    // aggregate the results.
-    for (ResourcePath parent : parents) {
-      Query collectionQuery = query.asCollectionQueryAtPath(parent.append(collectionId));
-      ImmutableSortedMap<DocumentKey, Document> collectionResults =
-          getDocumentsMatchingCollectionQuery(collectionQuery, sinceReadTime);
-      for (Map.Entry<DocumentKey, Document> docEntry : collectionResults) {
-        results = results.insert(docEntry.getKey(), docEntry.getValue());
-      }
-    }
-    return results;
-  }
-
   private ImmutableSortedMap<DocumentKey, Document> getDocumentsMatchingCollectionQuery(
       Query query, SnapshotVersion sinceReadTime) {
     if (Persistence.OVERLAY_SUPPORT_ENABLED) {
@@ -320,7 +315,10 @@ class LocalDocumentsView {
           Query query, SnapshotVersion sinceReadTime) {
     ImmutableSortedMap<DocumentKey, MutableDocument> remoteDocuments =
         remoteDocumentCache.getAllDocumentsMatchingQuery(query, sinceReadTime);
-    Map<DocumentKey, Mutation> overlays = documentOverlayCache.getOverlays(query.getPath());
+    Map<DocumentKey, Mutation> overlays =
+        query.isCollectionGroupQuery()
+            ? documentOverlayCache.getOverlays(query.getCollectionGroup())
+            : documentOverlayCache.getOverlays(query.getPath());
 
     // As documents might match the query because of their overlay we need to include all documents
     // in the result.
@@ -364,8 +362,8 @@ class LocalDocumentsView {
 
     for (MutationBatch batch : matchingBatches) {
       for (Mutation mutation : batch.getMutations()) {
-        // Only process documents belonging to the collection.
-        if (!query.getPath().isImmediateParentOf(mutation.getKey().getPath())) {
+        // Only process documents belonging to the collection (or collection group).
+        if (!isInQueryCollection(query, mutation.getKey())) {
           continue;
         }
 
@@ -395,6 +393,13 @@ class LocalDocumentsView {
     return results;
   }
 
+  /** Returns whether the document is in the collection or collection group of the query. */
+  private static boolean isInQueryCollection(Query query, DocumentKey key) {
+    return query.isCollectionGroupQuery()
+        ? key.hasCollectionId(query.getCollectionGroup())
+        : query.getPath().isImmediateParentOf(key.getPath());
+  }
+
   /**
    * It is possible that a {@code PatchMutation} can make a document match a query, even if the
    * version in the {@code RemoteDocumentCache} is not a match yet (waiting for server to ack). To
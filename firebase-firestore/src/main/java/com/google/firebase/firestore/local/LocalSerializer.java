@@ -84,6 +84,27 @@ public final class LocalSerializer {
     }
   }
 
+  /**
+   * Decodes a LazyMaybeDocument proto to the equivalent model. The field values of the document are
+   * only parsed when they are accessed.
+   */
+  MutableDocument decodeMaybeDocument(
+      com.google.firebase.firestore.proto.LazyMaybeDocument proto) {
+    switch (proto.getDocumentTypeCase()) {
+      case DOCUMENT:
+        return decodeDocument(proto.getDocument(), proto.getHasCommittedMutations());
+
+      case NO_DOCUMENT:
+        return decodeNoDocument(proto.getNoDocument(), proto.getHasCommittedMutations());
+
+      case UNKNOWN_DOCUMENT:
+        return decodeUnknownDocument(proto.getUnknownDocument());
+
+      default:
+        throw fail("Unknown MaybeDocument %s", proto);
+    }
+  }
+
   /**
    * Encodes a Document for local storage. This differs from the v1 RPC serializer for Documents in
    * that it preserves the updateTime, which is considered an output only value by the server.
@@ -109,6 +130,17 @@ public final class LocalSerializer {
     return hasCommittedMutations ? result.setHasCommittedMutations() : result;
   }
 
+  /** Decodes a LazyDocument proto to the equivalent model. */
+  private MutableDocument decodeDocument(
+      com.google.firebase.firestore.proto.LazyDocument document, boolean hasCommittedMutations) {
+    DocumentKey key = rpcSerializer.decodeKey(document.getName());
+    SnapshotVersion version = rpcSerializer.decodeVersion(document.getUpdateTime());
+    MutableDocument result =
+        MutableDocument.newFoundDocument(
+            key, version, ObjectValue.fromSerializedFields(document.getFieldsMap()));
+    return hasCommittedMutations ? result.setHasCommittedMutations() : result;
+  }
+
   /** Encodes a NoDocument value to the equivalent proto. */
   private com.google.firebase.firestore.proto.NoDocument encodeNoDocument(
       MutableDocument document) {
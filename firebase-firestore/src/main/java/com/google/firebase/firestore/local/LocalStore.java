@@ -145,6 +145,12 @@ public final class LocalStore implements BundleCallback {
   /** Used to generate targetIds for queries tracked locally. */
   private final TargetIdGenerator targetIdGenerator;
 
+  /**
+   * The number of queries that were executed against the local cache. Used by background tasks to
+   * detect foreground activity.
+   */
+  private long executedQueryCount;
+
   public LocalStore(Persistence persistence, QueryEngine queryEngine, User initialUser) {
     hardAssert(
         persistence.isStarted(), "LocalStore was passed an unstarted persistence implementation");
@@ -689,7 +695,9 @@ public final class LocalStore implements BundleCallback {
 
   @Override
   public ImmutableSortedMap<DocumentKey, Document> applyBundledDocuments(
-      ImmutableSortedMap<DocumentKey, MutableDocument> documents, String bundleId) {
+      ImmutableSortedMap<DocumentKey, MutableDocument> documents,
+      String bundleId,
+      boolean isFirstChunk) {
     // Allocates a target to hold all document keys from the bundle, such that
     // they will not get garbage collected right away.
     TargetData umbrellaTargetData = allocateTarget(newUmbrellaTarget(bundleId));
@@ -712,7 +720,12 @@ public final class LocalStore implements BundleCallback {
             versionMap.put(documentKey, document.getVersion());
           }
 
-          targetCache.removeMatchingKeysForTargetId(umbrellaTargetData.getTargetId());
+          // The documents of a bundle may be applied in several chunks. The keys from a previous
+          // load of the same bundle are dropped with the first chunk, and the keys of each chunk
+          // are then added to the keys that are already held by the umbrella target.
+          if (isFirstChunk) {
+            targetCache.removeMatchingKeysForTargetId(umbrellaTargetData.getTargetId());
+          }
           targetCache.addMatchingKeys(documentKeys, umbrellaTargetData.getTargetId());
 
           DocumentChangeResult result =
@@ -810,6 +823,7 @@ public final class LocalStore implements BundleCallback {
    *     query execution.
    */
   public QueryResult executeQuery(Query query, boolean usePreviousResults) {
+    ++executedQueryCount;
     TargetData targetData = getTargetData(query.toTarget());
     SnapshotVersion lastLimboFreeSnapshotVersion = SnapshotVersion.NONE;
     ImmutableSortedSet<DocumentKey> remoteKeys = DocumentKey.emptyKeySet();
@@ -859,6 +873,20 @@ public final class LocalStore implements BundleCallback {
         "Collect garbage", () -> garbageCollector.collect(queryDataByTarget));
   }
 
+  /**
+   * Runs the next slice of an incremental garbage collection. Returns whether the collection is
+   * complete.
+   */
+  public boolean collectGarbageSlice(LruGarbageCollector.IncrementalCollection collection) {
+    return persistence.runTransaction(
+        "Collect garbage slice", () -> collection.runSlice(queryDataByTarget));
+  }
+
+  /** Returns the number of queries that were executed against the local cache so far. */
+  public long getExecutedQueryCount() {
+    return executedQueryCount;
+  }
+
   public IndexBackfiller.Results backfillIndexes(IndexBackfiller indexBackfiller) {
     return persistence.runTransaction(
         "Backfill Indexes", () -> indexBackfiller.backfill(localDocuments));
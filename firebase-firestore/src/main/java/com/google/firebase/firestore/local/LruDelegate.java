@@ -15,6 +15,8 @@
 package com.google.firebase.firestore.local;
 
 import android.util.SparseArray;
+import androidx.annotation.Nullable;
+import com.google.firebase.firestore.model.DocumentKey;
 import com.google.firebase.firestore.util.Consumer;
 
 /**
@@ -26,11 +28,34 @@ public interface LruDelegate {
   /** Enumerates all the targets in the TargetCache. */
   void forEachTarget(Consumer<TargetData> consumer);
 
+  /**
+   * Enumerates up to `limit` targets in the TargetCache whose target IDs are greater than
+   * `startAfterTargetId`, in order of their target IDs.
+   *
+   * @return the number of targets enumerated. If this is less than `limit`, there are no more
+   *     targets to enumerate.
+   */
+  int forEachTarget(int startAfterTargetId, int limit, Consumer<TargetData> consumer);
+
   long getSequenceNumberCount();
 
+  /** Returns the number of targets in the TargetCache. */
+  long getTargetCount();
+
   /** Enumerates sequence numbers for documents not associated with a target. */
   void forEachOrphanedDocumentSequenceNumber(Consumer<Long> consumer);
 
+  /**
+   * Enumerates sequence numbers for up to `limit` documents not associated with a target whose keys
+   * sort after `startAfter`, in key order.
+   *
+   * @return the key of the last document enumerated, or null if there are no more documents to
+   *     enumerate.
+   */
+  @Nullable
+  DocumentKey forEachOrphanedDocumentSequenceNumber(
+      @Nullable DocumentKey startAfter, int limit, Consumer<Long> consumer);
+
   /**
    * Removes all targets that have a sequence number less than or equal to `upperBound`, and are not
    * present in the `activeTargetIds` set.
@@ -39,6 +64,15 @@ public interface LruDelegate {
    */
   int removeTargets(long upperBound, SparseArray<?> activeTargetIds);
 
+  /**
+   * Removes up to `limit` targets that have a sequence number less than or equal to `upperBound`,
+   * and are not present in the `activeTargetIds` set.
+   *
+   * @return the number of targets removed. If this is less than `limit`, no more targets can be
+   *     removed for the given arguments.
+   */
+  int removeTargets(long upperBound, SparseArray<?> activeTargetIds, int limit);
+
   /**
    * Removes all unreferenced documents from the cache that have a sequence number less than or
    * equal to the given sequence number.
@@ -47,6 +81,16 @@ public interface LruDelegate {
    */
   int removeOrphanedDocuments(long upperBound);
 
+  /**
+   * Removes unreferenced documents from the cache that have a sequence number less than or equal to
+   * the given sequence number. Only considers up to `limit` documents whose keys sort after
+   * `startAfter`.
+   *
+   * @return the number of documents removed and the last document that was considered.
+   */
+  LruGarbageCollector.RemovalBatch removeOrphanedDocuments(
+      long upperBound, @Nullable DocumentKey startAfter, int limit);
+
   /** Access to the underlying LRU Garbage collector instance. */
   LruGarbageCollector getGarbageCollector();
 
@@ -14,10 +14,15 @@
 
 package com.google.firebase.firestore.local;
 
+import static com.google.firebase.firestore.util.Assert.fail;
+import static com.google.firebase.firestore.util.Assert.hardAssert;
+
 import android.util.SparseArray;
 import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 import com.google.firebase.firestore.FirebaseFirestoreSettings;
 import com.google.firebase.firestore.core.ListenSequence;
+import com.google.firebase.firestore.model.DocumentKey;
 import com.google.firebase.firestore.util.AsyncQueue;
 import com.google.firebase.firestore.util.Logger;
 import java.util.Comparator;
@@ -31,6 +36,10 @@ public class LruGarbageCollector {
   private static final long INITIAL_GC_DELAY_MS = TimeUnit.MINUTES.toMillis(1);
   /** Minimum amount of time between GC checks, after the first one. */
   private static final long REGULAR_GC_DELAY_MS = TimeUnit.MINUTES.toMillis(5);
+  /** How long we wait between the slices of an incremental collection. */
+  private static final long SLICE_DELAY_MS = 10;
+  /** The lower bound for the number of documents removed in a single slice. */
+  private static final int MIN_DOCUMENTS_PER_SLICE = 10;
 
   public static class Params {
     private static final long COLLECTION_DISABLED = FirebaseFirestoreSettings.CACHE_SIZE_UNLIMITED;
@@ -46,6 +55,18 @@ public class LruGarbageCollector {
 
     private static final int DEFAULT_MAX_SEQUENCE_NUMBERS_TO_COLLECT = 1000;
 
+    /**
+     * The number of targets or documents that a slice of scheduled garbage collection visits before
+     * yielding the AsyncQueue.
+     */
+    private static final int DEFAULT_MAX_DOCUMENTS_PER_SLICE = 100;
+
+    /**
+     * The amount of time a single slice of scheduled garbage collection may block the AsyncQueue.
+     * Slices that take longer reduce the number of documents removed in the following slices.
+     */
+    private static final long DEFAULT_MAX_SLICE_DURATION_MS = 16;
+
     public static Params Default() {
       return new Params(
           DEFAULT_CACHE_SIZE_BYTES,
@@ -64,11 +85,44 @@ public class LruGarbageCollector {
     final long minBytesThreshold;
     final int percentileToCollect;
     final int maximumSequenceNumbersToCollect;
+    final int maxDocumentsPerSlice;
+    final long maxSliceDurationMs;
 
     Params(long minBytesThreshold, int percentileToCollect, int maximumSequenceNumbersToCollect) {
+      this(
+          minBytesThreshold,
+          percentileToCollect,
+          maximumSequenceNumbersToCollect,
+          DEFAULT_MAX_DOCUMENTS_PER_SLICE,
+          DEFAULT_MAX_SLICE_DURATION_MS);
+    }
+
+    Params(
+        long minBytesThreshold,
+        int percentileToCollect,
+        int maximumSequenceNumbersToCollect,
+        int maxDocumentsPerSlice,
+        long maxSliceDurationMs) {
       this.minBytesThreshold = minBytesThreshold;
       this.percentileToCollect = percentileToCollect;
       this.maximumSequenceNumbersToCollect = maximumSequenceNumbersToCollect;
+      this.maxDocumentsPerSlice = maxDocumentsPerSlice;
+      this.maxSliceDurationMs = maxSliceDurationMs;
+    }
+
+    /**
+     * Returns a copy of these parameters that makes scheduled garbage collection visit at most
+     * {@code maxDocumentsPerSlice} targets or documents before yielding the AsyncQueue, and that
+     * reduces the slice size whenever a slice takes longer than {@code maxSliceDurationMs}.
+     */
+    @VisibleForTesting
+    Params withSliceBudget(int maxDocumentsPerSlice, long maxSliceDurationMs) {
+      return new Params(
+          minBytesThreshold,
+          percentileToCollect,
+          maximumSequenceNumbersToCollect,
+          maxDocumentsPerSlice,
+          maxSliceDurationMs);
     }
   }
 
@@ -77,6 +131,8 @@ public class LruGarbageCollector {
     private final int sequenceNumbersCollected;
     private final int targetsRemoved;
     private final int documentsRemoved;
+    private final int sliceCount;
+    private final long longestSliceDurationMs;
 
     static Results DidNotRun() {
       return new Results(/* hasRun= */ false, 0, 0, 0);
@@ -84,10 +140,22 @@ public class LruGarbageCollector {
 
     Results(
         boolean hasRun, int sequenceNumbersCollected, int targetsRemoved, int documentsRemoved) {
+      this(hasRun, sequenceNumbersCollected, targetsRemoved, documentsRemoved, 0, 0);
+    }
+
+    Results(
+        boolean hasRun,
+        int sequenceNumbersCollected,
+        int targetsRemoved,
+        int documentsRemoved,
+        int sliceCount,
+        long longestSliceDurationMs) {
       this.hasRun = hasRun;
       this.sequenceNumbersCollected = sequenceNumbersCollected;
       this.targetsRemoved = targetsRemoved;
       this.documentsRemoved = documentsRemoved;
+      this.sliceCount = sliceCount;
+      this.longestSliceDurationMs = longestSliceDurationMs;
     }
 
     public boolean hasRun() {
@@ -105,6 +173,44 @@ public class LruGarbageCollector {
     public int getDocumentsRemoved() {
       return documentsRemoved;
     }
+
+    /** Returns the number of slices an incremental collection was split into. */
+    public int getSliceCount() {
+      return sliceCount;
+    }
+
+    /** Returns the longest time a single slice of an incremental collection blocked the queue. */
+    public long getLongestSliceDurationMs() {
+      return longestSliceDurationMs;
+    }
+  }
+
+  /** The result of removing a bounded batch of orphaned documents. */
+  public static class RemovalBatch {
+    private final int documentsRemoved;
+    @Nullable private final DocumentKey lastDocument;
+    private final boolean hasMore;
+
+    RemovalBatch(int documentsRemoved, @Nullable DocumentKey lastDocument, boolean hasMore) {
+      this.documentsRemoved = documentsRemoved;
+      this.lastDocument = lastDocument;
+      this.hasMore = hasMore;
+    }
+
+    public int getDocumentsRemoved() {
+      return documentsRemoved;
+    }
+
+    /** Returns the last document that was considered for removal. */
+    @Nullable
+    public DocumentKey getLastDocument() {
+      return lastDocument;
+    }
+
+    /** Returns whether there may be more documents to consider after the last document. */
+    public boolean hasMore() {
+      return hasMore;
+    }
   }
 
   /**
@@ -142,14 +248,191 @@ public class LruGarbageCollector {
           asyncQueue.enqueueAfterDelay(
               AsyncQueue.TimerId.GARBAGE_COLLECTION,
               delay,
-              () -> {
-                localStore.collectGarbage(LruGarbageCollector.this);
-                hasRun = true;
-                scheduleGC();
-              });
+              () -> runSlice(new IncrementalCollection()));
+    }
+
+    private void runSlice(IncrementalCollection collection) {
+      boolean finished = localStore.collectGarbageSlice(collection);
+      if (finished) {
+        hasRun = true;
+        scheduleGC();
+      } else {
+        // Yield the AsyncQueue so that pending operations can run before the next slice.
+        gcTask =
+            asyncQueue.enqueueAfterDelay(
+                AsyncQueue.TimerId.GARBAGE_COLLECTION,
+                SLICE_DELAY_MS,
+                () -> runSlice(collection));
+      }
+    }
+  }
+
+  /**
+   * A garbage collection run that is split into slices, each of which blocks the AsyncQueue for a
+   * bounded amount of time. Every slice visits at most {@link Params#maxDocumentsPerSlice} rows.
+   * The collection first counts the orphaned documents and then determines the sequence number
+   * upper bound from all targets and orphaned documents, paging through both in key order. It then
+   * removes targets until no more targets can be removed, and afterwards orphaned documents.
+   *
+   * <p>Since the AsyncQueue runs other operations between slices, the upper bound is computed from
+   * data that may change while it is computed. This only affects how many sequence numbers are
+   * collected, not which targets and documents are eligible for collection.
+   */
+  public class IncrementalCollection {
+    private int documentsPerSlice = params.maxDocumentsPerSlice;
+    private Phase phase = Phase.COUNT_DOCUMENTS;
+    private boolean started = false;
+    private boolean hasRun = false;
+    private long sequenceNumberCount;
+    private int sequenceNumbers;
+    @Nullable private RollingSequenceNumberBuffer buffer;
+    // Target IDs are always positive.
+    private int lastTargetId = 0;
+    private long upperBound;
+    private int targetsRemoved;
+    private int documentsRemoved;
+    @Nullable private DocumentKey lastDocument;
+    private int sliceCount;
+    private long longestSliceDurationMs;
+
+    /** Runs the next slice of this collection. Returns whether the collection is complete. */
+    boolean runSlice(SparseArray<?> activeTargetIds) {
+      hardAssert(phase != Phase.FINISHED, "Garbage collection has already finished");
+
+      long startNanos = System.nanoTime();
+      int sliceTargetsRemoved = 0;
+      int sliceDocumentsRemoved = 0;
+      if (!started) {
+        started = true;
+        if (!shouldCollect()) {
+          phase = Phase.FINISHED;
+          return true;
+        }
+        hasRun = true;
+        sequenceNumberCount = delegate.getTargetCount();
+      }
+
+      switch (phase) {
+        case COUNT_DOCUMENTS:
+          lastDocument =
+              delegate.forEachOrphanedDocumentSequenceNumber(
+                  lastDocument, documentsPerSlice, sequenceNumber -> ++sequenceNumberCount);
+          if (lastDocument == null) {
+            sequenceNumbers =
+                capSequenceNumbers(
+                    (int) ((params.percentileToCollect / 100.0f) * sequenceNumberCount));
+            if (sequenceNumbers == 0) {
+              phase = Phase.FINISHED;
+            } else {
+              buffer = new RollingSequenceNumberBuffer(sequenceNumbers);
+              phase = Phase.FIND_UPPER_BOUND_IN_TARGETS;
+            }
+          }
+          break;
+        case FIND_UPPER_BOUND_IN_TARGETS:
+          int targetCount =
+              delegate.forEachTarget(
+                  lastTargetId,
+                  documentsPerSlice,
+                  targetData -> {
+                    lastTargetId = targetData.getTargetId();
+                    buffer.addElement(targetData.getSequenceNumber());
+                  });
+          if (targetCount < documentsPerSlice) {
+            phase = Phase.FIND_UPPER_BOUND_IN_DOCUMENTS;
+          }
+          break;
+        case FIND_UPPER_BOUND_IN_DOCUMENTS:
+          lastDocument =
+              delegate.forEachOrphanedDocumentSequenceNumber(
+                  lastDocument, documentsPerSlice, buffer::addElement);
+          if (lastDocument == null) {
+            upperBound = buffer.getMaxValue();
+            buffer = null;
+            phase = Phase.REMOVE_TARGETS;
+          }
+          break;
+        case REMOVE_TARGETS:
+          // Targets that become active between slices are skipped, since the active target IDs are
+          // passed in for every slice.
+          sliceTargetsRemoved =
+              delegate.removeTargets(upperBound, activeTargetIds, documentsPerSlice);
+          targetsRemoved += sliceTargetsRemoved;
+          if (sliceTargetsRemoved < documentsPerSlice) {
+            phase = Phase.REMOVE_DOCUMENTS;
+          }
+          break;
+        case REMOVE_DOCUMENTS:
+          RemovalBatch batch =
+              delegate.removeOrphanedDocuments(upperBound, lastDocument, documentsPerSlice);
+          sliceDocumentsRemoved = batch.getDocumentsRemoved();
+          documentsRemoved += sliceDocumentsRemoved;
+          lastDocument = batch.getLastDocument();
+          if (!batch.hasMore()) {
+            phase = Phase.FINISHED;
+          }
+          break;
+        default:
+          throw fail("Unexpected garbage collection phase: %s", phase);
+      }
+      boolean finished = phase == Phase.FINISHED;
+      long sliceDurationMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+
+      ++sliceCount;
+      longestSliceDurationMs = Math.max(longestSliceDurationMs, sliceDurationMs);
+      if (sliceDurationMs > params.maxSliceDurationMs) {
+        documentsPerSlice = Math.max(MIN_DOCUMENTS_PER_SLICE, documentsPerSlice / 2);
+      }
+
+      if (Logger.isDebugEnabled()) {
+        // The cache size is only computed when it is logged.
+        Logger.debug(
+            "LruGarbageCollector",
+            "LRU Garbage Collection slice %d: Removed %d targets and %d documents in %dms "
+                + "(cache size: %d bytes)",
+            sliceCount,
+            sliceTargetsRemoved,
+            sliceDocumentsRemoved,
+            sliceDurationMs,
+            getByteSize());
+        if (finished) {
+          Logger.debug(
+              "LruGarbageCollector",
+              "LRU Garbage Collection: Removed %d targets and %d documents in %d slices "
+                  + "(longest slice: %dms)",
+              targetsRemoved,
+              documentsRemoved,
+              sliceCount,
+              longestSliceDurationMs);
+        }
+      }
+      return finished;
+    }
+
+    public Results getResults() {
+      if (!hasRun) {
+        return Results.DidNotRun();
+      }
+      return new Results(
+          /* hasRun= */ true,
+          sequenceNumbers,
+          targetsRemoved,
+          documentsRemoved,
+          sliceCount,
+          longestSliceDurationMs);
     }
   }
 
+  /** The steps of an {@link IncrementalCollection}, in the order in which they run. */
+  private enum Phase {
+    COUNT_DOCUMENTS,
+    FIND_UPPER_BOUND_IN_TARGETS,
+    FIND_UPPER_BOUND_IN_DOCUMENTS,
+    REMOVE_TARGETS,
+    REMOVE_DOCUMENTS,
+    FINISHED
+  }
+
   private final LruDelegate delegate;
   private final Params params;
 
@@ -158,6 +441,11 @@ public class LruGarbageCollector {
     this.params = params;
   }
 
+  /** Returns a new collection that removes garbage in bounded slices. */
+  public IncrementalCollection newIncrementalCollection() {
+    return new IncrementalCollection();
+  }
+
   /** A helper method to create a new scheduler. */
   public GCScheduler newScheduler(AsyncQueue asyncQueue, LocalStore localStore) {
     return new GCScheduler(asyncQueue, localStore);
@@ -197,7 +485,8 @@ public class LruGarbageCollector {
     }
 
     long getMaxValue() {
-      return queue.peek();
+      // The buffer is empty if all elements were removed while an incremental collection ran.
+      return queue.isEmpty() ? ListenSequence.INVALID : queue.peek();
     }
   }
 
@@ -229,9 +518,17 @@ public class LruGarbageCollector {
   }
 
   Results collect(SparseArray<?> activeTargetIds) {
+    if (!shouldCollect()) {
+      return Results.DidNotRun();
+    }
+    return runGarbageCollection(activeTargetIds);
+  }
+
+  /** Returns whether garbage collection is enabled and the cache exceeds the size threshold. */
+  private boolean shouldCollect() {
     if (params.minBytesThreshold == Params.COLLECTION_DISABLED) {
       Logger.debug("LruGarbageCollector", "Garbage collection skipped; disabled");
-      return Results.DidNotRun();
+      return false;
     }
 
     long cacheSize = getByteSize();
@@ -242,15 +539,17 @@ public class LruGarbageCollector {
               + cacheSize
               + " is lower than threshold "
               + params.minBytesThreshold);
-      return Results.DidNotRun();
-    } else {
-      return runGarbageCollection(activeTargetIds);
+      return false;
     }
+    return true;
   }
 
-  private Results runGarbageCollection(SparseArray<?> liveTargetIds) {
-    long startTs = System.currentTimeMillis();
-    int sequenceNumbers = calculateQueryCount(params.percentileToCollect);
+  /** Returns the number of sequence numbers to collect, capped at the configured maximum. */
+  private int getSequenceNumbersToCollect() {
+    return capSequenceNumbers(calculateQueryCount(params.percentileToCollect));
+  }
+
+  private int capSequenceNumbers(int sequenceNumbers) {
     // Cap at the configured max
     if (sequenceNumbers > params.maximumSequenceNumbersToCollect) {
       Logger.debug(
@@ -261,6 +560,12 @@ public class LruGarbageCollector {
               + sequenceNumbers);
       sequenceNumbers = params.maximumSequenceNumbersToCollect;
     }
+    return sequenceNumbers;
+  }
+
+  private Results runGarbageCollection(SparseArray<?> liveTargetIds) {
+    long startTs = System.currentTimeMillis();
+    int sequenceNumbers = getSequenceNumbersToCollect();
     long countedTargetsTs = System.currentTimeMillis();
 
     long upperBound = getNthSequenceNumber(sequenceNumbers);
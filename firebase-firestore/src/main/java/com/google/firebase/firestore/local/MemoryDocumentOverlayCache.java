@@ -23,6 +23,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.SortedSet;
 import java.util.TreeMap;
 
 public class MemoryDocumentOverlayCache implements DocumentOverlayCache {
@@ -79,6 +80,18 @@ public class MemoryDocumentOverlayCache implements DocumentOverlayCache {
     }
   }
 
+  @Override
+  public Map<DocumentKey, Mutation> getOverlays(SortedSet<DocumentKey> keys) {
+    Map<DocumentKey, Mutation> result = new HashMap<>();
+    for (DocumentKey key : keys) {
+      Pair<Integer, Mutation> overlay = overlays.get(key);
+      if (overlay != null) {
+        result.put(key, overlay.second);
+      }
+    }
+    return result;
+  }
+
   @Override
   public Map<DocumentKey, Mutation> getOverlays(ResourcePath collection) {
     Map<DocumentKey, Mutation> result = new HashMap<>();
@@ -101,4 +114,15 @@ public class MemoryDocumentOverlayCache implements DocumentOverlayCache {
 
     return result;
   }
+
+  @Override
+  public Map<DocumentKey, Mutation> getOverlays(String collectionGroup) {
+    Map<DocumentKey, Mutation> result = new HashMap<>();
+    for (Map.Entry<DocumentKey, Pair<Integer, Mutation>> entry : overlays.entrySet()) {
+      if (entry.getKey().hasCollectionId(collectionGroup)) {
+        result.put(entry.getKey(), entry.getValue().second);
+      }
+    }
+    return result;
+  }
 }
@@ -17,11 +17,15 @@ package com.google.firebase.firestore.local;
 import static com.google.firebase.firestore.util.Assert.hardAssert;
 
 import android.util.SparseArray;
+import androidx.annotation.Nullable;
 import com.google.firebase.firestore.core.ListenSequence;
 import com.google.firebase.firestore.model.DocumentKey;
 import com.google.firebase.firestore.model.MutableDocument;
 import com.google.firebase.firestore.util.Consumer;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /** Provides LRU garbage collection functionality for MemoryPersistence. */
@@ -81,6 +85,30 @@ class MemoryLruReferenceDelegate implements ReferenceDelegate, LruDelegate {
     persistence.getTargetCache().forEachTarget(consumer);
   }
 
+  @Override
+  public int forEachTarget(int startAfterTargetId, int limit, Consumer<TargetData> consumer) {
+    List<TargetData> targets = new ArrayList<>();
+    persistence
+        .getTargetCache()
+        .forEachTarget(
+            targetData -> {
+              if (targetData.getTargetId() > startAfterTargetId) {
+                targets.add(targetData);
+              }
+            });
+    Collections.sort(targets, (l, r) -> Integer.compare(l.getTargetId(), r.getTargetId()));
+    int count = Math.min(limit, targets.size());
+    for (int i = 0; i < count; ++i) {
+      consumer.accept(targets.get(i));
+    }
+    return count;
+  }
+
+  @Override
+  public long getTargetCount() {
+    return persistence.getTargetCache().getTargetCount();
+  }
+
   @Override
   public long getSequenceNumberCount() {
     long targetCount = persistence.getTargetCache().getTargetCount();
@@ -103,6 +131,27 @@ class MemoryLruReferenceDelegate implements ReferenceDelegate, LruDelegate {
     }
   }
 
+  @Nullable
+  @Override
+  public DocumentKey forEachOrphanedDocumentSequenceNumber(
+      @Nullable DocumentKey startAfter, int limit, Consumer<Long> consumer) {
+    // The sequence numbers are kept in a hash map, so the keys are sorted to page through them.
+    List<DocumentKey> keys = new ArrayList<>();
+    for (Map.Entry<DocumentKey, Long> entry : orphanedSequenceNumbers.entrySet()) {
+      DocumentKey key = entry.getKey();
+      if ((startAfter == null || key.compareTo(startAfter) > 0)
+          && !isPinned(key, entry.getValue())) {
+        keys.add(key);
+      }
+    }
+    Collections.sort(keys);
+    int count = Math.min(limit, keys.size());
+    for (int i = 0; i < count; ++i) {
+      consumer.accept(orphanedSequenceNumbers.get(keys.get(i)));
+    }
+    return keys.size() > limit ? keys.get(limit - 1) : null;
+  }
+
   @Override
   public void setInMemoryPins(ReferenceSet inMemoryPins) {
     this.inMemoryPins = inMemoryPins;
@@ -110,7 +159,12 @@ class MemoryLruReferenceDelegate implements ReferenceDelegate, LruDelegate {
 
   @Override
   public int removeTargets(long upperBound, SparseArray<?> activeTargetIds) {
-    return persistence.getTargetCache().removeQueries(upperBound, activeTargetIds);
+    return removeTargets(upperBound, activeTargetIds, Integer.MAX_VALUE);
+  }
+
+  @Override
+  public int removeTargets(long upperBound, SparseArray<?> activeTargetIds, int limit) {
+    return persistence.getTargetCache().removeQueries(upperBound, activeTargetIds, limit);
   }
 
   @Override
@@ -128,6 +182,29 @@ class MemoryLruReferenceDelegate implements ReferenceDelegate, LruDelegate {
     return count;
   }
 
+  @Override
+  public LruGarbageCollector.RemovalBatch removeOrphanedDocuments(
+      long upperBound, @Nullable DocumentKey startAfter, int limit) {
+    int considered = 0;
+    int count = 0;
+    DocumentKey lastDocument = null;
+    MemoryRemoteDocumentCache cache = persistence.getRemoteDocumentCache();
+    for (MutableDocument doc : cache.getDocumentsAfter(startAfter)) {
+      DocumentKey key = doc.getKey();
+      if (considered == limit) {
+        return new LruGarbageCollector.RemovalBatch(count, lastDocument, /* hasMore= */ true);
+      }
+      ++considered;
+      lastDocument = key;
+      if (!isPinned(key, upperBound)) {
+        cache.remove(key);
+        orphanedSequenceNumbers.remove(key);
+        count++;
+      }
+    }
+    return new LruGarbageCollector.RemovalBatch(count, lastDocument, /* hasMore= */ false);
+  }
+
   @Override
   public void removeMutationReference(DocumentKey key) {
     orphanedSequenceNumbers.put(key, getCurrentSequenceNumber());
@@ -234,9 +234,9 @@ final class MemoryMutationQueue implements MutationQueue {
 
   @Override
   public List<MutationBatch> getAllMutationBatchesAffectingQuery(Query query) {
-    hardAssert(
-        !query.isCollectionGroupQuery(),
-        "CollectionGroup queries should be handled in LocalDocumentsView");
+    if (query.isCollectionGroupQuery()) {
+      return getAllMutationBatchesAffectingCollectionGroup(query.getCollectionGroup());
+    }
 
     // Use the query path as a prefix for testing if a document matches the query.
     ResourcePath prefix = query.getPath();
@@ -275,6 +275,21 @@ final class MemoryMutationQueue implements MutationQueue {
     return lookupMutationBatches(uniqueBatchIDs);
   }
 
+  private List<MutationBatch> getAllMutationBatchesAffectingCollectionGroup(
+      String collectionGroup) {
+    // Documents with the same collection ID can be anywhere in the key space, so this scans the
+    // whole index.
+    ImmutableSortedSet<Integer> uniqueBatchIDs =
+        new ImmutableSortedSet<Integer>(emptyList(), Util.comparator());
+    for (DocumentReference reference : batchesByDocumentKey) {
+      if (reference.getKey().hasCollectionId(collectionGroup)) {
+        uniqueBatchIDs = uniqueBatchIDs.insert(reference.getId());
+      }
+    }
+
+    return lookupMutationBatches(uniqueBatchIDs);
+  }
+
   private List<MutationBatch> lookupMutationBatches(ImmutableSortedSet<Integer> batchIds) {
     // Construct an array of matching batches, sorted by batchID to ensure that multiple mutations
     // affecting the same document key are applied in order.
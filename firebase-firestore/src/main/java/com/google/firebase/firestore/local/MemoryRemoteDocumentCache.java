@@ -19,6 +19,7 @@ import static com.google.firebase.firestore.util.Assert.hardAssert;
 
 import android.util.Pair;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import com.google.firebase.database.collection.ImmutableSortedMap;
 import com.google.firebase.firestore.core.Query;
 import com.google.firebase.firestore.model.DocumentKey;
@@ -72,20 +73,51 @@ final class MemoryRemoteDocumentCache implements RemoteDocumentCache {
     return result;
   }
 
+  @Override
+  public int getCollectionSize(ResourcePath collection, int limit) {
+    int count = 0;
+    DocumentKey prefix = DocumentKey.fromPath(collection.append(""));
+    Iterator<Map.Entry<DocumentKey, Pair<MutableDocument, SnapshotVersion>>> iterator =
+        docs.iteratorFrom(prefix);
+    while (iterator.hasNext() && count < limit) {
+      ResourcePath path = iterator.next().getKey().getPath();
+      if (!collection.isPrefixOf(path)) {
+        break;
+      }
+      if (collection.isImmediateParentOf(path)) {
+        ++count;
+      }
+    }
+    return count;
+  }
+
+  @Override
+  public int getCollectionGroupSize(String collectionGroup, int limit) {
+    int count = 0;
+    for (Map.Entry<DocumentKey, Pair<MutableDocument, SnapshotVersion>> entry : docs) {
+      if (count >= limit) {
+        break;
+      }
+      if (entry.getKey().hasCollectionId(collectionGroup)) {
+        ++count;
+      }
+    }
+    return count;
+  }
+
   @Override
   public ImmutableSortedMap<DocumentKey, MutableDocument> getAllDocumentsMatchingQuery(
       Query query, SnapshotVersion sinceReadTime) {
-    hardAssert(
-        !query.isCollectionGroupQuery(),
-        "CollectionGroup queries should be handled in LocalDocumentsView");
     ImmutableSortedMap<DocumentKey, MutableDocument> result = emptyMutableDocumentMap();
 
     // Documents are ordered by key, so we can use a prefix scan to narrow down the documents
-    // we need to match the query against.
+    // we need to match the query against. Collection group queries are at the root, so they scan
+    // all documents.
     ResourcePath queryPath = query.getPath();
-    DocumentKey prefix = DocumentKey.fromPath(queryPath.append(""));
     Iterator<Map.Entry<DocumentKey, Pair<MutableDocument, SnapshotVersion>>> iterator =
-        docs.iteratorFrom(prefix);
+        query.isCollectionGroupQuery()
+            ? docs.iterator()
+            : docs.iteratorFrom(DocumentKey.fromPath(queryPath.append("")));
 
     while (iterator.hasNext()) {
       Map.Entry<DocumentKey, Pair<MutableDocument, SnapshotVersion>> entry = iterator.next();
@@ -116,12 +148,17 @@ final class MemoryRemoteDocumentCache implements RemoteDocumentCache {
   }
 
   Iterable<MutableDocument> getDocuments() {
-    return new DocumentIterable();
+    return new DocumentIterable(/* startAfter= */ null);
+  }
+
+  /** Returns all documents whose keys sort after {@code startAfter}, in key order. */
+  Iterable<MutableDocument> getDocumentsAfter(@Nullable DocumentKey startAfter) {
+    return new DocumentIterable(startAfter);
   }
 
   long getByteSize(LocalSerializer serializer) {
     long count = 0;
-    for (MutableDocument doc : new DocumentIterable()) {
+    for (MutableDocument doc : new DocumentIterable(/* startAfter= */ null)) {
       count += serializer.encodeMaybeDocument(doc).getSerializedSize();
     }
     return count;
@@ -131,11 +168,25 @@ final class MemoryRemoteDocumentCache implements RemoteDocumentCache {
    * A proxy that exposes an iterator over the current set of documents in the RemoteDocumentCache.
    */
   private class DocumentIterable implements Iterable<MutableDocument> {
+    @Nullable private final DocumentKey startAfter;
+
+    DocumentIterable(@Nullable DocumentKey startAfter) {
+      this.startAfter = startAfter;
+    }
+
     @NonNull
     @Override
     public Iterator<MutableDocument> iterator() {
-      Iterator<Map.Entry<DocumentKey, Pair<MutableDocument, SnapshotVersion>>> iterator =
-          MemoryRemoteDocumentCache.this.docs.iterator();
+      Iterator<Map.Entry<DocumentKey, Pair<MutableDocument, SnapshotVersion>>> iterator;
+      if (startAfter == null) {
+        iterator = MemoryRemoteDocumentCache.this.docs.iterator();
+      } else {
+        // Seek directly to the first key after `startAfter` rather than skipping all keys before.
+        iterator = MemoryRemoteDocumentCache.this.docs.iteratorFrom(startAfter);
+        if (MemoryRemoteDocumentCache.this.docs.containsKey(startAfter)) {
+          iterator.next();
+        }
+      }
       return new Iterator<MutableDocument>() {
         @Override
         public boolean hasNext() {
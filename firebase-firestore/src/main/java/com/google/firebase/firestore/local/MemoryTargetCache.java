@@ -110,15 +110,16 @@ final class MemoryTargetCache implements TargetCache {
   }
 
   /**
-   * Drops any targets with sequence number less than or equal to the upper bound, excepting those
-   * present in `activeTargetIds`. Document associations for the removed targets are also removed.
+   * Drops up to `limit` targets with sequence number less than or equal to the upper bound,
+   * excepting those present in `activeTargetIds`. Document associations for the removed targets
+   * are also removed.
    *
    * @return the number of targets removed
    */
-  int removeQueries(long upperBound, SparseArray<?> activeTargetIds) {
+  int removeQueries(long upperBound, SparseArray<?> activeTargetIds, int limit) {
     int removed = 0;
     for (Iterator<Map.Entry<Target, TargetData>> it = targets.entrySet().iterator();
-        it.hasNext(); ) {
+        it.hasNext() && removed < limit; ) {
       Map.Entry<Target, TargetData> entry = it.next();
       int targetId = entry.getValue().getTargetId();
       long sequenceNumber = entry.getValue().getSequenceNumber();
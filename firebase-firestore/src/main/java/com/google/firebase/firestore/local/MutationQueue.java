@@ -116,6 +116,9 @@ interface MutationQueue {
    *
    * <p>Batches are guaranteed to be sorted by batch ID.
    *
+   * <p>For collection group queries, this returns the batches that affect documents in any
+   * collection with the query's collection ID.
+   *
    * <p>NOTE: A PatchMutation does not need to include all fields in the query filter criteria in
    * order to be a match (but any fields it does contain do need to match).
    */
@@ -58,6 +58,11 @@ public abstract class Persistence {
   // TODO(Indexing): Remove this.
   public static boolean INDEXING_SUPPORT_ENABLED = BuildConfig.ENABLE_INDEXING;
 
+  /** Temporary setting for choosing the local query execution strategy by its estimated cost. */
+  // TODO(QueryPlanning): Remove this.
+  public static boolean COST_BASED_QUERY_PLANNING_ENABLED =
+      BuildConfig.ENABLE_COST_BASED_QUERY_PLANNING;
+
   // Local subclasses only, please.
   Persistence() {}
 
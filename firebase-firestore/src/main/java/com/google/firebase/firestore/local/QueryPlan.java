@@ -0,0 +1,104 @@
+// Copyright 2021 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore.local;
+
+import androidx.annotation.Nullable;
+import com.google.firebase.firestore.model.FieldIndex;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+
+/** The execution strategy chosen by {@link CostBasedQueryEngine} for a query. */
+final class QueryPlan {
+
+  /** The strategies that can be used to execute a query against the local cache. */
+  enum Strategy {
+    /** Reads all documents in the queried collection. */
+    FULL_COLLECTION_SCAN,
+    /**
+     * Looks up the documents that matched the query at its last limbo-free snapshot and scans for
+     * documents that were read since.
+     */
+    PREVIOUS_RESULTS,
+    /**
+     * Looks up the documents returned by a field index and scans for documents that were read
+     * since the index was last updated.
+     */
+    INDEX_SCAN
+  }
+
+  private final Strategy strategy;
+  private final Map<Strategy, Double> estimatedCosts;
+  @Nullable private final FieldIndex fieldIndex;
+
+  QueryPlan(
+      Strategy strategy, Map<Strategy, Double> estimatedCosts, @Nullable FieldIndex fieldIndex) {
+    this.strategy = strategy;
+    this.estimatedCosts = estimatedCosts;
+    this.fieldIndex = fieldIndex;
+  }
+
+  /** Returns a plan that scans the full collection without considering other strategies. */
+  static QueryPlan fullCollectionScan() {
+    return new QueryPlan(
+        Strategy.FULL_COLLECTION_SCAN, Collections.emptyMap(), /* fieldIndex= */ null);
+  }
+
+  Strategy getStrategy() {
+    return strategy;
+  }
+
+  /**
+   * Returns the estimated cost of each strategy that was considered. Strategies that cannot be
+   * used for the query are not included, and the map is empty if the strategy was chosen without
+   * estimating costs. Collection sizes are only counted up to the size at which a collection scan
+   * is no longer the cheapest strategy, so the cost of a collection scan may be underestimated.
+   * Plans that consider a field index estimate the costs per document in the collection.
+   */
+  Map<Strategy, Double> getEstimatedCosts() {
+    return estimatedCosts;
+  }
+
+  /** Returns the field index used by an {@link Strategy#INDEX_SCAN} plan. */
+  @Nullable
+  FieldIndex getFieldIndex() {
+    return fieldIndex;
+  }
+
+  /** Returns a human-readable description of the plan and the strategies that were considered. */
+  String explain() {
+    StringBuilder description = new StringBuilder(strategy.toString());
+    if (estimatedCosts.isEmpty()) {
+      description.append(" (costs not estimated)");
+      return description.toString();
+    }
+
+    description.append(" (estimated costs:");
+    for (Map.Entry<Strategy, Double> entry : estimatedCosts.entrySet()) {
+      description.append(
+          String.format(Locale.ROOT, " %s=%.1f", entry.getKey(), entry.getValue()));
+    }
+    description.append(")");
+    if (fieldIndex != null) {
+      description.append(" using index ").append(fieldIndex);
+    }
+    return description.toString();
+  }
+
+  @Override
+  public String toString() {
+    return "QueryPlan{" + explain() + "}";
+  }
+}
@@ -18,6 +18,7 @@ import com.google.firebase.database.collection.ImmutableSortedMap;
 import com.google.firebase.firestore.core.Query;
 import com.google.firebase.firestore.model.DocumentKey;
 import com.google.firebase.firestore.model.MutableDocument;
+import com.google.firebase.firestore.model.ResourcePath;
 import com.google.firebase.firestore.model.SnapshotVersion;
 import java.util.Map;
 
@@ -60,6 +61,19 @@ interface RemoteDocumentCache {
    */
   Map<DocumentKey, MutableDocument> getAll(Iterable<DocumentKey> documentKeys);
 
+  /**
+   * Returns the number of cached entries (including entries for deleted documents) that are
+   * immediate children of the given collection. Stops counting once {@code limit} entries are
+   * found.
+   */
+  int getCollectionSize(ResourcePath collection, int limit);
+
+  /**
+   * Returns the number of cached entries (including entries for deleted documents) in all
+   * collections with the given collection ID. Stops counting once {@code limit} entries are found.
+   */
+  int getCollectionGroupSize(String collectionGroup, int limit);
+
   /**
    * Executes a query against the cached Document entries
    *
@@ -68,6 +82,9 @@ interface RemoteDocumentCache {
    *
    * <p>Cached entries for non-existing documents have no bearing on query results.
    *
+   * <p>Collection group queries return matching documents from all collections with the query's
+   * collection ID.
+   *
    * @param query The query to match documents against.
    * @param sinceReadTime If not set to SnapshotVersion.MIN, return only documents that have been
    *     read since this snapshot version (exclusive).
@@ -23,8 +23,13 @@ import com.google.firebase.firestore.model.ResourcePath;
 import com.google.firebase.firestore.model.mutation.Mutation;
 import com.google.firestore.v1.Write;
 import com.google.protobuf.InvalidProtocolBufferException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.SortedSet;
 
 public class SQLiteDocumentOverlayCache implements DocumentOverlayCache {
   private final SQLitePersistence db;
@@ -40,28 +45,75 @@ public class SQLiteDocumentOverlayCache implements DocumentOverlayCache {
   @Nullable
   @Override
   public Mutation getOverlay(DocumentKey key) {
-    String path = EncodedPath.encode(key.getPath());
-    return db.query("SELECT overlay_mutation FROM document_overlays WHERE uid = ? AND path = ?")
-        .binding(uid, path)
-        .firstValue(
-            row -> {
-              if (row == null) return null;
-
-              try {
-                Write mutation = Write.parseFrom(row.getBlob(0));
-                return serializer.decodeMutation(mutation);
-              } catch (InvalidProtocolBufferException e) {
-                throw fail("Overlay failed to parse: %s", e);
-              }
-            });
+    String collectionPath = EncodedPath.encode(key.getPath().popLast());
+    String documentId = key.getPath().getLastSegment();
+    return db.query(
+            "SELECT overlay_mutation FROM document_overlays "
+                + "WHERE uid = ? AND collection_path = ? AND document_id = ?")
+        .binding(uid, collectionPath, documentId)
+        .firstValue(row -> row == null ? null : decodeOverlay(row.getBlob(0)));
+  }
+
+  @Override
+  public Map<DocumentKey, Mutation> getOverlays(SortedSet<DocumentKey> keys) {
+    Map<DocumentKey, Mutation> result = new HashMap<>();
+
+    // Keys are sorted, so all documents of a collection are adjacent. Issue one query per
+    // collection rather than one query per document.
+    Iterator<DocumentKey> it = keys.iterator();
+    ResourcePath currentCollection = null;
+    List<Object> documentIds = new ArrayList<>();
+    while (it.hasNext()) {
+      DocumentKey key = it.next();
+      ResourcePath collection = key.getPath().popLast();
+      if (!collection.equals(currentCollection)) {
+        if (currentCollection != null) {
+          processOverlaysInCollection(result, currentCollection, documentIds);
+        }
+        currentCollection = collection;
+        documentIds = new ArrayList<>();
+      }
+      documentIds.add(key.getPath().getLastSegment());
+    }
+    if (currentCollection != null) {
+      processOverlaysInCollection(result, currentCollection, documentIds);
+    }
+
+    return result;
+  }
+
+  /** Reads the overlays for the given documents in a collection and adds them to the result. */
+  private void processOverlaysInCollection(
+      Map<DocumentKey, Mutation> result, ResourcePath collection, List<Object> documentIds) {
+    SQLitePersistence.LongQuery longQuery =
+        new SQLitePersistence.LongQuery(
+            db,
+            "SELECT document_id, overlay_mutation FROM document_overlays "
+                + "WHERE uid = ? AND collection_path = ? AND document_id IN (",
+            Arrays.asList(uid, EncodedPath.encode(collection)),
+            documentIds,
+            ")");
+
+    while (longQuery.hasMoreSubqueries()) {
+      longQuery
+          .performNextSubquery()
+          .forEach(
+              row ->
+                  result.put(
+                      DocumentKey.fromPath(collection.append(row.getString(0))),
+                      decodeOverlay(row.getBlob(1))));
+    }
   }
 
   private void saveOverlay(int largestBatchId, DocumentKey key, @Nullable Mutation mutation) {
     db.execute(
         "INSERT OR REPLACE INTO document_overlays "
-            + "(uid, path, largest_batch_id, overlay_mutation) VALUES (?, ?, ?, ?)",
+            + "(uid, collection_group, collection_path, document_id, largest_batch_id, "
+            + "overlay_mutation) VALUES (?, ?, ?, ?, ?, ?)",
         uid,
-        EncodedPath.encode(key.getPath()),
+        key.getCollectionGroup(),
+        EncodedPath.encode(key.getPath().popLast()),
+        key.getPath().getLastSegment(),
         largestBatchId,
         serializer.encodeMutation(mutation).toByteArray());
   }
@@ -83,40 +135,46 @@ public class SQLiteDocumentOverlayCache implements DocumentOverlayCache {
 
   @Override
   public Map<DocumentKey, Mutation> getOverlays(ResourcePath collection) {
-    int immediateChildrenPathLength = collection.length() + 1;
+    Map<DocumentKey, Mutation> result = new HashMap<>();
+
+    db.query(
+            "SELECT document_id, overlay_mutation FROM document_overlays "
+                + "WHERE uid = ? AND collection_path = ?")
+        .binding(uid, EncodedPath.encode(collection))
+        .forEach(
+            row ->
+                result.put(
+                    DocumentKey.fromPath(collection.append(row.getString(0))),
+                    decodeOverlay(row.getBlob(1))));
 
-    String prefixPath = EncodedPath.encode(collection);
-    String prefixSuccessorPath = EncodedPath.prefixSuccessor(prefixPath);
+    return result;
+  }
 
+  @Override
+  public Map<DocumentKey, Mutation> getOverlays(String collectionGroup) {
     Map<DocumentKey, Mutation> result = new HashMap<>();
 
     db.query(
-            "SELECT path, overlay_mutation FROM document_overlays WHERE uid = ? AND path >= ? AND path < ?")
-        .binding(uid, prefixPath, prefixSuccessorPath)
+            "SELECT collection_path, document_id, overlay_mutation FROM document_overlays "
+                + "WHERE uid = ? AND collection_group = ?")
+        .binding(uid, collectionGroup)
         .forEach(
             row -> {
-              try {
-                ResourcePath path = EncodedPath.decodeResourcePath(row.getString(0));
-                // The query is actually returning any path that starts with the query path prefix
-                // which may include documents in subcollections. For example, a query on 'rooms'
-                // will return rooms/abc/messages/xyx but we shouldn't match it. Fix this by
-                // discarding rows with document keys more than one segment longer than the query
-                // path.
-                // TODO(Overlay): Introduce a segment count of the path or a terminator to avoid
-                //  over selecting.
-                if (path.length() != immediateChildrenPathLength) {
-                  return;
-                }
-
-                Write write = Write.parseFrom(row.getBlob(1));
-                Mutation mutation = serializer.decodeMutation(write);
-
-                result.put(DocumentKey.fromPath(path), mutation);
-              } catch (InvalidProtocolBufferException e) {
-                throw fail("Overlay failed to parse: %s", e);
-              }
+              ResourcePath collection = EncodedPath.decodeResourcePath(row.getString(0));
+              result.put(
+                  DocumentKey.fromPath(collection.append(row.getString(1))),
+                  decodeOverlay(row.getBlob(2)));
             });
 
     return result;
   }
+
+  private Mutation decodeOverlay(byte[] bytes) {
+    try {
+      Write mutation = Write.parseFrom(bytes);
+      return serializer.decodeMutation(mutation);
+    } catch (InvalidProtocolBufferException e) {
+      throw fail("Overlay failed to parse: %s", e);
+    }
+  }
 }
@@ -20,6 +20,7 @@ import static com.google.firebase.firestore.util.Assert.hardAssert;
 import static com.google.firebase.firestore.util.Util.repeatSequence;
 import static java.lang.Math.max;
 
+import android.text.TextUtils;
 import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
 import com.google.firebase.Timestamp;
@@ -69,6 +70,13 @@ final class SQLiteIndexManager implements IndexManager {
   private final SQLitePersistence db;
   private final LocalSerializer serializer;
 
+  /**
+   * The encoder used to encode index values. Encoders keep a large internal buffer, so a single
+   * instance is reused for all index values written by this index manager. Like the rest of
+   * persistence, it must only be used on the AsyncQueue.
+   */
+  private final IndexByteEncoder indexEncoder = new IndexByteEncoder();
+
   SQLiteIndexManager(SQLitePersistence persistence, LocalSerializer serializer) {
     this.db = persistence;
     this.serializer = serializer;
@@ -192,8 +200,9 @@ final class SQLiteIndexManager implements IndexManager {
         break;
       }
 
+      Map<FieldIndex.Segment, byte[]> encodedSegments = new HashMap<>();
       for (FieldIndex fieldIndex : fieldIndexes) {
-        entriesWrittenCount += writeEntries(document, fieldIndex);
+        entriesWrittenCount += writeEntries(document, fieldIndex, encodedSegments);
         if (entriesWrittenCount > 0) {
           // TODO(indexing): This would be much simpler with a sequence counter since we would
           // always update the index to the next sequence value.
@@ -260,9 +269,11 @@ final class SQLiteIndexManager implements IndexManager {
     }
   }
 
-  /** Writes the index entries for the given document. Returns the number of entried written. */
-  private int writeEntries(Document document, FieldIndex fieldIndex) {
-    @Nullable byte[] directionalValue = encodeDirectionalElements(fieldIndex, document);
+  /** Writes the index entries for the given document. Returns the number of entries written. */
+  private int writeEntries(
+      Document document, FieldIndex fieldIndex, Map<FieldIndex.Segment, byte[]> encodedSegments) {
+    @Nullable
+    byte[] directionalValue = encodeDirectionalElements(fieldIndex, document, encodedSegments);
     if (directionalValue == null) {
       return 0;
     }
@@ -295,26 +306,7 @@ final class SQLiteIndexManager implements IndexManager {
     hardAssert(newDocument != null, "Support for removing documents is not yet available");
 
     DocumentKey documentKey = newDocument.getKey();
-    String collectionGroup = documentKey.getCollectionGroup();
-    db.query(
-            "SELECT index_id, index_proto, update_time_seconds, update_time_nanos "
-                + "FROM index_configuration WHERE collection_group = ? AND active = 1")
-        .binding(collectionGroup)
-        .forEach(
-            row -> {
-              try {
-                FieldIndex fieldIndex =
-                    serializer.decodeFieldIndex(
-                        collectionGroup,
-                        row.getInt(0),
-                        Index.parseFrom(row.getBlob(1)),
-                        row.getInt(2),
-                        row.getInt(3));
-                addIndexEntry(newDocument, Collections.singletonList(fieldIndex));
-              } catch (InvalidProtocolBufferException e) {
-                throw fail("Invalid index: " + e);
-              }
-            });
+    addIndexEntry(newDocument, getFieldIndexes(documentKey.getCollectionGroup()));
   }
 
   /**
@@ -324,8 +316,10 @@ final class SQLiteIndexManager implements IndexManager {
    * @param fieldIndexes A list of field indexes to apply.
    */
   private void addIndexEntry(Document document, Collection<FieldIndex> fieldIndexes) {
+    // Field indexes of the same collection group often share fields, which are only encoded once.
+    Map<FieldIndex.Segment, byte[]> encodedSegments = new HashMap<>();
     for (FieldIndex fieldIndex : fieldIndexes) {
-      int entriesWritten = writeEntries(document, fieldIndex);
+      int entriesWritten = writeEntries(document, fieldIndex, encodedSegments);
       if (entriesWritten > 0) {
         FieldIndex updatedIndex = getPostUpdateIndex(fieldIndex, document.getVersion());
         updateFieldIndex(updatedIndex);
@@ -394,7 +388,14 @@ final class SQLiteIndexManager implements IndexManager {
     return result;
   }
 
-  /** Returns a SQL query on 'index_entries' that unions all bounds. */
+  /**
+   * Returns a SQL query on 'index_entries' that matches all bounds.
+   *
+   * <p>Targets with a single combination of array value and bounds are executed as a single
+   * statement. All other targets pass their bounds as a derived table that is joined against
+   * 'index_entries', which lets SQLite plan the scan once regardless of the number of values in
+   * IN and ARRAY_CONTAINS_ANY filters. The read path does not write to the database.
+   */
   private SQLitePersistence.Query generateQuery(
       Target target,
       int indexId,
@@ -404,34 +405,50 @@ final class SQLiteIndexManager implements IndexManager {
       @Nullable Object[] upperBounds,
       String upperBoundOp,
       @Nullable Object[] notIn) {
-    // The number of total statements we union together. This is similar to a distributed normal
-    // form, but adapted for array values. We create a single statement per value in an
-    // ARRAY_CONTAINS or ARRAY_CONTAINS_ANY filter combined with the values from the query bounds.
-    int statementCount =
+    // The number of bound combinations we scan for. This is similar to a distributed normal form,
+    // but adapted for array values. We create a single combination per value in an ARRAY_CONTAINS
+    // or ARRAY_CONTAINS_ANY filter combined with the values from the query bounds.
+    int boundsCount =
         (arrayValues != null ? arrayValues.size() : 1)
             * max(
                 lowerBounds != null ? lowerBounds.length : 1,
                 upperBounds != null ? upperBounds.length : 1);
 
-    // Build the statement. We always include the lower bound, and optionally include an array value
-    // and an upper bound.
-    StringBuilder statement = new StringBuilder();
-    statement.append(
-        "SELECT document_name, directional_value FROM index_entries WHERE index_id = ? ");
-    if (arrayValues != null) {
-      statement.append("AND array_value = ? ");
-    }
-    if (lowerBounds != null) {
-      statement.append("AND directional_value ").append(lowerBoundOp).append(" ? ");
-    }
-    if (upperBounds != null) {
-      statement.append("AND directional_value ").append(upperBoundOp).append(" ? ");
+    // Build the statement. We always include the index id, and optionally include an array value,
+    // a lower bound and an upper bound.
+    StringBuilder sql = new StringBuilder();
+    List<Object> boundsArgs = new ArrayList<>();
+    if (boundsCount == 1) {
+      sql.append("SELECT document_name, directional_value FROM index_entries WHERE index_id = ? ");
+      if (arrayValues != null) {
+        sql.append("AND array_value = ? ");
+      }
+      if (lowerBounds != null) {
+        sql.append("AND directional_value ").append(lowerBoundOp).append(" ? ");
+      }
+      if (upperBounds != null) {
+        sql.append("AND directional_value ").append(upperBoundOp).append(" ? ");
+      }
+    } else {
+      fillBoundsTable(boundsCount, arrayValues, lowerBounds, upperBounds, boundsArgs);
+      sql.append("SELECT DISTINCT e.document_name, e.directional_value FROM ")
+          .append(
+              generateBoundsTable(
+                  boundsCount, arrayValues != null, lowerBounds != null, upperBounds != null))
+          .append("JOIN index_entries AS e ON e.index_id = ? ");
+      if (arrayValues != null) {
+        sql.append("AND e.array_value = b.array_value ");
+      }
+      if (lowerBounds != null) {
+        sql.append("AND e.directional_value ").append(lowerBoundOp).append(" b.lower_bound ");
+      }
+      if (upperBounds != null) {
+        sql.append("AND e.directional_value ").append(upperBoundOp).append(" b.upper_bound ");
+      }
     }
 
-    // Create the UNION statement by repeating the above generated statement. We can then add
-    // ordering and a limit clause.
-    StringBuilder sql = repeatSequence(statement, statementCount, " UNION ");
-    sql.append(" ORDER BY directional_value, document_name ");
+    // Add ordering and a limit clause.
+    sql.append("ORDER BY directional_value, document_name ");
     if (target.getLimit() != -1) {
       sql.append("LIMIT ").append(target.getLimit()).append(" ");
     }
@@ -444,49 +461,100 @@ final class SQLiteIndexManager implements IndexManager {
       sql.append(")");
     }
 
-    // Fill in the bind ("question marks") variables.
+    // Fill in the bind ("question marks") variables. The values of the bounds table precede all
+    // other variables.
     Object[] bindArgs =
-        fillBounds(statementCount, indexId, arrayValues, lowerBounds, upperBounds, notIn);
+        boundsCount == 1
+            ? fillBounds(indexId, arrayValues, lowerBounds, upperBounds, notIn)
+            : fillBounds(
+                indexId,
+                /* arrayValues= */ null,
+                /* lowerBounds= */ null,
+                /* upperBounds= */ null,
+                notIn);
+    if (!boundsArgs.isEmpty()) {
+      Collections.addAll(boundsArgs, bindArgs);
+      bindArgs = boundsArgs.toArray();
+    }
     return db.query(sql.toString()).binding(bindArgs);
   }
 
-  /** Returns the bind arguments for all {@code statementCount} statements. */
-  private Object[] fillBounds(
-      int statementCount,
-      int indexId,
+  /**
+   * Returns a derived table named 'b' with {@code boundsCount} rows of bind variables. Only the
+   * columns for arguments that are set are included.
+   *
+   * <p>The table is built from SELECT statements that are combined with UNION ALL rather than as a
+   * common table expression, since SQLite only supports WITH clauses from version 3.8.3, which is
+   * not available before API level 21. The number of rows is bounded by the number of values in
+   * IN and ARRAY_CONTAINS_ANY filters, which stays well below SQLite's limit of 500 terms per
+   * compound statement.
+   */
+  static String generateBoundsTable(
+      int boundsCount, boolean hasArrayValues, boolean hasLowerBounds, boolean hasUpperBounds) {
+    List<String> columns = new ArrayList<>();
+    if (hasArrayValues) {
+      columns.add("? AS array_value");
+    }
+    if (hasLowerBounds) {
+      columns.add("? AS lower_bound");
+    }
+    if (hasUpperBounds) {
+      columns.add("? AS upper_bound");
+    }
+
+    StringBuilder table = new StringBuilder("(SELECT ").append(TextUtils.join(", ", columns));
+    for (int i = 1; i < boundsCount; ++i) {
+      table.append(" UNION ALL SELECT ").append(repeatSequence("?", columns.size(), ", "));
+    }
+    return table.append(") AS b ").toString();
+  }
+
+  /**
+   * Adds the values for all {@code boundsCount} combinations of array values and bounds to {@code
+   * bindArgs}, in the order of the columns of {@link #generateBoundsTable}.
+   */
+  private void fillBoundsTable(
+      int boundsCount,
       @Nullable List<Value> arrayValues,
       @Nullable Object[] lowerBounds,
       @Nullable Object[] upperBounds,
-      @Nullable Object[] notInValues) {
-    int bindsPerStatement =
-        1
-            + (arrayValues != null ? 1 : 0)
-            + (lowerBounds != null ? 1 : 0)
-            + (upperBounds != null ? 1 : 0);
-    int statementsPerArrayValue = statementCount / (arrayValues != null ? arrayValues.size() : 1);
-
-    Object[] bindArgs =
-        new Object
-            [statementCount * bindsPerStatement + (notInValues != null ? notInValues.length : 0)];
-    int offset = 0;
-    for (int i = 0; i < statementCount; ++i) {
-      bindArgs[offset++] = indexId;
+      List<Object> bindArgs) {
+    int boundsPerArrayValue = boundsCount / (arrayValues != null ? arrayValues.size() : 1);
+    for (int i = 0; i < boundsCount; ++i) {
       if (arrayValues != null) {
-        bindArgs[offset++] = encodeSingleElement(arrayValues.get(i / statementsPerArrayValue));
+        bindArgs.add(encodeSingleElement(arrayValues.get(i / boundsPerArrayValue)));
       }
       if (lowerBounds != null) {
-        bindArgs[offset++] = lowerBounds[i % statementsPerArrayValue];
+        bindArgs.add(lowerBounds[i % boundsPerArrayValue]);
       }
       if (upperBounds != null) {
-        bindArgs[offset++] = upperBounds[i % statementsPerArrayValue];
+        bindArgs.add(upperBounds[i % boundsPerArrayValue]);
       }
     }
+  }
+
+  /** Returns the bind arguments for a statement with a single combination of bounds. */
+  private Object[] fillBounds(
+      int indexId,
+      @Nullable List<Value> arrayValues,
+      @Nullable Object[] lowerBounds,
+      @Nullable Object[] upperBounds,
+      @Nullable Object[] notInValues) {
+    List<Object> bindArgs = new ArrayList<>();
+    bindArgs.add(indexId);
+    if (arrayValues != null) {
+      bindArgs.add(encodeSingleElement(arrayValues.get(0)));
+    }
+    if (lowerBounds != null) {
+      bindArgs.add(lowerBounds[0]);
+    }
+    if (upperBounds != null) {
+      bindArgs.add(upperBounds[0]);
+    }
     if (notInValues != null) {
-      for (Object notInValue : notInValues) {
-        bindArgs[offset++] = notInValue;
-      }
+      Collections.addAll(bindArgs, notInValues);
     }
-    return bindArgs;
+    return bindArgs.toArray();
   }
 
   @Nullable
@@ -534,26 +602,48 @@ final class SQLiteIndexManager implements IndexManager {
   /**
    * Returns the byte encoded form of the directional values in the field index. Returns {@code
    * null} if the document does not have all fields specified in the index.
+   *
+   * <p>Since the ordered encoding of a sequence of values is the concatenation of the encodings of
+   * each value, segments are encoded separately and cached in {@code encodedSegments}.
    */
-  private @Nullable byte[] encodeDirectionalElements(FieldIndex fieldIndex, Document document) {
-    IndexByteEncoder encoder = new IndexByteEncoder();
-    for (FieldIndex.Segment segment : fieldIndex.getDirectionalSegments()) {
-      Value field = document.getField(segment.getFieldPath());
-      if (field == null) {
-        return null;
+  private @Nullable byte[] encodeDirectionalElements(
+      FieldIndex fieldIndex, Document document, Map<FieldIndex.Segment, byte[]> encodedSegments) {
+    List<FieldIndex.Segment> segments = fieldIndex.getDirectionalSegments();
+    byte[][] encodedValues = new byte[segments.size()][];
+    int length = 0;
+    for (int i = 0; i < segments.size(); ++i) {
+      FieldIndex.Segment segment = segments.get(i);
+      byte[] encodedValue = encodedSegments.get(segment);
+      if (encodedValue == null) {
+        Value field = document.getField(segment.getFieldPath());
+        if (field == null) {
+          return null;
+        }
+        indexEncoder.reset();
+        FirestoreIndexValueWriter.INSTANCE.writeIndexValue(
+            field, indexEncoder.forKind(segment.getKind()));
+        encodedValue = indexEncoder.getEncodedBytes();
+        encodedSegments.put(segment, encodedValue);
       }
-      DirectionalIndexByteEncoder directionalEncoder = encoder.forKind(segment.getKind());
-      FirestoreIndexValueWriter.INSTANCE.writeIndexValue(field, directionalEncoder);
+      encodedValues[i] = encodedValue;
+      length += encodedValue.length;
     }
-    return encoder.getEncodedBytes();
+
+    byte[] result = new byte[length];
+    int offset = 0;
+    for (byte[] encodedValue : encodedValues) {
+      System.arraycopy(encodedValue, 0, result, offset, encodedValue.length);
+      offset += encodedValue.length;
+    }
+    return result;
   }
 
   /** Encodes a single value to the ascending index format. */
   private byte[] encodeSingleElement(Value value) {
-    IndexByteEncoder encoder = new IndexByteEncoder();
+    indexEncoder.reset();
     FirestoreIndexValueWriter.INSTANCE.writeIndexValue(
-        value, encoder.forKind(FieldIndex.Segment.Kind.ASCENDING));
-    return encoder.getEncodedBytes();
+        value, indexEncoder.forKind(FieldIndex.Segment.Kind.ASCENDING));
+    return indexEncoder.getEncodedBytes();
   }
 
   /**
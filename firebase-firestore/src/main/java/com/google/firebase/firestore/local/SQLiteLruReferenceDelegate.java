@@ -17,6 +17,7 @@ package com.google.firebase.firestore.local;
 import static com.google.firebase.firestore.util.Assert.hardAssert;
 
 import android.util.SparseArray;
+import androidx.annotation.Nullable;
 import com.google.firebase.firestore.core.ListenSequence;
 import com.google.firebase.firestore.model.DocumentKey;
 import com.google.firebase.firestore.model.ResourcePath;
@@ -88,11 +89,21 @@ class SQLiteLruReferenceDelegate implements ReferenceDelegate, LruDelegate {
     return targetCount + orphanedDocumentCount;
   }
 
+  @Override
+  public long getTargetCount() {
+    return persistence.getTargetCache().getTargetCount();
+  }
+
   @Override
   public void forEachTarget(Consumer<TargetData> consumer) {
     persistence.getTargetCache().forEachTarget(consumer);
   }
 
+  @Override
+  public int forEachTarget(int startAfterTargetId, int limit, Consumer<TargetData> consumer) {
+    return persistence.getTargetCache().forEachTarget(startAfterTargetId, limit, consumer);
+  }
+
   @Override
   public void forEachOrphanedDocumentSequenceNumber(Consumer<Long> consumer) {
     persistence
@@ -101,6 +112,27 @@ class SQLiteLruReferenceDelegate implements ReferenceDelegate, LruDelegate {
         .forEach(row -> consumer.accept(row.getLong(0)));
   }
 
+  @Nullable
+  @Override
+  public DocumentKey forEachOrphanedDocumentSequenceNumber(
+      @Nullable DocumentKey startAfter, int limit, Consumer<Long> consumer) {
+    String[] lastPath = new String[1];
+    int rowsProcessed =
+        persistence
+            .query(
+                "SELECT path, sequence_number FROM target_documents WHERE path > ? GROUP BY path "
+                    + "HAVING COUNT(*) = 1 AND target_id = 0 ORDER BY path LIMIT ?")
+            .binding(startAfter != null ? EncodedPath.encode(startAfter.getPath()) : "", limit)
+            .forEach(
+                row -> {
+                  lastPath[0] = row.getString(0);
+                  consumer.accept(row.getLong(1));
+                });
+    return rowsProcessed == limit
+        ? DocumentKey.fromPath(EncodedPath.decodeResourcePath(lastPath[0]))
+        : null;
+  }
+
   @Override
   public void setInMemoryPins(ReferenceSet inMemoryPins) {
     this.inMemoryPins = inMemoryPins;
@@ -118,7 +150,12 @@ class SQLiteLruReferenceDelegate implements ReferenceDelegate, LruDelegate {
 
   @Override
   public int removeTargets(long upperBound, SparseArray<?> activeTargetIds) {
-    return persistence.getTargetCache().removeQueries(upperBound, activeTargetIds);
+    return removeTargets(upperBound, activeTargetIds, Integer.MAX_VALUE);
+  }
+
+  @Override
+  public int removeTargets(long upperBound, SparseArray<?> activeTargetIds, int limit) {
+    return persistence.getTargetCache().removeQueries(upperBound, activeTargetIds, limit);
   }
 
   @Override
@@ -155,31 +192,54 @@ class SQLiteLruReferenceDelegate implements ReferenceDelegate, LruDelegate {
 
   @Override
   public int removeOrphanedDocuments(long upperBound) {
-    int[] count = new int[1];
+    int count = 0;
+    LruGarbageCollector.RemovalBatch batch = null;
+    do {
+      batch =
+          removeOrphanedDocuments(
+              upperBound,
+              batch != null ? batch.getLastDocument() : null,
+              REMOVE_ORPHANED_DOCUMENTS_BATCH_SIZE);
+      count += batch.getDocumentsRemoved();
+    } while (batch.hasMore());
+    return count;
+  }
 
-    boolean resultsRemaining = true;
-
-    while (resultsRemaining) {
-      int rowsProccessed =
-          persistence
-              .query(
-                  "select path from target_documents group by path having COUNT(*) = 1 AND target_id = 0 AND sequence_number <= ? LIMIT ?")
-              .binding(upperBound, REMOVE_ORPHANED_DOCUMENTS_BATCH_SIZE)
-              .forEach(
-                  row -> {
-                    ResourcePath path = EncodedPath.decodeResourcePath(row.getString(0));
-                    DocumentKey key = DocumentKey.fromPath(path);
-                    if (!isPinned(key)) {
-                      count[0]++;
-                      persistence.getRemoteDocumentCache().remove(key);
-                      removeSentinel(key);
-                    }
-                  });
-
-      resultsRemaining = (rowsProccessed == REMOVE_ORPHANED_DOCUMENTS_BATCH_SIZE);
-    }
+  @Override
+  public LruGarbageCollector.RemovalBatch removeOrphanedDocuments(
+      long upperBound, @Nullable DocumentKey startAfter, int limit) {
+    int[] count = new int[1];
+    DocumentKey[] lastDocument = new DocumentKey[1];
 
-    return count[0];
+    // Documents are visited in path order so that pinned documents are only considered once. The
+    // stored size of each document is read along with its path so that the tracked cache size can
+    // be updated without reading the document again.
+    int rowsProcessed =
+        persistence
+            .query(
+                "SELECT t.path, IFNULL(LENGTH(r.contents), 0) FROM ("
+                    + "SELECT path FROM target_documents WHERE path > ? GROUP BY path "
+                    + "HAVING COUNT(*) = 1 AND target_id = 0 AND sequence_number <= ? "
+                    + "ORDER BY path LIMIT ?) AS t "
+                    + "LEFT JOIN remote_documents AS r ON r.path = t.path ORDER BY t.path")
+            .binding(
+                startAfter != null ? EncodedPath.encode(startAfter.getPath()) : "",
+                upperBound,
+                limit)
+            .forEach(
+                row -> {
+                  ResourcePath path = EncodedPath.decodeResourcePath(row.getString(0));
+                  DocumentKey key = DocumentKey.fromPath(path);
+                  lastDocument[0] = key;
+                  if (!isPinned(key)) {
+                    count[0]++;
+                    persistence.getRemoteDocumentCache().remove(key, row.getInt(1));
+                    removeSentinel(key);
+                  }
+                });
+
+    return new LruGarbageCollector.RemovalBatch(
+        count[0], lastDocument[0], /* hasMore= */ rowsProcessed == limit);
   }
 
   @Override
@@ -33,12 +33,13 @@ import com.google.firebase.firestore.util.Consumer;
 import com.google.firebase.firestore.util.Util;
 import com.google.protobuf.ByteString;
 import com.google.protobuf.InvalidProtocolBufferException;
-import com.google.protobuf.MessageLite;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /** A mutation queue for a specific user, backed by SQLite. */
@@ -68,9 +69,15 @@ final class SQLiteMutationQueue implements MutationQueue {
    * <p>NOTE: There can only be one SQLiteMutationQueue for a given db at a time, hence it is safe
    * to track nextBatchId as an instance-level property. Should we ever relax this constraint we'll
    * need to revisit this.
+   *
+   * <p>Finding the next batch ID requires a scan over the mutation queues of all users. Since this
+   * is only needed once the user writes, the value is loaded on the first call to {@link
+   * #addMutationBatch} rather than when the queue is started.
    */
   private int nextBatchId;
 
+  private boolean nextBatchIdLoaded;
+
   /**
    * A stream token that was previously sent by the server.
    *
@@ -81,6 +88,12 @@ final class SQLiteMutationQueue implements MutationQueue {
    */
   private ByteString lastStreamToken;
 
+  /**
+   * The stored size of the mutation batches that were added by this queue while the cache size was
+   * tracked. Used to update the tracked size when a batch is removed without reading it again.
+   */
+  private final Map<Integer, Integer> batchSizes = new HashMap<>();
+
   /**
    * Creates a new mutation queue for the given user, in the SQLite database wrapped by the
    * persistence interface.
@@ -99,8 +112,6 @@ final class SQLiteMutationQueue implements MutationQueue {
 
   @Override
   public void start() {
-    loadNextBatchIdAcrossAllUsers();
-
     int rows =
         db.query("SELECT last_stream_token FROM mutation_queues WHERE uid = ?")
             .binding(uid)
@@ -144,6 +155,7 @@ final class SQLiteMutationQueue implements MutationQueue {
     }
 
     nextBatchId += 1;
+    nextBatchIdLoaded = true;
   }
 
   @Override
@@ -181,17 +193,26 @@ final class SQLiteMutationQueue implements MutationQueue {
   @Override
   public MutationBatch addMutationBatch(
       Timestamp localWriteTime, List<Mutation> baseMutations, List<Mutation> mutations) {
+    if (!nextBatchIdLoaded) {
+      loadNextBatchIdAcrossAllUsers();
+    }
+
     int batchId = nextBatchId;
     nextBatchId += 1;
 
     MutationBatch batch = new MutationBatch(batchId, localWriteTime, baseMutations, mutations);
-    MessageLite proto = serializer.encodeMutationBatch(batch);
+    byte[] batchBytes = serializer.encodeMutationBatch(batch).toByteArray();
 
+    SQLiteTableSize tableSize = db.getMutationsSize();
+    if (tableSize.isTracked()) {
+      tableSize.recordInsert(batchBytes.length);
+      batchSizes.put(batchId, batchBytes.length);
+    }
     db.execute(
         "INSERT INTO mutations (uid, batch_id, mutations) VALUES (?, ?, ?)",
         uid,
         batchId,
-        proto.toByteArray());
+        batchBytes);
 
     // PORTING NOTE: Unlike LevelDB, these entries must be unique.
     // Since user and batchId are fixed within this function body, it's enough to track unique keys
@@ -199,7 +220,9 @@ final class SQLiteMutationQueue implements MutationQueue {
     Set<DocumentKey> inserted = new HashSet<>();
 
     SQLiteStatement indexInserter =
-        db.prepare("INSERT INTO document_mutations (uid, path, batch_id) VALUES (?, ?, ?)");
+        db.prepare(
+            "INSERT INTO document_mutations (uid, path, path_length, collection_group, batch_id) "
+                + "VALUES (?, ?, ?, ?, ?)");
     for (Mutation mutation : mutations) {
       DocumentKey key = mutation.getKey();
       if (!inserted.add(key)) {
@@ -207,7 +230,8 @@ final class SQLiteMutationQueue implements MutationQueue {
       }
 
       String path = EncodedPath.encode(key.getPath());
-      db.execute(indexInserter, uid, path, batchId);
+      db.execute(
+          indexInserter, uid, path, key.getPath().length(), key.getCollectionGroup(), batchId);
 
       db.getIndexManager().addToCollectionParentIndex(key.getPath().popLast());
     }
@@ -325,9 +349,10 @@ final class SQLiteMutationQueue implements MutationQueue {
 
   @Override
   public List<MutationBatch> getAllMutationBatchesAffectingQuery(Query query) {
-    hardAssert(
-        !query.isCollectionGroupQuery(),
-        "CollectionGroup queries should be handled in LocalDocumentsView");
+    if (query.isCollectionGroupQuery()) {
+      return getAllMutationBatchesAffectingCollectionGroup(query.getCollectionGroup());
+    }
+
     // Use the query path as a prefix for testing if a document matches the query.
     ResourcePath prefix = query.getPath();
     int immediateChildrenPathLength = prefix.length() + 1;
@@ -338,53 +363,65 @@ final class SQLiteMutationQueue implements MutationQueue {
     // The most obvious way to do this would be with a LIKE query with a trailing wildcard (e.g.
     // path LIKE 'foo/%'). Unfortunately SQLite does not convert a trailing wildcard like that into
     // the equivalent range scan so a LIKE query ends up being a table scan. The query below is
-    // equivalent but hits the index on both uid and path, so it's much faster.
-
-    // TODO: Actually implement a single-collection query
-    //
-    // This is actually executing an ancestor query, traversing the whole subtree below the
-    // collection which can be horrifically inefficient for some structures. The right way to
-    // solve this is to implement the full value index, but that's not in the cards in the near
-    // future so this is the best we can do for the moment.
+    // equivalent but hits the index on uid, path_length and path, so it only visits entries for
+    // documents that are immediate children of the collection and skips documents in
+    // subcollections.
     String prefixPath = EncodedPath.encode(prefix);
     String prefixSuccessorPath = EncodedPath.prefixSuccessor(prefixPath);
 
-    List<MutationBatch> result = new ArrayList<>();
+    return readUniqueMutationBatches(
+        db.query(
+                "SELECT dm.batch_id, SUBSTR(m.mutations, 1, ?) "
+                    + "FROM document_mutations dm, mutations m "
+                    + "WHERE dm.uid = ? "
+                    + "AND dm.path_length = ? "
+                    + "AND dm.path >= ? "
+                    + "AND dm.path < ? "
+                    + "AND dm.uid = m.uid "
+                    + "AND dm.batch_id = m.batch_id "
+                    + "ORDER BY dm.batch_id")
+            .binding(
+                BLOB_MAX_INLINE_LENGTH,
+                uid,
+                immediateChildrenPathLength,
+                prefixPath,
+                prefixSuccessorPath));
+  }
 
-    db.query(
-            "SELECT dm.batch_id, dm.path, SUBSTR(m.mutations, 1, ?) "
-                + "FROM document_mutations dm, mutations m "
-                + "WHERE dm.uid = ? "
-                + "AND dm.path >= ? "
-                + "AND dm.path < ? "
-                + "AND dm.uid = m.uid "
-                + "AND dm.batch_id = m.batch_id "
-                + "ORDER BY dm.batch_id")
-        .binding(BLOB_MAX_INLINE_LENGTH, uid, prefixPath, prefixSuccessorPath)
-        .forEach(
-            row -> {
-              // Ensure unique batches only. This works because the batches come out in order so
-              // we only need to ensure that the batchId of this row is different from the
-              // preceding one.
-              int batchId = row.getInt(0);
-              int size = result.size();
-              if (size > 0 && batchId == result.get(size - 1).getBatchId()) {
-                return;
-              }
-
-              // The query is actually returning any path that starts with the query path prefix
-              // which may include documents in subcollections. For example, a query on 'rooms'
-              // will return rooms/abc/messages/xyx but we shouldn't match it. Fix this by
-              // discarding rows with document keys more than one segment longer than the query
-              // path.
-              ResourcePath path = EncodedPath.decodeResourcePath(row.getString(1));
-              if (path.length() != immediateChildrenPathLength) {
-                return;
-              }
-
-              result.add(decodeInlineMutationBatch(batchId, row.getBlob(2)));
-            });
+  /**
+   * Finds the mutation batches that affect documents in any collection with the given collection
+   * ID, using the index on the `collection_group` column rather than one range scan per parent.
+   */
+  private List<MutationBatch> getAllMutationBatchesAffectingCollectionGroup(
+      String collectionGroup) {
+    return readUniqueMutationBatches(
+        db.query(
+                "SELECT dm.batch_id, SUBSTR(m.mutations, 1, ?) "
+                    + "FROM document_mutations dm, mutations m "
+                    + "WHERE dm.uid = ? "
+                    + "AND dm.collection_group = ? "
+                    + "AND dm.uid = m.uid "
+                    + "AND dm.batch_id = m.batch_id "
+                    + "ORDER BY dm.batch_id")
+            .binding(BLOB_MAX_INLINE_LENGTH, uid, collectionGroup));
+  }
 
+  /** Decodes the batches returned by a query whose rows are ordered by batch ID. */
+  private List<MutationBatch> readUniqueMutationBatches(SQLitePersistence.Query query) {
+    List<MutationBatch> result = new ArrayList<>();
+    query.forEach(
+        row -> {
+          // Ensure unique batches only. This works because the batches come out in order so
+          // we only need to ensure that the batchId of this row is different from the
+          // preceding one.
+          int batchId = row.getInt(0);
+          int size = result.size();
+          if (size > 0 && batchId == result.get(size - 1).getBatchId()) {
+            return;
+          }
+
+          result.add(decodeInlineMutationBatch(batchId, row.getBlob(1)));
+        });
     return result;
   }
 
@@ -397,6 +434,15 @@ final class SQLiteMutationQueue implements MutationQueue {
         db.prepare("DELETE FROM document_mutations WHERE uid = ? AND path = ? AND batch_id = ?");
 
     int batchId = batch.getBatchId();
+    SQLiteTableSize tableSize = db.getMutationsSize();
+    if (tableSize.isTracked()) {
+      Integer storedSize = batchSizes.get(batchId);
+      tableSize.recordDelete(
+          storedSize != null
+              ? storedSize
+              : tableSize.readRowSize("uid = ? AND batch_id = ?", uid, batchId));
+    }
+    batchSizes.remove(batchId);
     int deleted = db.execute(mutationDeleter, uid, batchId);
     hardAssert(deleted != 0, "Mutation batch (%s, %d) did not exist", uid, batch.getBatchId());
 
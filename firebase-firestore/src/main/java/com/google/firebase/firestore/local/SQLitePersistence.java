@@ -85,6 +85,9 @@ public final class SQLitePersistence extends Persistence {
   private final SQLiteRemoteDocumentCache remoteDocumentCache;
   private final SQLiteLruReferenceDelegate referenceDelegate;
   private final IndexBackfiller indexBackfiller;
+  private final SQLiteTableSize remoteDocumentsSize;
+  private final SQLiteTableSize targetsSize;
+  private final SQLiteTableSize mutationsSize;
   private final SQLiteTransactionListener transactionListener =
       new SQLiteTransactionListener() {
         @Override
@@ -95,10 +98,18 @@ public final class SQLitePersistence extends Persistence {
         @Override
         public void onCommit() {
           referenceDelegate.onTransactionCommitted();
+          remoteDocumentCache.clearStoredSizes();
         }
 
         @Override
-        public void onRollback() {}
+        public void onRollback() {
+          // The tracked table sizes include writes from the rolled back transaction.
+          remoteDocumentsSize.invalidate();
+          targetsSize.invalidate();
+          mutationsSize.invalidate();
+          remoteDocumentCache.clearStoredSizes();
+          targetCache.clearStoredSizes();
+        }
       };
 
   private SQLiteDatabase db;
@@ -126,6 +137,9 @@ public final class SQLitePersistence extends Persistence {
     this.remoteDocumentCache = new SQLiteRemoteDocumentCache(this, this.serializer);
     this.referenceDelegate = new SQLiteLruReferenceDelegate(this, params);
     this.indexBackfiller = new IndexBackfiller(this);
+    this.remoteDocumentsSize = new SQLiteTableSize(this, "remote_documents", "contents");
+    this.targetsSize = new SQLiteTableSize(this, "targets", "target_proto");
+    this.mutationsSize = new SQLiteTableSize(this, "mutations", "mutations");
   }
 
   @Override
@@ -198,7 +212,7 @@ public final class SQLitePersistence extends Persistence {
   }
 
   @Override
-  RemoteDocumentCache getRemoteDocumentCache() {
+  SQLiteRemoteDocumentCache getRemoteDocumentCache() {
     return remoteDocumentCache;
   }
 
@@ -252,27 +266,31 @@ public final class SQLitePersistence extends Persistence {
     }
   }
 
-  long getByteSize() {
-    return getPageCount() * getPageSize();
-  }
-
   /**
-   * Gets the page size of the database. Typically 4096.
+   * Returns the number of bytes used by cached documents, targets and mutations. Unlike the size of
+   * the database file, this shrinks as soon as data is removed.
    *
-   * @see "https://www.sqlite.org/pragma.html#pragma_page_size"
+   * <p>Rows that are derived from these entries are not included: document overlays are removed
+   * with the mutations they are computed from, 'target_documents' and 'document_mutations' only
+   * hold keys of documents and mutations that are already counted, and 'index_entries' are not
+   * removed by garbage collection.
    */
-  private long getPageSize() {
-    return query("PRAGMA page_size").firstValue(row -> row.getLong(/*column=*/ 0));
+  long getByteSize() {
+    return remoteDocumentsSize.getByteSize()
+        + targetsSize.getByteSize()
+        + mutationsSize.getByteSize();
   }
 
-  /**
-   * Gets the number of pages in the database file. Multiplying this with the page size yields the
-   * approximate size of the database on disk (including the WAL, if relevant).
-   *
-   * @see "https://www.sqlite.org/pragma.html#pragma_page_count."
-   */
-  private long getPageCount() {
-    return query("PRAGMA page_count").firstValue(row -> row.getLong(/*column=*/ 0));
+  SQLiteTableSize getRemoteDocumentsSize() {
+    return remoteDocumentsSize;
+  }
+
+  SQLiteTableSize getTargetsSize() {
+    return targetsSize;
+  }
+
+  SQLiteTableSize getMutationsSize() {
+    return mutationsSize;
   }
 
   /**
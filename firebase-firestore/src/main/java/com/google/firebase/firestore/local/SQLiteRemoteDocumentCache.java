@@ -20,26 +20,41 @@ import static com.google.firebase.firestore.util.Assert.hardAssert;
 import com.google.firebase.Timestamp;
 import com.google.firebase.database.collection.ImmutableSortedMap;
 import com.google.firebase.firestore.core.Query;
-import com.google.firebase.firestore.model.DocumentCollections;
 import com.google.firebase.firestore.model.DocumentKey;
 import com.google.firebase.firestore.model.MutableDocument;
 import com.google.firebase.firestore.model.ResourcePath;
 import com.google.firebase.firestore.model.SnapshotVersion;
 import com.google.firebase.firestore.util.BackgroundQueue;
-import com.google.firebase.firestore.util.Executors;
 import com.google.protobuf.InvalidProtocolBufferException;
 import com.google.protobuf.MessageLite;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Executor;
 
 final class SQLiteRemoteDocumentCache implements RemoteDocumentCache {
+  /**
+   * The number of documents that are decoded by a single background task. Batching amortizes the
+   * cost of scheduling a task over multiple documents.
+   */
+  private static final int DECODE_BATCH_SIZE = 50;
+
+  /**
+   * The maximum number of decode tasks that can be pending at once. This bounds the number of raw
+   * documents that are held in memory while a query is processed.
+   */
+  private static final int MAX_PENDING_DECODE_BATCHES = 8;
 
   private final SQLitePersistence db;
   private final LocalSerializer serializer;
 
+  /**
+   * The stored size of the documents that were read by key or written in the current transaction.
+   * LocalStore reads documents before it writes them, so this lets the tracked cache size be
+   * updated without reading the previous row again. Only populated while the size is tracked.
+   */
+  private final Map<DocumentKey, Integer> storedSizes = new HashMap<>();
+
   SQLiteRemoteDocumentCache(SQLitePersistence persistence, LocalSerializer serializer) {
     this.db = persistence;
     this.serializer = serializer;
@@ -54,15 +69,24 @@ final class SQLiteRemoteDocumentCache implements RemoteDocumentCache {
     String path = pathForKey(document.getKey());
     Timestamp timestamp = readTime.getTimestamp();
     MessageLite message = serializer.encodeMaybeDocument(document);
+    byte[] contents = message.toByteArray();
 
+    SQLiteTableSize tableSize = db.getRemoteDocumentsSize();
+    if (tableSize.isTracked()) {
+      tableSize.recordDelete(getStoredSize(document.getKey(), path));
+      tableSize.recordInsert(contents.length);
+      storedSizes.put(document.getKey(), contents.length);
+    }
     db.execute(
         "INSERT OR REPLACE INTO remote_documents "
-            + "(path, read_time_seconds, read_time_nanos, contents) "
-            + "VALUES (?, ?, ?, ?)",
+            + "(path, path_length, collection_group, read_time_seconds, read_time_nanos, contents) "
+            + "VALUES (?, ?, ?, ?, ?, ?)",
         path,
+        document.getKey().getPath().length(),
+        document.getKey().getCollectionGroup(),
         timestamp.getSeconds(),
         timestamp.getNanoseconds(),
-        message.toByteArray());
+        contents);
 
     db.getIndexManager().addToCollectionParentIndex(document.getKey().getPath().popLast());
   }
@@ -71,9 +95,36 @@ final class SQLiteRemoteDocumentCache implements RemoteDocumentCache {
   public void remove(DocumentKey documentKey) {
     String path = pathForKey(documentKey);
 
+    SQLiteTableSize tableSize = db.getRemoteDocumentsSize();
+    if (tableSize.isTracked()) {
+      tableSize.recordDelete(getStoredSize(documentKey, path));
+      storedSizes.put(documentKey, 0);
+    }
     db.execute("DELETE FROM remote_documents WHERE path = ?", path);
   }
 
+  /** Removes a document whose stored size is already known to the caller. */
+  void remove(DocumentKey documentKey, int storedSize) {
+    recordStoredSize(documentKey, storedSize);
+    remove(documentKey);
+  }
+
+  /**
+   * Returns the number of bytes stored for the given document, reading it from the database only
+   * if the document has not been read or written in the current transaction.
+   */
+  private long getStoredSize(DocumentKey documentKey, String path) {
+    Integer storedSize = storedSizes.get(documentKey);
+    return storedSize != null
+        ? storedSize
+        : db.getRemoteDocumentsSize().readRowSize("path = ?", path);
+  }
+
+  /** Forgets the stored sizes of documents. Called when a transaction ends. */
+  void clearStoredSizes() {
+    storedSizes.clear();
+  }
+
   @Override
   public MutableDocument get(DocumentKey documentKey) {
     String path = pathForKey(documentKey);
@@ -84,8 +135,17 @@ final class SQLiteRemoteDocumentCache implements RemoteDocumentCache {
                     + "FROM remote_documents "
                     + "WHERE path = ?")
             .binding(path)
-            .firstValue(row -> decodeMaybeDocument(row.getBlob(0), row.getInt(1), row.getInt(2)));
-    return document != null ? document : MutableDocument.newInvalidDocument(documentKey);
+            .firstValue(
+                row -> {
+                  byte[] contents = row.getBlob(0);
+                  recordStoredSize(documentKey, contents.length);
+                  return decodeMaybeDocument(contents, row.getInt(1), row.getInt(2));
+                });
+    if (document == null) {
+      recordStoredSize(documentKey, 0);
+      return MutableDocument.newInvalidDocument(documentKey);
+    }
+    return document;
   }
 
   @Override
@@ -100,6 +160,7 @@ final class SQLiteRemoteDocumentCache implements RemoteDocumentCache {
       // Make sure each key has a corresponding entry, which is null in case the document is not
       // found.
       results.put(key, MutableDocument.newInvalidDocument(key));
+      recordStoredSize(key, 0);
     }
 
     SQLitePersistence.LongQuery longQuery =
@@ -115,111 +176,179 @@ final class SQLiteRemoteDocumentCache implements RemoteDocumentCache {
           .performNextSubquery()
           .forEach(
               row -> {
+                byte[] contents = row.getBlob(0);
                 MutableDocument decoded =
-                    decodeMaybeDocument(row.getBlob(0), row.getInt(1), row.getInt(2));
+                    decodeMaybeDocument(contents, row.getInt(1), row.getInt(2));
                 results.put(decoded.getKey(), decoded);
+                recordStoredSize(decoded.getKey(), contents.length);
               });
     }
 
     return results;
   }
 
+  @Override
+  public int getCollectionSize(ResourcePath collection, int limit) {
+    String prefixPath = EncodedPath.encode(collection);
+    return db.query(
+            "SELECT COUNT(*) FROM (SELECT 1 FROM remote_documents "
+                + "WHERE path >= ? AND path < ? AND path_length = ? LIMIT ?)")
+        .binding(
+            prefixPath, EncodedPath.prefixSuccessor(prefixPath), collection.length() + 1, limit)
+        .firstValue(row -> row.getInt(0));
+  }
+
+  @Override
+  public int getCollectionGroupSize(String collectionGroup, int limit) {
+    return db.query(
+            "SELECT COUNT(*) FROM (SELECT 1 FROM remote_documents "
+                + "WHERE collection_group = ? LIMIT ?)")
+        .binding(collectionGroup, limit)
+        .firstValue(row -> row.getInt(0));
+  }
+
   @Override
   public ImmutableSortedMap<DocumentKey, MutableDocument> getAllDocumentsMatchingQuery(
       final Query query, SnapshotVersion sinceReadTime) {
-    hardAssert(
-        !query.isCollectionGroupQuery(),
-        "CollectionGroup queries should be handled in LocalDocumentsView");
-
-    // Use the query path as a prefix for testing if a document matches the query.
-    ResourcePath prefix = query.getPath();
-    int immediateChildrenPathLength = prefix.length() + 1;
-
-    String prefixPath = EncodedPath.encode(prefix);
-    String prefixSuccessorPath = EncodedPath.prefixSuccessor(prefixPath);
-    Timestamp readTime = sinceReadTime.getTimestamp();
-
-    BackgroundQueue backgroundQueue = new BackgroundQueue();
-
-    ImmutableSortedMap<DocumentKey, MutableDocument>[] matchingDocuments =
-        (ImmutableSortedMap<DocumentKey, MutableDocument>[])
-            new ImmutableSortedMap[] {DocumentCollections.emptyMutableDocumentMap()};
-
-    SQLitePersistence.Query sqlQuery;
-    if (sinceReadTime.equals(SnapshotVersion.NONE)) {
-      sqlQuery =
-          db.query(
-                  "SELECT path, contents, read_time_seconds, read_time_nanos "
-                      + "FROM remote_documents WHERE path >= ? AND path < ?")
-              .binding(prefixPath, prefixSuccessorPath);
+    StringBuilder sql =
+        new StringBuilder(
+            "SELECT contents, read_time_seconds, read_time_nanos FROM remote_documents WHERE ");
+    List<Object> bindArgs = new ArrayList<>();
+
+    if (query.isCollectionGroupQuery()) {
+      hardAssert(
+          query.getPath().isEmpty(),
+          "Currently we only support collection group queries at the root.");
+      // The `collection_group` column is indexed, so a single scan finds the documents in all
+      // collections with the given collection ID, regardless of their parent.
+      sql.append("collection_group = ?");
+      bindArgs.add(query.getCollectionGroup());
     } else {
+      // Use the query path as a prefix for testing if a document matches the query. The
+      // `path_length` column restricts the scan to the immediate children of the collection, which
+      // excludes documents in subcollections.
+      ResourcePath prefix = query.getPath();
+      String prefixPath = EncodedPath.encode(prefix);
+      sql.append("path >= ? AND path < ? AND path_length = ?");
+      bindArgs.add(prefixPath);
+      bindArgs.add(EncodedPath.prefixSuccessor(prefixPath));
+      bindArgs.add(prefix.length() + 1);
+    }
+
+    if (!sinceReadTime.equals(SnapshotVersion.NONE)) {
       // Execute an index-free query and filter by read time. This is safe since all document
       // changes to queries that have a lastLimboFreeSnapshotVersion (`sinceReadTime`) have a read
       // time set.
-      sqlQuery =
-          db.query(
-                  "SELECT path, contents, read_time_seconds, read_time_nanos "
-                      + "FROM remote_documents WHERE path >= ? AND path < ?"
-                      + "AND (read_time_seconds > ? OR (read_time_seconds = ? AND read_time_nanos > ?))")
-              .binding(
-                  prefixPath,
-                  prefixSuccessorPath,
-                  readTime.getSeconds(),
-                  readTime.getSeconds(),
-                  readTime.getNanoseconds());
+      Timestamp readTime = sinceReadTime.getTimestamp();
+      sql.append(
+          " AND (read_time_seconds > ? OR (read_time_seconds = ? AND read_time_nanos > ?))");
+      bindArgs.add(readTime.getSeconds());
+      bindArgs.add(readTime.getSeconds());
+      bindArgs.add(readTime.getNanoseconds());
     }
+
+    BackgroundQueue backgroundQueue = new BackgroundQueue(MAX_PENDING_DECODE_BATCHES);
+    List<DocumentDecoder> decoders = new ArrayList<>();
+    DocumentDecoder[] currentDecoder = {new DocumentDecoder(query)};
+
+    SQLitePersistence.Query sqlQuery = db.query(sql.toString()).binding(bindArgs.toArray());
     sqlQuery.forEach(
         row -> {
-          // TODO: Actually implement a single-collection query
-          //
-          // The query is actually returning any path that starts with the query path prefix
-          // which may include documents in subcollections. For example, a query on 'rooms'
-          // will return rooms/abc/messages/xyx but we shouldn't match it. Fix this by
-          // discarding rows with document keys more than one segment longer than the query
-          // path.
-          ResourcePath path = EncodedPath.decodeResourcePath(row.getString(0));
-          if (path.length() != immediateChildrenPathLength) {
-            return;
+          currentDecoder[0].add(row.getBlob(0), row.getInt(1), row.getInt(2));
+          if (currentDecoder[0].size() == DECODE_BATCH_SIZE) {
+            // This blocks if too many batches are pending, which keeps the number of raw
+            // documents in memory bounded.
+            decoders.add(currentDecoder[0]);
+            backgroundQueue.execute(currentDecoder[0]);
+            currentDecoder[0] = new DocumentDecoder(query);
           }
-
-          // Store row values in array entries to provide the correct context inside the executor.
-          final byte[] rawDocument = row.getBlob(1);
-          final int[] readTimeSeconds = {row.getInt(2)};
-          final int[] readTimeNanos = {row.getInt(3)};
-
-          // Since scheduling background tasks incurs overhead, we only dispatch to a
-          // background thread if there are still some documents remaining.
-          Executor executor = row.isLast() ? Executors.DIRECT_EXECUTOR : backgroundQueue;
-          executor.execute(
-              () -> {
-                MutableDocument document =
-                    decodeMaybeDocument(rawDocument, readTimeSeconds[0], readTimeNanos[0]);
-                if (document.isFoundDocument() && query.matches(document)) {
-                  synchronized (SQLiteRemoteDocumentCache.this) {
-                    matchingDocuments[0] = matchingDocuments[0].insert(document.getKey(), document);
-                  }
-                }
-              });
         });
 
+    // Since scheduling background tasks incurs overhead, we decode the remaining documents on the
+    // current thread.
+    decoders.add(currentDecoder[0]);
+    currentDecoder[0].run();
+
     try {
       backgroundQueue.drain();
     } catch (InterruptedException e) {
       fail("Interrupted while deserializing documents", e);
     }
 
-    return matchingDocuments[0];
+    // Each decoder collects its results separately, which avoids contention between background
+    // threads. The results are merged once all decoders have finished.
+    Map<DocumentKey, MutableDocument> matchingDocuments = new HashMap<>();
+    for (DocumentDecoder decoder : decoders) {
+      for (MutableDocument document : decoder.getMatchingDocuments()) {
+        matchingDocuments.put(document.getKey(), document);
+      }
+    }
+
+    return ImmutableSortedMap.Builder.fromMap(matchingDocuments, DocumentKey.comparator());
   }
 
   private String pathForKey(DocumentKey key) {
     return EncodedPath.encode(key.getPath());
   }
 
+  /** Remembers the stored size of a document while the cache size is tracked. */
+  private void recordStoredSize(DocumentKey key, int storedSize) {
+    if (db.getRemoteDocumentsSize().isTracked()) {
+      storedSizes.put(key, storedSize);
+    }
+  }
+
+  /**
+   * Decodes a batch of raw documents and retains the documents that match the given query. Each
+   * decoder is processed by a single thread.
+   */
+  private class DocumentDecoder implements Runnable {
+    private final Query query;
+    private final List<byte[]> rawDocuments = new ArrayList<>();
+    private final List<int[]> readTimes = new ArrayList<>();
+    private final List<MutableDocument> matchingDocuments = new ArrayList<>();
+
+    DocumentDecoder(Query query) {
+      this.query = query;
+    }
+
+    void add(byte[] rawDocument, int readTimeSeconds, int readTimeNanos) {
+      rawDocuments.add(rawDocument);
+      readTimes.add(new int[] {readTimeSeconds, readTimeNanos});
+    }
+
+    int size() {
+      return rawDocuments.size();
+    }
+
+    List<MutableDocument> getMatchingDocuments() {
+      return matchingDocuments;
+    }
+
+    @Override
+    public void run() {
+      for (int i = 0; i < rawDocuments.size(); ++i) {
+        int[] readTime = readTimes.get(i);
+        MutableDocument document =
+            decodeMaybeDocument(rawDocuments.get(i), readTime[0], readTime[1]);
+        if (document.isFoundDocument() && query.matches(document)) {
+          matchingDocuments.add(document);
+        }
+      }
+      // Release the raw documents as soon as they are no longer needed.
+      rawDocuments.clear();
+      readTimes.clear();
+    }
+  }
+
   private MutableDocument decodeMaybeDocument(
       byte[] bytes, int readTimeSeconds, int readTimeNanos) {
     try {
+      // Field values are only parsed when they are read, which avoids parsing documents (or
+      // fields) that a query does not need.
       return serializer
-          .decodeMaybeDocument(com.google.firebase.firestore.proto.MaybeDocument.parseFrom(bytes))
+          .decodeMaybeDocument(
+              com.google.firebase.firestore.proto.LazyMaybeDocument.parseFrom(bytes))
           .withReadTime(new SnapshotVersion(new Timestamp(readTimeSeconds, readTimeNanos)));
     } catch (InvalidProtocolBufferException e) {
       throw fail("MaybeDocument failed to parse: %s", e);
@@ -24,6 +24,7 @@ import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteStatement;
 import android.text.TextUtils;
 import androidx.annotation.VisibleForTesting;
+import com.google.firebase.firestore.model.DocumentKey;
 import com.google.firebase.firestore.model.ResourcePath;
 import com.google.firebase.firestore.proto.Target;
 import com.google.firebase.firestore.util.Consumer;
@@ -49,7 +50,7 @@ class SQLiteSchema {
    * The version of the schema. Increase this by one for each migration added to runMigrations
    * below.
    */
-  static final int VERSION = 12;
+  static final int VERSION = 15;
 
   static final int OVERLAY_SUPPORT_VERSION = VERSION + 1;
 
@@ -65,6 +66,12 @@ class SQLiteSchema {
    */
   private static final int SEQUENCE_NUMBER_BATCH_SIZE = 100;
 
+  /**
+   * The batch size for data migrations that rewrite every row of a table, such as the path length
+   * migration in `ensurePathLength()`. Uses the same reasoning as `SEQUENCE_NUMBER_BATCH_SIZE`.
+   */
+  private static final int MIGRATION_BATCH_SIZE = 100;
+
   private final SQLiteDatabase db;
 
   private final LocalSerializer serializer;
@@ -170,6 +177,34 @@ class SQLiteSchema {
     if (fromVersion < 12 && toVersion >= 12) {
       createBundleCache();
     }
+
+    // Schema versions 13 and 14 were previously used by the overlay and indexing migrations. A
+    // database at one of those versions may not have the path length columns, or may contain rows
+    // without a path length, so the path length migrations run on every upgrade. They only add
+    // missing columns and only update rows without a path length.
+
+    if (toVersion >= 13) {
+      // Schema version 13 stores the number of path segments of each remote document, which
+      // allows collection scans to skip documents in subcollections.
+      addPathLength();
+      ensurePathLength();
+    }
+
+    if (toVersion >= 14) {
+      // Schema version 14 stores the number of path segments of each document mutation entry,
+      // which allows collection queries to skip mutations to documents in subcollections.
+      addDocumentMutationsPathLength();
+      ensureDocumentMutationsPathLength();
+    }
+
+    if (fromVersion < 15 && toVersion >= 15) {
+      // Schema version 15 stores the collection ID of each remote document and document mutation
+      // entry, which allows collection group queries to read all matching entries with a single
+      // indexed scan rather than one scan per parent.
+      addCollectionGroups();
+      ensureCollectionGroup("remote_documents");
+      ensureCollectionGroup("document_mutations");
+    }
     /*
      * Adding a new migration? READ THIS FIRST!
      *
@@ -448,6 +483,142 @@ class SQLiteSchema {
     db.execSQL("ALTER TABLE remote_documents ADD COLUMN read_time_nanos INTEGER");
   }
 
+  private void addPathLength() {
+    if (!tableContainsColumn("remote_documents", "path_length")) {
+      db.execSQL("ALTER TABLE remote_documents ADD COLUMN path_length INTEGER");
+    }
+    db.execSQL(
+        "CREATE INDEX IF NOT EXISTS remote_documents_path_length "
+            + "ON remote_documents (path_length, path)");
+  }
+
+  /**
+   * Populates the `path_length` column for all remote documents that don't have it set. Older
+   * versions of the SDK do not write this column, so this runs every time the migration runs.
+   */
+  private void ensurePathLength() {
+    SQLitePersistence.Query documentsToMigrate =
+        new SQLitePersistence.Query(
+                db, "SELECT path FROM remote_documents WHERE path_length IS NULL LIMIT ?")
+            .binding(MIGRATION_BATCH_SIZE);
+    SQLiteStatement updatePathLength =
+        db.compileStatement("UPDATE remote_documents SET path_length = ? WHERE path = ?");
+
+    boolean[] resultsRemaining = new boolean[1];
+
+    do {
+      resultsRemaining[0] = false;
+
+      documentsToMigrate.forEach(
+          row -> {
+            resultsRemaining[0] = true;
+            String encodedPath = row.getString(0);
+            ResourcePath decodedPath = EncodedPath.decodeResourcePath(encodedPath);
+
+            updatePathLength.clearBindings();
+            updatePathLength.bindLong(1, decodedPath.length());
+            updatePathLength.bindString(2, encodedPath);
+            hardAssert(
+                updatePathLength.executeUpdateDelete() != -1, "Failed to update document path");
+          });
+    } while (resultsRemaining[0]);
+  }
+
+  private void addDocumentMutationsPathLength() {
+    if (!tableContainsColumn("document_mutations", "path_length")) {
+      db.execSQL("ALTER TABLE document_mutations ADD COLUMN path_length INTEGER");
+    }
+    db.execSQL(
+        "CREATE INDEX IF NOT EXISTS document_mutations_path_length "
+            + "ON document_mutations (uid, path_length, path)");
+  }
+
+  /**
+   * Populates the `path_length` column for all document mutation entries that don't have it set.
+   * Older versions of the SDK do not write this column, so this runs every time the migration runs.
+   */
+  private void ensureDocumentMutationsPathLength() {
+    SQLitePersistence.Query entriesToMigrate =
+        new SQLitePersistence.Query(
+                db,
+                "SELECT DISTINCT path FROM document_mutations WHERE path_length IS NULL LIMIT ?")
+            .binding(MIGRATION_BATCH_SIZE);
+    SQLiteStatement updatePathLength =
+        db.compileStatement("UPDATE document_mutations SET path_length = ? WHERE path = ?");
+
+    boolean[] resultsRemaining = new boolean[1];
+
+    do {
+      resultsRemaining[0] = false;
+
+      entriesToMigrate.forEach(
+          row -> {
+            resultsRemaining[0] = true;
+            String encodedPath = row.getString(0);
+            ResourcePath decodedPath = EncodedPath.decodeResourcePath(encodedPath);
+
+            updatePathLength.clearBindings();
+            updatePathLength.bindLong(1, decodedPath.length());
+            updatePathLength.bindString(2, encodedPath);
+            hardAssert(
+                updatePathLength.executeUpdateDelete() != -1,
+                "Failed to update document mutation path");
+          });
+    } while (resultsRemaining[0]);
+  }
+
+  private void addCollectionGroups() {
+    if (!tableContainsColumn("remote_documents", "collection_group")) {
+      db.execSQL("ALTER TABLE remote_documents ADD COLUMN collection_group TEXT");
+    }
+    db.execSQL(
+        "CREATE INDEX IF NOT EXISTS remote_documents_collection_group "
+            + "ON remote_documents (collection_group)");
+
+    if (!tableContainsColumn("document_mutations", "collection_group")) {
+      db.execSQL("ALTER TABLE document_mutations ADD COLUMN collection_group TEXT");
+    }
+    db.execSQL(
+        "CREATE INDEX IF NOT EXISTS document_mutations_collection_group "
+            + "ON document_mutations (uid, collection_group)");
+  }
+
+  /**
+   * Populates the `collection_group` column for all entries of the given table that don't have it
+   * set. Older versions of the SDK do not write this column, so this runs every time the migration
+   * runs.
+   */
+  private void ensureCollectionGroup(String table) {
+    SQLitePersistence.Query entriesToMigrate =
+        new SQLitePersistence.Query(
+                db,
+                "SELECT DISTINCT path FROM " + table + " WHERE collection_group IS NULL LIMIT ?")
+            .binding(MIGRATION_BATCH_SIZE);
+    SQLiteStatement updateCollectionGroup =
+        db.compileStatement("UPDATE " + table + " SET collection_group = ? WHERE path = ?");
+
+    boolean[] resultsRemaining = new boolean[1];
+
+    do {
+      resultsRemaining[0] = false;
+
+      entriesToMigrate.forEach(
+          row -> {
+            resultsRemaining[0] = true;
+            String encodedPath = row.getString(0);
+            DocumentKey key = DocumentKey.fromPath(EncodedPath.decodeResourcePath(encodedPath));
+
+            updateCollectionGroup.clearBindings();
+            updateCollectionGroup.bindString(1, key.getCollectionGroup());
+            updateCollectionGroup.bindString(2, encodedPath);
+            hardAssert(
+                updateCollectionGroup.executeUpdateDelete() != -1,
+                "Failed to update collection group of %s",
+                table);
+          });
+    } while (resultsRemaining[0]);
+  }
+
   private void dropLastLimboFreeSnapshotVersion() {
     new SQLitePersistence.Query(db, "SELECT target_id, target_proto FROM targets")
         .forEach(
@@ -636,11 +807,15 @@ class SQLiteSchema {
           db.execSQL(
               "CREATE TABLE document_overlays ("
                   + "uid TEXT, "
-                  + "path TEXT, "
+                  + "collection_path TEXT, "
+                  + "document_id TEXT, "
+                  + "collection_group TEXT, "
                   + "largest_batch_id INTEGER, "
                   + "overlay_mutation BLOB, "
-                  + "PRIMARY KEY (uid, path))");
+                  + "PRIMARY KEY (uid, collection_path, document_id))");
           db.execSQL("CREATE INDEX batch_id_overlay ON document_overlays (uid, largest_batch_id)");
+          db.execSQL(
+              "CREATE INDEX collection_group_overlay ON document_overlays (uid, collection_group)");
         });
   }
 
@@ -0,0 +1,88 @@
+// Copyright 2021 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore.local;
+
+/**
+ * Tracks the number of bytes stored in a BLOB column of a SQLite table.
+ *
+ * <p>The size is computed with a single scan when it is first requested, and then maintained
+ * incrementally from the sizes of the rows that are written and deleted. Callers pass in sizes
+ * they already know, so tracking does not add queries to writes. Until the size has been
+ * requested, writes are not tracked and incur no overhead.
+ */
+final class SQLiteTableSize {
+  private static final long UNKNOWN = -1;
+
+  private final SQLitePersistence db;
+  private final String table;
+  private final String column;
+  private long byteSize = UNKNOWN;
+
+  SQLiteTableSize(SQLitePersistence db, String table, String column) {
+    this.db = db;
+    this.table = table;
+    this.column = column;
+  }
+
+  /** Returns the number of bytes stored in the column across all rows of the table. */
+  long getByteSize() {
+    if (byteSize == UNKNOWN) {
+      byteSize =
+          db.query("SELECT SUM(LENGTH(" + column + ")) FROM " + table)
+              .firstValue(row -> row.isNull(0) ? 0L : row.getLong(0));
+    }
+    return byteSize;
+  }
+
+  /**
+   * Returns whether writes are currently tracked. Callers can skip computing the size of existing
+   * rows if they are not.
+   */
+  boolean isTracked() {
+    return byteSize != UNKNOWN;
+  }
+
+  /** Records the insertion of a row of the given size. */
+  void recordInsert(long rowSize) {
+    if (byteSize != UNKNOWN) {
+      byteSize += rowSize;
+    }
+  }
+
+  /** Records the deletion of a row of the given size. */
+  void recordDelete(long rowSize) {
+    if (byteSize != UNKNOWN) {
+      byteSize -= rowSize;
+    }
+  }
+
+  /**
+   * Reads the size of the rows matching {@code where}. Only used for rows whose size the caller
+   * has not seen since the size started to be tracked.
+   */
+  long readRowSize(String where, Object... args) {
+    return db.query("SELECT SUM(LENGTH(" + column + ")) FROM " + table + " WHERE " + where)
+        .binding(args)
+        .firstValue(row -> row.isNull(0) ? 0L : row.getLong(0));
+  }
+
+  /**
+   * Discards the tracked size, which is recomputed on the next call to {@link #getByteSize}. Used
+   * when writes were rolled back.
+   */
+  void invalidate() {
+    byteSize = UNKNOWN;
+  }
+}
@@ -27,6 +27,8 @@ import com.google.firebase.firestore.model.DocumentKey;
 import com.google.firebase.firestore.model.SnapshotVersion;
 import com.google.firebase.firestore.util.Consumer;
 import com.google.protobuf.InvalidProtocolBufferException;
+import java.util.HashMap;
+import java.util.Map;
 
 /** Cached Queries backed by SQLite. */
 final class SQLiteTargetCache implements TargetCache {
@@ -39,6 +41,12 @@ final class SQLiteTargetCache implements TargetCache {
   private SnapshotVersion lastRemoteSnapshotVersion = SnapshotVersion.NONE;
   private long targetCount;
 
+  /**
+   * The stored size of targets that were written since the cache size started to be tracked. Used
+   * to update the tracked size when a target is rewritten or removed without reading it again.
+   */
+  private final Map<Integer, Integer> targetSizes = new HashMap<>();
+
   SQLiteTargetCache(SQLitePersistence db, LocalSerializer localSerializer) {
     this.db = db;
     this.localSerializer = localSerializer;
@@ -83,6 +91,17 @@ final class SQLiteTargetCache implements TargetCache {
         .forEach(row -> consumer.accept(decodeTargetData(row.getBlob(0))));
   }
 
+  /**
+   * Enumerates up to {@code limit} targets whose target IDs are greater than {@code
+   * startAfterTargetId}, in order of their target IDs. Returns the number of targets enumerated.
+   */
+  int forEachTarget(int startAfterTargetId, int limit, Consumer<TargetData> consumer) {
+    return db.query(
+            "SELECT target_proto FROM targets WHERE target_id > ? ORDER BY target_id LIMIT ?")
+        .binding(startAfterTargetId, limit)
+        .forEach(row -> consumer.accept(decodeTargetData(row.getBlob(0))));
+  }
+
   @Override
   public SnapshotVersion getLastRemoteSnapshotVersion() {
     return lastRemoteSnapshotVersion;
@@ -94,14 +113,23 @@ final class SQLiteTargetCache implements TargetCache {
     writeMetadata();
   }
 
-  private void saveTargetData(TargetData targetData) {
+  private void saveTargetData(TargetData targetData, boolean isNewTarget) {
     int targetId = targetData.getTargetId();
     String canonicalId = targetData.getTarget().getCanonicalId();
     Timestamp version = targetData.getSnapshotVersion().getTimestamp();
 
     com.google.firebase.firestore.proto.Target targetProto =
         localSerializer.encodeTargetData(targetData);
-
+    byte[] targetBytes = targetProto.toByteArray();
+
+    SQLiteTableSize tableSize = db.getTargetsSize();
+    if (tableSize.isTracked()) {
+      if (!isNewTarget) {
+        tableSize.recordDelete(getStoredSize(targetId));
+      }
+      tableSize.recordInsert(targetBytes.length);
+      targetSizes.put(targetId, targetBytes.length);
+    }
     db.execute(
         "INSERT OR REPLACE INTO targets ("
             + "target_id, "
@@ -118,7 +146,7 @@ final class SQLiteTargetCache implements TargetCache {
         version.getNanoseconds(),
         targetData.getResumeToken().toByteArray(),
         targetData.getSequenceNumber(),
-        targetProto.toByteArray());
+        targetBytes);
   }
 
   private boolean updateMetadata(TargetData targetData) {
@@ -139,7 +167,7 @@ final class SQLiteTargetCache implements TargetCache {
 
   @Override
   public void addTargetData(TargetData targetData) {
-    saveTargetData(targetData);
+    saveTargetData(targetData, /* isNewTarget= */ true);
     // PORTING NOTE: The query_targets index is maintained by SQLite.
 
     updateMetadata(targetData);
@@ -149,7 +177,7 @@ final class SQLiteTargetCache implements TargetCache {
 
   @Override
   public void updateTargetData(TargetData targetData) {
-    saveTargetData(targetData);
+    saveTargetData(targetData, /* isNewTarget= */ false);
 
     if (updateMetadata(targetData)) {
       writeMetadata();
@@ -170,10 +198,28 @@ final class SQLiteTargetCache implements TargetCache {
 
   private void removeTarget(int targetId) {
     removeMatchingKeysForTargetId(targetId);
+    SQLiteTableSize tableSize = db.getTargetsSize();
+    if (tableSize.isTracked()) {
+      tableSize.recordDelete(getStoredSize(targetId));
+    }
+    targetSizes.remove(targetId);
     db.execute("DELETE FROM targets WHERE target_id = ?", targetId);
     targetCount--;
   }
 
+  /** Returns the number of bytes stored for the given target. */
+  private long getStoredSize(int targetId) {
+    Integer storedSize = targetSizes.get(targetId);
+    return storedSize != null
+        ? storedSize
+        : db.getTargetsSize().readRowSize("target_id = ?", targetId);
+  }
+
+  /** Forgets the stored sizes of targets. Called when writes were rolled back. */
+  void clearStoredSizes() {
+    targetSizes.clear();
+  }
+
   @Override
   public void removeTargetData(TargetData targetData) {
     int targetId = targetData.getTargetId();
@@ -182,11 +228,12 @@ final class SQLiteTargetCache implements TargetCache {
   }
 
   /**
-   * Drops any targets with sequence number less than or equal to the upper bound, excepting those
-   * present in `activeTargetIds`. Document associations for the removed targets are also removed.
+   * Drops up to `limit` targets with sequence number less than or equal to the upper bound,
+   * excepting those present in `activeTargetIds`. Document associations for the removed targets
+   * are also removed.
    * Returns the number of targets removed.
    */
-  int removeQueries(long upperBound, SparseArray<?> activeTargetIds) {
+  int removeQueries(long upperBound, SparseArray<?> activeTargetIds, int limit) {
     int[] count = new int[1];
     // SQLite has a max sql statement size, so there is technically a possibility that including a
     // an IN clause in this query to filter `activeTargetIds` could overflow. Rather than deal with
@@ -196,7 +243,7 @@ final class SQLiteTargetCache implements TargetCache {
         .forEach(
             row -> {
               int targetId = row.getInt(0);
-              if (activeTargetIds.get(targetId) == null) {
+              if (count[0] < limit && activeTargetIds.get(targetId) == null) {
                 removeTarget(targetId);
                 count[0]++;
               }
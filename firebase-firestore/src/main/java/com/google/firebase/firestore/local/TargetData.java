@@ -16,6 +16,7 @@ package com.google.firebase.firestore.local;
 
 import static com.google.firebase.firestore.util.Preconditions.checkNotNull;
 
+import androidx.annotation.Nullable;
 import com.google.firebase.firestore.core.Target;
 import com.google.firebase.firestore.model.SnapshotVersion;
 import com.google.firebase.firestore.remote.WatchStream;
@@ -30,6 +31,7 @@ public final class TargetData {
   private final SnapshotVersion snapshotVersion;
   private final SnapshotVersion lastLimboFreeSnapshotVersion;
   private final ByteString resumeToken;
+  @Nullable private final Integer expectedCount;
 
   /**
    * Creates a new TargetData with the given values.
@@ -54,6 +56,26 @@ public final class TargetData {
       SnapshotVersion snapshotVersion,
       SnapshotVersion lastLimboFreeSnapshotVersion,
       ByteString resumeToken) {
+    this(
+        target,
+        targetId,
+        sequenceNumber,
+        purpose,
+        snapshotVersion,
+        lastLimboFreeSnapshotVersion,
+        resumeToken,
+        /* expectedCount= */ null);
+  }
+
+  private TargetData(
+      Target target,
+      int targetId,
+      long sequenceNumber,
+      QueryPurpose purpose,
+      SnapshotVersion snapshotVersion,
+      SnapshotVersion lastLimboFreeSnapshotVersion,
+      ByteString resumeToken,
+      @Nullable Integer expectedCount) {
     this.target = checkNotNull(target);
     this.targetId = targetId;
     this.sequenceNumber = sequenceNumber;
@@ -61,6 +83,7 @@ public final class TargetData {
     this.purpose = purpose;
     this.snapshotVersion = checkNotNull(snapshotVersion);
     this.resumeToken = checkNotNull(resumeToken);
+    this.expectedCount = expectedCount;
   }
 
   /** Convenience constructor for use when creating a TargetData for the first time. */
@@ -84,10 +107,14 @@ public final class TargetData {
         purpose,
         snapshotVersion,
         lastLimboFreeSnapshotVersion,
-        resumeToken);
+        resumeToken,
+        expectedCount);
   }
 
-  /** Creates a new target data instance with an updated resume token and snapshot version. */
+  /**
+   * Creates a new target data instance with an updated resume token and snapshot version. The
+   * expected count is cleared, since it only applies to the previous resume token.
+   */
   public TargetData withResumeToken(ByteString resumeToken, SnapshotVersion snapshotVersion) {
     return new TargetData(
         target,
@@ -96,7 +123,8 @@ public final class TargetData {
         purpose,
         snapshotVersion,
         lastLimboFreeSnapshotVersion,
-        resumeToken);
+        resumeToken,
+        /* expectedCount= */ null);
   }
 
   /** Creates a new target data instance with an updated last limbo free snapshot version number. */
@@ -108,7 +136,24 @@ public final class TargetData {
         purpose,
         snapshotVersion,
         lastLimboFreeSnapshotVersion,
-        resumeToken);
+        resumeToken,
+        expectedCount);
+  }
+
+  /**
+   * Creates a new target data instance with the number of documents that the client expects to
+   * match the target when it is resumed.
+   */
+  public TargetData withExpectedCount(int expectedCount) {
+    return new TargetData(
+        target,
+        targetId,
+        sequenceNumber,
+        purpose,
+        snapshotVersion,
+        lastLimboFreeSnapshotVersion,
+        resumeToken,
+        expectedCount);
   }
 
   public Target getTarget() {
@@ -135,6 +180,15 @@ public final class TargetData {
     return resumeToken;
   }
 
+  /**
+   * Returns the number of documents that matched the target at the resume token or read time, or
+   * {@code null} if the count is not sent with the target.
+   */
+  @Nullable
+  public Integer getExpectedCount() {
+    return expectedCount;
+  }
+
   /**
    * Returns the last snapshot version for which the associated view contained no limbo documents.
    */
@@ -158,7 +212,10 @@ public final class TargetData {
         && purpose.equals(targetData.purpose)
         && snapshotVersion.equals(targetData.snapshotVersion)
         && lastLimboFreeSnapshotVersion.equals(targetData.lastLimboFreeSnapshotVersion)
-        && resumeToken.equals(targetData.resumeToken);
+        && resumeToken.equals(targetData.resumeToken)
+        && (expectedCount == null
+            ? targetData.expectedCount == null
+            : expectedCount.equals(targetData.expectedCount));
   }
 
   @Override
@@ -170,6 +227,7 @@ public final class TargetData {
     result = 31 * result + snapshotVersion.hashCode();
     result = 31 * result + lastLimboFreeSnapshotVersion.hashCode();
     result = 31 * result + resumeToken.hashCode();
+    result = 31 * result + (expectedCount != null ? expectedCount.hashCode() : 0);
     return result;
   }
 
@@ -190,6 +248,8 @@ public final class TargetData {
         + lastLimboFreeSnapshotVersion
         + ", resumeToken="
         + resumeToken
+        + ", expectedCount="
+        + expectedCount
         + '}';
   }
 }
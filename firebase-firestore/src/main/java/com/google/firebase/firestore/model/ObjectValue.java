@@ -14,6 +14,7 @@
 
 package com.google.firebase.firestore.model;
 
+import static com.google.firebase.firestore.util.Assert.fail;
 import static com.google.firebase.firestore.util.Assert.hardAssert;
 
 import androidx.annotation.NonNull;
@@ -21,6 +22,8 @@ import androidx.annotation.Nullable;
 import com.google.firebase.firestore.model.mutation.FieldMask;
 import com.google.firestore.v1.MapValue;
 import com.google.firestore.v1.Value;
+import com.google.protobuf.ByteString;
+import com.google.protobuf.InvalidProtocolBufferException;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -41,11 +44,34 @@ public final class ObjectValue implements Cloneable {
    */
   private final Map<String, Object> overlayMap = new HashMap<>();
 
+  /**
+   * The serialized top-level fields of this object that have not been merged into {@link
+   * #partialValue}, or {@code null} if {@link #partialValue} contains all fields. Fields are parsed
+   * individually when they are first read and merged when the full proto is needed.
+   */
+  @Nullable private Map<String, ByteString> unparsedFields;
+
+  /** The fields from {@link #unparsedFields} that have been parsed so far. */
+  @Nullable private Map<String, Value> parsedFields;
+
   public static ObjectValue fromMap(Map<String, Value> value) {
     return new ObjectValue(
         Value.newBuilder().setMapValue(MapValue.newBuilder().putAllFields(value)).build());
   }
 
+  /**
+   * Creates an ObjectValue from serialized `Value` protos that are only parsed when a field is
+   * accessed.
+   */
+  public static ObjectValue fromSerializedFields(Map<String, ByteString> fields) {
+    ObjectValue result = new ObjectValue();
+    if (!fields.isEmpty()) {
+      result.unparsedFields = fields;
+      result.parsedFields = new HashMap<>();
+    }
+    return result;
+  }
+
   public ObjectValue(Value value) {
     hardAssert(
         value.getValueTypeCase() == Value.ValueTypeCase.MAP_VALUE,
@@ -99,6 +125,15 @@ public final class ObjectValue implements Cloneable {
    * @return The value at the path or null if it doesn't exist.
    */
   public @Nullable Value get(FieldPath fieldPath) {
+    synchronized (overlayMap) {
+      if (unparsedFields != null && overlayMap.isEmpty() && !fieldPath.isEmpty()) {
+        // Only parse the top-level field that contains the requested value.
+        @Nullable Value topLevelValue = parseField(fieldPath.getFirstSegment());
+        return topLevelValue != null
+            ? extractNestedValue(topLevelValue, fieldPath.popFirst())
+            : null;
+      }
+    }
     return extractNestedValue(buildProto(), fieldPath);
   }
 
@@ -125,6 +160,7 @@ public final class ObjectValue implements Cloneable {
    */
   private Value buildProto() {
     synchronized (overlayMap) {
+      parseAllFields();
       MapValue mergedResult = applyOverlay(FieldPath.EMPTY_PATH, overlayMap);
       if (mergedResult != null) {
         partialValue = Value.newBuilder().setMapValue(mergedResult).build();
@@ -134,6 +170,37 @@ public final class ObjectValue implements Cloneable {
     return partialValue;
   }
 
+  /** Returns the parsed value of the given top-level field from {@link #unparsedFields}. */
+  @Nullable
+  private Value parseField(String fieldName) {
+    @Nullable Value value = parsedFields.get(fieldName);
+    if (value == null) {
+      @Nullable ByteString serializedValue = unparsedFields.get(fieldName);
+      if (serializedValue != null) {
+        try {
+          value = Value.parseFrom(serializedValue);
+        } catch (InvalidProtocolBufferException e) {
+          throw fail("Failed to parse value for field %s: %s", fieldName, e);
+        }
+        parsedFields.put(fieldName, value);
+      }
+    }
+    return value;
+  }
+
+  /** Merges all fields from {@link #unparsedFields} into {@link #partialValue}. */
+  private void parseAllFields() {
+    if (unparsedFields != null) {
+      MapValue.Builder fields = partialValue.getMapValue().toBuilder();
+      for (String fieldName : unparsedFields.keySet()) {
+        fields.putFields(fieldName, parseField(fieldName));
+      }
+      partialValue = Value.newBuilder().setMapValue(fields).build();
+      unparsedFields = null;
+      parsedFields = null;
+    }
+  }
+
   /**
    * Removes the field at the specified path. If there is no field at the specified path nothing is
    * changed.
@@ -268,6 +335,15 @@ public final class ObjectValue implements Cloneable {
 
   @NonNull
   public ObjectValue clone() {
+    synchronized (overlayMap) {
+      if (unparsedFields != null && overlayMap.isEmpty()) {
+        // Share the serialized fields (which are immutable) to keep the clone lazy.
+        ObjectValue result = new ObjectValue(partialValue);
+        result.unparsedFields = unparsedFields;
+        result.parsedFields = new HashMap<>(parsedFields);
+        return result;
+      }
+    }
     return new ObjectValue(buildProto());
   }
 }
@@ -29,12 +29,9 @@ import com.google.protobuf.ByteString;
 import com.google.protobuf.NullValue;
 import com.google.protobuf.Timestamp;
 import com.google.type.LatLng;
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
 
 public class Values {
   public static final Value NAN_VALUE = Value.newBuilder().setDoubleValue(Double.NaN).build();
@@ -165,8 +162,9 @@ public class Values {
       return false;
     }
 
+    Map<String, Value> rightFields = rightMap.getFieldsMap();
     for (Map.Entry<String, Value> entry : leftMap.getFieldsMap().entrySet()) {
-      Value otherEntry = rightMap.getFieldsMap().get(entry.getKey());
+      Value otherEntry = rightFields.get(entry.getKey());
       if (!equals(entry.getValue(), otherEntry)) {
         return false;
       }
@@ -273,18 +271,53 @@ public class Values {
     return Util.compareIntegers(left.getNanos(), right.getNanos());
   }
 
+  /**
+   * Compares two resource names segment by segment. The segments are compared in place, which
+   * avoids splitting the names into new strings for every comparison.
+   */
   private static int compareReferences(String leftPath, String rightPath) {
-    String[] leftSegments = leftPath.split("/", -1);
-    String[] rightSegments = rightPath.split("/", -1);
-
-    int minLength = Math.min(leftSegments.length, rightSegments.length);
-    for (int i = 0; i < minLength; i++) {
-      int cmp = leftSegments[i].compareTo(rightSegments[i]);
+    int leftStart = 0;
+    int rightStart = 0;
+    while (true) {
+      int leftEnd = segmentEnd(leftPath, leftStart);
+      int rightEnd = segmentEnd(rightPath, rightStart);
+      int cmp = compareSegments(leftPath, leftStart, leftEnd, rightPath, rightStart, rightEnd);
       if (cmp != 0) {
         return cmp;
       }
+
+      boolean leftHasMore = leftEnd < leftPath.length();
+      boolean rightHasMore = rightEnd < rightPath.length();
+      if (!leftHasMore || !rightHasMore) {
+        // The name with fewer segments sorts first.
+        return Util.compareBooleans(leftHasMore, rightHasMore);
+      }
+
+      leftStart = leftEnd + 1;
+      rightStart = rightEnd + 1;
+    }
+  }
+
+  /** Returns the end index (exclusive) of the path segment that starts at {@code start}. */
+  private static int segmentEnd(String path, int start) {
+    int end = path.indexOf('/', start);
+    return end == -1 ? path.length() : end;
+  }
+
+  /** Compares two path segments with the same semantics as {@link String#compareTo}. */
+  private static int compareSegments(
+      String left, int leftStart, int leftEnd, String right, int rightStart, int rightEnd) {
+    int leftLength = leftEnd - leftStart;
+    int rightLength = rightEnd - rightStart;
+    int minLength = Math.min(leftLength, rightLength);
+    for (int i = 0; i < minLength; i++) {
+      char leftChar = left.charAt(leftStart + i);
+      char rightChar = right.charAt(rightStart + i);
+      if (leftChar != rightChar) {
+        return leftChar - rightChar;
+      }
     }
-    return Util.compareIntegers(leftSegments.length, rightSegments.length);
+    return Util.compareIntegers(leftLength, rightLength);
   }
 
   private static int compareGeoPoints(LatLng left, LatLng right) {
@@ -307,18 +340,18 @@ public class Values {
   }
 
   private static int compareMaps(MapValue left, MapValue right) {
-    Iterator<Map.Entry<String, Value>> iterator1 =
-        new TreeMap<>(left.getFieldsMap()).entrySet().iterator();
-    Iterator<Map.Entry<String, Value>> iterator2 =
-        new TreeMap<>(right.getFieldsMap()).entrySet().iterator();
+    Map<String, Value> leftFields = left.getFieldsMap();
+    Map<String, Value> rightFields = right.getFieldsMap();
+    Iterator<String> iterator1 = sortedKeys(leftFields).iterator();
+    Iterator<String> iterator2 = sortedKeys(rightFields).iterator();
     while (iterator1.hasNext() && iterator2.hasNext()) {
-      Map.Entry<String, Value> entry1 = iterator1.next();
-      Map.Entry<String, Value> entry2 = iterator2.next();
-      int keyCompare = entry1.getKey().compareTo(entry2.getKey());
+      String key1 = iterator1.next();
+      String key2 = iterator2.next();
+      int keyCompare = key1.compareTo(key2);
       if (keyCompare != 0) {
         return keyCompare;
       }
-      int valueCompare = compare(entry1.getValue(), entry2.getValue());
+      int valueCompare = compare(leftFields.get(key1), rightFields.get(key2));
       if (valueCompare != 0) {
         return valueCompare;
       }
@@ -328,6 +361,26 @@ public class Values {
     return Util.compareBooleans(iterator1.hasNext(), iterator2.hasNext());
   }
 
+  /**
+   * Returns the keys of the map in ascending order.
+   *
+   * <p>MapValues are usually sorted already (e.g. when received from the backend or written by the
+   * SDK), in which case the key set is returned as is. Only maps whose elements were brought out of
+   * order by local modifications are copied and sorted.
+   */
+  private static Iterable<String> sortedKeys(Map<String, Value> fields) {
+    String previous = null;
+    for (String key : fields.keySet()) {
+      if (previous != null && previous.compareTo(key) > 0) {
+        String[] keys = fields.keySet().toArray(new String[0]);
+        Arrays.sort(keys);
+        return Arrays.asList(keys);
+      }
+      previous = key;
+    }
+    return fields.keySet();
+  }
+
   /** Generate the canonical ID for the provided field value (as used in Target serialization). */
   public static String canonicalId(Value value) {
     StringBuilder builder = new StringBuilder();
@@ -376,11 +429,13 @@ public class Values {
   }
 
   private static void canonifyTimestamp(StringBuilder builder, Timestamp timestamp) {
-    builder.append(String.format("time(%s,%s)", timestamp.getSeconds(), timestamp.getNanos()));
+    builder.append("time(").append(timestamp.getSeconds());
+    builder.append(",").append(timestamp.getNanos()).append(")");
   }
 
   private static void canonifyGeoPoint(StringBuilder builder, LatLng latLng) {
-    builder.append(String.format("geo(%s,%s)", latLng.getLatitude(), latLng.getLongitude()));
+    builder.append("geo(").append(latLng.getLatitude());
+    builder.append(",").append(latLng.getLongitude()).append(")");
   }
 
   private static void canonifyReference(StringBuilder builder, Value value) {
@@ -392,19 +447,18 @@ public class Values {
     // Even though MapValue are likely sorted correctly based on their insertion order (e.g. when
     // received from the backend), local modifications can bring elements out of order. We need to
     // re-sort the elements to ensure that canonical IDs are independent of insertion order.
-    List<String> keys = new ArrayList<>(mapValue.getFieldsMap().keySet());
-    Collections.sort(keys);
+    Map<String, Value> fields = mapValue.getFieldsMap();
 
     builder.append("{");
     boolean first = true;
-    for (String key : keys) {
+    for (String key : sortedKeys(fields)) {
       if (!first) {
         builder.append(",");
       } else {
         first = false;
       }
       builder.append(key).append(":");
-      canonifyValue(builder, mapValue.getFieldsOrThrow(key));
+      canonifyValue(builder, fields.get(key));
     }
     builder.append("}");
   }
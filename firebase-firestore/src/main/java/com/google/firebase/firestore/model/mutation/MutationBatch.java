@@ -130,6 +130,46 @@ public final class MutationBatch {
     return mutatedFields;
   }
 
+  /**
+   * Applies the mutations in this batch to the given documents, iterating over the mutations only
+   * once rather than once per document. Mutations for documents that are not in {@code documents}
+   * are skipped.
+   *
+   * @param documents The documents to apply the mutations to. The documents are modified in place.
+   * @param mutatedFields The fields that are mutated so far for each document, which is updated
+   *     with the fields that are mutated by this batch. A document without an entry has no mutated
+   *     fields yet, while a {@code null} entry means that the whole document is overwritten.
+   */
+  public void applyToLocalDocuments(
+      Map<DocumentKey, MutableDocument> documents, Map<DocumentKey, FieldMask> mutatedFields) {
+    // First, apply the base state. This allows us to apply non-idempotent transform against a
+    // consistent set of values.
+    for (int i = 0; i < baseMutations.size(); i++) {
+      applyToLocalDocument(baseMutations.get(i), documents, mutatedFields);
+    }
+
+    // Second, apply all user-provided mutations.
+    for (int i = 0; i < mutations.size(); i++) {
+      applyToLocalDocument(mutations.get(i), documents, mutatedFields);
+    }
+  }
+
+  private void applyToLocalDocument(
+      Mutation mutation,
+      Map<DocumentKey, MutableDocument> documents,
+      Map<DocumentKey, FieldMask> mutatedFields) {
+    DocumentKey key = mutation.getKey();
+    MutableDocument document = documents.get(key);
+    if (document == null) {
+      return;
+    }
+    FieldMask previousMask =
+        mutatedFields.containsKey(key)
+            ? mutatedFields.get(key)
+            : FieldMask.fromSet(new HashSet<>());
+    mutatedFields.put(key, mutation.applyToLocalView(document, previousMask, localWriteTime));
+  }
+
   /**
    * Computes the local view for all provided documents given the mutations in this batch. Returns a
    * {@code DocumentKey} to {@code Mutation} map which can be used to replace all the mutation
@@ -137,16 +177,21 @@ public final class MutationBatch {
    */
   public Map<DocumentKey, Mutation> applyToLocalDocumentSet(
       ImmutableSortedMap<DocumentKey, Document> documentMap) {
-    // TODO(mrschmidt): This implementation is O(n^2). If we iterate through the mutations first
-    // (as done in `applyToLocalView(MutableDocument d)`), we can reduce the complexity to
-    // O(n).
-    Map<DocumentKey, Mutation> overlays = new HashMap<>();
-    for (DocumentKey key : getKeys()) {
+    Set<DocumentKey> keys = getKeys();
+    Map<DocumentKey, MutableDocument> documents = new HashMap<>();
+    for (DocumentKey key : keys) {
       // TODO(mutabledocuments): This method should take a map of MutableDocuments and we should
       // remove this cast.
-      MutableDocument document = (MutableDocument) documentMap.get(key);
-      FieldMask mutatedFields = applyToLocalView(document);
-      Mutation overlay = Mutation.calculateOverlayMutation(document, mutatedFields);
+      documents.put(key, (MutableDocument) documentMap.get(key));
+    }
+
+    Map<DocumentKey, FieldMask> mutatedFields = new HashMap<>();
+    applyToLocalDocuments(documents, mutatedFields);
+
+    Map<DocumentKey, Mutation> overlays = new HashMap<>();
+    for (DocumentKey key : keys) {
+      MutableDocument document = documents.get(key);
+      Mutation overlay = Mutation.calculateOverlayMutation(document, mutatedFields.get(key));
       overlays.put(key, overlay);
       if (!document.isValidDocument()) {
         document.convertToNoDocument(SnapshotVersion.NONE);
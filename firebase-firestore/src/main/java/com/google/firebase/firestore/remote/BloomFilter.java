@@ -0,0 +1,149 @@
+// Copyright 2021 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore.remote;
+
+import com.google.protobuf.ByteString;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * A bloom filter sent by the backend as part of an existence filter. The filter contains the
+ * resource names of all documents that match a target and that have not changed since the resume
+ * token of the target.
+ *
+ * <p>Entries are hashed with MD5. The 128-bit hash is treated as two unsigned 64-bit hash values
+ * {@code h1} and {@code h2}, which yield {@code hashCount} bit positions via {@code h1 + i * h2}.
+ */
+public final class BloomFilter {
+  private final int bitCount;
+  private final ByteString bitmap;
+  private final int hashCount;
+  private final MessageDigest md5;
+
+  /**
+   * Creates a new bloom filter.
+   *
+   * @throws IllegalArgumentException if the arguments do not describe a valid bloom filter.
+   */
+  public BloomFilter(ByteString bitmap, int padding, int hashCount) {
+    if (padding < 0 || padding >= 8) {
+      throw new IllegalArgumentException("Invalid padding: " + padding);
+    }
+    if (hashCount < 0) {
+      throw new IllegalArgumentException("Invalid hash count: " + hashCount);
+    }
+    if (bitmap.size() > 0 && hashCount == 0) {
+      // Only empty bloom filters can have 0 hash count.
+      throw new IllegalArgumentException("Invalid hash count: " + hashCount);
+    }
+    if (bitmap.size() == 0 && padding != 0) {
+      // Empty bloom filters should have 0 padding.
+      throw new IllegalArgumentException(
+          "Expected padding of 0 when bitmap length is 0, but got " + padding);
+    }
+
+    this.bitmap = bitmap;
+    this.hashCount = hashCount;
+    this.bitCount = bitmap.size() * 8 - padding;
+    this.md5 = createMd5HashMessageDigest();
+  }
+
+  int getBitCount() {
+    return bitCount;
+  }
+
+  int getHashCount() {
+    return hashCount;
+  }
+
+  /**
+   * Returns whether the given value might be contained in the bloom filter. Returns {@code false}
+   * only if the value is definitely not contained.
+   */
+  public boolean mightContain(String value) {
+    // Empty bitmap should return false on membership check.
+    if (bitCount == 0) {
+      return false;
+    }
+
+    byte[] hashedValue = md5HashDigest(value);
+    if (hashedValue.length != 16) {
+      throw new RuntimeException(
+          "Invalid md5 hash array length: " + hashedValue.length + " (expected 16)");
+    }
+
+    long hash1 = getLongLittleEndian(hashedValue, 0);
+    long hash2 = getLongLittleEndian(hashedValue, 8);
+
+    for (int i = 0; i < hashCount; i++) {
+      int index = getBitIndex(hash1, hash2, i);
+      if (!isBitSet(index)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Hashes the given string value using MD5. */
+  private byte[] md5HashDigest(String value) {
+    return md5.digest(value.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static MessageDigest createMd5HashMessageDigest() {
+    try {
+      return MessageDigest.getInstance("MD5");
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException("Missing MD5 MessageDigest provider: ", e);
+    }
+  }
+
+  /** Interprets 8 bytes starting at the given offset as a little-endian 64-bit integer. */
+  private static long getLongLittleEndian(byte[] bytes, int offset) {
+    long result = 0;
+    for (int i = 0; i < 8; i++) {
+      result |= (bytes[offset + i] & 0xFFL) << (i * 8);
+    }
+    return result;
+  }
+
+  /**
+   * Calculates the {@code hashIndex}-th bit position as {@code (hash1 + hashIndex * hash2) mod
+   * bitCount}, treating all values as unsigned 64-bit integers.
+   */
+  private int getBitIndex(long hash1, long hash2, int hashIndex) {
+    long combinedHash = hash1 + (hash2 * hashIndex);
+    return (int) unsignedRemainder(combinedHash, bitCount);
+  }
+
+  /** Returns the remainder of the unsigned 64-bit division of {@code dividend} by {@code divisor}. */
+  private static long unsignedRemainder(long dividend, long divisor) {
+    long quotient = ((dividend >>> 1) / divisor) << 1;
+    long remainder = dividend - quotient * divisor;
+    return remainder >= divisor ? remainder - divisor : remainder;
+  }
+
+  /** Returns whether the bit at the given index is set. */
+  private boolean isBitSet(int index) {
+    byte byteAtIndex = bitmap.byteAt(index / 8);
+    int offset = index % 8;
+    return (byteAtIndex & (0x01 << offset)) != 0;
+  }
+
+  @Override
+  public String toString() {
+    return "BloomFilter{hashCount=" + hashCount + ", size=" + bitCount + "}";
+  }
+}
@@ -14,20 +14,38 @@
 
 package com.google.firebase.firestore.remote;
 
-/** Simplest form of existence filter */
+import androidx.annotation.Nullable;
+
+/**
+ * An existence filter sent by the backend to verify the number of documents that match a target.
+ * May contain a bloom filter of the documents that have not changed since the target's resume
+ * token, which allows the client to determine which documents were removed.
+ */
 public final class ExistenceFilter {
   private final int count;
+  @Nullable private final BloomFilter unchangedNames;
 
   public ExistenceFilter(int count) {
+    this(count, /* unchangedNames= */ null);
+  }
+
+  public ExistenceFilter(int count, @Nullable BloomFilter unchangedNames) {
     this.count = count;
+    this.unchangedNames = unchangedNames;
   }
 
   public int getCount() {
     return count;
   }
 
+  /** Returns the bloom filter of unchanged document names, if sent by the backend. */
+  @Nullable
+  public BloomFilter getUnchangedNames() {
+    return unchangedNames;
+  }
+
   @Override
   public String toString() {
-    return "ExistenceFilter{count=" + count + '}';
+    return "ExistenceFilter{count=" + count + ", unchangedNames=" + unchangedNames + '}';
   }
 }
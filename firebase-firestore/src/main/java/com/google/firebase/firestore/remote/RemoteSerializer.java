@@ -53,6 +53,7 @@ import com.google.firebase.firestore.remote.WatchChange.ExistenceFilterWatchChan
 import com.google.firebase.firestore.remote.WatchChange.WatchTargetChange;
 import com.google.firebase.firestore.remote.WatchChange.WatchTargetChangeType;
 import com.google.firebase.firestore.util.Assert;
+import com.google.firebase.firestore.util.Logger;
 import com.google.firestore.v1.ArrayValue;
 import com.google.firestore.v1.BatchGetDocumentsResponse;
 import com.google.firestore.v1.BatchGetDocumentsResponse.ResultCase;
@@ -500,6 +501,15 @@ public final class RemoteSerializer {
       builder.setResumeToken(targetData.getResumeToken());
     }
 
+    // The backend only includes the names of unchanged documents in existence filters if the
+    // target is resumed with the number of documents that the client expects to match.
+    boolean isResumed =
+        !targetData.getResumeToken().isEmpty()
+            || targetData.getSnapshotVersion().compareTo(SnapshotVersion.NONE) > 0;
+    if (isResumed && targetData.getExpectedCount() != null) {
+      builder.setExpectedCount(Int32Value.newBuilder().setValue(targetData.getExpectedCount()));
+    }
+
     return builder.build();
   }
 
@@ -888,8 +898,12 @@ public final class RemoteSerializer {
         break;
       case FILTER:
         com.google.firestore.v1.ExistenceFilter protoFilter = protoChange.getFilter();
-        // TODO: implement existence filter parsing (see b/33076578)
-        ExistenceFilter filter = new ExistenceFilter(protoFilter.getCount());
+        ExistenceFilter filter =
+            new ExistenceFilter(
+                protoFilter.getCount(),
+                protoFilter.hasUnchangedNames()
+                    ? decodeBloomFilter(protoFilter.getUnchangedNames())
+                    : null);
         int targetId = protoFilter.getTargetId();
         watchChange = new ExistenceFilterWatchChange(targetId, filter);
         break;
@@ -901,6 +915,21 @@ public final class RemoteSerializer {
     return watchChange;
   }
 
+  /**
+   * Decodes the bloom filter of an existence filter. Returns {@code null} if the bloom filter is
+   * malformed, in which case the client falls back to a full re-query of the target.
+   */
+  @Nullable
+  private BloomFilter decodeBloomFilter(com.google.firestore.v1.BloomFilter proto) {
+    try {
+      return new BloomFilter(
+          proto.getBits().getBitmap(), proto.getBits().getPadding(), proto.getHashCount());
+    } catch (IllegalArgumentException e) {
+      Logger.warn("RemoteSerializer", "Ignoring malformed bloom filter: %s", e.getMessage());
+      return null;
+    }
+  }
+
   public SnapshotVersion decodeVersionFromListenResponse(ListenResponse watchChange) {
     // We have only reached a consistent snapshot for the entire stream if there is a read_time set
     // and it applies to all targets (i.e. the list of targets is empty). The backend is guaranteed
@@ -24,8 +24,10 @@ import com.google.firebase.firestore.core.Transaction;
 import com.google.firebase.firestore.local.LocalStore;
 import com.google.firebase.firestore.local.QueryPurpose;
 import com.google.firebase.firestore.local.TargetData;
+import com.google.firebase.firestore.model.DatabaseId;
 import com.google.firebase.firestore.model.DocumentKey;
 import com.google.firebase.firestore.model.SnapshotVersion;
+import com.google.firebase.firestore.model.mutation.Mutation;
 import com.google.firebase.firestore.model.mutation.MutationBatch;
 import com.google.firebase.firestore.model.mutation.MutationBatchResult;
 import com.google.firebase.firestore.model.mutation.MutationResult;
@@ -40,11 +42,15 @@ import com.google.firebase.firestore.util.Util;
 import com.google.protobuf.ByteString;
 import io.grpc.Status;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 
 /**
  * RemoteStore handles all interaction with the backend through a simple, clean interface. This
@@ -52,8 +58,17 @@ import java.util.Map.Entry;
  */
 public final class RemoteStore implements WatchChangeAggregator.TargetMetadataProvider {
 
-  /** The maximum number of pending writes to allow. TODO: Negotiate this value with the backend. */
-  private static final int MAX_PENDING_WRITES = 10;
+  /**
+   * The default maximum number of pending writes to allow. TODO: Negotiate this value with the
+   * backend.
+   */
+  public static final int DEFAULT_MAX_PENDING_WRITES = 10;
+
+  /**
+   * The maximum number of mutations that are sent in a single write request when adjacent batches
+   * are coalesced. This matches the backend's limit on the number of writes in a commit.
+   */
+  private static final int MAX_MUTATIONS_PER_WRITE_REQUEST = 500;
 
   /** The log tag to use for this class. */
   private static final String LOG_TAG = "RemoteStore";
@@ -130,7 +145,7 @@ public final class RemoteStore implements WatchChangeAggregator.TargetMetadataPr
   @Nullable private WatchChangeAggregator watchChangeAggregator;
 
   /**
-   * A list of up to MAX_PENDING_WRITES writes that we have fetched from the LocalStore via
+   * A list of up to maxPendingWrites writes that we have fetched from the LocalStore via
    * fillWritePipeline() and have or will send to the write stream.
    *
    * <p>Whenever writePipeline.length > 0 the RemoteStore will attempt to start or restart the write
@@ -145,19 +160,68 @@ public final class RemoteStore implements WatchChangeAggregator.TargetMetadataPr
    */
   private final Deque<MutationBatch> writePipeline;
 
+  /** The maximum number of batches in the write pipeline. */
+  private final int maxPendingWrites;
+
+  /** Whether adjacent batches may be sent to the backend in a single write request. */
+  private final boolean writeCoalescingEnabled;
+
+  /**
+   * The number of batches in each write request that was sent on the current write stream and has
+   * not yet been acknowledged, in the order the requests were sent. A request contains more than
+   * one batch if adjacent batches were coalesced.
+   */
+  private final Deque<Integer> inFlightWriteRequests;
+
+  /** The number of batches at the front of the writePipeline that were sent on the write stream. */
+  private int sentBatchCount = 0;
+
+  /**
+   * Batches with IDs up to and including this ID are sent in requests of their own. This is set
+   * when a coalesced request is rejected, so that the offending batch can be identified.
+   */
+  private int lastUncoalescedBatchId = MutationBatch.UNKNOWN;
+
   public RemoteStore(
       RemoteStoreCallback remoteStoreCallback,
       LocalStore localStore,
       Datastore datastore,
       AsyncQueue workerQueue,
       ConnectivityMonitor connectivityMonitor) {
+    this(
+        remoteStoreCallback,
+        localStore,
+        datastore,
+        workerQueue,
+        connectivityMonitor,
+        DEFAULT_MAX_PENDING_WRITES,
+        /* writeCoalescingEnabled= */ false);
+  }
+
+  /**
+   * Creates a RemoteStore that keeps up to {@code maxPendingWrites} mutation batches in flight. If
+   * {@code writeCoalescingEnabled} is set, adjacent batches that write to distinct documents are
+   * coalesced into a single write request.
+   */
+  public RemoteStore(
+      RemoteStoreCallback remoteStoreCallback,
+      LocalStore localStore,
+      Datastore datastore,
+      AsyncQueue workerQueue,
+      ConnectivityMonitor connectivityMonitor,
+      int maxPendingWrites,
+      boolean writeCoalescingEnabled) {
+    hardAssert(maxPendingWrites > 0, "maxPendingWrites must be positive: %s", maxPendingWrites);
     this.remoteStoreCallback = remoteStoreCallback;
     this.localStore = localStore;
     this.datastore = datastore;
     this.connectivityMonitor = connectivityMonitor;
+    this.maxPendingWrites = maxPendingWrites;
+    this.writeCoalescingEnabled = writeCoalescingEnabled;
 
     listenTargets = new HashMap<>();
     writePipeline = new ArrayDeque<>();
+    inFlightWriteRequests = new ArrayDeque<>();
 
     onlineStateTracker =
         new OnlineStateTracker(workerQueue, remoteStoreCallback::handleOnlineStateChange);
@@ -287,6 +351,7 @@ public final class RemoteStore implements WatchChangeAggregator.TargetMetadataPr
       Logger.debug(LOG_TAG, "Stopping write stream with %d pending writes", writePipeline.size());
       writePipeline.clear();
     }
+    clearInFlightWriteRequests();
 
     cleanUpWatchStreamState();
   }
@@ -365,6 +430,13 @@ public final class RemoteStore implements WatchChangeAggregator.TargetMetadataPr
 
   private void sendWatchRequest(TargetData targetData) {
     watchChangeAggregator.recordPendingTargetRequest(targetData.getTargetId());
+    if (!targetData.getResumeToken().isEmpty()
+        || targetData.getSnapshotVersion().compareTo(SnapshotVersion.NONE) > 0) {
+      // Existence filters only include a bloom filter if the backend knows how many documents the
+      // client expects to match the resumed target.
+      int expectedCount = getRemoteKeysForTarget(targetData.getTargetId()).size();
+      targetData = targetData.withExpectedCount(expectedCount);
+    }
     watchStream.watchQuery(targetData);
   }
 
@@ -604,6 +676,10 @@ public final class RemoteStore implements WatchChangeAggregator.TargetMetadataPr
       lastBatchIdRetrieved = batch.getBatchId();
     }
 
+    if (writeStream.isOpen() && writeStream.isHandshakeComplete()) {
+      sendPendingWrites();
+    }
+
     if (shouldStartWriteStream()) {
       startWriteStream();
     }
@@ -614,21 +690,80 @@ public final class RemoteStore implements WatchChangeAggregator.TargetMetadataPr
    * enabled).
    */
   private boolean canAddToWritePipeline() {
-    return canUseNetwork() && writePipeline.size() < MAX_PENDING_WRITES;
+    return canUseNetwork() && writePipeline.size() < maxPendingWrites;
   }
 
   /**
-   * Queues additional writes to be sent to the write stream, sending them immediately if the write
-   * stream is established.
+   * Queues additional writes to be sent to the write stream. The writes are sent by
+   * sendPendingWrites() once the write stream is established.
    */
   private void addToWritePipeline(MutationBatch mutationBatch) {
     hardAssert(canAddToWritePipeline(), "addToWritePipeline called when pipeline is full");
 
     writePipeline.add(mutationBatch);
+  }
 
-    if (writeStream.isOpen() && writeStream.isHandshakeComplete()) {
-      writeStream.writeMutations(mutationBatch.getMutations());
+  /**
+   * Sends all writes in the write pipeline that have not yet been sent on the current write stream.
+   * If coalescing is enabled, runs of adjacent batches are sent as a single write request.
+   */
+  private void sendPendingWrites() {
+    Iterator<MutationBatch> it = writePipeline.iterator();
+    for (int i = 0; i < sentBatchCount; ++i) {
+      it.next();
+    }
+
+    List<Mutation> request = new ArrayList<>();
+    Set<DocumentKey> requestKeys = new HashSet<>();
+    int requestBatchCount = 0;
+    while (it.hasNext()) {
+      MutationBatch batch = it.next();
+      if (requestBatchCount > 0 && !canCoalesce(request, requestKeys, batch)) {
+        sendWriteRequest(request, requestBatchCount);
+        request = new ArrayList<>();
+        requestKeys = new HashSet<>();
+        requestBatchCount = 0;
+      }
+      request.addAll(batch.getMutations());
+      requestKeys.addAll(batch.getKeys());
+      ++requestBatchCount;
     }
+
+    if (requestBatchCount > 0) {
+      sendWriteRequest(request, requestBatchCount);
+    }
+  }
+
+  /**
+   * Returns whether the given batch can be appended to a write request that already contains the
+   * given mutations. Batches are only coalesced if write coalescing is enabled, if they write to
+   * distinct documents and if the combined request stays within the backend's limit, so that
+   * committing them together yields the same result as committing them one after another.
+   */
+  private boolean canCoalesce(
+      List<Mutation> request, Set<DocumentKey> requestKeys, MutationBatch batch) {
+    if (!writeCoalescingEnabled
+        || batch.getBatchId() <= lastUncoalescedBatchId
+        || request.size() + batch.getMutations().size() > MAX_MUTATIONS_PER_WRITE_REQUEST) {
+      return false;
+    }
+    for (DocumentKey key : batch.getKeys()) {
+      if (requestKeys.contains(key)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void sendWriteRequest(List<Mutation> mutations, int batchCount) {
+    writeStream.writeMutations(mutations);
+    inFlightWriteRequests.add(batchCount);
+    sentBatchCount += batchCount;
+  }
+
+  private void clearInFlightWriteRequests() {
+    inFlightWriteRequests.clear();
+    sentBatchCount = 0;
   }
 
   private void startWriteStream() {
@@ -647,9 +782,8 @@ public final class RemoteStore implements WatchChangeAggregator.TargetMetadataPr
     localStore.setLastStreamToken(writeStream.getLastStreamToken());
 
     // Send the write pipeline now that stream is established.
-    for (MutationBatch batch : writePipeline) {
-      writeStream.writeMutations(batch.getMutations());
-    }
+    clearInFlightWriteRequests();
+    sendPendingWrites();
   }
 
   /**
@@ -658,12 +792,35 @@ public final class RemoteStore implements WatchChangeAggregator.TargetMetadataPr
   private void handleWriteStreamMutationResults(
       SnapshotVersion commitVersion, List<MutationResult> results) {
     // This is a response to a write containing mutations and should be correlated to the first
-    // write in our write pipeline.
-    MutationBatch batch = writePipeline.poll();
+    // write request in flight, which contains one or more batches from the front of our write
+    // pipeline.
+    int batchCount = inFlightWriteRequests.poll();
+    sentBatchCount -= batchCount;
+
+    List<MutationBatch> batches = new ArrayList<>(batchCount);
+    for (int i = 0; i < batchCount; ++i) {
+      batches.add(writePipeline.poll());
+    }
 
-    MutationBatchResult mutationBatchResult =
-        MutationBatchResult.create(batch, commitVersion, results, writeStream.getLastStreamToken());
-    remoteStoreCallback.handleSuccessfulWrite(mutationBatchResult);
+    // The results of a coalesced request are ordered like the mutations, so each batch is
+    // acknowledged with its own slice of the results.
+    int offset = 0;
+    for (MutationBatch batch : batches) {
+      int mutationCount = batch.getMutations().size();
+      hardAssert(
+          offset + mutationCount <= results.size(),
+          "Write response contains %s results for %s batches",
+          results.size(),
+          batchCount);
+      MutationBatchResult mutationBatchResult =
+          MutationBatchResult.create(
+              batch,
+              commitVersion,
+              results.subList(offset, offset + mutationCount),
+              writeStream.getLastStreamToken());
+      remoteStoreCallback.handleSuccessfulWrite(mutationBatchResult);
+      offset += mutationCount;
+    }
 
     // It's possible that with the completion of this mutation another slot has freed up.
     fillWritePipeline();
@@ -690,6 +847,11 @@ public final class RemoteStore implements WatchChangeAggregator.TargetMetadataPr
       }
     }
 
+    // Any writes that were not acknowledged are resent once the stream is re-established.
+    if (!writeStream.isStarted()) {
+      clearInFlightWriteRequests();
+    }
+
     // The write stream may have already been restarted by refilling the write pipeline for failed
     // writes. In that case, we don't want to start the write stream again.
     if (shouldStartWriteStream()) {
@@ -718,9 +880,30 @@ public final class RemoteStore implements WatchChangeAggregator.TargetMetadataPr
     hardAssert(!status.isOk(), "Handling write error with status OK.");
     // Only handle permanent errors here. If it's transient, just let the retry logic kick in.
     if (Datastore.isPermanentWriteError(status)) {
+      Integer batchCount = inFlightWriteRequests.peek();
+      if (batchCount != null && batchCount > 1) {
+        // The rejected request contained several coalesced batches, and any one of them may have
+        // caused the error. Resend these batches individually to find out which one is rejected.
+        Iterator<MutationBatch> it = writePipeline.iterator();
+        for (int i = 1; i < batchCount; ++i) {
+          it.next();
+        }
+        lastUncoalescedBatchId = it.next().getBatchId();
+        Logger.debug(
+            LOG_TAG,
+            "Coalesced write request with %d batches was rejected; resending batches individually",
+            batchCount);
+        writeStream.inhibitBackoff();
+        return;
+      }
+
       // If this was a permanent error, the request itself was the problem so it's not going
       // to succeed if we resend it.
       MutationBatch batch = writePipeline.poll();
+      if (batchCount != null) {
+        inFlightWriteRequests.poll();
+        sentBatchCount -= 1;
+      }
 
       // In this case it's also unlikely that the server itself is melting down -- this was
       // just a bad request, so inhibit backoff on the next restart
@@ -747,4 +930,9 @@ public final class RemoteStore implements WatchChangeAggregator.TargetMetadataPr
   public TargetData getTargetDataForTarget(int targetId) {
     return this.listenTargets.get(targetId);
   }
+
+  @Override
+  public DatabaseId getDatabaseId() {
+    return this.datastore.getDatabaseInfo().getDatabaseId();
+  }
 }
@@ -23,12 +23,14 @@ import com.google.firebase.firestore.core.DocumentViewChange;
 import com.google.firebase.firestore.core.Target;
 import com.google.firebase.firestore.local.QueryPurpose;
 import com.google.firebase.firestore.local.TargetData;
+import com.google.firebase.firestore.model.DatabaseId;
 import com.google.firebase.firestore.model.DocumentKey;
 import com.google.firebase.firestore.model.MutableDocument;
 import com.google.firebase.firestore.model.SnapshotVersion;
 import com.google.firebase.firestore.remote.WatchChange.DocumentChange;
 import com.google.firebase.firestore.remote.WatchChange.ExistenceFilterWatchChange;
 import com.google.firebase.firestore.remote.WatchChange.WatchTargetChange;
+import com.google.firebase.firestore.util.Logger;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -56,8 +58,13 @@ public class WatchChangeAggregator {
      */
     @Nullable
     TargetData getTargetDataForTarget(int targetId);
+
+    /** Returns the database ID of the Firestore instance, which is part of all document names. */
+    DatabaseId getDatabaseId();
   }
 
+  private static final String LOG_TAG = "WatchChangeAggregator";
+
   private final TargetMetadataProvider targetMetadataProvider;
 
   /** The internal state of all tracked targets. */
@@ -75,6 +82,12 @@ public class WatchChangeAggregator {
    */
   private Set<Integer> pendingTargetResets = new HashSet<>();
 
+  /** The number of existence filter mismatches seen by this aggregator. */
+  private int existenceFilterMismatchCount = 0;
+
+  /** The number of existence filter mismatches that were resolved without resetting the target. */
+  private int bloomFilterResolvedMismatchCount = 0;
+
   public WatchChangeAggregator(TargetMetadataProvider targetMetadataProvider) {
     this.targetMetadataProvider = targetMetadataProvider;
   }
@@ -196,17 +209,92 @@ public class WatchChangeAggregator {
               expectedCount == 1, "Single document existence filter with count: %d", expectedCount);
         }
       } else {
-        long currentSize = getCurrentDocumentCountForTarget(targetId);
+        int currentSize = getCurrentDocumentCountForTarget(targetId);
         if (currentSize != expectedCount) {
-          // Existence filter mismatch: We reset the mapping and raise a new snapshot with
-          // `isFromCache:true`.
-          resetTarget(targetId);
-          pendingTargetResets.add(targetId);
+          existenceFilterMismatchCount++;
+          if (applyBloomFilter(watchChange.getExistenceFilter(), targetId, currentSize)) {
+            bloomFilterResolvedMismatchCount++;
+          } else {
+            // Existence filter mismatch: We reset the mapping and raise a new snapshot with
+            // `isFromCache:true`.
+            resetTarget(targetId);
+            pendingTargetResets.add(targetId);
+          }
+
+          if (Logger.isDebugEnabled()) {
+            Logger.debug(
+                LOG_TAG,
+                "Existence filter mismatch for target %d (expected %d documents, found %d). "
+                    + "%d of %d mismatches were resolved without a full reset.",
+                targetId,
+                expectedCount,
+                currentSize,
+                bloomFilterResolvedMismatchCount,
+                existenceFilterMismatchCount);
+          }
         }
       }
     }
   }
 
+  /**
+   * Removes the documents that are not contained in the existence filter's bloom filter from the
+   * target. Returns whether the number of remaining documents matches the expected count, in which
+   * case the target does not need to be reset.
+   */
+  private boolean applyBloomFilter(
+      ExistenceFilter existenceFilter, int targetId, int currentDocumentCount) {
+    BloomFilter bloomFilter = existenceFilter.getUnchangedNames();
+    if (bloomFilter == null) {
+      return false;
+    }
+
+    if (bloomFilter.getBitCount() == 0 || bloomFilter.getHashCount() == 0) {
+      // An empty bloom filter does not contain any entries, so applying it would remove every
+      // document from the target. Re-listen to the whole target instead.
+      return false;
+    }
+
+    int removedDocumentCount = filterRemovedDocuments(bloomFilter, targetId);
+    return existenceFilter.getCount() == currentDocumentCount - removedDocumentCount;
+  }
+
+  /**
+   * Removes every document from the target that is not contained in the bloom filter. These
+   * documents were deleted or no longer match the target. Returns the number of removed documents.
+   */
+  private int filterRemovedDocuments(BloomFilter bloomFilter, int targetId) {
+    DatabaseId databaseId = targetMetadataProvider.getDatabaseId();
+    String documentsPrefix =
+        "projects/"
+            + databaseId.getProjectId()
+            + "/databases/"
+            + databaseId.getDatabaseId()
+            + "/documents/";
+
+    int removedDocumentCount = 0;
+    for (DocumentKey key : targetMetadataProvider.getRemoteKeysForTarget(targetId)) {
+      if (!bloomFilter.mightContain(documentsPrefix + key.getPath().canonicalString())) {
+        removeDocumentFromTarget(targetId, key, /* updatedDocument= */ null);
+        removedDocumentCount++;
+      }
+    }
+    return removedDocumentCount;
+  }
+
+  /** Returns the number of existence filter mismatches seen by this aggregator. */
+  public int getExistenceFilterMismatchCount() {
+    return existenceFilterMismatchCount;
+  }
+
+  /**
+   * Returns the number of existence filter mismatches that were resolved with a bloom filter,
+   * which avoided a full reset of the target.
+   */
+  public int getBloomFilterResolvedMismatchCount() {
+    return bloomFilterResolvedMismatchCount;
+  }
+
   /**
    * Converts the currently accumulated state into a remote event at the provided snapshot version.
    * Resets the accumulated changes before returning.
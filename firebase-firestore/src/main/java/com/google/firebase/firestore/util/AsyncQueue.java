@@ -84,7 +84,13 @@ public class AsyncQueue {
     CONNECTIVITY_ATTEMPT_TIMER,
 
     /** A timer used to periodically attempt index backfill. */
-    INDEX_BACKFILL
+    INDEX_BACKFILL,
+
+    /**
+     * A timer used by QueryListener to raise snapshots that were coalesced while waiting for the
+     * listener's coalescing interval to elapse. There may be one of these per listener.
+     */
+    SNAPSHOT_COALESCING
   }
 
   /**
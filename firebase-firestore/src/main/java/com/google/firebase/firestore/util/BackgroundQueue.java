@@ -14,6 +14,9 @@
 
 package com.google.firebase.firestore.util;
 
+import static com.google.firebase.firestore.util.Assert.hardAssert;
+
+import androidx.annotation.Nullable;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Semaphore;
 
@@ -21,6 +24,10 @@ import java.util.concurrent.Semaphore;
  * A simple queue that executes tasks in parallel on the Android's AsyncTask.THREAD_POOL_EXECUTOR
  * and supports blocking on their completion.
  *
+ * <p>A queue can optionally limit the number of tasks that are in flight at the same time. In that
+ * case, `execute()` blocks until a previously scheduled task completes, which bounds the amount of
+ * memory held by tasks that are waiting to be run.
+ *
  * <p>This class is not thread-safe. In particular, `execute()` and `drain()` should not be called
  * from parallel threads.
  */
@@ -28,14 +35,40 @@ public class BackgroundQueue implements Executor {
   private Semaphore completedTasks = new Semaphore(0);
   private int pendingTaskCount = 0;
 
+  /** Limits the number of tasks in flight, or null if the number of tasks is unbounded. */
+  @Nullable private final Semaphore availableSlots;
+
+  /** Creates a queue that accepts an unbounded number of pending tasks. */
+  public BackgroundQueue() {
+    this.availableSlots = null;
+  }
+
+  /**
+   * Creates a queue that runs at most `maxPendingTasks` tasks at once. `execute()` blocks the
+   * calling thread while this limit is reached.
+   */
+  public BackgroundQueue(int maxPendingTasks) {
+    hardAssert(maxPendingTasks > 0, "maxPendingTasks must be positive");
+    this.availableSlots = new Semaphore(maxPendingTasks);
+  }
+
   /** Enqueue a task on Android's THREAD_POOL_EXECUTOR. */
   @Override
   public void execute(Runnable task) {
+    if (availableSlots != null) {
+      availableSlots.acquireUninterruptibly();
+    }
     ++pendingTaskCount;
     Executors.BACKGROUND_EXECUTOR.execute(
         () -> {
-          task.run();
-          completedTasks.release();
+          try {
+            task.run();
+          } finally {
+            if (availableSlots != null) {
+              availableSlots.release();
+            }
+            completedTasks.release();
+          }
         });
   }
 
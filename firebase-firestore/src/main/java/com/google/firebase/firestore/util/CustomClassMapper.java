@@ -17,12 +17,15 @@ package com.google.firebase.firestore.util;
 import static com.google.firebase.firestore.util.ApiUtil.invoke;
 import static com.google.firebase.firestore.util.ApiUtil.newInstance;
 
+import androidx.annotation.Nullable;
 import com.google.firebase.Timestamp;
 import com.google.firebase.firestore.Blob;
 import com.google.firebase.firestore.DocumentId;
 import com.google.firebase.firestore.DocumentReference;
 import com.google.firebase.firestore.Exclude;
 import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.GenerateMapper;
+import com.google.firebase.firestore.GeneratedMapper;
 import com.google.firebase.firestore.GeoPoint;
 import com.google.firebase.firestore.IgnoreExtraProperties;
 import com.google.firebase.firestore.PropertyName;
@@ -47,6 +50,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
@@ -57,6 +61,15 @@ public class CustomClassMapper {
 
   private static final ConcurrentMap<Class<?>, BeanMapper<?>> mappers = new ConcurrentHashMap<>();
 
+  /**
+   * Implemented by read-only views over document data that convert their contents when they are
+   * accessed. Views are copied into plain Java types before they are assigned to properties of
+   * type Object, since they must not escape into user code.
+   */
+  public interface LazyValue {
+    Object toPlainJavaTypes();
+  }
+
   private static void hardAssert(boolean assertion) {
     hardAssert(assertion, "Internal inconsistency");
   }
@@ -246,7 +259,7 @@ public class CustomClassMapper {
               + clazz.getName()
               + " has generic type parameters, please use GenericTypeIndicator instead");
     } else if (clazz.equals(Object.class)) {
-      return (T) o;
+      return (T) (o instanceof LazyValue ? ((LazyValue) o).toPlainJavaTypes() : o);
     } else if (clazz.isEnum()) {
       return deserializeToEnum(o, clazz, context);
     } else {
@@ -593,6 +606,12 @@ public class CustomClassMapper {
     // serialization.
     private final HashSet<String> documentIdPropertyNames;
 
+    // The mapper generated for classes annotated with @GenerateMapper, if any. Properties that the
+    // generated mapper cannot access are read and written using reflection.
+    @Nullable private final GeneratedMapper<T> generatedMapper;
+    private final Set<String> generatedReadableProperties;
+    private final Set<String> generatedWritableProperties;
+
     BeanMapper(Class<T> clazz) {
       this.clazz = clazz;
       throwOnUnknownProperties = clazz.isAnnotationPresent(ThrowOnExtraProperties.class);
@@ -725,6 +744,70 @@ public class CustomClassMapper {
                   + " but no field or public setter was found");
         }
       }
+
+      generatedMapper = loadGeneratedMapper(clazz);
+      if (generatedMapper != null) {
+        generatedReadableProperties = generatedMapper.getReadableProperties();
+        generatedWritableProperties = generatedMapper.getWritableProperties();
+      } else {
+        generatedReadableProperties = Collections.emptySet();
+        generatedWritableProperties = Collections.emptySet();
+      }
+    }
+
+    /**
+     * Returns the mapper that was generated for the given class, or null if the class is not
+     * annotated with @GenerateMapper or if the annotation processor did not run.
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    private static <T> GeneratedMapper<T> loadGeneratedMapper(Class<T> clazz) {
+      if (!clazz.isAnnotationPresent(GenerateMapper.class)) {
+        return null;
+      }
+
+      String className = clazz.getName();
+      int packageEnd = className.lastIndexOf('.');
+      String generatedClassName =
+          className.substring(0, packageEnd + 1)
+              + "FirestoreMapper_"
+              + className.substring(packageEnd + 1).replace('$', '_');
+      Constructor<?> generatedConstructor;
+      try {
+        Class<?> generatedClass = Class.forName(generatedClassName, true, clazz.getClassLoader());
+        generatedConstructor = generatedClass.getDeclaredConstructor();
+      } catch (ClassNotFoundException e) {
+        generatedConstructor = null;
+      } catch (NoSuchMethodException e) {
+        generatedConstructor = null;
+      }
+
+      if (generatedConstructor == null) {
+        Logger.debug(
+            CustomClassMapper.class.getSimpleName(),
+            "No generated mapper found for %s, using reflection",
+            className);
+        return null;
+      }
+      return (GeneratedMapper<T>) newInstance(generatedConstructor);
+    }
+
+    private T newBeanInstance() {
+      return generatedMapper != null ? generatedMapper.newInstance() : newInstance(constructor);
+    }
+
+    private void setProperty(T instance, String propertyName, Object value) {
+      if (generatedWritableProperties.contains(propertyName)) {
+        generatedMapper.set(instance, propertyName, value);
+      } else if (setters.containsKey(propertyName)) {
+        invoke(setters.get(propertyName), instance, value);
+      } else {
+        try {
+          fields.get(propertyName).set(instance, value);
+        } catch (IllegalAccessException e) {
+          throw new RuntimeException(e);
+        }
+      }
     }
 
     private void addProperty(String property) {
@@ -754,7 +837,7 @@ public class CustomClassMapper {
                 + "sure these constructors are not stripped");
       }
 
-      T instance = newInstance(constructor);
+      T instance = newBeanInstance();
       HashSet<String> deserialzedProperties = new HashSet<>();
       for (Map.Entry<String, Object> entry : values.entrySet()) {
         String propertyName = entry.getKey();
@@ -769,7 +852,7 @@ public class CustomClassMapper {
           Object value =
               CustomClassMapper.deserializeToType(
                   entry.getValue(), resolvedType, context.newInstanceWithErrorPath(childPath));
-          invoke(setter, instance, value);
+          setProperty(instance, propertyName, value);
           deserialzedProperties.add(propertyName);
         } else if (fields.containsKey(propertyName)) {
           Field field = fields.get(propertyName);
@@ -777,11 +860,7 @@ public class CustomClassMapper {
           Object value =
               CustomClassMapper.deserializeToType(
                   entry.getValue(), resolvedType, context.newInstanceWithErrorPath(childPath));
-          try {
-            field.set(instance, value);
-          } catch (IllegalAccessException e) {
-            throw new RuntimeException(e);
-          }
+          setProperty(instance, propertyName, value);
           deserialzedProperties.add(propertyName);
         } else {
           String message =
@@ -829,20 +908,16 @@ public class CustomClassMapper {
           }
           Type resolvedType = resolveType(params[0], types);
           if (resolvedType == String.class) {
-            invoke(setter, instance, context.documentRef.getId());
+            setProperty(instance, docIdPropertyName, context.documentRef.getId());
           } else {
-            invoke(setter, instance, context.documentRef);
+            setProperty(instance, docIdPropertyName, context.documentRef);
           }
         } else {
           Field docIdField = fields.get(docIdPropertyName);
-          try {
-            if (docIdField.getType() == String.class) {
-              docIdField.set(instance, context.documentRef.getId());
-            } else {
-              docIdField.set(instance, context.documentRef);
-            }
-          } catch (IllegalAccessException e) {
-            throw new RuntimeException(e);
+          if (docIdField.getType() == String.class) {
+            setProperty(instance, docIdPropertyName, context.documentRef.getId());
+          } else {
+            setProperty(instance, docIdPropertyName, context.documentRef);
           }
         }
       }
@@ -878,7 +953,9 @@ public class CustomClassMapper {
         }
 
         Object propertyValue;
-        if (getters.containsKey(property)) {
+        if (generatedReadableProperties.contains(property)) {
+          propertyValue = generatedMapper.get(object, property);
+        } else if (getters.containsKey(property)) {
           Method getter = getters.get(property);
           propertyValue = invoke(getter, object);
         } else {
@@ -32,6 +32,9 @@ public class FirebaseFirestoreSettingsTest {
     assertEquals(settings.isSslEnabled(), true);
     assertEquals(settings.isPersistenceEnabled(), true);
     assertEquals(settings.getCacheSizeBytes(), 104857600L);
+    assertEquals(settings.getMaxPendingWrites(), 10);
+    assertEquals(settings.isWriteCoalescingEnabled(), false);
+    assertEquals(settings.isLimitQueryBufferEnabled(), false);
   }
 
   @Test
@@ -42,11 +45,17 @@ public class FirebaseFirestoreSettingsTest {
             .setSslEnabled(false)
             .setPersistenceEnabled(false)
             .setCacheSizeBytes(2000000L)
+            .setMaxPendingWrites(100)
+            .setWriteCoalescingEnabled(true)
+            .setLimitQueryBufferEnabled(true)
             .build();
     assertEquals(settings.getHost(), "a.b.c");
     assertEquals(settings.isSslEnabled(), false);
     assertEquals(settings.isPersistenceEnabled(), false);
     assertEquals(settings.getCacheSizeBytes(), 2000000L);
+    assertEquals(settings.getMaxPendingWrites(), 100);
+    assertEquals(settings.isWriteCoalescingEnabled(), true);
+    assertEquals(settings.isLimitQueryBufferEnabled(), true);
   }
 
   @Test
@@ -57,11 +66,35 @@ public class FirebaseFirestoreSettingsTest {
             .setSslEnabled(false)
             .setPersistenceEnabled(false)
             .setCacheSizeBytes(2000000L)
+            .setMaxPendingWrites(100)
+            .setWriteCoalescingEnabled(true)
+            .setLimitQueryBufferEnabled(true)
             .build();
     FirebaseFirestoreSettings settings2 = new FirebaseFirestoreSettings.Builder(settings1).build();
     assertEquals(settings2.getHost(), "a.b.c");
     assertEquals(settings2.isSslEnabled(), false);
     assertEquals(settings2.isPersistenceEnabled(), false);
     assertEquals(settings2.getCacheSizeBytes(), 2000000L);
+    assertEquals(settings2.getMaxPendingWrites(), 100);
+    assertEquals(settings2.isWriteCoalescingEnabled(), true);
+    assertEquals(settings2.isLimitQueryBufferEnabled(), true);
+  }
+
+  @Test
+  public void maxPendingWritesAndWriteCoalescingAreIndependent() {
+    FirebaseFirestoreSettings largerWindow =
+        new FirebaseFirestoreSettings.Builder().setMaxPendingWrites(100).build();
+    assertEquals(largerWindow.getMaxPendingWrites(), 100);
+    assertEquals(largerWindow.isWriteCoalescingEnabled(), false);
+
+    FirebaseFirestoreSettings coalescing =
+        new FirebaseFirestoreSettings.Builder().setWriteCoalescingEnabled(true).build();
+    assertEquals(coalescing.getMaxPendingWrites(), 10);
+    assertEquals(coalescing.isWriteCoalescingEnabled(), true);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void builderRejectsMaxPendingWritesBelowOne() {
+    new FirebaseFirestoreSettings.Builder().setMaxPendingWrites(0);
   }
 }
@@ -35,9 +35,16 @@ import com.google.firebase.firestore.model.DocumentSet;
 import com.google.firebase.firestore.model.MutableDocument;
 import com.google.firebase.firestore.model.ObjectValue;
 import com.google.firebase.firestore.model.ServerTimestamps;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.RobolectricTestRunner;
@@ -51,6 +58,11 @@ public class QuerySnapshotTest {
     public Date timestamp;
   }
 
+  public static class IndexedPOJO {
+    public long index;
+    public Object nested;
+  }
+
   @Test
   public void testEquals() {
     ObjectValue firstValue = wrapObject("a", 1);
@@ -99,6 +111,86 @@ public class QuerySnapshotTest {
     assertNotNull(docs.get(0).timestamp);
   }
 
+  @Test
+  public void testToObjectsCopiesUntypedValues() {
+    ObjectValue objectData = wrapObject(map("index", 1, "nested", map("a", Arrays.asList(1, 2))));
+    QuerySnapshot foo = TestUtil.querySnapshot("foo", map(), map("a", objectData), true, false);
+
+    List<IndexedPOJO> docs = foo.toObjects(IndexedPOJO.class);
+    assertEquals(1, docs.size());
+    assertEquals(1, docs.get(0).index);
+    assertEquals(HashMap.class, docs.get(0).nested.getClass());
+    assertEquals(map("a", Arrays.asList(1L, 2L)), docs.get(0).nested);
+  }
+
+  @Test
+  public void testToObjectsWithExecutorPreservesOrder() {
+    Map<String, ObjectValue> documents = new HashMap<>();
+    for (int i = 0; i < 1000; ++i) {
+      documents.put(String.format("doc%04d", i), wrapObject(map("index", i)));
+    }
+    QuerySnapshot foo = TestUtil.querySnapshot("foo", map(), documents, false, false);
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<IndexedPOJO> docs =
+          foo.toObjects(IndexedPOJO.class, ServerTimestampBehavior.DEFAULT, executor);
+      assertEquals(1000, docs.size());
+      for (int i = 0; i < docs.size(); ++i) {
+        assertEquals(i, docs.get(i).index);
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testToObjectsWithExecutorRunsRejectedChunksOnCallingThread() {
+    Map<String, ObjectValue> documents = new HashMap<>();
+    for (int i = 0; i < 1000; ++i) {
+      documents.put(String.format("doc%04d", i), wrapObject(map("index", i)));
+    }
+    QuerySnapshot foo = TestUtil.querySnapshot("foo", map(), documents, false, false);
+
+    Executor rejectingExecutor =
+        runnable -> {
+          throw new RejectedExecutionException();
+        };
+    List<IndexedPOJO> docs =
+        foo.toObjects(IndexedPOJO.class, ServerTimestampBehavior.DEFAULT, rejectingExecutor);
+    assertEquals(1000, docs.size());
+    for (int i = 0; i < docs.size(); ++i) {
+      assertEquals(i, docs.get(i).index);
+    }
+  }
+
+  @Test
+  public void testToObjectsWithExecutorDoesNotWaitForTasksQueuedOnCallingThread() {
+    Map<String, ObjectValue> documents = new HashMap<>();
+    for (int i = 0; i < 1000; ++i) {
+      documents.put(String.format("doc%04d", i), wrapObject(map("index", i)));
+    }
+    QuerySnapshot foo = TestUtil.querySnapshot("foo", map(), documents, false, false);
+
+    // Simulates an executor that posts to the calling thread, which only runs the tasks once
+    // toObjects() has returned.
+    List<Runnable> queuedTasks = new ArrayList<>();
+    List<IndexedPOJO> docs =
+        foo.toObjects(IndexedPOJO.class, ServerTimestampBehavior.DEFAULT, queuedTasks::add);
+    assertEquals(1000, docs.size());
+    for (int i = 0; i < docs.size(); ++i) {
+      assertEquals(i, docs.get(i).index);
+    }
+
+    // The queued tasks find no remaining work.
+    for (Runnable task : queuedTasks) {
+      task.run();
+    }
+    for (int i = 0; i < docs.size(); ++i) {
+      assertEquals(i, docs.get(i).index);
+    }
+  }
+
   @Test
   public void testIncludeMetadataChanges() {
     MutableDocument doc1Old = doc("foo/bar", 1, wrapObject("a", "b")).setHasLocalMutations();
@@ -20,8 +20,11 @@ import static com.google.firebase.firestore.testutil.TestUtil.key;
 import static com.google.firebase.firestore.testutil.TestUtil.keySet;
 import static com.google.firebase.firestore.testutil.TestUtil.map;
 import static com.google.firebase.firestore.testutil.TestUtil.query;
+import static java.util.Arrays.asList;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import com.google.firebase.Timestamp;
@@ -33,9 +36,11 @@ import com.google.firebase.firestore.model.Document;
 import com.google.firebase.firestore.model.DocumentKey;
 import com.google.firebase.firestore.model.MutableDocument;
 import com.google.firebase.firestore.model.SnapshotVersion;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import org.junit.Before;
@@ -52,11 +57,13 @@ public class BundleLoaderTest {
   private final BundleCallback bundleCallback;
 
   private final Set<DocumentKey> lastDocuments;
+  private final List<Boolean> firstChunkFlags;
   private final Map<String, ImmutableSortedSet<DocumentKey>> lastQueries;
   private final Map<String, BundleMetadata> lastBundles;
 
   public BundleLoaderTest() {
     lastDocuments = new HashSet<>();
+    firstChunkFlags = new ArrayList<>();
     lastQueries = new HashMap<>();
     lastBundles = new HashMap<>();
 
@@ -65,8 +72,11 @@ public class BundleLoaderTest {
 
           @Override
           public ImmutableSortedMap<DocumentKey, Document> applyBundledDocuments(
-              ImmutableSortedMap<DocumentKey, MutableDocument> documents, String bundleId) {
+              ImmutableSortedMap<DocumentKey, MutableDocument> documents,
+              String bundleId,
+              boolean isFirstChunk) {
             documents.forEach(entry -> lastDocuments.add(entry.getKey()));
+            firstChunkFlags.add(isFirstChunk);
             return emptyDocumentMap();
           }
 
@@ -86,6 +96,7 @@ public class BundleLoaderTest {
   @Before
   public void before() {
     lastDocuments.clear();
+    firstChunkFlags.clear();
     lastQueries.clear();
     lastBundles.clear();
   }
@@ -163,6 +174,97 @@ public class BundleLoaderTest {
     assertEquals(lastBundles.get("bundle-1"), createMetadata(/* documents= */ 1));
   }
 
+  @Test
+  public void testAppliesDocumentsInChunks() {
+    BundleLoader bundleLoader =
+        new BundleLoader(
+            bundleCallback,
+            createMetadata(/* documents= */ 2),
+            /* maxDocumentsPerChunk= */ 1,
+            /* maxBytesPerChunk= */ 100);
+
+    bundleLoader.addElement(
+        new BundledDocumentMetadata(
+            key("coll/doc1"), CREATE_TIME, /* exists= */ true, Collections.emptyList()),
+        1);
+    assertNull(bundleLoader.applyCompletedChunk());
+    bundleLoader.addElement(new BundleDocument(doc("coll/doc1", 1, map())), /* byteSize= */ 4);
+    assertNotNull(bundleLoader.applyCompletedChunk());
+    assertEquals(Collections.singleton(key("coll/doc1")), lastDocuments);
+
+    bundleLoader.addElement(
+        new BundledDocumentMetadata(
+            key("coll/doc2"), CREATE_TIME, /* exists= */ true, Collections.emptyList()),
+        1);
+    assertNull(bundleLoader.applyCompletedChunk());
+    bundleLoader.addElement(new BundleDocument(doc("coll/doc2", 1, map())), /* byteSize= */ 4);
+    assertNotNull(bundleLoader.applyCompletedChunk());
+    assertEquals(new HashSet<>(asList(key("coll/doc1"), key("coll/doc2"))), lastDocuments);
+
+    bundleLoader.applyChanges();
+    assertEquals(lastBundles.get("bundle-1"), createMetadata(/* documents= */ 2));
+    assertEquals(asList(true, false, false), firstChunkFlags);
+  }
+
+  @Test
+  public void testFailedLoadKeepsAppliedChunksButDoesNotSaveBundle() {
+    BundleLoader bundleLoader =
+        new BundleLoader(
+            bundleCallback,
+            createMetadata(/* documents= */ 2),
+            /* maxDocumentsPerChunk= */ 1,
+            /* maxBytesPerChunk= */ 100);
+
+    bundleLoader.addElement(
+        new BundledDocumentMetadata(
+            key("coll/doc1"),
+            CREATE_TIME,
+            /* exists= */ true,
+            Collections.singletonList("query")),
+        1);
+    bundleLoader.addElement(new BundleDocument(doc("coll/doc1", 1, map())), /* byteSize= */ 4);
+    assertNotNull(bundleLoader.applyCompletedChunk());
+    bundleLoader.addElement(
+        new NamedQuery(
+            "query",
+            new BundledQuery(query("coll").toTarget(), Query.LimitType.LIMIT_TO_FIRST),
+            CREATE_TIME),
+        1);
+
+    // The bundle ends before the second document, so loading it fails.
+    try {
+      bundleLoader.applyChanges();
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertEquals("Expected 2 documents, but loaded 1.", e.getMessage());
+    }
+
+    // The applied chunk stays in the cache, but the bundle is not marked as loaded, so it is
+    // loaded again in full next time.
+    assertEquals(Collections.singleton(key("coll/doc1")), lastDocuments);
+    assertTrue(lastQueries.isEmpty());
+    assertTrue(lastBundles.isEmpty());
+  }
+
+  @Test
+  public void testAppliesChunkWhenByteLimitIsReached() {
+    BundleLoader bundleLoader =
+        new BundleLoader(
+            bundleCallback,
+            createMetadata(/* documents= */ 1),
+            /* maxDocumentsPerChunk= */ 100,
+            /* maxBytesPerChunk= */ 5);
+
+    bundleLoader.addElement(
+        new BundledDocumentMetadata(
+            key("coll/doc1"), CREATE_TIME, /* exists= */ true, Collections.emptyList()),
+        1);
+    assertNull(bundleLoader.applyCompletedChunk());
+    bundleLoader.addElement(new BundleDocument(doc("coll/doc1", 1, map())), /* byteSize= */ 9);
+    assertNotNull(bundleLoader.applyCompletedChunk());
+    assertEquals(Collections.singleton(key("coll/doc1")), lastDocuments);
+  }
+
   @Test
   public void testAppliesNamedQueries() {
     BundleLoader bundleLoader =
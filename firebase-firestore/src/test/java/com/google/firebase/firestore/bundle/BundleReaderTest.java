@@ -21,6 +21,7 @@ import static com.google.firebase.firestore.testutil.TestUtil.orderBy;
 import static com.google.firebase.firestore.testutil.TestUtil.version;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 
 import com.google.firebase.firestore.core.Query;
 import com.google.firebase.firestore.core.Target;
@@ -29,11 +30,15 @@ import com.google.firebase.firestore.model.ObjectValue;
 import com.google.firebase.firestore.model.ResourcePath;
 import com.google.firebase.firestore.model.SnapshotVersion;
 import com.google.firebase.firestore.remote.RemoteSerializer;
+import com.google.firestore.v1.Target.QueryTarget;
 import com.google.firestore.v1.Value;
+import com.google.protobuf.CodedOutputStream;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import org.json.JSONException;
@@ -324,6 +329,122 @@ public class BundleReaderTest {
     assertEquals(DOC3, bundleElements.get(1));
   }
 
+  @Test
+  public void testReadsBinaryBundle() throws IOException, JSONException {
+    BinaryBundleBuilder bundleBuilder = new BinaryBundleBuilder(TEST_PROJECT);
+    bundleBuilder.addNamedQuery(LIMIT_QUERY);
+    bundleBuilder.addNamedQuery(LIMIT_TO_LAST_QUERY);
+    bundleBuilder.addDocumentMetadata(DELETED_DOC_METADATA);
+    bundleBuilder.addDocumentMetadata(DOC1_METADATA);
+    bundleBuilder.addDocument(DOC1);
+    byte[] bundle = bundleBuilder.build("bundle-1", /* createTimeMicros= */ 6000000L);
+
+    BundleReader bundleReader = new BundleReader(SERIALIZER, new ByteArrayInputStream(bundle));
+
+    BundleMetadata bundleMetadata = bundleReader.getBundleMetadata();
+    assertEquals(BUNDLE_METADATA.getBundleId(), bundleMetadata.getBundleId());
+    assertEquals(BUNDLE_METADATA.getCreateTime(), bundleMetadata.getCreateTime());
+    assertEquals(2, bundleMetadata.getTotalDocuments());
+    assertEquals(0, bundleReader.getBytesRead());
+
+    assertEquals(LIMIT_QUERY, bundleReader.getNextElement());
+    assertEquals(LIMIT_TO_LAST_QUERY, bundleReader.getNextElement());
+    assertEquals(DELETED_DOC_METADATA, bundleReader.getNextElement());
+    assertEquals(DOC1_METADATA, bundleReader.getNextElement());
+    assertEquals(DOC1, bundleReader.getNextElement());
+    assertNull(bundleReader.getNextElement());
+    assertEquals(bundleMetadata.getTotalBytes(), bundleReader.getBytesRead());
+  }
+
+  @Test
+  public void testReadsBinaryElementsLargerThanBuffer() throws IOException, JSONException {
+    StringBuilder longString = new StringBuilder();
+    for (int i = 0; i < 2 * BundleReader.BUFFER_CAPACITY; ++i) {
+      longString.append('a');
+    }
+    BundleDocument document =
+        new BundleDocument(
+            doc(
+                "coll/doc1",
+                30004000L,
+                ObjectValue.fromMap(
+                    map("foo", Value.newBuilder().setStringValue(longString.toString()).build()))));
+    BinaryBundleBuilder bundleBuilder = new BinaryBundleBuilder(TEST_PROJECT);
+    bundleBuilder.addDocumentMetadata(DOC1_METADATA);
+    bundleBuilder.addDocument(document);
+    byte[] bundle = bundleBuilder.build("bundle-1", /* createTimeMicros= */ 6000000L);
+
+    BundleReader bundleReader = new BundleReader(SERIALIZER, new ByteArrayInputStream(bundle));
+
+    assertEquals(DOC1_METADATA, bundleReader.getNextElement());
+    assertEquals(document, bundleReader.getNextElement());
+    assertNull(bundleReader.getNextElement());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testThrowsWhenBinaryBundleIsTruncated() throws IOException, JSONException {
+    BinaryBundleBuilder bundleBuilder = new BinaryBundleBuilder(TEST_PROJECT);
+    bundleBuilder.addDocumentMetadata(DOC1_METADATA);
+    bundleBuilder.addDocument(DOC1);
+    byte[] bundle = bundleBuilder.build("bundle-1", /* createTimeMicros= */ 6000000L);
+
+    BundleReader bundleReader =
+        new BundleReader(
+            SERIALIZER, new ByteArrayInputStream(Arrays.copyOf(bundle, bundle.length - 1)));
+
+    bundleReader.getNextElement();
+    bundleReader.getNextElement();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testThrowsWhenElementLengthExceedsBundleSize() throws IOException, JSONException {
+    TestBundleBuilder bundleBuilder = new TestBundleBuilder(TEST_PROJECT);
+    addDoc1Metadata(bundleBuilder);
+    String bundle =
+        bundleBuilder.build("bundle-1", /* createTimeMicros= */ 6000000L, /* version= */ 1);
+
+    // The element claims to be far larger than the size declared in the metadata.
+    String corruptBundle = bundle + "2000000000{}";
+    BundleReader bundleReader =
+        new BundleReader(
+            SERIALIZER, new ByteArrayInputStream(corruptBundle.getBytes(UTF8_CHARSET)));
+
+    assertEquals(DOC1_METADATA, bundleReader.getNextElement());
+    bundleReader.getNextElement();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testThrowsWhenBinaryElementLengthExceedsBundleSize()
+      throws IOException, JSONException {
+    BinaryBundleBuilder bundleBuilder = new BinaryBundleBuilder(TEST_PROJECT);
+    bundleBuilder.addDocumentMetadata(DOC1_METADATA);
+    byte[] bundle = bundleBuilder.build("bundle-1", /* createTimeMicros= */ 6000000L);
+
+    // A varint length prefix of Integer.MAX_VALUE, followed by a single byte of data.
+    byte[] corruptBundle = Arrays.copyOf(bundle, bundle.length + 6);
+    corruptBundle[bundle.length] = (byte) 0xFF;
+    corruptBundle[bundle.length + 1] = (byte) 0xFF;
+    corruptBundle[bundle.length + 2] = (byte) 0xFF;
+    corruptBundle[bundle.length + 3] = (byte) 0xFF;
+    corruptBundle[bundle.length + 4] = (byte) 0x07;
+    BundleReader bundleReader =
+        new BundleReader(SERIALIZER, new ByteArrayInputStream(corruptBundle));
+
+    assertEquals(DOC1_METADATA, bundleReader.getNextElement());
+    bundleReader.getNextElement();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testThrowsWhenMetadataLengthExceedsStream() throws IOException, JSONException {
+    // The size of the metadata element cannot be checked against the bundle size, but the reader
+    // only allocates memory for data that it actually receives.
+    String bundle = "2000000000{ metadata: {} }";
+
+    BundleReader bundleReader =
+        new BundleReader(SERIALIZER, new ByteArrayInputStream(bundle.getBytes(UTF8_CHARSET)));
+    bundleReader.getBundleMetadata();
+  }
+
   private String addDeletedDocMetadata(TestBundleBuilder bundleBuilder) {
     return bundleBuilder.addDocumentMetadata(
         "coll/nodoc", /* readTimeMicros= */ 5000600L, /* exists= */ false);
@@ -555,4 +676,85 @@ public class BundleReaderTest {
       return builder.toString();
     }
   }
+
+  /** Builds bundles in the binary format, using the model classes as input. */
+  private static class BinaryBundleBuilder {
+    private final List<com.google.firestore.bundle.BundleElement> elements = new ArrayList<>();
+    private final RemoteSerializer serializer;
+
+    int totalDocuments = 0;
+
+    BinaryBundleBuilder(DatabaseId databaseId) {
+      this.serializer = new RemoteSerializer(databaseId);
+    }
+
+    void addNamedQuery(NamedQuery namedQuery) {
+      BundledQuery bundledQuery = namedQuery.getBundledQuery();
+      QueryTarget queryTarget = serializer.encodeQueryTarget(bundledQuery.getTarget());
+      elements.add(
+          com.google.firestore.bundle.BundleElement.newBuilder()
+              .setNamedQuery(
+                  com.google.firestore.bundle.NamedQuery.newBuilder()
+                      .setName(namedQuery.getName())
+                      .setReadTime(serializer.encodeVersion(namedQuery.getReadTime()))
+                      .setBundledQuery(
+                          com.google.firestore.bundle.BundledQuery.newBuilder()
+                              .setParent(queryTarget.getParent())
+                              .setStructuredQuery(queryTarget.getStructuredQuery())
+                              .setLimitType(
+                                  bundledQuery.getLimitType() == Query.LimitType.LIMIT_TO_FIRST
+                                      ? com.google.firestore.bundle.BundledQuery.LimitType.FIRST
+                                      : com.google.firestore.bundle.BundledQuery.LimitType.LAST)))
+              .build());
+    }
+
+    void addDocumentMetadata(BundledDocumentMetadata metadata) {
+      elements.add(
+          com.google.firestore.bundle.BundleElement.newBuilder()
+              .setDocumentMetadata(
+                  com.google.firestore.bundle.BundledDocumentMetadata.newBuilder()
+                      .setName(serializer.encodeKey(metadata.getKey()))
+                      .setReadTime(serializer.encodeVersion(metadata.getReadTime()))
+                      .setExists(metadata.exists())
+                      .addAllQueries(metadata.getQueries()))
+              .build());
+      if (!metadata.exists()) ++totalDocuments;
+    }
+
+    void addDocument(BundleDocument document) {
+      elements.add(
+          com.google.firestore.bundle.BundleElement.newBuilder()
+              .setDocument(
+                  serializer.encodeDocument(document.getKey(), document.getDocument().getData())
+                      .toBuilder()
+                      .setUpdateTime(serializer.encodeVersion(document.getDocument().getVersion())))
+              .build());
+      ++totalDocuments;
+    }
+
+    byte[] build(String id, long createTimeMicros) throws IOException {
+      long totalBytes = 0;
+      for (com.google.firestore.bundle.BundleElement element : elements) {
+        int elementLength = element.getSerializedSize();
+        totalBytes += CodedOutputStream.computeUInt32SizeNoTag(elementLength) + elementLength;
+      }
+
+      ByteArrayOutputStream bundle = new ByteArrayOutputStream();
+      bundle.write(BundleReader.BINARY_FORMAT_HEADER);
+      com.google.firestore.bundle.BundleElement.newBuilder()
+          .setMetadata(
+              com.google.firestore.bundle.BundleMetadata.newBuilder()
+                  .setId(id)
+                  .setCreateTime(serializer.encodeVersion(version(createTimeMicros)))
+                  .setVersion(1)
+                  .setTotalDocuments(totalDocuments)
+                  .setTotalBytes(totalBytes))
+          .build()
+          .writeDelimitedTo(bundle);
+      for (com.google.firestore.bundle.BundleElement element : elements) {
+        element.writeDelimitedTo(bundle);
+      }
+      return bundle.toByteArray();
+    }
+  }
 }
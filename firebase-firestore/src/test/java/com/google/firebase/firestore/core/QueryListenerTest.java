@@ -15,15 +15,18 @@
 package com.google.firebase.firestore.core;
 
 import static com.google.firebase.firestore.testutil.TestUtil.ackTarget;
+import static com.google.firebase.firestore.testutil.TestUtil.deletedDoc;
 import static com.google.firebase.firestore.testutil.TestUtil.doc;
 import static com.google.firebase.firestore.testutil.TestUtil.docUpdates;
 import static com.google.firebase.firestore.testutil.TestUtil.map;
 import static com.google.firebase.firestore.testutil.TestUtil.path;
 import static java.util.Arrays.asList;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
 
 import com.google.firebase.firestore.FirebaseFirestoreException;
 import com.google.firebase.firestore.MetadataChanges;
@@ -34,6 +37,8 @@ import com.google.firebase.firestore.model.DocumentKey;
 import com.google.firebase.firestore.model.DocumentSet;
 import com.google.firebase.firestore.model.MutableDocument;
 import com.google.firebase.firestore.remote.TargetChange;
+import com.google.firebase.firestore.util.AsyncQueue;
+import com.google.firebase.firestore.util.AsyncQueue.TimerId;
 import com.google.firebase.firestore.util.Util;
 import io.grpc.Status;
 import java.util.ArrayList;
@@ -449,6 +454,137 @@ public class QueryListenerTest {
     assertEquals(asList(expectedSnapshot), events);
   }
 
+  @Test
+  public void testCoalescesSnapshotsWithinInterval() throws Exception {
+    List<ViewSnapshot> events = new ArrayList<>();
+    Query query = Query.atPath(path("rooms"));
+    MutableDocument doc1 = doc("rooms/eros", 1, map("name", "eros"));
+    MutableDocument doc2 = doc("rooms/hades", 2, map("name", "hades"));
+    MutableDocument doc2prime = doc("rooms/hades", 3, map("name", "hades", "owner", "Jonny"));
+    MutableDocument doc3 = doc("rooms/other", 4, map("name", "other"));
+
+    AsyncQueue queue = new AsyncQueue();
+    ListenOptions options = new ListenOptions();
+    options.coalescingIntervalMs = 100;
+    QueryListener listener =
+        new QueryListener(
+            query,
+            options,
+            (value, error) -> {
+              assertNull(error);
+              events.add(value);
+            },
+            queue);
+
+    View view = new View(query, DocumentKey.emptyKeySet());
+    ViewSnapshot snap1 = applyChanges(view, doc1);
+    ViewSnapshot snap2 = applyChanges(view, doc2);
+    ViewSnapshot snap3 = applyChanges(view, doc2prime);
+    ViewSnapshot snap4 = applyChanges(view, doc3);
+    ViewSnapshot snap5 = applyChanges(view, deletedDoc("rooms/other", 5));
+
+    // The first snapshot is raised right away, the following snapshots are merged.
+    queue.runSync(
+        () -> {
+          listener.onViewSnapshot(snap1);
+          listener.onViewSnapshot(snap2);
+          listener.onViewSnapshot(snap3);
+          listener.onViewSnapshot(snap4);
+          listener.onViewSnapshot(snap5);
+        });
+    assertEquals(1, events.size());
+
+    queue.runDelayedTasksUntil(TimerId.SNAPSHOT_COALESCING);
+    ViewSnapshot expectedSnapshot =
+        new ViewSnapshot(
+            query,
+            snap5.getDocuments(),
+            snap1.getDocuments(),
+            asList(DocumentViewChange.create(Type.ADDED, doc2prime)),
+            snap5.isFromCache(),
+            snap5.getMutatedKeys(),
+            /* didSyncStateChange= */ false,
+            /* excludesMetadataChanges= */ true);
+    assertEquals(2, events.size());
+    assertEquals(expectedSnapshot, events.get(1));
+
+    // No further event is raised if nothing changed during the next interval.
+    queue.runDelayedTasksUntil(TimerId.SNAPSHOT_COALESCING);
+    assertEquals(2, events.size());
+  }
+
+  @Test
+  public void testDoesNotRaiseCoalescedSnapshotIfChangesCancelOut() throws Exception {
+    List<ViewSnapshot> events = new ArrayList<>();
+    Query query = Query.atPath(path("rooms"));
+    MutableDocument doc1 = doc("rooms/eros", 1, map("name", "eros"));
+    MutableDocument doc2 = doc("rooms/hades", 2, map("name", "hades"));
+
+    AsyncQueue queue = new AsyncQueue();
+    ListenOptions options = new ListenOptions();
+    options.coalescingIntervalMs = 100;
+    QueryListener listener =
+        new QueryListener(
+            query,
+            options,
+            (value, error) -> {
+              assertNull(error);
+              events.add(value);
+            },
+            queue);
+
+    View view = new View(query, DocumentKey.emptyKeySet());
+    ViewSnapshot snap1 = applyChanges(view, doc1);
+    ViewSnapshot snap2 = applyChanges(view, doc2);
+    ViewSnapshot snap3 = applyChanges(view, deletedDoc("rooms/hades", 3));
+
+    queue.runSync(
+        () -> {
+          listener.onViewSnapshot(snap1);
+          listener.onViewSnapshot(snap2);
+          listener.onViewSnapshot(snap3);
+        });
+    queue.runDelayedTasksUntil(TimerId.SNAPSHOT_COALESCING);
+    assertEquals(1, events.size());
+  }
+
+  @Test
+  public void testRemovingListenerCancelsCoalescingInterval() throws Exception {
+    List<ViewSnapshot> events = new ArrayList<>();
+    Query query = Query.atPath(path("rooms"));
+    MutableDocument doc1 = doc("rooms/eros", 1, map("name", "eros"));
+    MutableDocument doc2 = doc("rooms/hades", 2, map("name", "hades"));
+
+    AsyncQueue queue = new AsyncQueue();
+    ListenOptions options = new ListenOptions();
+    options.coalescingIntervalMs = 100;
+    QueryListener listener =
+        new QueryListener(
+            query,
+            options,
+            (value, error) -> {
+              assertNull(error);
+              events.add(value);
+            },
+            queue);
+    EventManager eventManager = new EventManager(mock(SyncEngine.class));
+
+    View view = new View(query, DocumentKey.emptyKeySet());
+    ViewSnapshot snap1 = applyChanges(view, doc1);
+    ViewSnapshot snap2 = applyChanges(view, doc2);
+
+    queue.runSync(
+        () -> {
+          eventManager.addQueryListener(listener);
+          listener.onViewSnapshot(snap1);
+          listener.onViewSnapshot(snap2);
+          eventManager.removeQueryListener(listener);
+        });
+
+    assertFalse(queue.containsDelayedTask(TimerId.SNAPSHOT_COALESCING));
+    assertEquals(1, events.size());
+  }
+
   private ViewSnapshot applyExpectedMetadata(ViewSnapshot snap, MetadataChanges metadata) {
     return new ViewSnapshot(
         snap.getQuery(),
@@ -494,6 +494,226 @@ public class ViewTest {
     view.applyChanges(changes);
   }
 
+  @Test
+  public void testDoesNotKeepOverflowDocumentsByDefault() {
+    Query query = messageQuery().limitToFirst(1);
+    MutableDocument doc1 = doc("rooms/eros/messages/0", 0, map());
+    MutableDocument doc2 = doc("rooms/eros/messages/1", 0, map());
+    MutableDocument doc3 = doc("rooms/eros/messages/2", 0, map());
+    View view = new View(query, DocumentKey.emptyKeySet());
+
+    View.DocumentChanges changes = view.computeDocChanges(docUpdates(doc1));
+    view.applyChanges(changes);
+
+    changes = view.computeDocChanges(docUpdates(deletedDoc("rooms/eros/messages/0", 0)));
+    assertTrue(changes.needsRefill());
+    changes = view.computeDocChanges(docUpdates(doc2, doc3), changes);
+    assertEquals(asList(doc2), changes.documentSet.toList());
+    assertEquals(0, changes.overflowDocuments.size());
+    view.applyChanges(changes);
+
+    // Without an overflow buffer, every removal from a full view needs a refill.
+    changes = view.computeDocChanges(docUpdates(deletedDoc("rooms/eros/messages/1", 0)));
+    assertEquals(0, changes.documentSet.size());
+    assertTrue(changes.needsRefill());
+  }
+
+  @Test
+  public void testUsesOverflowDocumentsBeforeRefilling() {
+    Query query = messageQuery().limitToFirst(1);
+    MutableDocument doc1 = doc("rooms/eros/messages/0", 0, map());
+    MutableDocument doc2 = doc("rooms/eros/messages/1", 0, map());
+    MutableDocument doc3 = doc("rooms/eros/messages/2", 0, map());
+    MutableDocument doc4 = doc("rooms/eros/messages/3", 0, map());
+    View view = new View(query, DocumentKey.emptyKeySet(), /* keepOverflowDocuments= */ true);
+
+    // Start with a full view.
+    View.DocumentChanges changes = view.computeDocChanges(docUpdates(doc1));
+    view.applyChanges(changes);
+
+    // Remove the doc and refill the view. The doc that follows the limit is kept in the overflow.
+    changes = view.computeDocChanges(docUpdates(deletedDoc("rooms/eros/messages/0", 0)));
+    assertTrue(changes.needsRefill());
+    changes = view.computeDocChanges(docUpdates(doc2, doc3, doc4), changes);
+    assertEquals(asList(doc2), changes.documentSet.toList());
+    assertEquals(asList(doc3), changes.overflowDocuments.toList());
+    view.applyChanges(changes);
+
+    // Removing the doc in the limit is served from the overflow.
+    changes = view.computeDocChanges(docUpdates(deletedDoc("rooms/eros/messages/1", 0)));
+    assertEquals(asList(doc3), changes.documentSet.toList());
+    assertFalse(changes.needsRefill());
+    assertEquals(2, changes.changeSet.getChanges().size());
+    view.applyChanges(changes);
+
+    // The overflow did not contain all docs past the limit, so the next removal needs a refill.
+    changes = view.computeDocChanges(docUpdates(deletedDoc("rooms/eros/messages/2", 0)));
+    assertEquals(0, changes.documentSet.size());
+    assertTrue(changes.needsRefill());
+    changes = view.computeDocChanges(docUpdates(doc4), changes);
+    assertEquals(asList(doc4), changes.documentSet.toList());
+    view.applyChanges(changes);
+  }
+
+  @Test
+  public void testUsesOverflowDocumentsForLimitToLast() {
+    Query query = messageQuery().orderBy(orderBy("order")).limitToLast(1);
+    MutableDocument doc1 = doc("rooms/eros/messages/0", 0, map("order", 1));
+    MutableDocument doc2 = doc("rooms/eros/messages/1", 0, map("order", 2));
+    MutableDocument doc3 = doc("rooms/eros/messages/2", 0, map("order", 3));
+    View view = new View(query, DocumentKey.emptyKeySet(), /* keepOverflowDocuments= */ true);
+
+    // Docs that don't fit into the initial view are not kept in the overflow.
+    View.DocumentChanges changes = view.computeDocChanges(docUpdates(doc2, doc3));
+    assertEquals(asList(doc3), changes.documentSet.toList());
+    assertEquals(0, changes.overflowDocuments.size());
+    view.applyChanges(changes);
+
+    changes = view.computeDocChanges(docUpdates(deletedDoc("rooms/eros/messages/2", 0)));
+    assertTrue(changes.needsRefill());
+    changes = view.computeDocChanges(docUpdates(doc1, doc2), changes);
+    assertEquals(asList(doc2), changes.documentSet.toList());
+    assertEquals(asList(doc1), changes.overflowDocuments.toList());
+    view.applyChanges(changes);
+
+    // The overflow contains all remaining docs, so no refill is needed.
+    changes = view.computeDocChanges(docUpdates(deletedDoc("rooms/eros/messages/1", 0)));
+    assertEquals(asList(doc1), changes.documentSet.toList());
+    assertFalse(changes.needsRefill());
+    assertEquals(2, changes.changeSet.getChanges().size());
+    view.applyChanges(changes);
+  }
+
+  @Test
+  public void testReturnsNeedsRefillWhenDocMovesPastOverflow() {
+    Query query = messageQuery().orderBy(orderBy("order")).limitToFirst(1);
+    MutableDocument doc1 = doc("rooms/eros/messages/0", 0, map("order", 1));
+    MutableDocument doc2 = doc("rooms/eros/messages/1", 0, map("order", 2));
+    MutableDocument doc3 = doc("rooms/eros/messages/2", 0, map("order", 3));
+    MutableDocument doc4 = doc("rooms/eros/messages/3", 0, map("order", 4));
+    View view = new View(query, DocumentKey.emptyKeySet(), /* keepOverflowDocuments= */ true);
+
+    View.DocumentChanges changes = view.computeDocChanges(docUpdates(doc1));
+    view.applyChanges(changes);
+    changes = view.computeDocChanges(docUpdates(deletedDoc("rooms/eros/messages/0", 0)));
+    changes = view.computeDocChanges(docUpdates(doc2, doc3, doc4), changes);
+    assertEquals(asList(doc2), changes.documentSet.toList());
+    assertEquals(asList(doc3), changes.overflowDocuments.toList());
+    view.applyChanges(changes);
+
+    // Move the doc in the limit past the overflow. The overflow doc takes its place.
+    MutableDocument doc2Moved = doc("rooms/eros/messages/1", 1, map("order", 10));
+    changes = view.computeDocChanges(docUpdates(doc2Moved));
+    assertEquals(asList(doc3), changes.documentSet.toList());
+    assertFalse(changes.needsRefill());
+    assertEquals(2, changes.changeSet.getChanges().size());
+    view.applyChanges(changes);
+
+    // Move that doc past the overflow as well. There may be other docs in the local cache that
+    // should be included instead.
+    MutableDocument doc3Moved = doc("rooms/eros/messages/2", 1, map("order", 20));
+    changes = view.computeDocChanges(docUpdates(doc3Moved));
+    assertTrue(changes.needsRefill());
+    changes = view.computeDocChanges(docUpdates(doc2Moved, doc3Moved, doc4), changes);
+    assertEquals(asList(doc4), changes.documentSet.toList());
+    assertFalse(changes.needsRefill());
+    view.applyChanges(changes);
+  }
+
+  @Test
+  public void testPromotesOverflowDocumentWithPendingWrites() {
+    Query query = messageQuery().limitToFirst(1);
+    MutableDocument doc1 = doc("rooms/eros/messages/0", 0, map());
+    MutableDocument doc2 = doc("rooms/eros/messages/1", 0, map());
+    MutableDocument doc3 = doc("rooms/eros/messages/2", 0, map()).setHasLocalMutations();
+    View view = new View(query, DocumentKey.emptyKeySet(), /* keepOverflowDocuments= */ true);
+
+    View.DocumentChanges changes = view.computeDocChanges(docUpdates(doc1));
+    view.applyChanges(changes);
+    changes = view.computeDocChanges(docUpdates(deletedDoc("rooms/eros/messages/0", 0)));
+    changes = view.computeDocChanges(docUpdates(doc2, doc3), changes);
+    assertEquals(asList(doc3), changes.overflowDocuments.toList());
+    assertEquals(keySet(), changes.mutatedKeys);
+    view.applyChanges(changes);
+
+    // The promoted doc keeps its pending writes.
+    changes = view.computeDocChanges(docUpdates(deletedDoc("rooms/eros/messages/1", 0)));
+    assertFalse(changes.needsRefill());
+    assertEquals(asList(doc3), changes.documentSet.toList());
+    assertEquals(keySet(doc3.getKey()), changes.mutatedKeys);
+    ViewChange viewChange = view.applyChanges(changes);
+    assertTrue(viewChange.getSnapshot().hasPendingWrites());
+  }
+
+  @Test
+  public void testDropsOverflowDocumentUpdatedPastLastKnownDocument() {
+    Query query = messageQuery().orderBy(orderBy("order")).limitToFirst(1);
+    MutableDocument doc1 = doc("rooms/eros/messages/0", 0, map("order", 1));
+    MutableDocument doc2 = doc("rooms/eros/messages/1", 0, map("order", 2));
+    MutableDocument doc3 = doc("rooms/eros/messages/2", 0, map("order", 3));
+    MutableDocument doc4 = doc("rooms/eros/messages/3", 0, map("order", 4));
+    View view = new View(query, DocumentKey.emptyKeySet(), /* keepOverflowDocuments= */ true);
+
+    View.DocumentChanges changes = view.computeDocChanges(docUpdates(doc1));
+    view.applyChanges(changes);
+    changes = view.computeDocChanges(docUpdates(deletedDoc("rooms/eros/messages/0", 0)));
+    changes = view.computeDocChanges(docUpdates(doc2, doc3, doc4), changes);
+    assertEquals(asList(doc3), changes.overflowDocuments.toList());
+    view.applyChanges(changes);
+
+    // Move the buffered doc past the last doc that the view knows about. doc4 may now sort before
+    // it, so it is dropped from the overflow.
+    MutableDocument doc3Moved = doc("rooms/eros/messages/2", 1, map("order", 10));
+    changes = view.computeDocChanges(docUpdates(doc3Moved));
+    assertEquals(asList(doc2), changes.documentSet.toList());
+    assertEquals(0, changes.overflowDocuments.size());
+    assertFalse(changes.needsRefill());
+    assertEquals(0, changes.changeSet.getChanges().size());
+    view.applyChanges(changes);
+
+    // The limit can no longer be filled from the overflow.
+    changes = view.computeDocChanges(docUpdates(deletedDoc("rooms/eros/messages/1", 0)));
+    assertTrue(changes.needsRefill());
+    changes = view.computeDocChanges(docUpdates(doc3Moved, doc4), changes);
+    assertEquals(asList(doc4), changes.documentSet.toList());
+    assertEquals(asList(doc3Moved), changes.overflowDocuments.toList());
+    view.applyChanges(changes);
+  }
+
+  @Test
+  public void testDoesNotPromoteOverflowDocumentRevertedByUserChange() {
+    Query query = messageQuery().limitToFirst(2);
+    MutableDocument doc1 = doc("rooms/eros/messages/0", 0, map());
+    MutableDocument doc2 = doc("rooms/eros/messages/1", 0, map());
+    MutableDocument doc3 = doc("rooms/eros/messages/2", 0, map());
+    MutableDocument doc4 = doc("rooms/eros/messages/3", 0, map()).setHasLocalMutations();
+    MutableDocument doc5 = doc("rooms/eros/messages/4", 0, map());
+    View view = new View(query, DocumentKey.emptyKeySet(), /* keepOverflowDocuments= */ true);
+
+    View.DocumentChanges changes = view.computeDocChanges(docUpdates(doc1, doc2));
+    view.applyChanges(changes);
+    changes = view.computeDocChanges(docUpdates(deletedDoc("rooms/eros/messages/0", 0)));
+    changes = view.computeDocChanges(docUpdates(doc2, doc3, doc4, doc5), changes);
+    assertEquals(asList(doc2, doc3), changes.documentSet.toList());
+    assertEquals(asList(doc4, doc5), changes.overflowDocuments.toList());
+    view.applyChanges(changes);
+
+    // A user change re-emits the docs that were written by the previous user. doc4 only existed
+    // as a pending write, so it is deleted and must not be promoted into the limit.
+    changes = view.computeDocChanges(docUpdates(deletedDoc("rooms/eros/messages/3", 0)));
+    assertEquals(asList(doc2, doc3), changes.documentSet.toList());
+    assertEquals(asList(doc5), changes.overflowDocuments.toList());
+    assertEquals(0, changes.changeSet.getChanges().size());
+    view.applyChanges(changes);
+
+    changes = view.computeDocChanges(docUpdates(deletedDoc("rooms/eros/messages/1", 0)));
+    assertFalse(changes.needsRefill());
+    assertEquals(asList(doc3, doc5), changes.documentSet.toList());
+    assertEquals(keySet(), changes.mutatedKeys);
+    ViewChange viewChange = view.applyChanges(changes);
+    assertFalse(viewChange.getSnapshot().hasPendingWrites());
+  }
+
   @Test
   public void testHandlesApplyingIrrelevantDocs() {
     Query query = messageQuery().limitToFirst(2);
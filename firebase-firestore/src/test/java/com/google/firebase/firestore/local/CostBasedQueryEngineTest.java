@@ -0,0 +1,397 @@
+// Copyright 2021 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore.local;
+
+import static com.google.firebase.firestore.testutil.TestUtil.doc;
+import static com.google.firebase.firestore.testutil.TestUtil.field;
+import static com.google.firebase.firestore.testutil.TestUtil.docSet;
+import static com.google.firebase.firestore.testutil.TestUtil.filter;
+import static com.google.firebase.firestore.testutil.TestUtil.map;
+import static com.google.firebase.firestore.testutil.TestUtil.orderBy;
+import static com.google.firebase.firestore.testutil.TestUtil.query;
+import static com.google.firebase.firestore.testutil.TestUtil.version;
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.google.firebase.database.collection.ImmutableSortedMap;
+import com.google.firebase.database.collection.ImmutableSortedSet;
+import com.google.firebase.firestore.auth.User;
+import com.google.firebase.firestore.core.Query;
+import com.google.firebase.firestore.core.View;
+import com.google.firebase.firestore.local.QueryPlan.Strategy;
+import com.google.firebase.firestore.model.Document;
+import com.google.firebase.firestore.model.DocumentKey;
+import com.google.firebase.firestore.model.DocumentSet;
+import com.google.firebase.firestore.model.FieldIndex;
+import com.google.firebase.firestore.model.MutableDocument;
+import com.google.firebase.firestore.model.ResourcePath;
+import com.google.firebase.firestore.model.SnapshotVersion;
+import java.util.Collections;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class CostBasedQueryEngineTest {
+
+  /** Current state of indexing support. Used for restoring after test run. */
+  private static final boolean supportsIndexing = Persistence.INDEXING_SUPPORT_ENABLED;
+
+  private static final SnapshotVersion LAST_LIMBO_FREE_SNAPSHOT = version(10);
+
+  private static final MutableDocument MATCHING_DOC_A = doc("coll/a", 1, map("matches", true));
+  private static final MutableDocument MATCHING_DOC_B = doc("coll/b", 1, map("matches", true));
+
+  private SQLitePersistence persistence;
+  private RemoteDocumentCache remoteDocumentCache;
+  private IndexManager indexManager;
+  private CostBasedQueryEngine queryEngine;
+
+  @BeforeClass
+  public static void beforeClass() {
+    Persistence.INDEXING_SUPPORT_ENABLED = true;
+  }
+
+  @AfterClass
+  public static void afterClass() {
+    Persistence.INDEXING_SUPPORT_ENABLED = supportsIndexing;
+  }
+
+  @Before
+  public void setUp() {
+    persistence = PersistenceTestHelpers.createSQLitePersistence();
+    remoteDocumentCache = persistence.getRemoteDocumentCache();
+    indexManager = persistence.getIndexManager();
+    queryEngine = new CostBasedQueryEngine();
+    queryEngine.setLocalDocumentsView(
+        new LocalDocumentsView(
+            remoteDocumentCache,
+            persistence.getMutationQueue(User.UNAUTHENTICATED),
+            persistence.getDocumentOverlay(User.UNAUTHENTICATED),
+            indexManager));
+  }
+
+  /** Adds the provided documents to the remote document cache. */
+  private void addDocument(MutableDocument... docs) {
+    persistence.runTransaction(
+        "addDocument",
+        () -> {
+          for (MutableDocument doc : docs) {
+            remoteDocumentCache.add(doc, doc.getVersion());
+          }
+        });
+  }
+
+  /** Adds the provided documents to the remote document cache and writes their index entries. */
+  private void addIndexedDocument(MutableDocument... docs) {
+    persistence.runTransaction(
+        "addIndexedDocument",
+        () -> {
+          for (MutableDocument doc : docs) {
+            remoteDocumentCache.add(doc, doc.getVersion());
+            indexManager.handleDocumentChange(null, doc);
+          }
+        });
+  }
+
+  /** Adds the given number of documents that don't match the test queries to the collection. */
+  private void addNonMatchingDocuments(String collection, int count) {
+    for (int i = 0; i < count; ++i) {
+      addDocument(doc(collection + "/doc" + i, 1, map("matches", false)));
+    }
+  }
+
+  private static ImmutableSortedSet<DocumentKey> keys(MutableDocument... docs) {
+    ImmutableSortedSet<DocumentKey> keys = DocumentKey.emptyKeySet();
+    for (MutableDocument doc : docs) {
+      keys = keys.insert(doc.getKey());
+    }
+    return keys;
+  }
+
+  /** Returns the keys of the first {@code count} documents added by addNonMatchingDocuments(). */
+  private static ImmutableSortedSet<DocumentKey> nonMatchingKeys(String collection, int count) {
+    ImmutableSortedSet<DocumentKey> keys = DocumentKey.emptyKeySet();
+    for (int i = 0; i < count; ++i) {
+      keys = keys.insert(DocumentKey.fromPathString(collection + "/doc" + i));
+    }
+    return keys;
+  }
+
+  private DocumentSet runQuery(
+      Query query,
+      SnapshotVersion lastLimboFreeSnapshotVersion,
+      ImmutableSortedSet<DocumentKey> remoteKeys) {
+    ImmutableSortedMap<DocumentKey, Document> docs =
+        queryEngine.getDocumentsMatchingQuery(query, lastLimboFreeSnapshotVersion, remoteKeys);
+    View view =
+        new View(query, new ImmutableSortedSet<>(Collections.emptyList(), DocumentKey::compareTo));
+    View.DocumentChanges viewDocChanges = view.computeDocChanges(docs);
+    return view.applyChanges(viewDocChanges).getSnapshot().getDocuments();
+  }
+
+  @Test
+  public void usesPreviousResultsForSelectiveQuery() {
+    Query query = query("coll").filter(filter("matches", "==", true));
+    addDocument(MATCHING_DOC_A, MATCHING_DOC_B);
+    addNonMatchingDocuments("coll", 20);
+
+    ImmutableSortedSet<DocumentKey> remoteKeys = keys(MATCHING_DOC_A, MATCHING_DOC_B);
+    QueryPlan plan = queryEngine.plan(query, LAST_LIMBO_FREE_SNAPSHOT, remoteKeys);
+    assertEquals(Strategy.PREVIOUS_RESULTS, plan.getStrategy());
+    // Counting stops after five documents, at which point the previous results are cheaper.
+    assertEquals(5.0, plan.getEstimatedCosts().get(Strategy.FULL_COLLECTION_SCAN), 0.001);
+    assertEquals(4.5, plan.getEstimatedCosts().get(Strategy.PREVIOUS_RESULTS), 0.001);
+
+    DocumentSet docs = runQuery(query, LAST_LIMBO_FREE_SNAPSHOT, remoteKeys);
+    assertEquals(docSet(query.comparator(), MATCHING_DOC_A, MATCHING_DOC_B), docs);
+  }
+
+  @Test
+  public void usesCollectionScanIfPreviousResultsCoverMostOfCollection() {
+    Query query = query("coll").filter(filter("matches", "==", true));
+    addDocument(MATCHING_DOC_A, MATCHING_DOC_B);
+    addNonMatchingDocuments("coll", 1);
+
+    ImmutableSortedSet<DocumentKey> remoteKeys = keys(MATCHING_DOC_A, MATCHING_DOC_B);
+    QueryPlan plan = queryEngine.plan(query, LAST_LIMBO_FREE_SNAPSHOT, remoteKeys);
+    assertEquals(Strategy.FULL_COLLECTION_SCAN, plan.getStrategy());
+
+    DocumentSet docs = runQuery(query, LAST_LIMBO_FREE_SNAPSHOT, remoteKeys);
+    assertEquals(docSet(query.comparator(), MATCHING_DOC_A, MATCHING_DOC_B), docs);
+  }
+
+  @Test
+  public void usesCollectionScanWithoutLimboFreeSnapshot() {
+    Query query = query("coll").filter(filter("matches", "==", true));
+    addDocument(MATCHING_DOC_A, MATCHING_DOC_B);
+    addNonMatchingDocuments("coll", 20);
+
+    QueryPlan plan =
+        queryEngine.plan(query, SnapshotVersion.NONE, keys(MATCHING_DOC_A, MATCHING_DOC_B));
+    assertEquals(Strategy.FULL_COLLECTION_SCAN, plan.getStrategy());
+    assertTrue(plan.getEstimatedCosts().isEmpty());
+  }
+
+  @Test
+  public void usesCollectionScanForQueriesThatMatchAllDocuments() {
+    Query query = query("coll");
+    addDocument(MATCHING_DOC_A, MATCHING_DOC_B);
+    addNonMatchingDocuments("coll", 20);
+
+    QueryPlan plan = queryEngine.plan(query, LAST_LIMBO_FREE_SNAPSHOT, keys(MATCHING_DOC_A));
+    assertEquals(Strategy.FULL_COLLECTION_SCAN, plan.getStrategy());
+    assertTrue(plan.getEstimatedCosts().isEmpty());
+  }
+
+  @Test
+  public void estimatesCollectionSizeOfCollectionGroupQueries() {
+    Query query = new Query(ResourcePath.EMPTY, "coll").filter(filter("matches", "==", true));
+    addDocument(MATCHING_DOC_A);
+    addNonMatchingDocuments("coll", 4);
+    addNonMatchingDocuments("parent/1/coll", 5);
+    addNonMatchingDocuments("other", 10);
+
+    ImmutableSortedSet<DocumentKey> remoteKeys =
+        keys(
+            MATCHING_DOC_A,
+            doc("coll/doc0", 1, map()),
+            doc("coll/doc1", 1, map()),
+            doc("coll/doc2", 1, map()),
+            doc("coll/doc3", 1, map()));
+    QueryPlan plan = queryEngine.plan(query, LAST_LIMBO_FREE_SNAPSHOT, remoteKeys);
+    assertEquals(10.0, plan.getEstimatedCosts().get(Strategy.FULL_COLLECTION_SCAN), 0.001);
+  }
+
+  @Test
+  public void usesIndexScanWithoutLimboFreeSnapshot() {
+    indexManager.addFieldIndex(
+        new FieldIndex("coll").withAddedField(field("matches"), FieldIndex.Segment.Kind.ASCENDING));
+    addIndexedDocument(MATCHING_DOC_A, MATCHING_DOC_B);
+    addNonMatchingDocuments("coll", 20);
+
+    Query query = query("coll").filter(filter("matches", "==", true));
+    QueryPlan plan = queryEngine.plan(query, SnapshotVersion.NONE, DocumentKey.emptyKeySet());
+    assertEquals(Strategy.INDEX_SCAN, plan.getStrategy());
+    // Costs are estimated per document in the collection.
+    assertEquals(1.0, plan.getEstimatedCosts().get(Strategy.FULL_COLLECTION_SCAN), 0.001);
+    assertEquals(0.35, plan.getEstimatedCosts().get(Strategy.INDEX_SCAN), 0.001);
+
+    DocumentSet docs = runQuery(query, SnapshotVersion.NONE, DocumentKey.emptyKeySet());
+    assertEquals(docSet(query.comparator(), MATCHING_DOC_A, MATCHING_DOC_B), docs);
+  }
+
+  @Test
+  public void prefersPreviousResultsOverIndexScan() {
+    indexManager.addFieldIndex(
+        new FieldIndex("coll").withAddedField(field("matches"), FieldIndex.Segment.Kind.ASCENDING));
+    addIndexedDocument(MATCHING_DOC_A, MATCHING_DOC_B);
+    addNonMatchingDocuments("coll", 20);
+
+    Query query = query("coll").filter(filter("matches", "==", true));
+    ImmutableSortedSet<DocumentKey> remoteKeys = keys(MATCHING_DOC_A, MATCHING_DOC_B);
+    QueryPlan plan = queryEngine.plan(query, LAST_LIMBO_FREE_SNAPSHOT, remoteKeys);
+    assertEquals(Strategy.PREVIOUS_RESULTS, plan.getStrategy());
+    assertFalse(plan.getEstimatedCosts().containsKey(Strategy.INDEX_SCAN));
+    assertNull(plan.getFieldIndex());
+  }
+
+  @Test
+  public void usesCollectionScanForIndexThatIsNotSelective() {
+    indexManager.addFieldIndex(
+        new FieldIndex("coll").withAddedField(field("count"), FieldIndex.Segment.Kind.ASCENDING));
+    addIndexedDocument(doc("coll/a", 1, map("count", 1)), doc("coll/b", 1, map("count", 2)));
+
+    // Every value of the in filter is expected to match a tenth of the collection.
+    Query query = query("coll").filter(filter("count", "in", asList(1, 2, 3, 4)));
+    QueryPlan plan = queryEngine.plan(query, SnapshotVersion.NONE, DocumentKey.emptyKeySet());
+    assertEquals(Strategy.FULL_COLLECTION_SCAN, plan.getStrategy());
+    assertEquals(1.1, plan.getEstimatedCosts().get(Strategy.INDEX_SCAN), 0.001);
+    assertNull(plan.getFieldIndex());
+  }
+
+  @Test
+  public void usesCollectionScanForIndexWithoutFilters() {
+    indexManager.addFieldIndex(
+        new FieldIndex("coll").withAddedField(field("count"), FieldIndex.Segment.Kind.ASCENDING));
+    addIndexedDocument(doc("coll/a", 1, map("count", 1)), doc("coll/b", 1, map("count", 2)));
+
+    Query query = query("coll").orderBy(orderBy("count")).limitToFirst(1);
+    QueryPlan plan = queryEngine.plan(query, SnapshotVersion.NONE, DocumentKey.emptyKeySet());
+    assertEquals(Strategy.FULL_COLLECTION_SCAN, plan.getStrategy());
+  }
+
+  @Test
+  public void estimatesSelectivityFromIndexedFilters() {
+    FieldIndex fieldIndex =
+        new FieldIndex("coll")
+            .withAddedField(field("a"), FieldIndex.Segment.Kind.ASCENDING)
+            .withAddedField(field("b"), FieldIndex.Segment.Kind.ASCENDING);
+
+    assertEquals(
+        0.1,
+        CostBasedQueryEngine.estimateSelectivity(
+            query("coll").filter(filter("a", "==", 1)), fieldIndex),
+        0.001);
+    assertEquals(
+        0.1 / 3,
+        CostBasedQueryEngine.estimateSelectivity(
+            query("coll").filter(filter("a", "==", 1)).filter(filter("b", ">", 1)), fieldIndex),
+        0.001);
+    assertEquals(
+        0.2,
+        CostBasedQueryEngine.estimateSelectivity(
+            query("coll").filter(filter("a", "in", asList(1, 2))), fieldIndex),
+        0.001);
+    assertEquals(
+        1.0,
+        CostBasedQueryEngine.estimateSelectivity(
+            query("coll").filter(filter("a", "!=", 1)), fieldIndex),
+        0.001);
+    // Filters on fields that are not part of the index do not narrow down the index scan.
+    assertEquals(
+        0.1,
+        CostBasedQueryEngine.estimateSelectivity(
+            query("coll").filter(filter("a", "==", 1)).filter(filter("c", "==", 1)), fieldIndex),
+        0.001);
+  }
+
+  @Test
+  public void usesCollectionScanBelowBreakEvenSize() {
+    // Looking up 9 documents costs 18, so the break-even size is 18 / (1 - 0.1) = 20 documents.
+    Query query = query("coll").filter(filter("matches", "==", true));
+    addNonMatchingDocuments("coll", 19);
+
+    QueryPlan plan =
+        queryEngine.plan(query, LAST_LIMBO_FREE_SNAPSHOT, nonMatchingKeys("coll", 9));
+    assertEquals(Strategy.FULL_COLLECTION_SCAN, plan.getStrategy());
+    assertEquals(19.0, plan.getEstimatedCosts().get(Strategy.FULL_COLLECTION_SCAN), 0.001);
+    assertEquals(19.9, plan.getEstimatedCosts().get(Strategy.PREVIOUS_RESULTS), 0.001);
+  }
+
+  @Test
+  public void usesPreviousResultsAboveBreakEvenSize() {
+    Query query = query("coll").filter(filter("matches", "==", true));
+    addNonMatchingDocuments("coll", 21);
+
+    QueryPlan plan =
+        queryEngine.plan(query, LAST_LIMBO_FREE_SNAPSHOT, nonMatchingKeys("coll", 9));
+    assertEquals(Strategy.PREVIOUS_RESULTS, plan.getStrategy());
+    assertEquals(21.0, plan.getEstimatedCosts().get(Strategy.FULL_COLLECTION_SCAN), 0.001);
+    assertEquals(20.1, plan.getEstimatedCosts().get(Strategy.PREVIOUS_RESULTS), 0.001);
+  }
+
+  @Test
+  public void stopsCountingCollectionAboveBreakEvenSize() {
+    Query query = query("coll").filter(filter("matches", "==", true));
+    addNonMatchingDocuments("coll", 30);
+
+    QueryPlan plan =
+        queryEngine.plan(query, LAST_LIMBO_FREE_SNAPSHOT, nonMatchingKeys("coll", 9));
+    assertEquals(Strategy.PREVIOUS_RESULTS, plan.getStrategy());
+    assertEquals(21.0, plan.getEstimatedCosts().get(Strategy.FULL_COLLECTION_SCAN), 0.001);
+  }
+
+  @Test
+  public void indexScanCombinesIndexedWithNonIndexedResults() {
+    indexManager.addFieldIndex(
+        new FieldIndex("coll").withAddedField(field("matches"), FieldIndex.Segment.Kind.ASCENDING));
+    addIndexedDocument(MATCHING_DOC_A);
+    // Document B is not part of the index yet.
+    addDocument(MATCHING_DOC_B);
+
+    Query query = query("coll").filter(filter("matches", "==", true));
+    DocumentSet docs = runQuery(query, SnapshotVersion.NONE, DocumentKey.emptyKeySet());
+    assertEquals(docSet(query.comparator(), MATCHING_DOC_A, MATCHING_DOC_B), docs);
+  }
+
+  @Test
+  public void indexScanRemovesDocumentsWithStaleIndexEntries() {
+    indexManager.addFieldIndex(
+        new FieldIndex("coll").withAddedField(field("matches"), FieldIndex.Segment.Kind.ASCENDING));
+    addIndexedDocument(MATCHING_DOC_A, MATCHING_DOC_B);
+    // The index is not updated for the new version of document A.
+    addDocument(doc("coll/a", 2, map("matches", false)));
+
+    Query query = query("coll").filter(filter("matches", "==", true));
+    DocumentSet docs = runQuery(query, SnapshotVersion.NONE, DocumentKey.emptyKeySet());
+    assertEquals(docSet(query.comparator(), MATCHING_DOC_B), docs);
+  }
+
+  @Test
+  public void indexScanDoesNotApplyLimitToIndexEntries() {
+    indexManager.addFieldIndex(
+        new FieldIndex("coll").withAddedField(field("count"), FieldIndex.Segment.Kind.ASCENDING));
+    addIndexedDocument(doc("coll/a", 1, map("count", 1)), doc("coll/b", 1, map("count", 2)));
+    // Document A no longer matches, so the query needs to return document B from the index.
+    addDocument(doc("coll/a", 2, map("count", 0)));
+
+    Query query = query("coll").filter(filter("count", ">", 0)).limitToFirst(1);
+    assertEquals(
+        Strategy.INDEX_SCAN,
+        queryEngine.plan(query, SnapshotVersion.NONE, DocumentKey.emptyKeySet()).getStrategy());
+
+    DocumentSet docs = runQuery(query, SnapshotVersion.NONE, DocumentKey.emptyKeySet());
+    assertEquals(docSet(query.comparator(), doc("coll/b", 1, map("count", 2))), docs);
+  }
+}
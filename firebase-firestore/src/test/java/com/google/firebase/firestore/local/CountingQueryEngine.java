@@ -22,6 +22,7 @@ import com.google.firebase.firestore.core.Query;
 import com.google.firebase.firestore.model.Document;
 import com.google.firebase.firestore.model.DocumentKey;
 import com.google.firebase.firestore.model.MutableDocument;
+import com.google.firebase.firestore.model.ResourcePath;
 import com.google.firebase.firestore.model.SnapshotVersion;
 import com.google.firebase.firestore.model.mutation.Mutation;
 import com.google.firebase.firestore.model.mutation.MutationBatch;
@@ -129,6 +130,16 @@ class CountingQueryEngine implements QueryEngine {
         return result;
       }
 
+      @Override
+      public int getCollectionSize(ResourcePath collection, int limit) {
+        return subject.getCollectionSize(collection, limit);
+      }
+
+      @Override
+      public int getCollectionGroupSize(String collectionGroup, int limit) {
+        return subject.getCollectionGroupSize(collectionGroup, limit);
+      }
+
       @Override
       public Map<DocumentKey, MutableDocument> getAll(Iterable<DocumentKey> documentKeys) {
         Map<DocumentKey, MutableDocument> result = subject.getAll(documentKeys);
@@ -20,6 +20,7 @@ import static com.google.firebase.firestore.testutil.TestUtil.map;
 import static com.google.firebase.firestore.testutil.TestUtil.patchMutation;
 import static com.google.firebase.firestore.testutil.TestUtil.path;
 import static com.google.firebase.firestore.testutil.TestUtil.setMutation;
+import static java.util.Arrays.asList;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 
@@ -28,6 +29,7 @@ import com.google.firebase.firestore.model.DocumentKey;
 import com.google.firebase.firestore.model.mutation.Mutation;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.TreeSet;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.BeforeClass;
@@ -154,4 +156,50 @@ public abstract class DocumentOverlayCacheTestCase {
     m.remove(key("other/doc1"));
     assertEquals(m, overlays.getOverlays(path("coll")));
   }
+
+  @Test
+  public void testGetOverlaysForKeys() {
+    Mutation m1 = patchMutation("coll/doc1", map("foo", "bar"));
+    Mutation m2 = setMutation("coll/doc2", map("foo", "bar"));
+    Mutation m3 = deleteMutation("other/doc1");
+    Mutation m4 = setMutation("coll/doc1/sub/sub_doc", map("foo", "bar"));
+    Map<DocumentKey, Mutation> m = new HashMap<>();
+    m.put(key("coll/doc1"), m1);
+    m.put(key("coll/doc2"), m2);
+    m.put(key("other/doc1"), m3);
+    m.put(key("coll/doc1/sub/sub_doc"), m4);
+    overlays.saveOverlays(3, m);
+
+    Map<DocumentKey, Mutation> expected = new HashMap<>();
+    expected.put(key("coll/doc1"), m1);
+    expected.put(key("other/doc1"), m3);
+    expected.put(key("coll/doc1/sub/sub_doc"), m4);
+    assertEquals(
+        expected,
+        overlays.getOverlays(
+            new TreeSet<>(
+                asList(
+                    key("coll/doc1"),
+                    key("coll/doc3"),
+                    key("other/doc1"),
+                    key("coll/doc1/sub/sub_doc")))));
+  }
+
+  @Test
+  public void testGetAllOverlaysForCollectionGroup() {
+    Mutation m1 = patchMutation("coll/doc1", map("foo", "bar"));
+    Mutation m2 = setMutation("other/doc1/coll/doc2", map("foo", "bar"));
+    Mutation m3 = deleteMutation("coll/doc1/sub/doc3");
+    Mutation m4 = setMutation("other/doc4", map("foo", "bar"));
+    Map<DocumentKey, Mutation> m = new HashMap<>();
+    m.put(key("coll/doc1"), m1);
+    m.put(key("other/doc1/coll/doc2"), m2);
+    m.put(key("coll/doc1/sub/doc3"), m3);
+    m.put(key("other/doc4"), m4);
+    overlays.saveOverlays(3, m);
+
+    m.remove(key("coll/doc1/sub/doc3"));
+    m.remove(key("other/doc4"));
+    assertEquals(m, overlays.getOverlays("coll"));
+  }
 }
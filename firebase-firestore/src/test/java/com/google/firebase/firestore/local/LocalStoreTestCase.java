@@ -201,7 +201,9 @@ public abstract class LocalStoreTestCase {
 
   private void bundleDocuments(MutableDocument... expected) {
     ImmutableSortedMap<DocumentKey, MutableDocument> documents = docMap(expected);
-    lastChanges = localStore.applyBundledDocuments(documents, /* bundleId= */ "");
+    lastChanges =
+        localStore.applyBundledDocuments(
+            documents, /* bundleId= */ "", /* isFirstChunk= */ true);
   }
 
   private void saveNamedQuery(NamedQuery namedQuery, DocumentKey... matchingKey) {
@@ -36,6 +36,8 @@ import com.google.firebase.firestore.model.SnapshotVersion;
 import com.google.firebase.firestore.model.mutation.Mutation;
 import com.google.firebase.firestore.model.mutation.Precondition;
 import com.google.firebase.firestore.model.mutation.SetMutation;
+import com.google.firebase.firestore.util.AsyncQueue;
+import com.google.firebase.firestore.util.AsyncQueue.TimerId;
 import com.google.protobuf.ByteString;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -636,6 +638,25 @@ public abstract class LruGarbageCollectorTestCase {
     assertTrue(finalSize > initialSize);
   }
 
+  @Test
+  public void testSizeShrinksAfterDocumentsAreRemoved() {
+    long initialSize = garbageCollector.getByteSize();
+
+    persistence.runTransaction(
+        "fill cache",
+        () -> {
+          for (int i = 0; i < 50; i++) {
+            MutableDocument doc = cacheADocumentInTransaction();
+            markDocumentEligibleForGcInTransaction(doc.getKey());
+          }
+        });
+    assertTrue(garbageCollector.getByteSize() > initialSize);
+
+    int removed = garbageCollector.removeOrphanedDocuments(1000);
+    assertEquals(50, removed);
+    assertEquals(initialSize, garbageCollector.getByteSize());
+  }
+
   @Test
   public void testDisabled() {
     LruGarbageCollector.Params params = LruGarbageCollector.Params.Disabled();
@@ -718,4 +739,183 @@ public abstract class LruGarbageCollectorTestCase {
     assertEquals(10, results.getTargetsRemoved());
     assertEquals(100, results.getDocumentsRemoved());
   }
+
+  @Test
+  public void testIncrementalGCRan() {
+    // Set a low byte threshold so we can guarantee that GC will run, and remove few documents per
+    // slice so that the collection is split up.
+    LruGarbageCollector.Params params =
+        LruGarbageCollector.Params.WithCacheSizeBytes(100).withSliceBudget(15, 1000);
+
+    // Switch to persistence using our new params.
+    persistence.shutdown();
+    newTestResources(params);
+
+    // Add 100 targets and 10 documents to each
+    for (int i = 0; i < 100; i++) {
+      persistence.runTransaction(
+          "Add a target and some documents",
+          () -> {
+            TargetData targetData = addNextQueryInTransaction();
+            for (int j = 0; j < 10; j++) {
+              MutableDocument doc = cacheADocumentInTransaction();
+              addDocumentToTarget(doc.getKey(), targetData.getTargetId());
+            }
+          });
+    }
+
+    // Mark nothing as live, so everything is eligible.
+    LruGarbageCollector.IncrementalCollection collection =
+        garbageCollector.newIncrementalCollection();
+    boolean finished = false;
+    while (!finished) {
+      finished =
+          persistence.runTransaction("GC slice", () -> collection.runSlice(new SparseArray<>()));
+    }
+
+    // The incremental collection removes the same targets and documents as a single pass.
+    LruGarbageCollector.Results results = collection.getResults();
+    assertTrue(results.hasRun());
+    assertEquals(10, results.getTargetsRemoved());
+    assertEquals(100, results.getDocumentsRemoved());
+    assertTrue(results.getSliceCount() > 100 / 15);
+  }
+
+  @Test
+  public void testIncrementalGCRemovesTargetsInSlices() {
+    LruGarbageCollector.Params params =
+        LruGarbageCollector.Params.WithCacheSizeBytes(100).withSliceBudget(3, 1000);
+    persistence.shutdown();
+    newTestResources(params);
+
+    // Add 100 targets, 10 of which are collected.
+    for (int i = 0; i < 100; i++) {
+      addNextQuery();
+    }
+
+    LruGarbageCollector.IncrementalCollection collection =
+        garbageCollector.newIncrementalCollection();
+    boolean finished = false;
+    while (!finished && collection.getResults().getTargetsRemoved() == 0) {
+      finished =
+          persistence.runTransaction("GC slice", () -> collection.runSlice(new SparseArray<>()));
+    }
+    assertEquals(3, collection.getResults().getTargetsRemoved());
+
+    while (!finished) {
+      finished =
+          persistence.runTransaction("GC slice", () -> collection.runSlice(new SparseArray<>()));
+    }
+    assertEquals(10, collection.getResults().getTargetsRemoved());
+  }
+
+  @Test
+  public void testIncrementalGCVisitsBoundedNumberOfRowsPerSlice() {
+    LruGarbageCollector.Params params =
+        LruGarbageCollector.Params.WithCacheSizeBytes(100).withSliceBudget(10, 1000);
+    persistence.shutdown();
+    newTestResources(params);
+
+    // Add 100 orphaned documents and 20 targets.
+    persistence.runTransaction(
+        "Fill cache",
+        () -> {
+          for (int i = 0; i < 100; i++) {
+            MutableDocument doc = cacheADocumentInTransaction();
+            markDocumentEligibleForGcInTransaction(doc.getKey());
+          }
+        });
+    for (int i = 0; i < 20; i++) {
+      addNextQuery();
+    }
+
+    LruGarbageCollector.IncrementalCollection collection =
+        garbageCollector.newIncrementalCollection();
+    boolean finished = false;
+    while (!finished) {
+      finished =
+          persistence.runTransaction("GC slice", () -> collection.runSlice(new SparseArray<>()));
+    }
+
+    // 10% of the 120 sequence numbers are collected. All documents share the oldest sequence
+    // number, so all of them are removed, but none of the targets.
+    LruGarbageCollector.Results results = collection.getResults();
+    assertEquals(12, results.getSequenceNumbersCollected());
+    assertEquals(0, results.getTargetsRemoved());
+    assertEquals(100, results.getDocumentsRemoved());
+    // No slice reads more than 10 rows. Counting the documents, finding the upper bound in the
+    // documents and removing them takes at least 10 slices each. Finding the upper bound in the
+    // targets takes at least 2 slices, and removing targets at least one.
+    assertTrue(results.getSliceCount() >= 33);
+  }
+
+  @Test
+  public void testGCSchedulerYieldsBetweenSlices() throws InterruptedException {
+    LruGarbageCollector.Params params =
+        LruGarbageCollector.Params.WithCacheSizeBytes(100).withSliceBudget(10, 1000);
+    persistence.shutdown();
+    newTestResources(params);
+
+    List<DocumentKey> keys = new ArrayList<>();
+    persistence.runTransaction(
+        "Fill cache",
+        () -> {
+          for (int i = 0; i < 100; i++) {
+            MutableDocument doc = cacheADocumentInTransaction();
+            markDocumentEligibleForGcInTransaction(doc.getKey());
+            keys.add(doc.getKey());
+          }
+        });
+
+    AsyncQueue asyncQueue = new AsyncQueue();
+    LocalStore localStore =
+        new LocalStore(persistence, new DefaultQueryEngine(), User.UNAUTHENTICATED);
+    LruGarbageCollector.GCScheduler scheduler =
+        garbageCollector.newScheduler(asyncQueue, localStore);
+    asyncQueue.runSync(scheduler::start);
+
+    // Every slice runs as a separate task, so tasks that are enqueued after a slice run before the
+    // collection completes.
+    int[] remainingDocuments = {keys.size()};
+    int yields = 0;
+    while (remainingDocuments[0] > 0) {
+      asyncQueue.runDelayedTasksUntil(TimerId.GARBAGE_COLLECTION);
+      asyncQueue.runSync(
+          () -> {
+            remainingDocuments[0] = 0;
+            for (DocumentKey key : keys) {
+              if (documentCache.get(key).isValidDocument()) {
+                ++remainingDocuments[0];
+              }
+            }
+          });
+      if (remainingDocuments[0] > 0) {
+        ++yields;
+      }
+    }
+    assertTrue(yields > 1);
+
+    asyncQueue.runSync(scheduler::stop);
+    asyncQueue.shutdown();
+  }
+
+  @Test
+  public void testIncrementalGCDidNotRunIfCacheTooSmall() {
+    persistence.runTransaction(
+        "Fill cache",
+        () -> {
+          for (int i = 0; i < 50; i++) {
+            MutableDocument doc = cacheADocumentInTransaction();
+            markDocumentEligibleForGcInTransaction(doc.getKey());
+          }
+        });
+
+    LruGarbageCollector.IncrementalCollection collection =
+        garbageCollector.newIncrementalCollection();
+    boolean finished =
+        persistence.runTransaction("GC slice", () -> collection.runSlice(new SparseArray<>()));
+
+    assertTrue(finished);
+    assertFalse(collection.getResults().hasRun());
+  }
 }
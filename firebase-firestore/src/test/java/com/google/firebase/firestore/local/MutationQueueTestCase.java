@@ -34,6 +34,7 @@ import com.google.firebase.database.collection.ImmutableSortedSet;
 import com.google.firebase.firestore.auth.User;
 import com.google.firebase.firestore.core.Query;
 import com.google.firebase.firestore.model.DocumentKey;
+import com.google.firebase.firestore.model.ResourcePath;
 import com.google.firebase.firestore.model.mutation.Mutation;
 import com.google.firebase.firestore.model.mutation.MutationBatch;
 import com.google.firebase.firestore.model.mutation.SetMutation;
@@ -304,6 +305,36 @@ public abstract class MutationQueueTestCase {
     assertEquals(expected, matches);
   }
 
+  @Test
+  public void testAllMutationBatchesAffectingCollectionGroupQuery() {
+    List<Mutation> mutations =
+        asList(
+            setMutation("foo/bar", map("a", 1)),
+            setMutation("fob/bar/foo/baz", map("a", 1)),
+            patchMutation("foo/bar", map("b", 1)),
+            setMutation("foo/bar/suffix/key", map("a", 1)),
+            setMutation("food/bar", map("a", 1)));
+
+    // Store all the mutations.
+    List<MutationBatch> batches = new ArrayList<>();
+    persistence.runTransaction(
+        "New mutation batch",
+        () -> {
+          for (Mutation mutation : mutations) {
+            batches.add(
+                mutationQueue.addMutationBatch(
+                    Timestamp.now(), Collections.emptyList(), asList(mutation)));
+          }
+        });
+
+    List<MutationBatch> expected = asList(batches.get(0), batches.get(1), batches.get(2));
+
+    Query query = new Query(ResourcePath.EMPTY, "foo");
+    List<MutationBatch> matches = mutationQueue.getAllMutationBatchesAffectingQuery(query);
+
+    assertEquals(expected, matches);
+  }
+
   @Test
   public void testAllMutationBatchesAffectingQuery_withCompoundBatches() {
     Map<String, Object> value = map("a", 1);
@@ -31,6 +31,7 @@ import com.google.firebase.database.collection.ImmutableSortedMap;
 import com.google.firebase.firestore.core.Query;
 import com.google.firebase.firestore.model.DocumentKey;
 import com.google.firebase.firestore.model.MutableDocument;
+import com.google.firebase.firestore.model.ResourcePath;
 import com.google.firebase.firestore.model.SnapshotVersion;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -207,6 +208,72 @@ abstract class RemoteDocumentCacheTestCase {
     assertEquals(expected, values(results));
   }
 
+  @Test
+  public void testDocumentsMatchingQueryWithLotsOfDocuments() {
+    // Make sure to force the SQLite implementation to decode documents in multiple batches.
+    int lotsOfDocuments = 500;
+    List<MutableDocument> expected = new ArrayList<>();
+    for (int i = 0; i < lotsOfDocuments; i++) {
+      String path = String.format("b/doc_%03d", i);
+      expected.add(addTestDocumentAtPath(path));
+      addTestDocumentAtPath(path + "/c/1");
+    }
+
+    Query query = Query.atPath(path("b"));
+    ImmutableSortedMap<DocumentKey, MutableDocument> results =
+        remoteDocumentCache.getAllDocumentsMatchingQuery(query, SnapshotVersion.NONE);
+    assertEquals(expected, values(results));
+  }
+
+  @Test
+  public void testGetCollectionSize() {
+    addTestDocumentAtPath("a/1");
+    addTestDocumentAtPath("b/1");
+    addTestDocumentAtPath("b/2");
+    addTestDocumentAtPath("b/2/c/1");
+    addTestDocumentAtPath("bc/1");
+    add(deletedDoc("b/3", 42), version(42));
+
+    assertEquals(1, remoteDocumentCache.getCollectionSize(path("a"), Integer.MAX_VALUE));
+    assertEquals(3, remoteDocumentCache.getCollectionSize(path("b"), Integer.MAX_VALUE));
+    assertEquals(1, remoteDocumentCache.getCollectionSize(path("b/2/c"), Integer.MAX_VALUE));
+    assertEquals(0, remoteDocumentCache.getCollectionSize(path("c"), Integer.MAX_VALUE));
+    assertEquals(2, remoteDocumentCache.getCollectionSize(path("b"), 2));
+  }
+
+  @Test
+  public void testDocumentsMatchingCollectionGroupQuery() {
+    Map<String, Object> docData = map("data", 2);
+    addTestDocumentAtPath("a/1");
+    addTestDocumentAtPath("b/1");
+    addTestDocumentAtPath("a/1/b/2");
+    addTestDocumentAtPath("a/1/b/2/c/3");
+    addTestDocumentAtPath("bc/1");
+
+    Query query = new Query(ResourcePath.EMPTY, "b");
+    ImmutableSortedMap<DocumentKey, MutableDocument> results =
+        remoteDocumentCache.getAllDocumentsMatchingQuery(query, SnapshotVersion.NONE);
+    List<MutableDocument> expected =
+        asList(doc("a/1/b/2", 42, docData), doc("b/1", 42, docData));
+    assertEquals(expected, values(results));
+  }
+
+  @Test
+  public void testGetCollectionGroupSize() {
+    addTestDocumentAtPath("a/1");
+    addTestDocumentAtPath("b/1");
+    addTestDocumentAtPath("a/1/b/2");
+    addTestDocumentAtPath("a/1/b/2/c/3");
+    addTestDocumentAtPath("bc/1");
+    add(deletedDoc("b/3", 42), version(42));
+
+    assertEquals(1, remoteDocumentCache.getCollectionGroupSize("a", Integer.MAX_VALUE));
+    assertEquals(3, remoteDocumentCache.getCollectionGroupSize("b", Integer.MAX_VALUE));
+    assertEquals(1, remoteDocumentCache.getCollectionGroupSize("c", Integer.MAX_VALUE));
+    assertEquals(0, remoteDocumentCache.getCollectionGroupSize("d", Integer.MAX_VALUE));
+    assertEquals(2, remoteDocumentCache.getCollectionGroupSize("b", 2));
+  }
+
   private MutableDocument addTestDocumentAtPath(String path) {
     return addTestDocumentAtPath(path, 42, 42);
   }
@@ -18,10 +18,13 @@ import static com.google.firebase.firestore.local.SQLiteIndexManagerTest.getColl
 import static com.google.firebase.firestore.testutil.TestUtil.doc;
 import static com.google.firebase.firestore.testutil.TestUtil.field;
 import static com.google.firebase.firestore.testutil.TestUtil.map;
+import static com.google.firebase.firestore.testutil.TestUtil.query;
 import static com.google.firebase.firestore.testutil.TestUtil.version;
 import static junit.framework.TestCase.assertEquals;
+import static junit.framework.TestCase.assertFalse;
 import static junit.framework.TestCase.assertNotNull;
 import static junit.framework.TestCase.assertNull;
+import static junit.framework.TestCase.assertTrue;
 
 import com.google.firebase.Timestamp;
 import com.google.firebase.firestore.auth.User;
@@ -29,6 +32,8 @@ import com.google.firebase.firestore.index.IndexEntry;
 import com.google.firebase.firestore.model.FieldIndex;
 import com.google.firebase.firestore.model.MutableDocument;
 import com.google.firebase.firestore.model.SnapshotVersion;
+import com.google.firebase.firestore.util.AsyncQueue;
+import com.google.firebase.firestore.util.AsyncQueue.TimerId;
 import java.util.List;
 import org.junit.After;
 import org.junit.AfterClass;
@@ -221,6 +226,90 @@ public class SQLiteIndexBackfillerTest {
     assertEquals("coll1", collectionGroups.get(1));
   }
 
+  @Test
+  public void testBackfillBudgetGrowsForFastPasses() {
+    backfiller.setMaxIndexEntriesToProcess(1000);
+    backfiller.adjustMaxIndexEntriesToProcess(/* entriesAdded= */ 1000, /* durationMs= */ 10);
+    assertEquals(2000, backfiller.getMaxIndexEntriesToProcess());
+
+    // The budget does not grow if there was not enough work to exhaust it.
+    backfiller.adjustMaxIndexEntriesToProcess(/* entriesAdded= */ 10, /* durationMs= */ 10);
+    assertEquals(2000, backfiller.getMaxIndexEntriesToProcess());
+
+    backfiller.setMaxIndexEntriesToProcess(15000);
+    backfiller.adjustMaxIndexEntriesToProcess(/* entriesAdded= */ 15000, /* durationMs= */ 10);
+    assertEquals(20000, backfiller.getMaxIndexEntriesToProcess());
+  }
+
+  @Test
+  public void testBackfillBudgetShrinksForSlowPasses() {
+    backfiller.setMaxIndexEntriesToProcess(1000);
+    backfiller.adjustMaxIndexEntriesToProcess(/* entriesAdded= */ 1000, /* durationMs= */ 500);
+    assertEquals(500, backfiller.getMaxIndexEntriesToProcess());
+
+    backfiller.setMaxIndexEntriesToProcess(150);
+    backfiller.adjustMaxIndexEntriesToProcess(/* entriesAdded= */ 150, /* durationMs= */ 500);
+    assertEquals(100, backfiller.getMaxIndexEntriesToProcess());
+  }
+
+  @Test
+  public void testEmptyPassesDoNotChangeBackfillBudget() {
+    backfiller.setMaxIndexEntriesToProcess(1000);
+    backfiller.adjustMaxIndexEntriesToProcess(/* entriesAdded= */ 0, /* durationMs= */ 500);
+    assertEquals(1000, backfiller.getMaxIndexEntriesToProcess());
+  }
+
+  @Test
+  public void testSchedulerPostponesBackfillWhileQueriesRun() throws InterruptedException {
+    addFieldIndex("coll1", "foo");
+    addDoc("coll1/docA", "foo", version(10, 0));
+
+    AsyncQueue asyncQueue = new AsyncQueue();
+    LocalStore localStore =
+        new LocalStore(persistence, new DefaultQueryEngine(), User.UNAUTHENTICATED);
+    IndexBackfiller.BackfillScheduler scheduler = backfiller.newScheduler(asyncQueue, localStore);
+    asyncQueue.runSync(scheduler::start);
+
+    // A query ran before the first pass, so the pass is postponed.
+    asyncQueue.runSync(() -> localStore.executeQuery(query("coll1"), false));
+    asyncQueue.runDelayedTasksUntil(TimerId.INDEX_BACKFILL);
+    assertEquals(0, scheduler.getTotalEntriesAdded());
+    assertTrue(asyncQueue.containsDelayedTask(TimerId.INDEX_BACKFILL));
+
+    // No queries ran since, so the next pass writes the index entries.
+    asyncQueue.runDelayedTasksUntil(TimerId.INDEX_BACKFILL);
+    assertEquals(1, scheduler.getTotalEntriesAdded());
+
+    asyncQueue.runSync(scheduler::stop);
+    asyncQueue.shutdown();
+  }
+
+  @Test
+  public void testSchedulerOnlyPostponesBackfillALimitedNumberOfTimes()
+      throws InterruptedException {
+    addFieldIndex("coll1", "foo");
+    addDoc("coll1/docA", "foo", version(10, 0));
+
+    AsyncQueue asyncQueue = new AsyncQueue();
+    LocalStore localStore =
+        new LocalStore(persistence, new DefaultQueryEngine(), User.UNAUTHENTICATED);
+    IndexBackfiller.BackfillScheduler scheduler = backfiller.newScheduler(asyncQueue, localStore);
+    asyncQueue.runSync(scheduler::start);
+
+    // Queries run before every pass. The first ten passes are postponed, the eleventh runs.
+    int passes = 0;
+    while (scheduler.getTotalEntriesAdded() == 0) {
+      asyncQueue.runSync(() -> localStore.executeQuery(query("coll1"), false));
+      asyncQueue.runDelayedTasksUntil(TimerId.INDEX_BACKFILL);
+      ++passes;
+      assertFalse("Backfill was postponed indefinitely", passes > 11);
+    }
+    assertEquals(11, passes);
+
+    asyncQueue.runSync(scheduler::stop);
+    asyncQueue.shutdown();
+  }
+
   @Test
   public void testAddAndRemoveIndexEntry() {
     IndexEntry testEntry =
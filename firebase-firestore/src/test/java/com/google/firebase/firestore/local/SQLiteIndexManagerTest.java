@@ -204,6 +204,91 @@ public class SQLiteIndexManagerTest extends IndexManagerTestCase {
     verifyResults(query, "coll/doc1", "coll/doc3");
   }
 
+  @Test
+  public void testInFilterWithManyValues() {
+    indexManager.addFieldIndex(
+        new FieldIndex("coll").withAddedField(field("count"), FieldIndex.Segment.Kind.ASCENDING));
+    List<Object> values = new ArrayList<>();
+    List<String> expectedDocuments = new ArrayList<>();
+    for (int i = 0; i < 100; ++i) {
+      addDoc("coll/doc" + i, map("count", i));
+      if (i % 3 == 0 && values.size() < 30) {
+        values.add(i);
+        expectedDocuments.add("coll/doc" + i);
+      }
+    }
+
+    Query query = query("coll").filter(filter("count", "in", values));
+    verifyResults(query, expectedDocuments.toArray(new String[0]));
+  }
+
+  @Test
+  public void testInFilterWithLimit() {
+    setUpSingleValueFilter();
+    Query query =
+        query("coll").filter(filter("count", "in", Arrays.asList(1, 2, 3))).limitToFirst(2);
+    verifyResults(query, "coll/doc1", "coll/doc2");
+  }
+
+  @Test
+  public void testConsecutiveInFiltersDoNotShareBounds() {
+    setUpSingleValueFilter();
+    verifyResults(
+        query("coll").filter(filter("count", "in", Arrays.asList(1, 2))), "coll/doc1", "coll/doc2");
+    verifyResults(query("coll").filter(filter("count", "in", Arrays.asList(3, 4))), "coll/doc3");
+  }
+
+  @Test
+  public void testInFilterDoesNotCreateTemporaryTables() {
+    setUpSingleValueFilter();
+    verifyResults(
+        query("coll").filter(filter("count", "in", Arrays.asList(1, 2))), "coll/doc1", "coll/doc2");
+    int temporaryTables =
+        ((SQLitePersistence) persistence)
+            .query("SELECT COUNT(*) FROM sqlite_temp_master")
+            .firstValue(row -> row.getInt(0));
+    assertEquals(0, temporaryTables);
+  }
+
+  @Test
+  public void testBoundsTableDoesNotUseCommonTableExpressions() {
+    // WITH clauses are not supported by the SQLite versions that ship with API levels 19 and 20.
+    assertEquals(
+        "(SELECT ? AS array_value, ? AS lower_bound, ? AS upper_bound "
+            + "UNION ALL SELECT ?, ?, ? UNION ALL SELECT ?, ?, ?) AS b ",
+        SQLiteIndexManager.generateBoundsTable(
+            /* boundsCount= */ 3,
+            /* hasArrayValues= */ true,
+            /* hasLowerBounds= */ true,
+            /* hasUpperBounds= */ true));
+    assertEquals(
+        "(SELECT ? AS lower_bound UNION ALL SELECT ?) AS b ",
+        SQLiteIndexManager.generateBoundsTable(
+            /* boundsCount= */ 2,
+            /* hasArrayValues= */ false,
+            /* hasLowerBounds= */ true,
+            /* hasUpperBounds= */ false));
+  }
+
+  @Test
+  public void testArrayContainsAnyWithRangeFilter() {
+    indexManager.addFieldIndex(
+        new FieldIndex("coll")
+            .withAddedField(field("values"), FieldIndex.Segment.Kind.CONTAINS)
+            .withAddedField(field("count"), FieldIndex.Segment.Kind.ASCENDING));
+    addDoc("coll/doc1", map("values", Arrays.asList(1, 2), "count", 1));
+    addDoc("coll/doc2", map("values", Arrays.asList(2, 3), "count", 2));
+    addDoc("coll/doc3", map("values", Arrays.asList(3, 4), "count", 3));
+    addDoc("coll/doc4", map("values", Arrays.asList(5), "count", 2));
+
+    // Combines array values, lower bounds and upper bounds in the bounds table.
+    Query query =
+        query("coll")
+            .filter(filter("values", "array-contains-any", Arrays.asList(1, 3)))
+            .filter(filter("count", ">=", 2));
+    verifyResults(query, "coll/doc2", "coll/doc3");
+  }
+
   @Test
   public void testNotInFilter() {
     setUpSingleValueFilter();
@@ -665,6 +750,23 @@ public class SQLiteIndexManagerTest extends IndexManagerTestCase {
     assertEquals("coll2", collectionGroups.get(1));
   }
 
+  @Test
+  public void testIndexesWithSharedFields() {
+    indexManager.addFieldIndex(
+        new FieldIndex("coll").withAddedField(field("a"), FieldIndex.Segment.Kind.ASCENDING));
+    indexManager.addFieldIndex(
+        new FieldIndex("coll")
+            .withAddedField(field("a"), FieldIndex.Segment.Kind.ASCENDING)
+            .withAddedField(field("b"), FieldIndex.Segment.Kind.DESCENDING));
+    addDoc("coll/doc1", map("a", 1, "b", 1));
+    addDoc("coll/doc2", map("a", 1, "b", 2));
+    addDoc("coll/doc3", map("a", 2));
+
+    verifyResults(query("coll").filter(filter("a", "==", 1)), "coll/doc1", "coll/doc2");
+    verifyResults(
+        query("coll").filter(filter("a", "==", 1)).filter(filter("b", "==", 2)), "coll/doc2");
+  }
+
   private void addDoc(String key, Map<String, Object> data) {
     MutableDocument doc = doc(key, 1, data);
     indexManager.handleDocumentChange(null, doc);
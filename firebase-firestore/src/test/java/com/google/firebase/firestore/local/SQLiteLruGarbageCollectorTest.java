@@ -14,6 +14,22 @@
 
 package com.google.firebase.firestore.local;
 
+import static com.google.firebase.firestore.testutil.TestUtil.doc;
+import static com.google.firebase.firestore.testutil.TestUtil.key;
+import static com.google.firebase.firestore.testutil.TestUtil.map;
+import static com.google.firebase.firestore.testutil.TestUtil.query;
+import static com.google.firebase.firestore.testutil.TestUtil.resumeToken;
+import static com.google.firebase.firestore.testutil.TestUtil.setMutation;
+import static com.google.firebase.firestore.testutil.TestUtil.version;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.auth.User;
+import com.google.firebase.firestore.model.mutation.MutationBatch;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
@@ -25,4 +41,98 @@ public class SQLiteLruGarbageCollectorTest extends LruGarbageCollectorTestCase {
   Persistence createPersistence(LruGarbageCollector.Params params) {
     return PersistenceTestHelpers.createSQLitePersistence(params);
   }
+
+  @Test
+  public void testTrackedSizeMatchesStoredDocuments() {
+    SQLitePersistence persistence = PersistenceTestHelpers.createSQLitePersistence();
+    RemoteDocumentCache documentCache = persistence.getRemoteDocumentCache();
+
+    // Start tracking before any documents are written.
+    assertEquals(0, persistence.getRemoteDocumentsSize().getByteSize());
+
+    persistence.runTransaction(
+        "Write documents",
+        () -> {
+          documentCache.add(doc("coll/a", 1, map("foo", "bar")), version(1));
+          documentCache.add(doc("coll/b", 1, map("foo", "bar")), version(1));
+          documentCache.add(doc("coll/a", 2, map("foo", "a longer value")), version(2));
+          documentCache.remove(key("coll/b"));
+        });
+
+    SQLiteTableSize recomputedSize =
+        new SQLiteTableSize(persistence, "remote_documents", "contents");
+    assertEquals(recomputedSize.getByteSize(), persistence.getRemoteDocumentsSize().getByteSize());
+    persistence.shutdown();
+  }
+
+  @Test
+  public void testTrackedSizeMatchesStoredDocumentsThatWereReadBeforeWrites() {
+    SQLitePersistence persistence = PersistenceTestHelpers.createSQLitePersistence();
+    RemoteDocumentCache documentCache = persistence.getRemoteDocumentCache();
+    persistence.runTransaction(
+        "Write documents",
+        () -> documentCache.add(doc("coll/a", 1, map("foo", "bar")), version(1)));
+
+    assertTrue(persistence.getRemoteDocumentsSize().getByteSize() > 0);
+
+    persistence.runTransaction(
+        "Update documents",
+        () -> {
+          documentCache.getAll(Arrays.asList(key("coll/a"), key("coll/b")));
+          documentCache.add(doc("coll/a", 2, map("foo", "a longer value")), version(2));
+          documentCache.add(doc("coll/b", 2, map("foo", "bar")), version(2));
+          documentCache.get(key("coll/a"));
+          documentCache.remove(key("coll/a"));
+        });
+
+    SQLiteTableSize recomputedSize =
+        new SQLiteTableSize(persistence, "remote_documents", "contents");
+    assertEquals(recomputedSize.getByteSize(), persistence.getRemoteDocumentsSize().getByteSize());
+    persistence.shutdown();
+  }
+
+  @Test
+  public void testTrackedSizeMatchesStoredTargetsAndMutations() {
+    SQLitePersistence persistence = PersistenceTestHelpers.createSQLitePersistence();
+    SQLiteTargetCache targetCache = persistence.getTargetCache();
+    MutationQueue mutationQueue = persistence.getMutationQueue(User.UNAUTHENTICATED);
+    persistence.runTransaction("Start mutation queue", mutationQueue::start);
+
+    // Start tracking before any targets or mutations are written.
+    assertEquals(0, persistence.getTargetsSize().getByteSize());
+    assertEquals(0, persistence.getMutationsSize().getByteSize());
+
+    TargetData targetData =
+        new TargetData(query("coll").toTarget(), 1, /* sequenceNumber= */ 1, QueryPurpose.LISTEN);
+    persistence.runTransaction(
+        "Write targets and mutations",
+        () -> {
+          targetCache.addTargetData(targetData);
+          targetCache.updateTargetData(
+              targetData.withResumeToken(resumeToken(1000), version(1000)));
+          targetCache.addTargetData(
+              new TargetData(
+                  query("other").toTarget(), 2, /* sequenceNumber= */ 1, QueryPurpose.LISTEN));
+          targetCache.removeTargetData(targetData);
+
+          mutationQueue.addMutationBatch(
+              Timestamp.now(),
+              Collections.emptyList(),
+              Collections.singletonList(setMutation("coll/a", map("foo", "bar"))));
+          MutationBatch batch =
+              mutationQueue.addMutationBatch(
+                  Timestamp.now(),
+                  Collections.emptyList(),
+                  Collections.singletonList(setMutation("coll/b", map("foo", "bar"))));
+          mutationQueue.removeMutationBatch(batch);
+        });
+
+    assertEquals(
+        new SQLiteTableSize(persistence, "targets", "target_proto").getByteSize(),
+        persistence.getTargetsSize().getByteSize());
+    assertEquals(
+        new SQLiteTableSize(persistence, "mutations", "mutations").getByteSize(),
+        persistence.getMutationsSize().getByteSize());
+    persistence.shutdown();
+  }
 }
@@ -14,6 +14,16 @@
 
 package com.google.firebase.firestore.local;
 
+import static com.google.firebase.firestore.testutil.TestUtil.map;
+import static com.google.firebase.firestore.testutil.TestUtil.setMutation;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.assertEquals;
+
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.auth.User;
+import com.google.firebase.firestore.model.mutation.MutationBatch;
+import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
@@ -26,4 +36,34 @@ public class SQLiteMutationQueueTest extends MutationQueueTestCase {
   Persistence getPersistence() {
     return PersistenceTestHelpers.createSQLitePersistence();
   }
+
+  @Test
+  public void testBatchIdsAreUniqueAcrossUsers() {
+    SQLitePersistence persistence = PersistenceTestHelpers.createSQLitePersistence();
+    persistence.getReferenceDelegate().setInMemoryPins(new ReferenceSet());
+    MutationQueue queue1 = persistence.getMutationQueue(new User("user1"));
+    MutationQueue queue2 = persistence.getMutationQueue(new User("user2"));
+    persistence.runTransaction(
+        "Start queues",
+        () -> {
+          queue1.start();
+          queue2.start();
+        });
+
+    // The second queue was started before the first queue wrote its batches, but must still
+    // continue after the highest batch ID in the database.
+    addMutationBatch(persistence, queue1);
+    MutationBatch batch = addMutationBatch(persistence, queue1);
+    assertEquals(batch.getBatchId() + 1, addMutationBatch(persistence, queue2).getBatchId());
+
+    persistence.shutdown();
+  }
+
+  private static MutationBatch addMutationBatch(Persistence persistence, MutationQueue queue) {
+    return persistence.runTransaction(
+        "New mutation batch",
+        () ->
+            queue.addMutationBatch(
+                Timestamp.now(), emptyList(), singletonList(setMutation("foo/bar", map("a", 1)))));
+  }
 }
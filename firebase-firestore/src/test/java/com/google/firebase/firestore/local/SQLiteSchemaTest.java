@@ -435,6 +435,9 @@ public class SQLiteSchemaTest {
         "INSERT INTO remote_documents (path, read_time_seconds, read_time_nanos, contents) VALUES (?, ?, ?, ?)",
         new Object[] {encode(path("coll/new")), 0, 3000, createDummyDocument("coll/new")});
 
+    // Populate the path length column that is used for collection scans.
+    schema.runMigrations(10, SQLiteSchema.VERSION);
+
     SQLiteRemoteDocumentCache remoteDocumentCache = createRemoteDocumentCache();
 
     // Verify that queries with SnapshotVersion.NONE return all results, regardless of whether the
@@ -449,6 +452,173 @@ public class SQLiteSchemaTest {
     assertResultsContain(results, "coll/new");
   }
 
+  @Test
+  public void addsPathLength() {
+    schema.runMigrations(0, 12);
+
+    // Note this count is higher than the batch size during migration, which is 100.
+    int documentCount = 250;
+    for (int i = 0; i < documentCount; i++) {
+      String path = "coll/doc_" + i + "/subcoll/doc";
+      db.execSQL(
+          "INSERT INTO remote_documents (path) VALUES (?)", new String[] {encode(path(path))});
+    }
+    db.execSQL(
+        "INSERT INTO remote_documents (path) VALUES (?)", new String[] {encode(path("coll/doc"))});
+
+    schema.runMigrations(12, 13);
+
+    assertNoResultsForQuery(
+        "SELECT path FROM remote_documents WHERE path_length IS NULL", NO_ARGS);
+    new SQLitePersistence.Query(db, "SELECT COUNT(*) FROM remote_documents WHERE path_length = 4")
+        .first(row -> assertEquals(documentCount, row.getLong(0)));
+    new SQLitePersistence.Query(db, "SELECT path FROM remote_documents WHERE path_length = 2")
+        .first(row -> assertEquals(path("coll/doc"), decodeResourcePath(row.getString(0))));
+  }
+
+  @Test
+  public void collectionQueriesSkipSubcollectionsAfterPathLengthMigration() {
+    schema.runMigrations(0, 12);
+    db.execSQL(
+        "INSERT INTO remote_documents (path, read_time_seconds, read_time_nanos, contents) VALUES (?, ?, ?, ?)",
+        new Object[] {encode(path("coll/doc")), 0, 1000, createDummyDocument("coll/doc")});
+    db.execSQL(
+        "INSERT INTO remote_documents (path, read_time_seconds, read_time_nanos, contents) VALUES (?, ?, ?, ?)",
+        new Object[] {
+          encode(path("coll/doc/sub/doc")), 0, 1000, createDummyDocument("coll/doc/sub/doc")
+        });
+
+    schema.runMigrations(12, SQLiteSchema.VERSION);
+
+    SQLiteRemoteDocumentCache remoteDocumentCache = createRemoteDocumentCache();
+    ImmutableSortedMap<DocumentKey, MutableDocument> results =
+        remoteDocumentCache.getAllDocumentsMatchingQuery(query("coll"), version(0));
+    assertResultsContain(results, "coll/doc");
+    results = remoteDocumentCache.getAllDocumentsMatchingQuery(query("coll/doc/sub"), version(0));
+    assertResultsContain(results, "coll/doc/sub/doc");
+  }
+
+  @Test
+  public void addsDocumentMutationsPathLength() {
+    schema.runMigrations(0, 13);
+
+    // Note this count is higher than the batch size during migration, which is 100.
+    int batchCount = 250;
+    for (int i = 0; i < batchCount; i++) {
+      addMutationBatch(db, i + 1, "user", "coll/doc_" + i + "/subcoll/doc");
+    }
+    addMutationBatch(db, batchCount + 1, "user", "coll/doc");
+
+    schema.runMigrations(13, 14);
+
+    assertNoResultsForQuery(
+        "SELECT path FROM document_mutations WHERE path_length IS NULL", NO_ARGS);
+    new SQLitePersistence.Query(
+            db, "SELECT COUNT(*) FROM document_mutations WHERE path_length = 4")
+        .first(row -> assertEquals(batchCount, row.getLong(0)));
+    new SQLitePersistence.Query(db, "SELECT path FROM document_mutations WHERE path_length = 2")
+        .first(row -> assertEquals(path("coll/doc"), decodeResourcePath(row.getString(0))));
+  }
+
+  @Test
+  public void addsPathLengthToDatabasesAtFormerOverlayVersion() {
+    // Simulates a database that an earlier SDK migrated to version 13 with the overlay migration,
+    // which did not add the path length columns.
+    schema.runMigrations(0, 12);
+    db.execSQL(
+        "INSERT INTO remote_documents (path) VALUES (?)",
+        new String[] {encode(path("coll/doc/subcoll/doc"))});
+    addMutationBatch(db, 1, "user", "coll/doc/subcoll/doc");
+
+    schema.runMigrations(13, SQLiteSchema.VERSION);
+
+    assertNoResultsForQuery(
+        "SELECT path FROM remote_documents WHERE path_length IS NULL", NO_ARGS);
+    assertNoResultsForQuery(
+        "SELECT path FROM document_mutations WHERE path_length IS NULL", NO_ARGS);
+    new SQLitePersistence.Query(db, "SELECT path_length FROM remote_documents")
+        .first(row -> assertEquals(4, row.getInt(0)));
+    new SQLitePersistence.Query(db, "SELECT path_length FROM document_mutations")
+        .first(row -> assertEquals(4, row.getInt(0)));
+  }
+
+  @Test
+  public void populatesPathLengthWrittenByOlderVersions() {
+    schema.runMigrations(0, 14);
+
+    // Older versions of the SDK do not write the path length columns.
+    db.execSQL(
+        "INSERT INTO remote_documents (path) VALUES (?)",
+        new String[] {encode(path("coll/doc/subcoll/doc"))});
+    addMutationBatch(db, 1, "user", "coll/doc/subcoll/doc");
+
+    schema.runMigrations(14, SQLiteSchema.VERSION);
+
+    assertNoResultsForQuery(
+        "SELECT path FROM remote_documents WHERE path_length IS NULL", NO_ARGS);
+    assertNoResultsForQuery(
+        "SELECT path FROM document_mutations WHERE path_length IS NULL", NO_ARGS);
+  }
+
+  @Test
+  public void addsCollectionGroups() {
+    schema.runMigrations(0, 14);
+
+    // Note this count is higher than the batch size during migration, which is 100.
+    int documentCount = 250;
+    for (int i = 0; i < documentCount; i++) {
+      String path = "coll/doc_" + i + "/subcoll/doc";
+      db.execSQL(
+          "INSERT INTO remote_documents (path) VALUES (?)", new String[] {encode(path(path))});
+      addMutationBatch(db, i + 1, "user", path);
+    }
+    db.execSQL(
+        "INSERT INTO remote_documents (path) VALUES (?)", new String[] {encode(path("coll/doc"))});
+    addMutationBatch(db, documentCount + 1, "user", "coll/doc");
+
+    schema.runMigrations(14, 15);
+
+    assertNoResultsForQuery(
+        "SELECT path FROM remote_documents WHERE collection_group IS NULL", NO_ARGS);
+    assertNoResultsForQuery(
+        "SELECT path FROM document_mutations WHERE collection_group IS NULL", NO_ARGS);
+    new SQLitePersistence.Query(
+            db, "SELECT COUNT(*) FROM remote_documents WHERE collection_group = 'subcoll'")
+        .first(row -> assertEquals(documentCount, row.getLong(0)));
+    new SQLitePersistence.Query(
+            db, "SELECT COUNT(*) FROM document_mutations WHERE collection_group = 'subcoll'")
+        .first(row -> assertEquals(documentCount, row.getLong(0)));
+    new SQLitePersistence.Query(
+            db, "SELECT path FROM remote_documents WHERE collection_group = 'coll'")
+        .first(row -> assertEquals(path("coll/doc"), decodeResourcePath(row.getString(0))));
+  }
+
+  @Test
+  public void collectionGroupQueriesReadMigratedDocuments() {
+    schema.runMigrations(0, 14);
+    db.execSQL(
+        "INSERT INTO remote_documents (path, read_time_seconds, read_time_nanos, contents) VALUES (?, ?, ?, ?)",
+        new Object[] {encode(path("coll/doc")), 0, 1000, createDummyDocument("coll/doc")});
+    db.execSQL(
+        "INSERT INTO remote_documents (path, read_time_seconds, read_time_nanos, contents) VALUES (?, ?, ?, ?)",
+        new Object[] {
+          encode(path("other/doc/coll/doc")), 0, 1000, createDummyDocument("other/doc/coll/doc")
+        });
+    db.execSQL(
+        "INSERT INTO remote_documents (path, read_time_seconds, read_time_nanos, contents) VALUES (?, ?, ?, ?)",
+        new Object[] {
+          encode(path("coll/doc/sub/doc")), 0, 1000, createDummyDocument("coll/doc/sub/doc")
+        });
+
+    schema.runMigrations(14, SQLiteSchema.VERSION);
+
+    SQLiteRemoteDocumentCache remoteDocumentCache = createRemoteDocumentCache();
+    ImmutableSortedMap<DocumentKey, MutableDocument> results =
+        remoteDocumentCache.getAllDocumentsMatchingQuery(
+            new Query(ResourcePath.EMPTY, "coll"), version(0));
+    assertResultsContain(results, "coll/doc", "other/doc/coll/doc");
+  }
+
   @Test
   public void dropsLastLimboFreeSnapshotIfPreviouslyDowngraded() {
     schema.runMigrations(0, 9);
@@ -26,6 +26,8 @@ import static org.junit.Assert.assertNull;
 import com.google.firebase.firestore.model.mutation.FieldMask;
 import com.google.firestore.v1.MapValue;
 import com.google.firestore.v1.Value;
+import com.google.protobuf.ByteString;
+import java.util.HashMap;
 import java.util.Map;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -61,6 +63,36 @@ public class ObjectValueTest {
     assertNull(obj.get(field("bar.a")));
   }
 
+  @Test
+  public void testExtractsFieldsFromSerializedFields() {
+    ObjectValue obj = lazyObject(wrapObject("foo", map("a", 1, "b", true), "bar", "string"));
+    assertEquals(wrap(1), obj.get(field("foo.a")));
+    assertEquals(wrap(true), obj.get(field("foo.b")));
+    assertEquals(wrap("string"), obj.get(field("bar")));
+
+    assertNull(obj.get(field("foo.a.b")));
+    assertNull(obj.get(field("bar.a")));
+    assertNull(obj.get(field("baz")));
+  }
+
+  @Test
+  public void testSerializedFieldsEqualParsedFields() {
+    ObjectValue expected = wrapObject("foo", map("a", 1, "b", true), "bar", "string");
+    ObjectValue obj = lazyObject(expected);
+    assertEquals(wrap("string"), obj.get(field("bar")));
+    assertEquals(expected, obj);
+    assertEquals(expected, lazyObject(expected).clone());
+  }
+
+  @Test
+  public void testModifiesSerializedFields() {
+    ObjectValue obj = lazyObject(wrapObject("foo", map("a", 1, "b", true), "bar", "string"));
+    obj.set(field("foo.a"), wrap(2));
+    obj.delete(field("bar"));
+    assertEquals(wrap(2), obj.get(field("foo.a")));
+    assertEquals(wrapObject("foo", map("a", 2, "b", true)), obj);
+  }
+
   @Test
   public void testExtractsFieldMask() {
     ObjectValue val =
@@ -285,4 +317,12 @@ public class ObjectValueTest {
     objectValue.set(field("a.c"), fooValue);
     assertEquals(wrapObject("a", map("b", fooString, "c", fooString)), objectValue);
   }
+
+  private ObjectValue lazyObject(ObjectValue value) {
+    Map<String, ByteString> fields = new HashMap<>();
+    for (Map.Entry<String, Value> entry : value.getFieldsMap().entrySet()) {
+      fields.put(entry.getKey(), entry.getValue().toByteString());
+    }
+    return ObjectValue.fromSerializedFields(fields);
+  }
 }
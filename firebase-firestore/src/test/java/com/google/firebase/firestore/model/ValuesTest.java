@@ -317,10 +317,33 @@ public class ValuesTest {
         "{a:[b,{c:geo(30.0,60.0)}]}");
   }
 
+  @Test
+  public void testObjectOrderingIgnoresSortOrder() {
+    new ComparatorTester()
+        .addEqualityGroup(wrap(map("a", 1, "b", 2)), wrap(map("b", 2, "a", 1)))
+        .addEqualityGroup(wrap(map("a", 1, "b", 3)), wrap(map("b", 3, "a", 1)))
+        .addEqualityGroup(wrap(map("a", 1, "c", 0)), wrap(map("c", 0, "a", 1)))
+        .addEqualityGroup(wrap(map("b", 0)))
+        .testCompare();
+  }
+
+  @Test
+  public void testReferenceOrdering() {
+    new ComparatorTester()
+        .addEqualityGroup(wrap(wrapRef(dbId("p1", "d1"), key("c1/doc1"))))
+        .addEqualityGroup(wrap(wrapRef(dbId("p1", "d1"), key("c1/doc1/c2/doc1"))))
+        .addEqualityGroup(wrap(wrapRef(dbId("p1", "d1"), key("c1/doc10"))))
+        .addEqualityGroup(wrap(wrapRef(dbId("p1", "d1"), key("c1/doc2"))))
+        .addEqualityGroup(wrap(wrapRef(dbId("p1", "d1"), key("c1a/doc1"))))
+        .testCompare();
+  }
+
   @Test
   public void testObjectCanonicalIdsIgnoreSortOrder() {
     assertCanonicalId(TestUtil.wrap(map("a", 1, "b", 2, "c", "3")), "{a:1,b:2,c:3}");
     assertCanonicalId(TestUtil.wrap(map("c", 3, "b", 2, "a", "1")), "{a:1,b:2,c:3}");
+    assertCanonicalId(
+        TestUtil.wrap(map("b", map("d", 1, "c", 2), "a", true)), "{a:true,b:{c:2,d:1}}");
   }
 
   private void assertCanonicalId(Value proto, String expectedCanonicalId) {
@@ -0,0 +1,96 @@
+// Copyright 2021 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore.remote;
+
+import static com.google.firebase.firestore.testutil.TestUtil.bloomFilter;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.protobuf.ByteString;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class BloomFilterTest {
+
+  @Test
+  public void testEmptyBloomFilterContainsNothing() {
+    BloomFilter bloomFilter = new BloomFilter(ByteString.EMPTY, 0, 0);
+    assertEquals(0, bloomFilter.getBitCount());
+    assertFalse(bloomFilter.mightContain(""));
+    assertFalse(bloomFilter.mightContain("a"));
+  }
+
+  @Test
+  public void testBitCountExcludesPadding() {
+    BloomFilter bloomFilter = new BloomFilter(ByteString.copyFrom(new byte[] {0, 0}), 3, 1);
+    assertEquals(13, bloomFilter.getBitCount());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRejectsNegativePadding() {
+    new BloomFilter(ByteString.copyFrom(new byte[] {1}), -1, 1);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRejectsPaddingOfEightOrMore() {
+    new BloomFilter(ByteString.copyFrom(new byte[] {1}), 8, 1);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRejectsMissingHashCountForNonEmptyBitmap() {
+    new BloomFilter(ByteString.copyFrom(new byte[] {1}), 0, 0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRejectsPaddingForEmptyBitmap() {
+    new BloomFilter(ByteString.EMPTY, 1, 1);
+  }
+
+  @Test
+  public void testContainsAllAddedValues() {
+    String[] values = new String[100];
+    for (int i = 0; i < values.length; ++i) {
+      values[i] = "projects/p/databases/d/documents/coll/doc" + i;
+    }
+
+    BloomFilter bloomFilter = bloomFilter(/* bitCount= */ 1021, /* hashCount= */ 7, values);
+    for (String value : values) {
+      assertTrue(bloomFilter.mightContain(value));
+    }
+  }
+
+  @Test
+  public void testFalsePositiveRateIsBounded() {
+    String[] values = new String[100];
+    for (int i = 0; i < values.length; ++i) {
+      values[i] = "projects/p/databases/d/documents/coll/doc" + i;
+    }
+
+    // With 10 bits per entry and 7 hash functions the expected false positive rate is about 1%.
+    BloomFilter bloomFilter = bloomFilter(/* bitCount= */ 1000, /* hashCount= */ 7, values);
+    int falsePositives = 0;
+    for (int i = 0; i < 1000; ++i) {
+      if (bloomFilter.mightContain("projects/p/databases/d/documents/coll/other" + i)) {
+        ++falsePositives;
+      }
+    }
+    assertTrue("Too many false positives: " + falsePositives, falsePositives < 50);
+  }
+}
@@ -16,6 +16,7 @@ package com.google.firebase.firestore.remote;
 
 import static com.google.firebase.firestore.testutil.TestUtil.activeLimboQueries;
 import static com.google.firebase.firestore.testutil.TestUtil.activeQueries;
+import static com.google.firebase.firestore.testutil.TestUtil.bloomFilter;
 import static com.google.firebase.firestore.testutil.TestUtil.deletedDoc;
 import static com.google.firebase.firestore.testutil.TestUtil.doc;
 import static com.google.firebase.firestore.testutil.TestUtil.key;
@@ -456,6 +457,94 @@ public class RemoteEventTest {
     assertEquals(0, event.getDocumentUpdates().size());
   }
 
+  @Test
+  public void testExistenceFilterMismatchWithBloomFilterRemovesDeletedDocuments() {
+    Map<Integer, TargetData> targetMap = activeQueries(1);
+
+    MutableDocument doc1 = doc("docs/1", 1, map("value", 1));
+    MutableDocument doc2 = doc("docs/2", 2, map("value", 2));
+    MutableDocument doc3 = doc("docs/3", 3, map("value", 3));
+
+    WatchChangeAggregator aggregator =
+        createAggregator(
+            targetMap,
+            noOutstandingResponses,
+            keySet(doc1.getKey(), doc2.getKey(), doc3.getKey()));
+    aggregator.createRemoteEvent(version(3));
+
+    // doc2 was deleted while the client was offline. The bloom filter only contains the documents
+    // that did not change.
+    BloomFilter unchangedNames =
+        bloomFilter(
+            /* bitCount= */ 1000,
+            /* hashCount= */ 7,
+            "projects/test-project/databases/(default)/documents/docs/1",
+            "projects/test-project/databases/(default)/documents/docs/3");
+    aggregator.handleExistenceFilter(
+        new WatchChange.ExistenceFilterWatchChange(1, new ExistenceFilter(2, unchangedNames)));
+
+    RemoteEvent event = aggregator.createRemoteEvent(version(4));
+
+    assertEquals(0, event.getTargetMismatches().size());
+    assertEquals(1, event.getTargetChanges().size());
+    TargetChange mapping = targetChange(resumeToken, false, null, null, asList(doc2));
+    assertEquals(mapping, event.getTargetChanges().get(1));
+    assertEquals(1, aggregator.getExistenceFilterMismatchCount());
+    assertEquals(1, aggregator.getBloomFilterResolvedMismatchCount());
+  }
+
+  @Test
+  public void testExistenceFilterMismatchResetsTargetIfBloomFilterDoesNotMatch() {
+    Map<Integer, TargetData> targetMap = activeQueries(1);
+
+    MutableDocument doc1 = doc("docs/1", 1, map("value", 1));
+    MutableDocument doc2 = doc("docs/2", 2, map("value", 2));
+
+    WatchChangeAggregator aggregator =
+        createAggregator(targetMap, noOutstandingResponses, keySet(doc1.getKey(), doc2.getKey()));
+    aggregator.createRemoteEvent(version(3));
+
+    // The bloom filter claims that both documents are unchanged, which contradicts the count.
+    BloomFilter unchangedNames =
+        bloomFilter(
+            /* bitCount= */ 1000,
+            /* hashCount= */ 7,
+            "projects/test-project/databases/(default)/documents/docs/1",
+            "projects/test-project/databases/(default)/documents/docs/2");
+    aggregator.handleExistenceFilter(
+        new WatchChange.ExistenceFilterWatchChange(1, new ExistenceFilter(1, unchangedNames)));
+
+    RemoteEvent event = aggregator.createRemoteEvent(version(4));
+
+    assertEquals(1, event.getTargetMismatches().size());
+    assertEquals(1, aggregator.getExistenceFilterMismatchCount());
+    assertEquals(0, aggregator.getBloomFilterResolvedMismatchCount());
+  }
+
+  @Test
+  public void testExistenceFilterMismatchResetsTargetIfBloomFilterIsEmpty() {
+    Map<Integer, TargetData> targetMap = activeQueries(1);
+
+    MutableDocument doc1 = doc("docs/1", 1, map("value", 1));
+    MutableDocument doc2 = doc("docs/2", 2, map("value", 2));
+
+    WatchChangeAggregator aggregator =
+        createAggregator(targetMap, noOutstandingResponses, keySet(doc1.getKey(), doc2.getKey()));
+    aggregator.createRemoteEvent(version(3));
+
+    // Applying an empty bloom filter would remove every document, which happens to match the
+    // count. The target is reset instead.
+    BloomFilter unchangedNames = new BloomFilter(ByteString.EMPTY, 0, 0);
+    aggregator.handleExistenceFilter(
+        new WatchChange.ExistenceFilterWatchChange(1, new ExistenceFilter(0, unchangedNames)));
+
+    RemoteEvent event = aggregator.createRemoteEvent(version(4));
+
+    assertEquals(1, event.getTargetMismatches().size());
+    assertEquals(1, aggregator.getExistenceFilterMismatchCount());
+    assertEquals(0, aggregator.getBloomFilterResolvedMismatchCount());
+  }
+
   @Test
   public void testExistenceFilterMismatchRemovesCurrentChanges() {
     Map<Integer, TargetData> targetMap = activeQueries(1);
@@ -34,6 +34,7 @@ import static com.google.firebase.firestore.testutil.TestUtil.version;
 import static com.google.firebase.firestore.testutil.TestUtil.wrap;
 import static java.util.Arrays.asList;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
@@ -1072,6 +1073,54 @@ public final class RemoteSerializerTest {
         serializer.decodeQueryTarget(serializer.encodeQueryTarget(q.toTarget())), q.toTarget());
   }
 
+  @Test
+  public void testEncodesExpectedCountWithResumeToken() {
+    Query q = Query.atPath(ResourcePath.fromString("docs"));
+    TargetData targetData =
+        new TargetData(q.toTarget(), 1, 2, QueryPurpose.LISTEN)
+            .withResumeToken(TestUtil.resumeToken(1000), SnapshotVersion.NONE)
+            .withExpectedCount(42);
+    Target actual = serializer.encodeTarget(targetData);
+
+    assertEquals(TestUtil.resumeToken(1000), actual.getResumeToken());
+    assertEquals(Int32Value.newBuilder().setValue(42).build(), actual.getExpectedCount());
+  }
+
+  @Test
+  public void testEncodesExpectedCountWithReadTime() {
+    Query q = Query.atPath(ResourcePath.fromString("docs"));
+    TargetData targetData =
+        new TargetData(q.toTarget(), 1, 2, QueryPurpose.LISTEN)
+            .withResumeToken(ByteString.EMPTY, version(4000000))
+            .withExpectedCount(0);
+    Target actual = serializer.encodeTarget(targetData);
+
+    assertEquals(Timestamp.newBuilder().setSeconds(4).build(), actual.getReadTime());
+    assertTrue(actual.hasExpectedCount());
+    assertEquals(0, actual.getExpectedCount().getValue());
+  }
+
+  @Test
+  public void testDoesNotEncodeExpectedCountWithoutResumeTokenOrReadTime() {
+    Query q = Query.atPath(ResourcePath.fromString("docs"));
+    TargetData targetData =
+        new TargetData(q.toTarget(), 1, 2, QueryPurpose.LISTEN).withExpectedCount(42);
+    Target actual = serializer.encodeTarget(targetData);
+
+    assertFalse(actual.hasExpectedCount());
+  }
+
+  @Test
+  public void testDoesNotEncodeExpectedCountIfNotSet() {
+    Query q = Query.atPath(ResourcePath.fromString("docs"));
+    TargetData targetData =
+        new TargetData(q.toTarget(), 1, 2, QueryPurpose.LISTEN)
+            .withResumeToken(TestUtil.resumeToken(1000), SnapshotVersion.NONE);
+    Target actual = serializer.encodeTarget(targetData);
+
+    assertFalse(actual.hasExpectedCount());
+  }
+
   /**
    * Wraps the given query in TargetData. This is useful because the APIs we're testing accept
    * TargetData, but for the most part we're just testing variations on Query.
@@ -0,0 +1,275 @@
+// Copyright 2021 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore.remote;
+
+import static com.google.firebase.firestore.testutil.TestUtil.map;
+import static com.google.firebase.firestore.testutil.TestUtil.setMutation;
+import static com.google.firebase.firestore.testutil.TestUtil.version;
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.assertEquals;
+
+import androidx.test.core.app.ApplicationProvider;
+import com.google.firebase.database.collection.ImmutableSortedSet;
+import com.google.firebase.firestore.auth.User;
+import com.google.firebase.firestore.core.OnlineState;
+import com.google.firebase.firestore.local.DefaultQueryEngine;
+import com.google.firebase.firestore.local.LocalStore;
+import com.google.firebase.firestore.local.MemoryPersistence;
+import com.google.firebase.firestore.local.Persistence;
+import com.google.firebase.firestore.local.PersistenceTestHelpers;
+import com.google.firebase.firestore.model.DocumentKey;
+import com.google.firebase.firestore.model.mutation.Mutation;
+import com.google.firebase.firestore.model.mutation.MutationBatchResult;
+import com.google.firebase.firestore.model.mutation.MutationResult;
+import com.google.firebase.firestore.util.AsyncQueue;
+import com.google.firebase.firestore.util.Consumer;
+import io.grpc.Status;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class WritePipelineTest {
+  private AsyncQueue queue;
+  private MockDatastore datastore;
+  private LocalStore localStore;
+
+  private final List<Integer> acknowledgedBatchIds = new ArrayList<>();
+  private final List<Integer> rejectedBatchIds = new ArrayList<>();
+
+  @Before
+  public void setUp() {
+    queue = new AsyncQueue();
+    datastore =
+        new MockDatastore(
+            PersistenceTestHelpers.nextDatabaseInfo(),
+            queue,
+            ApplicationProvider.getApplicationContext());
+
+    Persistence persistence = MemoryPersistence.createEagerGcMemoryPersistence();
+    persistence.start();
+    localStore = new LocalStore(persistence, new DefaultQueryEngine(), User.UNAUTHENTICATED);
+    localStore.start();
+  }
+
+  private RemoteStore createRemoteStore(int maxPendingWrites, boolean writeCoalescingEnabled) {
+    RemoteStore.RemoteStoreCallback callback =
+        new RemoteStore.RemoteStoreCallback() {
+          @Override
+          public void handleRemoteEvent(RemoteEvent remoteEvent) {}
+
+          @Override
+          public void handleRejectedListen(int targetId, Status error) {}
+
+          @Override
+          public void handleSuccessfulWrite(MutationBatchResult successfulWrite) {
+            acknowledgedBatchIds.add(successfulWrite.getBatch().getBatchId());
+            localStore.acknowledgeBatch(successfulWrite);
+          }
+
+          @Override
+          public void handleRejectedWrite(int batchId, Status error) {
+            rejectedBatchIds.add(batchId);
+            localStore.rejectBatch(batchId);
+          }
+
+          @Override
+          public void handleOnlineStateChange(OnlineState onlineState) {}
+
+          @Override
+          public ImmutableSortedSet<DocumentKey> getRemoteKeysForTarget(int targetId) {
+            return DocumentKey.emptyKeySet();
+          }
+        };
+
+    ConnectivityMonitor connectivityMonitor =
+        new ConnectivityMonitor() {
+          @Override
+          public void addCallback(Consumer<NetworkStatus> callback) {}
+
+          @Override
+          public void shutdown() {}
+        };
+
+    return new RemoteStore(
+        callback,
+        localStore,
+        datastore,
+        queue,
+        connectivityMonitor,
+        maxPendingWrites,
+        writeCoalescingEnabled);
+  }
+
+  private int writeLocally(String path) {
+    Mutation mutation = setMutation(path, map("foo", "bar"));
+    return localStore.writeLocally(singletonList(mutation)).getBatchId();
+  }
+
+  private void ackWrite(int mutationCount) {
+    List<MutationResult> results = new ArrayList<>();
+    for (int i = 0; i < mutationCount; ++i) {
+      results.add(new MutationResult(version(1), Collections.emptyList()));
+    }
+    queue.runSync(() -> datastore.ackWrite(version(1), results));
+  }
+
+  @Test
+  public void testSendsEachBatchSeparatelyWithDefaultWindow() {
+    RemoteStore remoteStore =
+        createRemoteStore(
+            RemoteStore.DEFAULT_MAX_PENDING_WRITES, /* writeCoalescingEnabled= */ false);
+    int batch1 = writeLocally("coll/a");
+    int batch2 = writeLocally("coll/b");
+
+    queue.runSync(remoteStore::forceEnableNetwork);
+
+    assertEquals(2, datastore.writesSent());
+    assertEquals(1, datastore.waitForWriteSend().size());
+    assertEquals(1, datastore.waitForWriteSend().size());
+
+    ackWrite(1);
+    ackWrite(1);
+    assertEquals(asList(batch1, batch2), acknowledgedBatchIds);
+  }
+
+  @Test
+  public void testLargerWindowDoesNotCoalesceBatchesByDefault() {
+    RemoteStore remoteStore = createRemoteStore(100, /* writeCoalescingEnabled= */ false);
+    int batch1 = writeLocally("coll/a");
+    int batch2 = writeLocally("coll/b");
+    int batch3 = writeLocally("coll/c");
+
+    queue.runSync(remoteStore::forceEnableNetwork);
+
+    // All batches are sent right away, but each in a request of its own.
+    assertEquals(3, datastore.writesSent());
+    assertEquals(1, datastore.waitForWriteSend().size());
+    assertEquals(1, datastore.waitForWriteSend().size());
+    assertEquals(1, datastore.waitForWriteSend().size());
+
+    ackWrite(1);
+    ackWrite(1);
+    ackWrite(1);
+    assertEquals(asList(batch1, batch2, batch3), acknowledgedBatchIds);
+  }
+
+  @Test
+  public void testCoalescesAdjacentBatchesWithDefaultWindow() {
+    RemoteStore remoteStore =
+        createRemoteStore(
+            RemoteStore.DEFAULT_MAX_PENDING_WRITES, /* writeCoalescingEnabled= */ true);
+    int batch1 = writeLocally("coll/a");
+    int batch2 = writeLocally("coll/b");
+
+    queue.runSync(remoteStore::forceEnableNetwork);
+
+    assertEquals(1, datastore.writesSent());
+    assertEquals(2, datastore.waitForWriteSend().size());
+
+    ackWrite(2);
+    assertEquals(asList(batch1, batch2), acknowledgedBatchIds);
+  }
+
+  @Test
+  public void testCoalescesAdjacentBatches() {
+    RemoteStore remoteStore = createRemoteStore(100, /* writeCoalescingEnabled= */ true);
+    int batch1 = writeLocally("coll/a");
+    int batch2 = writeLocally("coll/b");
+    int batch3 = writeLocally("coll/c");
+
+    queue.runSync(remoteStore::forceEnableNetwork);
+
+    assertEquals(1, datastore.writesSent());
+    List<Mutation> request = datastore.waitForWriteSend();
+    assertEquals(3, request.size());
+
+    ackWrite(3);
+    assertEquals(asList(batch1, batch2, batch3), acknowledgedBatchIds);
+  }
+
+  @Test
+  public void testDoesNotCoalesceBatchesThatWriteTheSameDocument() {
+    RemoteStore remoteStore = createRemoteStore(100, /* writeCoalescingEnabled= */ true);
+    int batch1 = writeLocally("coll/a");
+    int batch2 = writeLocally("coll/b");
+    int batch3 = writeLocally("coll/a");
+
+    queue.runSync(remoteStore::forceEnableNetwork);
+
+    assertEquals(2, datastore.writesSent());
+    assertEquals(2, datastore.waitForWriteSend().size());
+    assertEquals(1, datastore.waitForWriteSend().size());
+
+    ackWrite(2);
+    assertEquals(asList(batch1, batch2), acknowledgedBatchIds);
+    ackWrite(1);
+    assertEquals(asList(batch1, batch2, batch3), acknowledgedBatchIds);
+  }
+
+  @Test
+  public void testWindowLimitsNumberOfPendingBatches() {
+    RemoteStore remoteStore = createRemoteStore(20, /* writeCoalescingEnabled= */ true);
+    for (int i = 0; i < 30; ++i) {
+      writeLocally("coll/doc" + i);
+    }
+
+    queue.runSync(remoteStore::forceEnableNetwork);
+
+    assertEquals(1, datastore.writesSent());
+    assertEquals(20, datastore.waitForWriteSend().size());
+
+    // Acknowledging the first request frees up the window for the remaining batches.
+    ackWrite(20);
+    assertEquals(1, datastore.writesSent());
+    assertEquals(10, datastore.waitForWriteSend().size());
+
+    ackWrite(10);
+    assertEquals(30, acknowledgedBatchIds.size());
+  }
+
+  @Test
+  public void testRejectedCoalescedRequestIsRetriedIndividually() {
+    RemoteStore remoteStore = createRemoteStore(100, /* writeCoalescingEnabled= */ true);
+    int batch1 = writeLocally("coll/a");
+    int batch2 = writeLocally("coll/b");
+
+    queue.runSync(remoteStore::forceEnableNetwork);
+    assertEquals(2, datastore.waitForWriteSend().size());
+
+    // The backend rejects the coalesced request. Neither batch is rejected yet, since it is not
+    // known which of them caused the error.
+    queue.runSync(() -> datastore.failWrite(Status.INVALID_ARGUMENT));
+    assertEquals(Collections.emptyList(), rejectedBatchIds);
+    assertEquals(2, datastore.writesSent());
+    assertEquals(1, datastore.waitForWriteSend().size());
+
+    // Once resent on its own, the first batch is rejected and the second batch is acknowledged.
+    queue.runSync(() -> datastore.failWrite(Status.INVALID_ARGUMENT));
+    assertEquals(singletonList(batch1), rejectedBatchIds);
+    assertEquals(1, datastore.writesSent());
+    assertEquals(1, datastore.waitForWriteSend().size());
+
+    ackWrite(1);
+    assertEquals(singletonList(batch2), acknowledgedBatchIds);
+  }
+}
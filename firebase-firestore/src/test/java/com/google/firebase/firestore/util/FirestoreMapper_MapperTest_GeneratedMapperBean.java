@@ -0,0 +1,88 @@
+// Copyright 2021 Google LLC
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.google.firebase.firestore.util;
+
+import com.google.firebase.firestore.GeneratedMapper;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Mirrors the mapper that the annotation processor generates for {@link
+ * MapperTest.GeneratedMapperBean}, with counters so that tests can verify that it is used. The
+ * private setter for "secret" is not accessible to generated code, so that property is only
+ * readable.
+ */
+public final class FirestoreMapper_MapperTest_GeneratedMapperBean
+    implements GeneratedMapper<MapperTest.GeneratedMapperBean> {
+  private static final Set<String> READABLE_PROPERTIES =
+      Collections.unmodifiableSet(new HashSet<>(Arrays.asList("name", "secret")));
+  private static final Set<String> WRITABLE_PROPERTIES =
+      Collections.unmodifiableSet(new HashSet<>(Arrays.asList("name")));
+
+  static int instancesCreated;
+  static int propertiesRead;
+  static int propertiesWritten;
+
+  static void resetCounters() {
+    instancesCreated = 0;
+    propertiesRead = 0;
+    propertiesWritten = 0;
+  }
+
+  public FirestoreMapper_MapperTest_GeneratedMapperBean() {}
+
+  @Override
+  public MapperTest.GeneratedMapperBean newInstance() {
+    ++instancesCreated;
+    return new MapperTest.GeneratedMapperBean();
+  }
+
+  @Override
+  public Set<String> getReadableProperties() {
+    return READABLE_PROPERTIES;
+  }
+
+  @Override
+  public Set<String> getWritableProperties() {
+    return WRITABLE_PROPERTIES;
+  }
+
+  @Override
+  public Object get(MapperTest.GeneratedMapperBean object, String property) {
+    ++propertiesRead;
+    switch (property) {
+      case "name":
+        return object.getName();
+      case "secret":
+        return object.getSecret();
+      default:
+        throw new IllegalArgumentException("Unknown property: " + property);
+    }
+  }
+
+  @Override
+  public void set(MapperTest.GeneratedMapperBean object, String property, Object value) {
+    ++propertiesWritten;
+    switch (property) {
+      case "name":
+        object.setName((String) value);
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown property: " + property);
+    }
+  }
+}
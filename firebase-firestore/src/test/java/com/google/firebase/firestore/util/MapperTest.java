@@ -24,6 +24,7 @@ import static org.junit.Assert.fail;
 import com.google.firebase.firestore.DocumentId;
 import com.google.firebase.firestore.DocumentReference;
 import com.google.firebase.firestore.Exclude;
+import com.google.firebase.firestore.GenerateMapper;
 import com.google.firebase.firestore.PropertyName;
 import com.google.firebase.firestore.TestUtil;
 import com.google.firebase.firestore.ThrowOnExtraProperties;
@@ -907,6 +908,29 @@ public class MapperTest {
     }
   }
 
+  /** Uses the hand-written {@link FirestoreMapper_MapperTest_GeneratedMapperBean}. */
+  @GenerateMapper
+  static class GeneratedMapperBean {
+    private String name;
+    private String secret;
+
+    public String getName() {
+      return name;
+    }
+
+    public void setName(String name) {
+      this.name = name;
+    }
+
+    public String getSecret() {
+      return secret;
+    }
+
+    private void setSecret(String secret) {
+      this.secret = secret;
+    }
+  }
+
   private static <T> T deserialize(String jsonString, Class<T> clazz) {
     return deserialize(jsonString, clazz, /*docRef=*/ null);
   }
@@ -2460,4 +2484,19 @@ public class MapperTest {
                 DocumentIdOnNestedObjects.class,
                 ref));
   }
+
+  @Test
+  public void generatedMapperIsUsedForAccessibleProperties() {
+    FirestoreMapper_MapperTest_GeneratedMapperBean.resetCounters();
+
+    GeneratedMapperBean bean =
+        deserialize("{'name': 'foo', 'secret': 'bar'}", GeneratedMapperBean.class);
+    assertEquals("foo", bean.getName());
+    assertEquals("bar", bean.getSecret());
+    assertEquals(1, FirestoreMapper_MapperTest_GeneratedMapperBean.instancesCreated);
+    assertEquals(1, FirestoreMapper_MapperTest_GeneratedMapperBean.propertiesWritten);
+
+    assertJson("{'name': 'foo', 'secret': 'bar'}", serialize(bean));
+    assertEquals(2, FirestoreMapper_MapperTest_GeneratedMapperBean.propertiesRead);
+  }
 }
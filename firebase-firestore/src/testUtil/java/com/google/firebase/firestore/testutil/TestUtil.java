@@ -68,6 +68,7 @@ import com.google.firebase.firestore.model.mutation.PatchMutation;
 import com.google.firebase.firestore.model.mutation.Precondition;
 import com.google.firebase.firestore.model.mutation.SetMutation;
 import com.google.firebase.firestore.model.mutation.VerifyMutation;
+import com.google.firebase.firestore.remote.BloomFilter;
 import com.google.firebase.firestore.remote.RemoteEvent;
 import com.google.firebase.firestore.remote.TargetChange;
 import com.google.firebase.firestore.remote.WatchChange;
@@ -76,6 +77,9 @@ import com.google.firebase.firestore.remote.WatchChangeAggregator;
 import com.google.firestore.v1.Value;
 import com.google.protobuf.ByteString;
 import java.io.IOException;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -441,6 +445,11 @@ public class TestUtil {
                 ResourcePath collectionPath = docs.get(0).getKey().getPath().popLast();
                 return targetData(targetId, QueryPurpose.LISTEN, collectionPath.toString());
               }
+
+              @Override
+              public DatabaseId getDatabaseId() {
+                return DatabaseId.forProject("test-project");
+              }
             });
 
     SnapshotVersion version = SnapshotVersion.NONE;
@@ -484,6 +493,11 @@ public class TestUtil {
                     ? targetData(targetId, QueryPurpose.LISTEN, doc.getKey().toString())
                     : null;
               }
+
+              @Override
+              public DatabaseId getDatabaseId() {
+                return DatabaseId.forProject("test-project");
+              }
             });
     aggregator.handleDocumentChange(change);
     return aggregator.createRemoteEvent(doc.getVersion());
@@ -585,6 +599,42 @@ public class TestUtil {
     return ByteString.copyFrom(snapshotString, Charsets.UTF_8);
   }
 
+  /**
+   * Creates a bloom filter with the given number of bits that contains the provided values. Bit
+   * positions are computed the same way as by the backend, using {@link BigInteger} arithmetic so
+   * that the result is independent of the client's unsigned 64-bit math.
+   */
+  public static BloomFilter bloomFilter(int bitCount, int hashCount, String... values) {
+    byte[] bitmap = new byte[(bitCount + 7) / 8];
+    BigInteger modulus = BigInteger.valueOf(bitCount);
+    BigInteger mask = BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE);
+    for (String value : values) {
+      byte[] hash;
+      try {
+        hash = MessageDigest.getInstance("MD5").digest(value.getBytes(Charsets.UTF_8));
+      } catch (NoSuchAlgorithmException e) {
+        throw new RuntimeException(e);
+      }
+      BigInteger hash1 = unsignedLittleEndian(hash, 0);
+      BigInteger hash2 = unsignedLittleEndian(hash, 8);
+      for (int i = 0; i < hashCount; ++i) {
+        BigInteger combined = hash1.add(hash2.multiply(BigInteger.valueOf(i))).and(mask);
+        int index = combined.mod(modulus).intValue();
+        bitmap[index / 8] |= (byte) (1 << (index % 8));
+      }
+    }
+    int padding = bitmap.length * 8 - bitCount;
+    return new BloomFilter(ByteString.copyFrom(bitmap), padding, hashCount);
+  }
+
+  private static BigInteger unsignedLittleEndian(byte[] bytes, int offset) {
+    byte[] bigEndian = new byte[9];
+    for (int i = 0; i < 8; ++i) {
+      bigEndian[8 - i] = bytes[offset + i];
+    }
+    return new BigInteger(bigEndian);
+  }
+
   public static ByteString streamToken(String contents) {
     return ByteString.copyFrom(contents, Charsets.UTF_8);
   }